@@ -31,6 +31,7 @@ import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
 import com.okta.appauth.android.OktaAppAuth;
+import com.okta.appauth.android.TokenEvent;
 import net.openid.appauth.AuthorizationException;
 import org.joda.time.format.DateTimeFormat;
 import org.json.JSONException;
@@ -56,6 +57,13 @@ public class UserInfoActivity extends AppCompatActivity {
     private OktaAppAuth mOktaAppAuth;
     private final AtomicReference<JSONObject> mUserInfoJson = new AtomicReference<>();
 
+    // kept in a field as OktaAppAuth only holds a weak reference to it
+    private final OktaAppAuth.OktaTokenListener mTokenListener = (TokenEvent event) -> {
+        if (event != TokenEvent.CLEARED && event != TokenEvent.REVOKED) {
+            displayAuthorizationInfo();
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -87,6 +95,7 @@ public class UserInfoActivity extends AppCompatActivity {
 
         if (mOktaAppAuth.isUserLoggedIn()) {
             displayAuthorizationInfo();
+            mOktaAppAuth.addTokenListener(mTokenListener);
         } else {
             Log.i(TAG, "No authorization state retained - reauthorization required");
             startActivity(new Intent(this, LoginActivity.class));
@@ -94,6 +103,12 @@ public class UserInfoActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onStop() {
+        mOktaAppAuth.removeTokenListener(mTokenListener);
+        super.onStop();
+    }
+
     @Override
     protected void onSaveInstanceState(Bundle state) {
         // user info is retained to survive activity restarts, such as when rotating the
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package android.util;
+
+/**
+ * Replaces the Base64 of the Android framework, which calls an overload of
+ * {@code System.arraycopy} that only exists on a device, with the Base64 of the JDK. Only the
+ * flags used by the library and AppAuth are supported.
+ */
+@SuppressWarnings("unused")
+public final class Base64 {
+
+    public static final int DEFAULT = 0;
+    public static final int NO_PADDING = 1;
+    public static final int NO_WRAP = 2;
+    public static final int CRLF = 4;
+    public static final int URL_SAFE = 8;
+    public static final int NO_CLOSE = 16;
+
+    private Base64() {
+    }
+
+    public static byte[] decode(String str, int flags) {
+        return decoder(flags).decode(str);
+    }
+
+    public static byte[] decode(byte[] input, int flags) {
+        return decoder(flags).decode(input);
+    }
+
+    public static String encodeToString(byte[] input, int flags) {
+        return encoder(flags).encodeToString(input);
+    }
+
+    public static byte[] encode(byte[] input, int flags) {
+        return encoder(flags).encode(input);
+    }
+
+    private static java.util.Base64.Decoder decoder(int flags) {
+        if ((flags & URL_SAFE) != 0) {
+            return java.util.Base64.getUrlDecoder();
+        }
+        return (flags & NO_WRAP) != 0
+                ? java.util.Base64.getDecoder() : java.util.Base64.getMimeDecoder();
+    }
+
+    private static java.util.Base64.Encoder encoder(int flags) {
+        if ((flags & NO_WRAP) == 0) {
+            throw new UnsupportedOperationException("Only NO_WRAP is supported");
+        }
+        java.util.Base64.Encoder encoder = (flags & URL_SAFE) != 0
+                ? java.util.Base64.getUrlEncoder() : java.util.Base64.getEncoder();
+        return (flags & NO_PADDING) != 0 ? encoder.withoutPadding() : encoder;
+    }
+}
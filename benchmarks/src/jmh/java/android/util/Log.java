@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package android.util;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Replaces the Log of the Android framework, which writes through a native method that only
+ * exists on a device. Messages are discarded, so that the benchmarks measure the library rather
+ * than the output of the log; building the messages is still measured.
+ */
+@SuppressWarnings("unused")
+public final class Log {
+
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+    public static final int ASSERT = 7;
+
+    private Log() {
+    }
+
+    public static int v(String tag, String msg) {
+        return 0;
+    }
+
+    public static int v(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+
+    public static int d(String tag, String msg) {
+        return 0;
+    }
+
+    public static int d(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+
+    public static int i(String tag, String msg) {
+        return 0;
+    }
+
+    public static int i(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+
+    public static int w(String tag, String msg) {
+        return 0;
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+
+    public static int w(String tag, Throwable tr) {
+        return 0;
+    }
+
+    public static int e(String tag, String msg) {
+        return 0;
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+
+    public static int wtf(String tag, String msg) {
+        return 0;
+    }
+
+    public static int wtf(String tag, Throwable tr) {
+        return 0;
+    }
+
+    public static int wtf(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+
+    public static int println(int priority, String tag, String msg) {
+        return 0;
+    }
+
+    public static boolean isLoggable(String tag, int level) {
+        return false;
+    }
+
+    /**
+     * Returns the stack trace of the throwable, as the framework does.
+     *
+     * @param tr The throwable
+     * @return The stack trace, or an empty string if there is no throwable
+     */
+    public static String getStackTraceString(Throwable tr) {
+        if (tr == null) {
+            return "";
+        }
+        StringWriter writer = new StringWriter();
+        tr.printStackTrace(new PrintWriter(writer));
+        return writer.toString();
+    }
+}
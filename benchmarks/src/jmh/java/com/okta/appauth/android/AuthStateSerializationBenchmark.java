@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import net.openid.appauth.AuthState;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures converting an authorized state to and from its stored records the way
+ * {@link AuthStateManager} does, with each of the serializers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class AuthStateSerializationBenchmark {
+
+    @Param({"binary", "json"})
+    public String serializer;
+
+    private AuthStateSerializer mSerializer;
+    private AuthState mState;
+    private String mHotRecord;
+    private String mColdRecord;
+
+    @Setup
+    public void setUp() throws JSONException {
+        mSerializer = "json".equals(serializer)
+                ? new JsonAuthStateSerializer() : new BinaryAuthStateSerializer();
+        mState = BenchmarkFixtures.authorizedState();
+        AuthStateRecords records = AuthStateRecords.split(mState.jsonSerialize());
+        mHotRecord = mSerializer.serialize(records.getHot());
+        mColdRecord = mSerializer.serialize(records.getCold());
+    }
+
+    /**
+     * Writes the state after a token refresh, when the configuration is already stored.
+     */
+    @Benchmark
+    public String writeTokenRecord() throws JSONException {
+        return mSerializer.serialize(AuthStateRecords.split(mState.jsonSerialize()).getHot());
+    }
+
+    /**
+     * Writes the state after a login, when the configuration is stored as well.
+     */
+    @Benchmark
+    public void writeAllRecords(Blackhole blackhole) throws JSONException {
+        AuthStateRecords records = AuthStateRecords.split(mState.jsonSerialize());
+        blackhole.consume(mSerializer.serialize(records.getHot()));
+        blackhole.consume(mSerializer.serialize(records.getCold()));
+    }
+
+    /**
+     * Reads the state when the app starts.
+     */
+    @Benchmark
+    public AuthState read() throws JSONException {
+        JSONObject cold = mSerializer.deserialize(mColdRecord);
+        JSONObject hot = mSerializer.deserialize(mHotRecord);
+        return AuthState.jsonDeserialize(AuthStateRecords.merge(hot, cold));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.net.Uri;
+
+import net.openid.appauth.AuthState;
+import net.openid.appauth.AuthorizationRequest;
+import net.openid.appauth.AuthorizationResponse;
+import net.openid.appauth.AuthorizationServiceConfiguration;
+import net.openid.appauth.AuthorizationServiceDiscovery;
+import net.openid.appauth.GrantTypeValues;
+import net.openid.appauth.ResponseTypeValues;
+import net.openid.appauth.TokenRequest;
+import net.openid.appauth.TokenResponse;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the documents and states the benchmarks work on, sized like those of an Okta org.
+ */
+final class BenchmarkFixtures {
+
+    static final String CLIENT_ID = "0oahnzhsegzYjqETc0h7";
+    static final String ISSUER = "https://example.okta.com/oauth2/default";
+    static final Uri REDIRECT_URI = Uri.parse("com.okta.example:/callback");
+    static final Set<String> SCOPES =
+            new LinkedHashSet<>(Arrays.asList("openid", "profile", "offline_access"));
+
+    static final String CONFIGURATION_JSON = "{"
+            + "\"client_id\":\"" + CLIENT_ID + "\","
+            + "\"redirect_uri\":\"" + REDIRECT_URI + "\","
+            + "\"end_session_redirect_uri\":\"com.okta.example:/logout\","
+            + "\"scopes\":[\"openid\",\"profile\",\"offline_access\"],"
+            + "\"issuer_uri\":\"" + ISSUER + "\""
+            + "}";
+
+    static final String DISCOVERY_JSON = "{"
+            + "\"issuer\":\"" + ISSUER + "\","
+            + "\"authorization_endpoint\":\"" + ISSUER + "/v1/authorize\","
+            + "\"token_endpoint\":\"" + ISSUER + "/v1/token\","
+            + "\"userinfo_endpoint\":\"" + ISSUER + "/v1/userinfo\","
+            + "\"registration_endpoint\":\"https://example.okta.com/oauth2/v1/clients\","
+            + "\"jwks_uri\":\"" + ISSUER + "/v1/keys\","
+            + "\"response_types_supported\":[\"code\",\"id_token\",\"code id_token\","
+            + "\"code token\",\"id_token token\",\"code id_token token\"],"
+            + "\"response_modes_supported\":[\"query\",\"fragment\",\"form_post\","
+            + "\"okta_post_message\"],"
+            + "\"grant_types_supported\":[\"authorization_code\",\"implicit\","
+            + "\"refresh_token\",\"password\"],"
+            + "\"subject_types_supported\":[\"public\"],"
+            + "\"id_token_signing_alg_values_supported\":[\"RS256\"],"
+            + "\"scopes_supported\":[\"openid\",\"profile\",\"email\",\"address\",\"phone\","
+            + "\"offline_access\"],"
+            + "\"token_endpoint_auth_methods_supported\":[\"client_secret_basic\","
+            + "\"client_secret_post\",\"client_secret_jwt\",\"private_key_jwt\",\"none\"],"
+            + "\"claims_supported\":[\"sub\",\"iss\",\"aud\",\"exp\",\"iat\",\"auth_time\","
+            + "\"nonce\",\"name\",\"email\",\"email_verified\",\"preferred_username\"],"
+            + "\"code_challenge_methods_supported\":[\"S256\"],"
+            + "\"introspection_endpoint\":\"" + ISSUER + "/v1/introspect\","
+            + "\"revocation_endpoint\":\"" + ISSUER + "/v1/revoke\","
+            + "\"end_session_endpoint\":\"" + ISSUER + "/v1/logout\","
+            + "\"request_parameter_supported\":true"
+            + "}";
+
+    // lengths of the tokens issued by an authorization server signing with RS256
+    private static final int ACCESS_TOKEN_LENGTH = 870;
+    private static final int ID_TOKEN_LENGTH = 1010;
+    private static final int REFRESH_TOKEN_LENGTH = 43;
+    private static final String TOKEN_ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+    private BenchmarkFixtures() {
+    }
+
+    static JSONObject configurationJson() throws JSONException {
+        return new JSONObject(CONFIGURATION_JSON);
+    }
+
+    static JSONObject discoveryJson() throws JSONException {
+        return new JSONObject(DISCOVERY_JSON);
+    }
+
+    static AuthorizationServiceConfiguration serviceConfiguration() throws JSONException {
+        try {
+            return new AuthorizationServiceConfiguration(
+                    new AuthorizationServiceDiscovery(discoveryJson()));
+        } catch (AuthorizationServiceDiscovery.MissingArgumentException ex) {
+            throw new IllegalStateException("Invalid discovery document", ex);
+        }
+    }
+
+    /**
+     * Creates the state after a login: the authorization and token responses, each carrying a
+     * copy of the service configuration.
+     */
+    static AuthState authorizedState() throws JSONException {
+        AuthorizationRequest request = new AuthorizationRequest.Builder(
+                serviceConfiguration(), CLIENT_ID, ResponseTypeValues.CODE, REDIRECT_URI)
+                .setScopes(SCOPES)
+                .build();
+        AuthState state = new AuthState(request.configuration);
+        state.update(new AuthorizationResponse.Builder(request)
+                .setAuthorizationCode("kSsJ5VqUZDPXgKiB0iLE")
+                .setState(request.state)
+                .build(), null);
+        state.update(new TokenResponse.Builder(
+                new TokenRequest.Builder(request.configuration, CLIENT_ID)
+                        .setGrantType(GrantTypeValues.AUTHORIZATION_CODE)
+                        .setAuthorizationCode("kSsJ5VqUZDPXgKiB0iLE")
+                        .setRedirectUri(REDIRECT_URI)
+                        .setCodeVerifier(request.codeVerifier)
+                        .build())
+                .setTokenType(TokenResponse.TOKEN_TYPE_BEARER)
+                .setAccessToken(token(ACCESS_TOKEN_LENGTH))
+                .setAccessTokenExpirationTime(
+                        System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1))
+                .setIdToken(token(ID_TOKEN_LENGTH))
+                .setRefreshToken(token(REFRESH_TOKEN_LENGTH))
+                .setScopes(SCOPES)
+                .build(), null);
+        return state;
+    }
+
+    private static String token(int length) {
+        StringBuilder token = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            token.append(TOKEN_ALPHABET.charAt(i % TOKEN_ALPHABET.length()));
+        }
+        return token.toString();
+    }
+}
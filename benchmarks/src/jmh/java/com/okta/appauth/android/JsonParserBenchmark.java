@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.net.Uri;
+
+import com.okta.android.json.InvalidJsonDocumentException;
+import com.okta.android.json.JsonParser;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the typed accessors of {@link JsonParser} on the configuration document.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class JsonParserBenchmark {
+
+    private JSONObject mJson;
+
+    @Setup
+    public void setUp() throws JSONException {
+        mJson = BenchmarkFixtures.configurationJson();
+    }
+
+    @Benchmark
+    public String requiredString() throws InvalidJsonDocumentException {
+        return JsonParser.forJson(mJson).getRequiredString("client_id");
+    }
+
+    @Benchmark
+    public Uri requiredUri() throws InvalidJsonDocumentException {
+        return JsonParser.forJson(mJson).getRequiredUri("redirect_uri");
+    }
+
+    @Benchmark
+    public Uri requiredHttpsUri() throws InvalidJsonDocumentException {
+        return JsonParser.forJson(mJson).getRequiredHttpsUri("issuer_uri");
+    }
+
+    @Benchmark
+    public List<String> requiredStringArray() throws InvalidJsonDocumentException {
+        return JsonParser.forJson(mJson).getRequiredStringArray("scopes");
+    }
+}
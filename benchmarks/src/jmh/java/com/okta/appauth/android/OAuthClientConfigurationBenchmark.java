@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+
+import com.okta.android.json.InvalidJsonDocumentException;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Measures reading the client configuration, from its parsed JSON and from the raw resource,
+ * and checking whether it has changed since it was accepted. The check that the redirect URI is
+ * handled by an activity is answered by a stub package manager, and the accepted hash by stub
+ * preferences, whose own costs are included.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class OAuthClientConfigurationBenchmark {
+
+    private Context mContext;
+    private SharedPreferences mPrefs;
+    private byte[] mResource;
+    private JSONObject mJson;
+    private int mConfigHash;
+    private OAuthClientConfiguration mConfiguration;
+
+    @Setup
+    public void setUp() throws JSONException {
+        PackageManager packageManager = mock(PackageManager.class, withSettings().stubOnly());
+        when(packageManager.queryIntentActivities(any(Intent.class), anyInt()))
+                .thenReturn(Collections.singletonList(new ResolveInfo()));
+        mContext = mock(Context.class, withSettings().stubOnly());
+        when(mContext.getPackageManager()).thenReturn(packageManager);
+        when(mContext.getPackageName()).thenReturn("com.okta.example");
+
+        mResource = BenchmarkFixtures.CONFIGURATION_JSON.getBytes(Charset.forName("UTF-8"));
+        mJson = BenchmarkFixtures.configurationJson();
+        // the configuration has been accepted before
+        mConfigHash = mJson.toString().hashCode();
+        mPrefs = mock(SharedPreferences.class, withSettings().stubOnly());
+        when(mPrefs.getString(OAuthClientConfiguration.KEY_LAST_HASH, null))
+                .thenReturn(String.valueOf(mConfigHash));
+
+        mConfiguration = load();
+        if (!mConfiguration.isValid()) {
+            throw new IllegalStateException(mConfiguration.getConfigurationError());
+        }
+        if (mConfiguration.hasConfigurationChanged() || hasConfigurationChangedInPrefs()) {
+            throw new IllegalStateException("The accepted configuration is not the loaded one");
+        }
+    }
+
+    @Benchmark
+    public OAuthClientConfiguration readConfiguration() throws InvalidJsonDocumentException {
+        mConfiguration.readConfiguration(mJson);
+        return mConfiguration;
+    }
+
+    @Benchmark
+    public OAuthClientConfiguration load() {
+        return new OAuthClientConfiguration(mContext, mPrefs,
+                new ByteArrayInputStream(mResource));
+    }
+
+    @Benchmark
+    public boolean hasConfigurationChanged() {
+        return mConfiguration.hasConfigurationChanged();
+    }
+
+    /**
+     * The baseline for {@link #hasConfigurationChanged()}: the comparison with the accepted
+     * hash as made before the result was kept in memory, reading the preferences on every call.
+     */
+    @Benchmark
+    public boolean hasConfigurationChangedInPrefs() {
+        String lastHash = mPrefs.getString(OAuthClientConfiguration.KEY_LAST_HASH, null);
+        return lastHash == null || mConfigHash != Integer.valueOf(lastHash);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import net.openid.appauth.AuthorizationRequest;
+import net.openid.appauth.AuthorizationServiceConfiguration;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the requests which are made when the user signs in and out.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class RequestBuildingBenchmark {
+
+    private AuthorizationServiceConfiguration mServiceConfig;
+    private JSONObject mDiscoveryJson;
+    private AuthenticationPayload mPayload;
+    private String mToken;
+
+    @Setup
+    public void setUp() throws JSONException {
+        mServiceConfig = BenchmarkFixtures.serviceConfiguration();
+        mDiscoveryJson = mServiceConfig.discoveryDoc.docJson;
+        mPayload = new AuthenticationPayload.Builder()
+                .setState("af0ifjsldkj")
+                .setLoginHint("user@example.com")
+                .addParameter("idp", "0oa2tnvq1lvXcGOlK0h7")
+                .build();
+        mToken = BenchmarkFixtures.authorizedState().getAccessToken();
+    }
+
+    @Benchmark
+    public AuthorizationRequest authorizationRequest() {
+        return OktaAppAuth.createAuthorizationRequest(mServiceConfig, BenchmarkFixtures.CLIENT_ID,
+                BenchmarkFixtures.REDIRECT_URI, BenchmarkFixtures.SCOPES, mPayload);
+    }
+
+    @Benchmark
+    public RevokeTokenRequest revokeTokenRequest() {
+        return new RevokeTokenRequest.Builder(mDiscoveryJson)
+                .addClientId(BenchmarkFixtures.CLIENT_ID)
+                .addToken(mToken)
+                .build();
+    }
+}
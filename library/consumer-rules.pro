@@ -0,0 +1,3 @@
+# The precompiled configuration generated into the app is only loaded by name
+# (OAuthClientConfiguration.PRECOMPILED_CONFIGURATION_CLASS), so keep it and its constructor.
+-keep class com.okta.appauth.android.generated.OktaAppAuthConfig { <init>(); }
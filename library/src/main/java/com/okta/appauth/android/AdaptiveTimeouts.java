@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.net.Uri;
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Derives the connect and read timeouts of a connection from the latency observed on its
+ * endpoint, identified by host and path, instead of using the same fixed timeouts everywhere.
+ * The latencies are estimated as TCP estimates round trip times (RFC 6298): a timeout is the
+ * smoothed latency plus four times its smoothed deviation, within the bounds set with
+ * {@link OktaAppAuth#setTimeoutBounds(long, long, TimeUnit)}. Each timeout which expires
+ * doubles the timeouts of its endpoint until the next latency is observed, so that a network
+ * which has become slower is not given up on.
+ * </p>
+ * <p>
+ * Timeouts are only ever lowered, so those set by the {@link OktaConnectionBuilder} remain
+ * the upper bound. An endpoint without observations keeps them.
+ * </p>
+ */
+final class AdaptiveTimeouts {
+
+    static final long DEFAULT_FLOOR_MS = TimeUnit.SECONDS.toMillis(2);
+    static final long DEFAULT_CEILING_MS = TimeUnit.SECONDS.toMillis(15);
+
+    // endpoints tracked at most, the least recently used being forgotten
+    private static final int MAX_ENDPOINTS = 32;
+    private static final int MAX_BACKOFF = 8;
+
+    private static final AdaptiveTimeouts INSTANCE = new AdaptiveTimeouts();
+
+    private final Map<String, Latencies> mEndpoints =
+            new LinkedHashMap<String, Latencies>(MAX_ENDPOINTS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Latencies> eldest) {
+                    return size() > MAX_ENDPOINTS;
+                }
+            };
+    private long mFloorMs = DEFAULT_FLOOR_MS;
+    private long mCeilingMs = DEFAULT_CEILING_MS;
+
+    @VisibleForTesting
+    AdaptiveTimeouts() {
+    }
+
+    /**
+     * Returns the timeouts shared by all instances of the library.
+     *
+     * @return The timeouts
+     */
+    @AnyThread
+    @NonNull
+    static AdaptiveTimeouts getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the key of the endpoint of a URL.
+     *
+     * @param url The URL
+     * @return The key of its endpoint
+     */
+    @NonNull
+    static String key(@NonNull URL url) {
+        return url.getAuthority() + url.getPath();
+    }
+
+    /**
+     * Returns the key of the endpoint of a URI.
+     *
+     * @param uri The URI
+     * @return The key of its endpoint
+     */
+    @NonNull
+    static String key(@NonNull Uri uri) {
+        return uri.getEncodedAuthority() + uri.getEncodedPath();
+    }
+
+    /**
+     * Sets the bounds of the derived timeouts.
+     *
+     * @param floorMs The shortest timeout in milliseconds
+     * @param ceilingMs The longest timeout in milliseconds
+     */
+    @AnyThread
+    void setBounds(long floorMs, long ceilingMs) {
+        if (floorMs <= 0 || ceilingMs < floorMs) {
+            throw new IllegalArgumentException("Invalid timeout bounds " + floorMs + "ms to "
+                    + ceilingMs + "ms");
+        }
+        synchronized (mEndpoints) {
+            mFloorMs = floorMs;
+            mCeilingMs = ceilingMs;
+        }
+    }
+
+    /**
+     * Lowers the timeouts of a connection to those derived for its endpoint.
+     *
+     * @param conn The connection, which must not have connected yet
+     */
+    @AnyThread
+    void apply(@NonNull HttpURLConnection conn) {
+        String key = key(conn.getURL());
+        long connectTimeout;
+        long readTimeout;
+        synchronized (mEndpoints) {
+            Latencies endpoint = mEndpoints.get(key);
+            if (endpoint == null) {
+                return;
+            }
+            connectTimeout = timeout(endpoint.mConnect, endpoint.mBackoff);
+            readTimeout = timeout(endpoint.mFirstByte, endpoint.mBackoff);
+        }
+        if (connectTimeout > 0
+                && (conn.getConnectTimeout() == 0 || conn.getConnectTimeout() > connectTimeout)) {
+            conn.setConnectTimeout((int) connectTimeout);
+        }
+        if (readTimeout > 0
+                && (conn.getReadTimeout() == 0 || conn.getReadTimeout() > readTimeout)) {
+            conn.setReadTimeout((int) readTimeout);
+        }
+    }
+
+    /**
+     * Observes how long connecting to an endpoint took.
+     *
+     * @param key The key of the endpoint
+     * @param connectMs The time to connect in milliseconds
+     */
+    @AnyThread
+    void onConnected(@NonNull String key, long connectMs) {
+        synchronized (mEndpoints) {
+            Latencies endpoint = getOrCreate(key);
+            endpoint.mConnect.add(connectMs);
+            endpoint.mBackoff = 1;
+        }
+    }
+
+    /**
+     * Observes how long an endpoint took to start responding to a request.
+     *
+     * @param key The key of the endpoint
+     * @param firstByteMs The time to the first byte of the response in milliseconds
+     */
+    @AnyThread
+    void onResponded(@NonNull String key, long firstByteMs) {
+        synchronized (mEndpoints) {
+            Latencies endpoint = getOrCreate(key);
+            endpoint.mFirstByte.add(firstByteMs);
+            endpoint.mBackoff = 1;
+        }
+    }
+
+    /**
+     * Observes that a request to an endpoint has timed out.
+     *
+     * @param key The key of the endpoint
+     * @param timeoutMs The timeout which has expired in milliseconds, e.g. lower than the
+     *     derived one to meet a deadline, in which case it does not count
+     */
+    @AnyThread
+    void onTimeout(@NonNull String key, long timeoutMs) {
+        synchronized (mEndpoints) {
+            Latencies endpoint = mEndpoints.get(key);
+            if (endpoint == null || timeoutMs < Math.max(
+                    timeout(endpoint.mConnect, endpoint.mBackoff),
+                    timeout(endpoint.mFirstByte, endpoint.mBackoff))) {
+                return;
+            }
+            endpoint.mBackoff = Math.min(MAX_BACKOFF, endpoint.mBackoff * 2);
+        }
+    }
+
+    /**
+     * Returns the connect timeout derived for an endpoint.
+     *
+     * @param key The key of the endpoint
+     * @return The timeout in milliseconds, or -1 if nothing has been observed
+     */
+    @VisibleForTesting
+    long getConnectTimeoutMs(@NonNull String key) {
+        synchronized (mEndpoints) {
+            Latencies endpoint = mEndpoints.get(key);
+            return endpoint == null ? -1 : timeout(endpoint.mConnect, endpoint.mBackoff);
+        }
+    }
+
+    /**
+     * Returns the read timeout derived for an endpoint.
+     *
+     * @param key The key of the endpoint
+     * @return The timeout in milliseconds, or -1 if nothing has been observed
+     */
+    @VisibleForTesting
+    long getReadTimeoutMs(@NonNull String key) {
+        synchronized (mEndpoints) {
+            Latencies endpoint = mEndpoints.get(key);
+            return endpoint == null ? -1 : timeout(endpoint.mFirstByte, endpoint.mBackoff);
+        }
+    }
+
+    /**
+     * Forgets all observations and restores the default bounds.
+     */
+    @VisibleForTesting
+    void reset() {
+        synchronized (mEndpoints) {
+            mEndpoints.clear();
+            mFloorMs = DEFAULT_FLOOR_MS;
+            mCeilingMs = DEFAULT_CEILING_MS;
+        }
+    }
+
+    @NonNull
+    private Latencies getOrCreate(@NonNull String key) {
+        Latencies endpoint = mEndpoints.get(key);
+        if (endpoint == null) {
+            endpoint = new Latencies();
+            mEndpoints.put(key, endpoint);
+        }
+        return endpoint;
+    }
+
+    private long timeout(@NonNull Estimate estimate, int backoff) {
+        if (!estimate.isKnown()) {
+            return -1;
+        }
+        return Math.max(mFloorMs, Math.min(mCeilingMs, estimate.getTimeoutMs() * backoff));
+    }
+
+    /**
+     * The latencies observed on an endpoint.
+     */
+    private static final class Latencies {
+        private final Estimate mConnect = new Estimate();
+        private final Estimate mFirstByte = new Estimate();
+        private int mBackoff = 1;
+    }
+
+    /**
+     * A smoothed latency and its smoothed deviation, weighing the latest observation by 1/8
+     * and 1/4 respectively.
+     */
+    private static final class Estimate {
+        private static final int DEVIATIONS = 4;
+        private static final int LATENCY_WEIGHT = 8;
+        private static final int DEVIATION_WEIGHT = 4;
+
+        private long mSmoothedMs = -1;
+        private long mDeviationMs;
+
+        void add(long sampleMs) {
+            if (mSmoothedMs < 0) {
+                mSmoothedMs = sampleMs;
+                mDeviationMs = sampleMs / 2;
+                return;
+            }
+            mDeviationMs += (Math.abs(mSmoothedMs - sampleMs) - mDeviationMs) / DEVIATION_WEIGHT;
+            mSmoothedMs += (sampleMs - mSmoothedMs) / LATENCY_WEIGHT;
+        }
+
+        boolean isKnown() {
+            return mSmoothedMs >= 0;
+        }
+
+        long getTimeoutMs() {
+            return mSmoothedMs + DEVIATIONS * mDeviationMs;
+        }
+    }
+}
@@ -21,6 +21,8 @@ import android.support.annotation.AnyThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+import android.text.TextUtils;
 import android.util.Log;
 
 import net.openid.appauth.AuthState;
@@ -28,14 +30,54 @@ import net.openid.appauth.AuthorizationException;
 import net.openid.appauth.AuthorizationResponse;
 import net.openid.appauth.TokenResponse;
 import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.lang.ref.WeakReference;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A Manager for the Okta Authentication State. Handles the underlying {@link AuthState} from
  * the AppAuth library and stores it inside of {@link SharedPreferences}.
+ * <p>
+ * The state is stored as two records: the service configuration and registration, which
+ * rarely change, and the token state, which is rewritten on every refresh. The configuration
+ * record is only rewritten when it changes. See {@link AuthStateRecords}. Records are encoded
+ * by an {@link AuthStateSerializer}, by default the {@link BinaryAuthStateSerializer}, and
+ * persisted by an {@link AuthStateStore}. The default store keeps each record in its own
+ * preference file; {@link #setStore(AuthStateStore)} can switch to a
+ * {@link JournalAuthStateStore} instead.
+ * </p>
+ * <p>
+ * The current state is published as an immutable, versioned {@link AuthStateSnapshot} through a
+ * single atomic reference, so reading it never takes a lock. Updates copy the current state,
+ * apply the change to the copy and publish it as a new snapshot; a published state is never
+ * modified. The state returned by {@link #getCurrent()} must not be modified either; use
+ * {@link #replace(AuthState)} or the {@code updateAfter} methods instead.
+ * </p>
+ * <p>
+ * By default every update is committed to storage before returning. When write-behind is
+ * enabled via {@link #setWriteBehindEnabled(boolean)}, updates are published in memory
+ * immediately and persisted by a dedicated writer thread which coalesces bursts of updates into
+ * a single write. Use {@link #flush()} when the state must be durable before continuing.
+ * </p>
+ * <p>
+ * Reading the stored state the first time involves disk access and deserialization. Use
+ * {@link #preload(Context)} early during application start to do this on a background thread,
+ * and {@link #getCurrentAsync(AuthStateCallback)} where the caller must not block.
+ * </p>
  */
 @SuppressWarnings("WeakerAccess")
 public class AuthStateManager {
@@ -49,14 +91,43 @@ public class AuthStateManager {
     static final String PREFS_NAME = "OktaAppAuthState";
     @VisibleForTesting
     static final String KEY_STATE = "state";
+    @VisibleForTesting
+    static final String CONFIG_PREFS_NAME = "OktaAppAuthStateConfig";
+    @VisibleForTesting
+    static final String KEY_CONFIG = "config";
+
+    private static final String WRITER_THREAD_NAME = "OktaAuthStateWriter";
+    private static final long WRITER_KEEP_ALIVE_SECONDS = 30;
 
-    private final SharedPreferences mPrefs;
     private final ReentrantLock mPrefsLock;
-    private final AtomicReference<AuthState> mCurrentAuthState;
+    private final AtomicReference<AuthStateSnapshot> mCurrent;
+    private final AtomicLong mVersion = new AtomicLong();
+    private final CopyOnWriteArrayList<SnapshotListener> mSnapshotListeners =
+            new CopyOnWriteArrayList<>();
+
+    // guarded by mPrefsLock; the JSON of the configuration held by the stored config record
+    private boolean mStoredConfigKnown;
+    private String mStoredConfigJson;
+    private String mStoredConfigRecord;
+    // guarded by mPrefsLock
+    private AuthStateStore mStore;
+    private AuthStateSerializer mSerializer = new BinaryAuthStateSerializer();
+
+    private final AtomicReference<Future<?>> mPreload = new AtomicReference<>();
+
+    private final AtomicBoolean mWriteBehindEnabled = new AtomicBoolean();
+    private final AtomicBoolean mWritePending = new AtomicBoolean();
+    private final ExecutorService mWriter;
+    private final Runnable mWriteTask = new Runnable() {
+        @Override
+        public void run() {
+            writePending();
+        }
+    };
 
     /**
      * Retrieve the manager object via the static {@link WeakReference} or construct a new instance.
-     * Stores the state in the {@link SharedPreferences} that we get from the
+     * Stores the state in the {@link SharedPreferences} files that we get from the
      * {@link Context#getSharedPreferences(String, int)} in {@link Context#MODE_PRIVATE}.
      *
      * @param context The Context from which to get the application's environment
@@ -67,7 +138,7 @@ public class AuthStateManager {
         AuthStateManager manager = INSTANCE_REF.get().get();
         if (manager == null) {
             manager = new AuthStateManager(
-                    context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE),
+                    new SharedPreferencesAuthStateStore(context),
                     new ReentrantLock()
             );
         }
@@ -76,36 +147,216 @@ public class AuthStateManager {
     }
 
     @VisibleForTesting
-    AuthStateManager(SharedPreferences prefs, ReentrantLock prefsLock) {
-        mPrefs = prefs;
+    AuthStateManager(
+            SharedPreferences prefs,
+            SharedPreferences configPrefs,
+            ReentrantLock prefsLock) {
+        this(new SharedPreferencesAuthStateStore(prefs, configPrefs), prefsLock);
+    }
+
+    @VisibleForTesting
+    AuthStateManager(AuthStateStore store, ReentrantLock prefsLock) {
+        this(store, prefsLock, true);
+    }
+
+    AuthStateManager(AuthStateStore store, ReentrantLock prefsLock, boolean shared) {
+        mStore = store;
         mPrefsLock = prefsLock;
-        mCurrentAuthState = new AtomicReference<>();
+        mCurrent = new AtomicReference<>();
+        mWriter = createWriter();
+
+        if (shared) {
+            INSTANCE_REF.set(new WeakReference<>(this));
+        }
+    }
+
+    /**
+     * Retrieve the manager object via {@link #getInstance(Context)} and start loading the stored
+     * state on a background thread. Calling this early, e.g. in
+     * {@link android.app.Application#onCreate()}, keeps the first {@link #getCurrent()} from
+     * reading storage on the calling thread. Hold on to the returned manager, or an object using
+     * it, for the preloaded state to be kept.
+     *
+     * @param context The Context from which to get the application's environment
+     * @return an AuthStateManager object which is loading its state
+     */
+    @AnyThread
+    public static AuthStateManager preload(@NonNull Context context) {
+        AuthStateManager manager = getInstance(context);
+        manager.preload();
+        return manager;
+    }
+
+    /**
+     * Starts loading the stored state on a background thread unless it is already loaded or
+     * loading. A {@link #getCurrent()} call made while the state is loading waits for it instead
+     * of reading it again.
+     */
+    @AnyThread
+    public void preload() {
+        if (mCurrent.get() != null || mPreload.get() != null) {
+            return;
+        }
 
-        INSTANCE_REF.set(new WeakReference<>(this));
+        FutureTask<AuthStateSnapshot> task = new FutureTask<>(new Callable<AuthStateSnapshot>() {
+            @Override
+            public AuthStateSnapshot call() {
+                return loadCurrent();
+            }
+        });
+        if (mPreload.compareAndSet(null, task)) {
+            mWriter.execute(task);
+        }
     }
 
     /**
-     * Returns the current AuthState stored in the {@link SharedPreferences}.
+     * Returns the current AuthState stored in the {@link SharedPreferences}. The returned state
+     * must not be modified.
      *
      * @return the stored AuthState
      */
     @AnyThread
     @NonNull
     public AuthState getCurrent() {
-        if (mCurrentAuthState.get() != null) {
-            return mCurrentAuthState.get();
+        return getSnapshot().getState();
+    }
+
+    /**
+     * Returns the current snapshot of the state. Once the state is loaded this is a single read
+     * of an atomic reference.
+     *
+     * @return the current AuthStateSnapshot
+     */
+    @AnyThread
+    @NonNull
+    public AuthStateSnapshot getSnapshot() {
+        AuthStateSnapshot current = mCurrent.get();
+        if (current != null) {
+            return current;
         }
 
-        AuthState state = readState();
-        if (mCurrentAuthState.compareAndSet(null, state)) {
-            return state;
+        Future<?> preload = mPreload.get();
+        if (preload != null) {
+            try {
+                getUninterruptibly(preload);
+            } catch (ExecutionException ex) {
+                Log.w(TAG, "Failed to preload auth state", ex.getCause());
+            }
+        }
+
+        return loadCurrent();
+    }
+
+    /**
+     * Passes the current AuthState to the callback once it is available. If the state is
+     * already loaded the callback is invoked immediately on the calling thread; otherwise the
+     * state is loaded on a background thread and the callback invoked on that thread. Callbacks
+     * should return quickly as they share the thread which persists the state.
+     *
+     * @param callback The callback to receive the current state
+     */
+    @AnyThread
+    public void getCurrentAsync(@NonNull final AuthStateCallback callback) {
+        AuthStateSnapshot current = mCurrent.get();
+        if (current != null) {
+            callback.onAuthStateReady(current.getState());
+            return;
+        }
+
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                // runs after any queued preload, which therefore never has to be awaited here
+                callback.onAuthStateReady(loadCurrent().getState());
+            }
+        });
+    }
+
+    /**
+     * Drops the in-memory state so that it is read from storage again when it is next needed.
+     * The state is only dropped once pending writes have completed, and not if it has been
+     * replaced in the meantime.
+     */
+    @AnyThread
+    void releaseCurrent() {
+        final AuthStateSnapshot current = mCurrent.get();
+        if (current == null) {
+            return;
+        }
+
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!mWritePending.get()) {
+                    mCurrent.compareAndSet(current, null);
+                }
+            }
+        });
+    }
+
+    @AnyThread
+    @NonNull
+    private AuthStateSnapshot loadCurrent() {
+        AuthStateSnapshot current = mCurrent.get();
+        if (current != null) {
+            return current;
+        }
+
+        AuthStateSnapshot loaded = new AuthStateSnapshot(readState(), mVersion.incrementAndGet());
+        if (mCurrent.compareAndSet(null, loaded)) {
+            return loaded;
         } else {
-            return mCurrentAuthState.get();
+            return mCurrent.get();
+        }
+    }
+
+    @AnyThread
+    private void publish(@NonNull AuthState state) {
+        // the version is taken per attempt so that a later publication never has a lower one
+        while (true) {
+            AuthStateSnapshot current = mCurrent.get();
+            AuthStateSnapshot next = new AuthStateSnapshot(state, mVersion.incrementAndGet());
+            if (mCurrent.compareAndSet(current, next)) {
+                notifyPublished(current, next);
+                return;
+            }
+        }
+    }
+
+    @AnyThread
+    private void notifyPublished(@Nullable AuthStateSnapshot previous,
+                                 @NonNull AuthStateSnapshot current) {
+        for (SnapshotListener listener : mSnapshotListeners) {
+            listener.onSnapshotPublished(previous, current);
         }
     }
 
+    /**
+     * Registers a listener which is called with every newly published snapshot. The listener is
+     * called on the thread that made the change, possibly while holding the storage lock, so it
+     * must return quickly and must not call back into this manager.
+     *
+     * @param listener The listener to add
+     */
+    @AnyThread
+    void addSnapshotListener(@NonNull SnapshotListener listener) {
+        mSnapshotListeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Unregisters a listener added with {@link #addSnapshotListener(SnapshotListener)}.
+     *
+     * @param listener The listener to remove
+     */
+    @AnyThread
+    void removeSnapshotListener(@NonNull SnapshotListener listener) {
+        mSnapshotListeners.remove(listener);
+    }
+
     /**
      * Replaces the current AuthState in {@link SharedPreferences} with the provided once.
+     * When write-behind is enabled the state is only scheduled to be written; call
+     * {@link #flush()} to wait until it is durable.
      *
      * @param state The updated AuthState
      * @return The AuthState which was stored in the SharedPreferences
@@ -113,11 +364,125 @@ public class AuthStateManager {
     @AnyThread
     @NonNull
     public AuthState replace(@NonNull AuthState state) {
-        writeState(state);
-        mCurrentAuthState.set(state);
+        if (mWriteBehindEnabled.get()) {
+            publish(state);
+            scheduleWrite();
+            return state;
+        }
+
+        mPrefsLock.lock();
+        try {
+            writeStateLocked(state);
+            publish(state);
+        } finally {
+            mPrefsLock.unlock();
+        }
         return state;
     }
 
+    /**
+     * Enables or disables write-behind persistence. While enabled, {@link #replace(AuthState)}
+     * and the {@code updateAfter} methods return as soon as the in-memory state is updated and
+     * the state is committed to {@link SharedPreferences} on a background thread. Disabling
+     * write-behind blocks until any pending write is flushed.
+     *
+     * @param enabled {@code true} to persist updates asynchronously; {@code false} to persist
+     *     them before returning
+     */
+    @AnyThread
+    public void setWriteBehindEnabled(boolean enabled) {
+        boolean wasEnabled = mWriteBehindEnabled.getAndSet(enabled);
+        if (wasEnabled && !enabled) {
+            flush();
+        }
+    }
+
+    /**
+     * Sets the serializer used to encode the stored state. A state which is already stored is
+     * re-encoded with the new serializer before this method returns. States stored as JSON text
+     * are readable with any serializer and are converted on the next write.
+     *
+     * @param serializer The serializer to encode the state with
+     */
+    @WorkerThread
+    public void setSerializer(@NonNull AuthStateSerializer serializer) {
+        mPrefsLock.lock();
+        try {
+            if (serializer == mSerializer) {
+                return;
+            }
+            AuthState state = mStore.read(KEY_STATE) != null ? readStateLocked() : null;
+            mSerializer = serializer;
+            mStoredConfigKnown = false;
+            if (state != null) {
+                writeStateLocked(state);
+            }
+        } finally {
+            mPrefsLock.unlock();
+        }
+    }
+
+    /**
+     * Sets the store which persists the state. A state held by the current store is moved to
+     * the new store before this method returns, so this can be called on every start of the
+     * application. Pending write-behind updates are flushed first.
+     *
+     * @param store The store to persist the state in
+     */
+    @WorkerThread
+    public void setStore(@NonNull AuthStateStore store) {
+        flush();
+        mPrefsLock.lock();
+        try {
+            if (store == mStore) {
+                return;
+            }
+
+            String state = mStore.read(KEY_STATE);
+            if (state != null) {
+                // same order as writeState, so the new store never has a state without its
+                // configuration
+                store.write(KEY_CONFIG, mStore.read(KEY_CONFIG));
+                store.write(KEY_STATE, state);
+                mStore.write(KEY_STATE, null);
+                mStore.write(KEY_CONFIG, null);
+            } else if (store.read(KEY_STATE) != null) {
+                // the state loaded from the current store is empty; load the new one instead
+                mStoredConfigKnown = false;
+                mCurrent.set(null);
+            }
+            mStore = store;
+        } finally {
+            mPrefsLock.unlock();
+        }
+    }
+
+    /**
+     * Indicates whether write-behind persistence is enabled.
+     *
+     * @return {@code true} if updates are persisted asynchronously; {@code false} otherwise
+     */
+    @AnyThread
+    public boolean isWriteBehindEnabled() {
+        return mWriteBehindEnabled.get();
+    }
+
+    /**
+     * Blocks until every update made before this call has been committed to
+     * {@link SharedPreferences}, including a write that is already in progress.
+     *
+     * @throws IllegalStateException if the pending state could not be written
+     */
+    @WorkerThread
+    public void flush() {
+        try {
+            getUninterruptibly(mWriter.submit(mWriteTask));
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Failed to write state to storage",
+                    ex.getCause());
+        }
+    }
+
     /**
      * Called after the app receives the callback from the authorization code flow. This updates
      * the state to prepare for the token exchange.
@@ -129,11 +494,14 @@ public class AuthStateManager {
     @AnyThread
     @NonNull
     public AuthState updateAfterAuthorization(
-            @Nullable AuthorizationResponse response,
-            @Nullable AuthorizationException ex) {
-        AuthState current = getCurrent();
-        current.update(response, ex);
-        return replace(current);
+            @Nullable final AuthorizationResponse response,
+            @Nullable final AuthorizationException ex) {
+        return update(new StateUpdate() {
+            @Override
+            public void apply(@NonNull AuthState state) {
+                state.update(response, ex);
+            }
+        });
     }
 
     /**
@@ -147,11 +515,49 @@ public class AuthStateManager {
     @AnyThread
     @NonNull
     public AuthState updateAfterTokenResponse(
-            @Nullable TokenResponse response,
-            @Nullable AuthorizationException ex) {
-        AuthState current = getCurrent();
-        current.update(response, ex);
-        return replace(current);
+            @Nullable final TokenResponse response,
+            @Nullable final AuthorizationException ex) {
+        return update(new StateUpdate() {
+            @Override
+            public void apply(@NonNull AuthState state) {
+                state.update(response, ex);
+            }
+        });
+    }
+
+    @AnyThread
+    @NonNull
+    private AuthState update(@NonNull StateUpdate update) {
+        AuthStateSnapshot current = getSnapshot();
+        if (mWriteBehindEnabled.get()) {
+            // retried if another update was published since the copy was taken
+            while (true) {
+                AuthState next = current.copyState();
+                update.apply(next);
+                AuthStateSnapshot published =
+                        new AuthStateSnapshot(next, mVersion.incrementAndGet());
+                if (mCurrent.compareAndSet(current, published)) {
+                    notifyPublished(current, published);
+                    scheduleWrite();
+                    return next;
+                }
+                current = getSnapshot();
+            }
+        }
+
+        // updates are serialized by the lock, so none of them can be lost
+        mPrefsLock.lock();
+        try {
+            current = mCurrent.get();
+            AuthState next = current != null
+                    ? current.copyState() : readStateLocked();
+            update.apply(next);
+            writeStateLocked(next);
+            publish(next);
+            return next;
+        } finally {
+            mPrefsLock.unlock();
+        }
     }
 
     @AnyThread
@@ -160,39 +566,207 @@ public class AuthStateManager {
     AuthState readState() {
         mPrefsLock.lock();
         try {
-            String currentState = mPrefs.getString(KEY_STATE, null);
-            if (currentState == null) {
-                return new AuthState();
+            return readStateLocked();
+        } finally {
+            mPrefsLock.unlock();
+        }
+    }
+
+    @NonNull
+    private AuthState readStateLocked() {
+        String currentState = mStore.read(KEY_STATE);
+        if (currentState == null) {
+            return new AuthState();
+        }
+
+        try {
+            JSONObject config = null;
+            String configRecord = mStore.read(KEY_CONFIG);
+            if (configRecord != null) {
+                config = deserializeRecord(configRecord);
+            }
+            JSONObject tokenRecord = deserializeRecord(currentState);
+            // states in an older layout or format are migrated on next write
+            boolean current = AuthStateRecords.isSplit(tokenRecord)
+                    && (!isJsonRecord(configRecord)
+                    || configRecord.equals(mSerializer.serialize(config)));
+            AuthState state = AuthState.jsonDeserialize(
+                    AuthStateRecords.merge(tokenRecord, config));
+            if (current) {
+                rememberStoredConfig(config == null ? null : config.toString(), configRecord);
             }
+            return state;
+        } catch (JSONException ex) {
+            Log.w(TAG, "Failed to deserialize stored auth state - discarding");
+            return new AuthState();
+        }
+    }
 
-            try {
-                return AuthState.jsonDeserialize(currentState);
-            } catch (JSONException ex) {
-                Log.w(TAG, "Failed to deserialize stored auth state - discarding");
-                return new AuthState();
+    @NonNull
+    private JSONObject deserializeRecord(@NonNull String record) throws JSONException {
+        if (isJsonRecord(record)) {
+            return new JSONObject(record);
+        }
+        return mSerializer.deserialize(record);
+    }
+
+    private static boolean isJsonRecord(@Nullable String record) {
+        return record != null && record.startsWith("{");
+    }
+
+    @AnyThread
+    private void scheduleWrite() {
+        // only the first update of a burst needs to wake the writer; later ones are picked
+        // up by the write that is already queued, which writes the latest snapshot
+        if (!mWritePending.getAndSet(true)) {
+            mWriter.submit(mWriteTask);
+        }
+    }
+
+    @WorkerThread
+    private void writePending() {
+        // the flag is cleared before reading the snapshot so that a later update always
+        // schedules another write
+        if (!mWritePending.getAndSet(false)) {
+            return;
+        }
+        AuthStateSnapshot current = mCurrent.get();
+        if (current == null) {
+            return;
+        }
+
+        try {
+            writeState(current.getState());
+        } catch (IllegalStateException ex) {
+            // keep the write pending so that the next update or flush retries it
+            mWritePending.set(true);
+            Log.e(TAG, "Failed to write auth state in the background", ex);
+            throw ex;
+        }
+    }
+
+    private static void getUninterruptibly(@NonNull Future<?> future)
+            throws ExecutionException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    future.get();
+                    return;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
             }
         } finally {
-            mPrefsLock.unlock();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
+    private static ExecutorService createWriter() {
+        ThreadPoolExecutor writer = new ThreadPoolExecutor(
+                1,
+                1,
+                WRITER_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@NonNull Runnable runnable) {
+                        Thread thread = new Thread(runnable, WRITER_THREAD_NAME);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        writer.allowCoreThreadTimeOut(true);
+        return writer;
+    }
+
     @AnyThread
     @VisibleForTesting
     void writeState(@Nullable AuthState state) {
         mPrefsLock.lock();
         try {
-            SharedPreferences.Editor editor = mPrefs.edit();
-            if (state == null) {
-                editor.remove(KEY_STATE);
-            } else {
-                editor.putString(KEY_STATE, state.jsonSerializeString());
+            writeStateLocked(state);
+        } finally {
+            mPrefsLock.unlock();
+        }
+    }
+
+    private void writeStateLocked(@Nullable AuthState state) {
+        if (state == null) {
+            mStore.write(KEY_STATE, null);
+            mStore.write(KEY_CONFIG, null);
+            mStoredConfigKnown = false;
+            return;
+        }
+
+        boolean configStored;
+        String configJson;
+        String hotRecord;
+        String configRecord = null;
+        try {
+            AuthStateRecords records = AuthStateRecords.split(state.jsonSerialize());
+            hotRecord = mSerializer.serialize(records.getHot());
+            // copies of a state do not share its configuration, so it is compared by value
+            configJson = records.getCold() == null ? null : records.getCold().toString();
+            configStored = mStoredConfigKnown && TextUtils.equals(configJson, mStoredConfigJson);
+            if (!configStored && records.getCold() != null) {
+                configRecord = mSerializer.serialize(records.getCold());
             }
+        } catch (JSONException ex) {
+            throw new IllegalStateException("Failed to serialize state", ex);
+        }
 
-            if (!editor.commit()) {
-                throw new IllegalStateException("Failed to write state to shared prefs");
+        // the config record is written first so the token record never refers to a
+        // configuration that has not been stored
+        if (!configStored) {
+            if (!mStoredConfigKnown || !TextUtils.equals(configRecord, mStoredConfigRecord)) {
+                mStore.write(KEY_CONFIG, configRecord);
             }
-        } finally {
-            mPrefsLock.unlock();
+            rememberStoredConfig(configJson, configRecord);
         }
+
+        mStore.write(KEY_STATE, hotRecord);
+    }
+
+    private void rememberStoredConfig(@Nullable String configJson,
+                                      @Nullable String configRecord) {
+        mStoredConfigKnown = true;
+        mStoredConfigJson = configJson;
+        mStoredConfigRecord = configRecord;
+    }
+
+    /**
+     * Receives the current AuthState once it has been loaded.
+     *
+     * @see #getCurrentAsync(AuthStateCallback)
+     */
+    public interface AuthStateCallback {
+        /**
+         * Called with the current state.
+         *
+         * @param state The current AuthState
+         */
+        void onAuthStateReady(@NonNull AuthState state);
+    }
+
+    /**
+     * Observes the snapshots published by an {@link AuthStateManager}.
+     */
+    interface SnapshotListener {
+        /**
+         * Called after a new snapshot has been published.
+         *
+         * @param previous The snapshot which was replaced, or {@code null} if no state was loaded
+         * @param current The newly published snapshot
+         */
+        void onSnapshotPublished(@Nullable AuthStateSnapshot previous,
+                                 @NonNull AuthStateSnapshot current);
+    }
+
+    private interface StateUpdate {
+        void apply(@NonNull AuthState state);
     }
 }
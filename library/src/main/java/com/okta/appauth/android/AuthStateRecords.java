@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import net.openid.appauth.AuthState;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * <p>
+ * Splits the serialized form of an {@link AuthState} into two records so that they can be
+ * persisted independently.
+ * </p>
+ * <ul>
+ *     <li>a "cold" record holding the authorization service configuration (including the
+ *     discovery document) and the registration response, which rarely change</li>
+ *     <li>a "hot" record holding the refresh token, scope and last authorization and token
+ *     responses, which change on every token refresh</li>
+ * </ul>
+ * <p>
+ * The requests embedded in the stored responses each carry a copy of the service
+ * configuration, which is the only copy once an authorization response has been received.
+ * Copies matching the stored configuration are dropped from the hot record and restored from
+ * the cold record when merging. A hot record is marked as split so that complete states written
+ * by earlier versions can still be read as they are.
+ * </p>
+ */
+final class AuthStateRecords {
+
+    private static final String KEY_CONFIG = "config";
+    private static final String KEY_REGISTRATION_RESPONSE = "lastRegistrationResponse";
+    private static final String KEY_REQUEST = "request";
+    private static final String KEY_REQUEST_CONFIGURATION = "configuration";
+    private static final String KEY_SPLIT = "splitConfig";
+
+    private static final String[] RESPONSE_KEYS = {
+        "lastAuthorizationResponse",
+        "mLastTokenResponse",
+        KEY_REGISTRATION_RESPONSE
+    };
+
+    private final JSONObject mHot;
+    private final JSONObject mCold;
+
+    private AuthStateRecords(@NonNull JSONObject hot, @Nullable JSONObject cold) {
+        mHot = hot;
+        mCold = cold;
+    }
+
+    /**
+     * Splits the serialized state into its hot and cold records. The given object is modified.
+     *
+     * @param state The JSON produced by {@link AuthState#jsonSerialize()}
+     * @return The records for the state
+     * @throws JSONException If the records cannot be built
+     */
+    @NonNull
+    static AuthStateRecords split(@NonNull JSONObject state) throws JSONException {
+        JSONObject config = state.optJSONObject(KEY_CONFIG);
+        final boolean stateConfig = config != null;
+        for (int i = 0; config == null && i < RESPONSE_KEYS.length; i++) {
+            JSONObject request = getRequest(state, RESPONSE_KEYS[i]);
+            if (request != null) {
+                config = request.optJSONObject(KEY_REQUEST_CONFIGURATION);
+            }
+        }
+        if (config == null) {
+            return new AuthStateRecords(state, null);
+        }
+
+        JSONObject cold = new JSONObject();
+        cold.put(KEY_CONFIG, config);
+        if (state.has(KEY_REGISTRATION_RESPONSE)) {
+            cold.put(KEY_REGISTRATION_RESPONSE, state.remove(KEY_REGISTRATION_RESPONSE));
+        }
+
+        String configJson = config.toString();
+        for (String key : RESPONSE_KEYS) {
+            JSONObject request = getRequest(state, key);
+            JSONObject requestConfig = request == null
+                    ? null : request.optJSONObject(KEY_REQUEST_CONFIGURATION);
+            if (requestConfig != null && configJson.equals(requestConfig.toString())) {
+                request.remove(KEY_REQUEST_CONFIGURATION);
+            }
+        }
+
+        state.remove(KEY_CONFIG);
+        state.put(KEY_SPLIT, stateConfig);
+        return new AuthStateRecords(state, cold);
+    }
+
+    /**
+     * Merges a hot record with its cold record into the form accepted by
+     * {@link AuthState#jsonDeserialize(JSONObject)}. A hot record which is not marked as split
+     * (as written before the records were split) is returned unchanged.
+     *
+     * @param hot The hot record
+     * @param cold The cold record, or {@code null} if none is stored
+     * @return The serialized state
+     * @throws JSONException If the records cannot be merged
+     */
+    @NonNull
+    static JSONObject merge(@NonNull JSONObject hot, @Nullable JSONObject cold)
+            throws JSONException {
+        if (cold == null || !isSplit(hot)) {
+            return hot;
+        }
+
+        JSONObject config = cold.getJSONObject(KEY_CONFIG);
+        if (hot.optBoolean(KEY_SPLIT)) {
+            hot.put(KEY_CONFIG, config);
+        }
+        hot.remove(KEY_SPLIT);
+        if (cold.has(KEY_REGISTRATION_RESPONSE)) {
+            hot.put(KEY_REGISTRATION_RESPONSE, cold.get(KEY_REGISTRATION_RESPONSE));
+        }
+
+        for (String key : RESPONSE_KEYS) {
+            JSONObject request = getRequest(hot, key);
+            if (request != null && !request.has(KEY_REQUEST_CONFIGURATION)) {
+                request.put(KEY_REQUEST_CONFIGURATION, config);
+            }
+        }
+
+        return hot;
+    }
+
+    /**
+     * Indicates whether the given hot record was written without its configuration, i.e. it
+     * has to be merged with a cold record.
+     *
+     * @param hot The hot record
+     * @return {@code true} if the record was split from its configuration; {@code false} if it
+     *     holds a complete state
+     */
+    static boolean isSplit(@NonNull JSONObject hot) {
+        return hot.has(KEY_SPLIT);
+    }
+
+    @Nullable
+    private static JSONObject getRequest(@NonNull JSONObject state, String responseKey) {
+        JSONObject response = state.optJSONObject(responseKey);
+        return response == null ? null : response.optJSONObject(KEY_REQUEST);
+    }
+
+    /**
+     * Returns the frequently rewritten token state.
+     *
+     * @return The hot record
+     */
+    @NonNull
+    JSONObject getHot() {
+        return mHot;
+    }
+
+    /**
+     * Returns the rarely changing configuration and registration state.
+     *
+     * @return The cold record, or {@code null} if the state has no configuration
+     */
+    @Nullable
+    JSONObject getCold() {
+        return mCold;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Converts the records of a persisted {@link net.openid.appauth.AuthState} to and from the
+ * strings stored by {@link AuthStateManager}. Records written as JSON text are always readable,
+ * regardless of the serializer in use, so that existing states can be migrated.
+ *
+ * @see BinaryAuthStateSerializer
+ * @see JsonAuthStateSerializer
+ */
+public interface AuthStateSerializer {
+    /**
+     * Encodes a record for storage.
+     * @param record - the record to encode
+     * @throws JSONException if the record cannot be encoded
+     * @return the encoded record
+     */
+    @NonNull
+    String serialize(@NonNull JSONObject record) throws JSONException;
+
+    /**
+     * Decodes a record previously produced by {@link #serialize(JSONObject)}.
+     * @param record - the encoded record
+     * @throws JSONException if the record is malformed or of an unsupported version
+     * @return the decoded record
+     */
+    @NonNull
+    JSONObject deserialize(@NonNull String record) throws JSONException;
+}
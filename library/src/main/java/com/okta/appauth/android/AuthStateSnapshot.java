@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.NonNull;
+
+import net.openid.appauth.AuthState;
+import org.json.JSONException;
+
+/**
+ * A version of the state published by an {@link AuthStateManager}. The manager never modifies
+ * the state of a snapshot once it is published; every update publishes a new snapshot with a
+ * higher version. Reading a snapshot therefore needs no locking, and all values read from the
+ * same snapshot are consistent with each other.
+ */
+public final class AuthStateSnapshot {
+
+    private final AuthState mState;
+    private final long mVersion;
+
+    AuthStateSnapshot(@NonNull AuthState state, long version) {
+        mState = state;
+        mVersion = version;
+    }
+
+    /**
+     * Returns the state of this snapshot. The state is shared by all readers of the snapshot and
+     * must not be modified; use {@link #copyState()} to derive an updated state.
+     *
+     * @return the AuthState of this snapshot
+     */
+    @NonNull
+    public AuthState getState() {
+        return mState;
+    }
+
+    /**
+     * Returns the version of this snapshot. Versions increase with every update published by
+     * the same manager.
+     *
+     * @return the version of this snapshot
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Returns a copy of the state of this snapshot which may be modified.
+     *
+     * @return a new AuthState equal to the state of this snapshot
+     */
+    @NonNull
+    public AuthState copyState() {
+        return copyOf(mState);
+    }
+
+    @NonNull
+    static AuthState copyOf(@NonNull AuthState state) {
+        try {
+            return AuthState.jsonDeserialize(state.jsonSerialize());
+        } catch (JSONException ex) {
+            throw new IllegalStateException("Failed to copy state", ex);
+        }
+    }
+}
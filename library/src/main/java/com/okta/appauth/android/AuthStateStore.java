@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+/**
+ * Persists the records which make up the state of an {@link AuthStateManager}. Each record is
+ * a string identified by a key. Implementations must make a write durable before returning, as
+ * the manager relies on it when committing a state.
+ *
+ * @see SharedPreferencesAuthStateStore
+ * @see JournalAuthStateStore
+ */
+public interface AuthStateStore {
+    /**
+     * Reads a record.
+     * @param key - the key of the record
+     * @throws IllegalStateException if the store cannot be read
+     * @return the record, or {@code null} if none is stored for the key
+     */
+    @WorkerThread
+    @Nullable
+    String read(@NonNull String key);
+
+    /**
+     * Writes or removes a record.
+     * @param key - the key of the record
+     * @param value - the record to store, or {@code null} to remove it
+     * @throws IllegalStateException if the record could not be written
+     */
+    @WorkerThread
+    void write(@NonNull String key, @Nullable String value);
+}
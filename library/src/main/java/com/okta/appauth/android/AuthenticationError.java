@@ -24,6 +24,8 @@ import net.openid.appauth.ClientAuthentication;
 public class AuthenticationError extends Exception {
     static final  int INVALID_AUTHORIZE_REQUEST = 0;
     static final  int INVALID_SESSION_TOKEN = 1;
+    static final  int DEADLINE_EXCEEDED = 2;
+    static final  int CIRCUIT_OPEN = 3;
 
     private String mCode;
     private int mStatusCode;
@@ -63,6 +65,16 @@ public class AuthenticationError extends Exception {
                         "session_token_couldn't be null",
                         code,
                         "Session Token is null");
+            case DEADLINE_EXCEEDED:
+                return new AuthenticationError(
+                        "deadline_exceeded",
+                        code,
+                        "Authentication did not complete before its deadline");
+            case CIRCUIT_OPEN:
+                return new AuthenticationError(
+                        "circuit_open",
+                        code,
+                        "Okta endpoint failed repeatedly and is not requested for a while");
             default:
                 throw new RuntimeException("Invalid error type value in AuthenticationError");
         }
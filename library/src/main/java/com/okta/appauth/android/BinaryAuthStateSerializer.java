@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.NonNull;
+import android.util.Base64;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Stores records in a compact, versioned binary encoding. This is the default serializer of
+ * {@link AuthStateManager}.
+ * </p>
+ * <p>
+ * A record starts with a magic byte and the format version, followed by a table of every
+ * distinct string in the record and the encoded value tree. Strings, objects and arrays are
+ * length-prefixed, so decoding never scans for delimiters or unescapes text. Keys and values
+ * are interned in the string table, so the endpoint URIs repeated between the service
+ * configuration and its discovery document are stored once. The bytes are Base64 encoded so
+ * that they can be kept in {@link android.content.SharedPreferences}.
+ * </p>
+ */
+public final class BinaryAuthStateSerializer implements AuthStateSerializer {
+
+    private static final int MAGIC = 0xA5;
+    private static final int VERSION = 1;
+
+    private static final int TYPE_NULL = 0;
+    private static final int TYPE_FALSE = 1;
+    private static final int TYPE_TRUE = 2;
+    private static final int TYPE_LONG = 3;
+    private static final int TYPE_DOUBLE = 4;
+    private static final int TYPE_STRING = 5;
+    private static final int TYPE_OBJECT = 6;
+    private static final int TYPE_ARRAY = 7;
+
+    private static final int BYTE_MASK = 0xFF;
+    private static final int VARINT_PAYLOAD_MASK = 0x7F;
+    private static final int VARINT_CONTINUATION = 0x80;
+    private static final int VARINT_SHIFT = 7;
+    private static final int MAX_DEPTH = 64;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @NonNull
+    @Override
+    public String serialize(@NonNull JSONObject record) throws JSONException {
+        Encoder encoder = new Encoder();
+        encoder.writeValue(record);
+        return Base64.encodeToString(encoder.toByteArray(), Base64.NO_WRAP);
+    }
+
+    @NonNull
+    @Override
+    public JSONObject deserialize(@NonNull String record) throws JSONException {
+        byte[] data;
+        try {
+            data = Base64.decode(record, Base64.NO_WRAP);
+        } catch (IllegalArgumentException ex) {
+            throw new JSONException("Record is not Base64 encoded");
+        }
+        return new Decoder(data).readRecord();
+    }
+
+    private static final class Encoder {
+        private final Map<String, Integer> mStrings = new LinkedHashMap<>();
+        private final ByteArrayOutputStream mTree = new ByteArrayOutputStream();
+
+        void writeValue(Object value) throws JSONException {
+            if (value == null || value == JSONObject.NULL) {
+                mTree.write(TYPE_NULL);
+            } else if (value instanceof Boolean) {
+                mTree.write((Boolean) value ? TYPE_TRUE : TYPE_FALSE);
+            } else if (value instanceof Integer || value instanceof Long
+                    || value instanceof Short || value instanceof Byte) {
+                mTree.write(TYPE_LONG);
+                long number = ((Number) value).longValue();
+                writeVarint(mTree, (number << 1) ^ (number >> (Long.SIZE - 1)));
+            } else if (value instanceof Number) {
+                mTree.write(TYPE_DOUBLE);
+                long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+                for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+                    mTree.write((int) (bits >>> shift));
+                }
+            } else if (value instanceof JSONObject) {
+                JSONObject object = (JSONObject) value;
+                mTree.write(TYPE_OBJECT);
+                writeVarint(mTree, object.length());
+                Iterator<String> keys = object.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    writeString(key);
+                    writeValue(object.opt(key));
+                }
+            } else if (value instanceof JSONArray) {
+                JSONArray array = (JSONArray) value;
+                mTree.write(TYPE_ARRAY);
+                writeVarint(mTree, array.length());
+                for (int i = 0; i < array.length(); i++) {
+                    writeValue(array.opt(i));
+                }
+            } else {
+                mTree.write(TYPE_STRING);
+                writeString(value.toString());
+            }
+        }
+
+        private void writeString(String value) {
+            Integer index = mStrings.get(value);
+            if (index == null) {
+                index = mStrings.size();
+                mStrings.put(value, index);
+            }
+            writeVarint(mTree, index);
+        }
+
+        byte[] toByteArray() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(mTree.size() * 2);
+            out.write(MAGIC);
+            out.write(VERSION);
+            writeVarint(out, mStrings.size());
+            for (String value : mStrings.keySet()) {
+                byte[] bytes = value.getBytes(UTF_8);
+                writeVarint(out, bytes.length);
+                out.write(bytes, 0, bytes.length);
+            }
+            byte[] tree = mTree.toByteArray();
+            out.write(tree, 0, tree.length);
+            return out.toByteArray();
+        }
+
+        private static void writeVarint(ByteArrayOutputStream out, long value) {
+            long remaining = value;
+            while ((remaining & ~VARINT_PAYLOAD_MASK) != 0) {
+                out.write((int) (remaining & VARINT_PAYLOAD_MASK) | VARINT_CONTINUATION);
+                remaining >>>= VARINT_SHIFT;
+            }
+            out.write((int) remaining);
+        }
+    }
+
+    private static final class Decoder {
+        private final byte[] mData;
+        private int mPosition;
+        private String[] mStrings;
+
+        Decoder(byte[] data) {
+            mData = data;
+        }
+
+        JSONObject readRecord() throws JSONException {
+            if (readByte() != MAGIC) {
+                throw new JSONException("Not a binary auth state record");
+            }
+            int version = readByte();
+            if (version != VERSION) {
+                throw new JSONException("Unsupported record version " + version);
+            }
+
+            mStrings = new String[readLength()];
+            for (int i = 0; i < mStrings.length; i++) {
+                int length = readLength();
+                mStrings[i] = new String(mData, mPosition, length, UTF_8);
+                mPosition += length;
+            }
+
+            Object value = readValue(0);
+            if (!(value instanceof JSONObject) || mPosition != mData.length) {
+                throw new JSONException("Malformed binary auth state record");
+            }
+            return (JSONObject) value;
+        }
+
+        private Object readValue(int depth) throws JSONException {
+            if (depth > MAX_DEPTH) {
+                throw new JSONException("Record nested too deeply");
+            }
+            int type = readByte();
+            switch (type) {
+                case TYPE_NULL:
+                    return JSONObject.NULL;
+                case TYPE_FALSE:
+                    return Boolean.FALSE;
+                case TYPE_TRUE:
+                    return Boolean.TRUE;
+                case TYPE_LONG:
+                    long encoded = readVarint();
+                    long number = (encoded >>> 1) ^ -(encoded & 1);
+                    // mirror JSONTokener, which yields Integer for values in range
+                    if (number >= Integer.MIN_VALUE && number <= Integer.MAX_VALUE) {
+                        return (int) number;
+                    }
+                    return number;
+                case TYPE_DOUBLE:
+                    long bits = 0;
+                    for (int i = 0; i < Long.SIZE / Byte.SIZE; i++) {
+                        bits = (bits << Byte.SIZE) | readByte();
+                    }
+                    return Double.longBitsToDouble(bits);
+                case TYPE_STRING:
+                    return readString();
+                case TYPE_OBJECT:
+                    JSONObject object = new JSONObject();
+                    for (int i = readLength(); i > 0; i--) {
+                        String key = readString();
+                        object.put(key, readValue(depth + 1));
+                    }
+                    return object;
+                case TYPE_ARRAY:
+                    JSONArray array = new JSONArray();
+                    for (int i = readLength(); i > 0; i--) {
+                        array.put(readValue(depth + 1));
+                    }
+                    return array;
+                default:
+                    throw new JSONException("Unknown value type " + type);
+            }
+        }
+
+        private String readString() throws JSONException {
+            long index = readVarint();
+            if (index < 0 || index >= mStrings.length) {
+                throw new JSONException("String index out of range");
+            }
+            return mStrings[(int) index];
+        }
+
+        private int readLength() throws JSONException {
+            long length = readVarint();
+            if (length < 0 || length > mData.length - mPosition) {
+                throw new JSONException("Truncated record");
+            }
+            return (int) length;
+        }
+
+        private long readVarint() throws JSONException {
+            long value = 0;
+            for (int shift = 0; shift < Long.SIZE; shift += VARINT_SHIFT) {
+                int next = readByte();
+                value |= (long) (next & VARINT_PAYLOAD_MASK) << shift;
+                if ((next & VARINT_CONTINUATION) == 0) {
+                    return value;
+                }
+            }
+            throw new JSONException("Malformed varint");
+        }
+
+        private int readByte() throws JSONException {
+            if (mPosition >= mData.length) {
+                throw new JSONException("Truncated record");
+            }
+            return mData[mPosition++] & BYTE_MASK;
+        }
+    }
+}
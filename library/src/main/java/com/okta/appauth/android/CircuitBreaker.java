@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.os.SystemClock;
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import net.openid.appauth.AuthorizationException;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Stops sending requests to an Okta endpoint which keeps failing, so that callers fail fast
+ * with a {@link CircuitOpenException} instead of each waiting out the connect and read timeouts
+ * and holding on to an executor thread meanwhile. The circuits are tracked per endpoint and
+ * shared by all instances of the library, as the endpoints are the org's.
+ * </p>
+ * <p>
+ * A circuit opens once requests to its endpoint have failed a number of times in a row, by an
+ * I/O error or a server error. After a while it lets a single request through to probe the
+ * endpoint: the circuit closes if the probe succeeds, and opens again otherwise. A probe which
+ * has not completed within that while is taken for lost, and another request may probe.
+ * </p>
+ * <p>
+ * Resources are not Okta's, so their requests do not pass the breaker.
+ * </p>
+ */
+final class CircuitBreaker {
+
+    private static final String TAG = "CircuitBreaker";
+
+    @VisibleForTesting
+    static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    @VisibleForTesting
+    static final long DEFAULT_OPEN_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final CircuitBreaker INSTANCE =
+            new CircuitBreaker(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MS);
+
+    private final Map<OktaMetrics.Endpoint, Circuit> mCircuits =
+            new EnumMap<>(OktaMetrics.Endpoint.class);
+    private final int mFailureThreshold;
+    private final long mOpenMs;
+
+    @VisibleForTesting
+    CircuitBreaker(int failureThreshold, long openMs) {
+        mFailureThreshold = failureThreshold;
+        mOpenMs = openMs;
+    }
+
+    /**
+     * Returns the breaker shared by all instances of the library.
+     *
+     * @return The breaker
+     */
+    @AnyThread
+    @NonNull
+    static CircuitBreaker getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the state of the circuit of an endpoint.
+     *
+     * @param endpoint The endpoint
+     * @return The state of its circuit
+     */
+    @AnyThread
+    @NonNull
+    CircuitState getState(@NonNull OktaMetrics.Endpoint endpoint) {
+        synchronized (mCircuits) {
+            Circuit circuit = mCircuits.get(endpoint);
+            return circuit == null
+                    ? CircuitState.CLOSED : circuit.getState(SystemClock.elapsedRealtime());
+        }
+    }
+
+    /**
+     * Fails if a request to the given endpoint would not be let through now, without taking
+     * the place of the probe. Used to fail fast before queuing a request.
+     *
+     * @param endpoint The endpoint to request
+     * @throws CircuitOpenException If the circuit of the endpoint is open
+     */
+    @AnyThread
+    void check(@NonNull OktaMetrics.Endpoint endpoint) throws CircuitOpenException {
+        pass(endpoint, false);
+    }
+
+    /**
+     * Lets a request to the given endpoint through, or fails if its circuit is open. Once
+     * sent, the outcome of the request has to be reported.
+     *
+     * @param endpoint The endpoint to request
+     * @throws CircuitOpenException If the circuit of the endpoint is open
+     */
+    @AnyThread
+    void acquire(@NonNull OktaMetrics.Endpoint endpoint) throws CircuitOpenException {
+        pass(endpoint, true);
+    }
+
+    /**
+     * Reports a response from an endpoint, which is a failure if it is a server error.
+     *
+     * @param endpoint The endpoint which has responded
+     * @param statusCode The status code of the response
+     */
+    @AnyThread
+    void onResponse(@NonNull OktaMetrics.Endpoint endpoint, int statusCode) {
+        onOutcome(endpoint, statusCode < HttpURLConnection.HTTP_INTERNAL_ERROR);
+    }
+
+    /**
+     * Reports a request which has failed before a response was received.
+     *
+     * @param endpoint The endpoint requested
+     * @param error The error which occurred
+     */
+    @AnyThread
+    void onError(@NonNull OktaMetrics.Endpoint endpoint, @NonNull IOException error) {
+        // those were not sent, or were cut short by the caller's deadline, so they tell
+        // nothing about the endpoint
+        if (error instanceof CircuitOpenException || error instanceof RateLimitExceededException
+                || error instanceof DeadlineExceededException) {
+            return;
+        }
+        onOutcome(endpoint, false);
+    }
+
+    /**
+     * Reports the result of a token request sent by AppAuth, which reports I/O errors and
+     * server errors as general errors, and the other error responses as token errors.
+     *
+     * @param ex The error of the token request, or {@code null} if it succeeded
+     */
+    @AnyThread
+    void onTokenResponse(@Nullable AuthorizationException ex) {
+        if (ex == null || ex.type == AuthorizationException.TYPE_OAUTH_TOKEN_ERROR) {
+            onOutcome(OktaMetrics.Endpoint.TOKEN, true);
+        } else if (ex.getCause() instanceof IOException) {
+            onError(OktaMetrics.Endpoint.TOKEN, (IOException) ex.getCause());
+        } else if (AuthorizationException.GeneralErrors.NETWORK_ERROR.equals(ex)
+                || AuthorizationException.GeneralErrors.SERVER_ERROR.equals(ex)
+                || AuthorizationException.GeneralErrors.JSON_DESERIALIZATION_ERROR.equals(ex)) {
+            onOutcome(OktaMetrics.Endpoint.TOKEN, false);
+        }
+    }
+
+    /**
+     * Closes all circuits.
+     */
+    @VisibleForTesting
+    void reset() {
+        synchronized (mCircuits) {
+            mCircuits.clear();
+        }
+    }
+
+    private void pass(@NonNull OktaMetrics.Endpoint endpoint, boolean probe)
+            throws CircuitOpenException {
+        if (!isBroken(endpoint)) {
+            return;
+        }
+
+        long wait;
+        synchronized (mCircuits) {
+            Circuit circuit = mCircuits.get(endpoint);
+            if (circuit == null) {
+                return;
+            }
+            long now = SystemClock.elapsedRealtime();
+            wait = circuit.getWaitMs(now);
+            if (wait == 0) {
+                if (probe && circuit.mOpen) {
+                    Log.i(TAG, "Probing the " + endpoint + " endpoint");
+                    circuit.mProbeUntil = now + mOpenMs;
+                }
+                return;
+            }
+        }
+        throw new CircuitOpenException(endpoint, wait);
+    }
+
+    private void onOutcome(@NonNull OktaMetrics.Endpoint endpoint, boolean success) {
+        if (!isBroken(endpoint)) {
+            return;
+        }
+
+        synchronized (mCircuits) {
+            Circuit circuit = mCircuits.get(endpoint);
+            if (circuit == null) {
+                if (success) {
+                    return;
+                }
+                circuit = new Circuit();
+                mCircuits.put(endpoint, circuit);
+            }
+
+            long now = SystemClock.elapsedRealtime();
+            if (success) {
+                if (circuit.mOpen) {
+                    Log.i(TAG, "Closing the circuit of the " + endpoint + " endpoint");
+                }
+                circuit.mOpen = false;
+                circuit.mFailures = 0;
+                circuit.mProbeUntil = 0;
+                return;
+            }
+
+            circuit.mFailures++;
+            // a request sent before the circuit opened does not keep it open for longer
+            boolean open = circuit.mOpen
+                    ? now >= circuit.mOpenUntil : circuit.mFailures >= mFailureThreshold;
+            if (open) {
+                Log.w(TAG, "Opening the circuit of the " + endpoint + " endpoint after "
+                        + circuit.mFailures + " failures");
+                circuit.mOpen = true;
+                circuit.mOpenUntil = now + mOpenMs;
+                circuit.mProbeUntil = 0;
+            }
+        }
+    }
+
+    private static boolean isBroken(@NonNull OktaMetrics.Endpoint endpoint) {
+        return endpoint != OktaMetrics.Endpoint.RESOURCE;
+    }
+
+    /**
+     * The health of an endpoint, as of {@link SystemClock#elapsedRealtime()}.
+     */
+    private static final class Circuit {
+        private int mFailures;
+        private boolean mOpen;
+        private long mOpenUntil;
+        private long mProbeUntil;
+
+        @NonNull
+        CircuitState getState(long now) {
+            if (!mOpen) {
+                return CircuitState.CLOSED;
+            }
+            return now < mOpenUntil ? CircuitState.OPEN : CircuitState.HALF_OPEN;
+        }
+
+        long getWaitMs(long now) {
+            if (!mOpen) {
+                return 0;
+            }
+            if (now < mOpenUntil) {
+                return mOpenUntil - now;
+            }
+            return now < mProbeUntil ? mProbeUntil - now : 0;
+        }
+    }
+}
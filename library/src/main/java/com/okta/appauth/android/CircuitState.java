@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+/**
+ * The state of the circuit breaker of an Okta endpoint, as returned by
+ * {@link OktaAppAuth#getCircuitState(OktaMetrics.Endpoint)}.
+ */
+public enum CircuitState {
+    /**
+     * The endpoint is healthy and requests are sent.
+     */
+    CLOSED,
+    /**
+     * The endpoint has failed repeatedly and requests fail fast with a
+     * {@link CircuitOpenException} until it is probed again.
+     */
+    OPEN,
+    /**
+     * The endpoint is being probed with a single request, whose outcome closes or opens the
+     * circuit again. Other requests fail fast meanwhile.
+     */
+    HALF_OPEN
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.os.SystemClock;
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+
+/**
+ * The time by which an operation has to complete, as of {@link SystemClock#elapsedRealtime()}.
+ * It limits the timeouts of every connection the operation opens and the retries it makes, so
+ * that the operation fails once its deadline has passed instead of once each of its requests
+ * has timed out.
+ */
+final class Deadline {
+
+    /**
+     * The time of a deadline which never passes.
+     */
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    static final Deadline NONE = new Deadline(NO_DEADLINE);
+
+    // the timeout of operations which are not given one, 0 for none
+    private static volatile long sDefaultTimeoutMs;
+
+    private final long mTime;
+
+    private Deadline(long time) {
+        mTime = time;
+    }
+
+    /**
+     * Returns the deadline at the given time.
+     *
+     * @param time The {@link SystemClock#elapsedRealtime()} of the deadline, or
+     *     {@link #NO_DEADLINE}
+     * @return The deadline
+     */
+    @AnyThread
+    @NonNull
+    static Deadline at(long time) {
+        return time == NO_DEADLINE ? NONE : new Deadline(time);
+    }
+
+    /**
+     * Returns the deadline which passes once the given timeout has elapsed from now.
+     *
+     * @param timeoutMs The timeout in milliseconds
+     * @return The deadline
+     */
+    @AnyThread
+    @NonNull
+    static Deadline after(long timeoutMs) {
+        long now = SystemClock.elapsedRealtime();
+        return timeoutMs < NO_DEADLINE - now ? new Deadline(now + timeoutMs) : NONE;
+    }
+
+    /**
+     * Returns the deadline of an operation which has not been given a timeout, according to
+     * {@link OktaAppAuth#setOperationTimeout(long, java.util.concurrent.TimeUnit)}.
+     *
+     * @return The deadline
+     */
+    @AnyThread
+    @NonNull
+    static Deadline fromDefault() {
+        long timeoutMs = sDefaultTimeoutMs;
+        return timeoutMs > 0 ? after(timeoutMs) : NONE;
+    }
+
+    @AnyThread
+    static void setDefaultTimeout(long timeoutMs) {
+        sDefaultTimeoutMs = timeoutMs;
+    }
+
+    /**
+     * Creates the error with which an operation fails once its deadline has passed, which is
+     * the one its connection would have failed with.
+     *
+     * @return The error
+     */
+    @NonNull
+    static SocketTimeoutException exceeded() {
+        return new DeadlineExceededException();
+    }
+
+    /**
+     * The {@link SystemClock#elapsedRealtime()} of the deadline.
+     *
+     * @return The time of the deadline, or {@link #NO_DEADLINE}
+     */
+    long getTime() {
+        return mTime;
+    }
+
+    boolean isExpired() {
+        return mTime != NO_DEADLINE && SystemClock.elapsedRealtime() >= mTime;
+    }
+
+    /**
+     * The time left until the deadline.
+     *
+     * @return The remaining time in milliseconds, 0 once the deadline has passed
+     */
+    long getRemainingMs() {
+        return mTime == NO_DEADLINE
+                ? NO_DEADLINE : Math.max(0, mTime - SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Attributes the error of a request whose timeouts were limited by the deadline. A timeout
+     * occurring once the deadline has passed was caused by the deadline rather than by the
+     * endpoint, and is reported as a {@link DeadlineExceededException} caused by it.
+     *
+     * @param error The error the request failed with
+     * @return The error to report for the request
+     */
+    @NonNull
+    IOException attribute(@NonNull IOException error) {
+        if (!(error instanceof SocketTimeoutException)
+                || error instanceof DeadlineExceededException || !isExpired()) {
+            return error;
+        }
+        DeadlineExceededException exceeded = new DeadlineExceededException();
+        exceeded.initCause(error);
+        return exceeded;
+    }
+
+    /**
+     * Lowers the timeouts of a connection to the time left until the deadline.
+     *
+     * @param conn The connection, which must not have connected yet
+     */
+    void limitTimeouts(@NonNull HttpURLConnection conn) {
+        if (mTime == NO_DEADLINE) {
+            return;
+        }
+        int remaining = (int) Math.min(Integer.MAX_VALUE, Math.max(1, getRemainingMs()));
+        if (conn.getConnectTimeout() == 0 || conn.getConnectTimeout() > remaining) {
+            conn.setConnectTimeout(remaining);
+        }
+        if (conn.getReadTimeout() == 0 || conn.getReadTimeout() > remaining) {
+            conn.setReadTimeout(remaining);
+        }
+    }
+}
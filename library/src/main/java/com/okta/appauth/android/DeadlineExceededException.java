@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import java.net.SocketTimeoutException;
+
+/**
+ * Thrown when an operation did not complete before its deadline, including when one of its
+ * requests timed out after its timeouts had been lowered to the time left until the deadline.
+ * Such a failure is caused by the caller's deadline rather than by the endpoint, so it does
+ * not count towards opening the endpoint's circuit.
+ *
+ * @see OktaAppAuth#setOperationTimeout(long, java.util.concurrent.TimeUnit)
+ */
+public class DeadlineExceededException extends SocketTimeoutException {
+
+    DeadlineExceededException() {
+        super("Operation did not complete before its deadline");
+    }
+}
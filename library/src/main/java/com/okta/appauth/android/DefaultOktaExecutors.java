@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.os.Process;
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * The default {@link OktaExecutors}. The user lane runs up to {@link #USER_THREADS} operations
+ * concurrently, so a slow authorized request does not hold up others; the session lane runs up
+ * to {@link #SESSION_THREADS} logins with a session token concurrently, and the background lane
+ * runs one task at a time at background priority.
+ * </p>
+ * <p>
+ * Threads are daemons and stop after being idle for {@link #IDLE_TIMEOUT_SECONDS}, so an
+ * instance which is no longer used does not keep any thread alive. {@link #shutdown()} stops
+ * the threads right away once their current tasks have completed; a lane which is used again
+ * afterwards starts new threads.
+ * </p>
+ */
+public final class DefaultOktaExecutors implements OktaExecutors {
+
+    @VisibleForTesting
+    static final int USER_THREADS = 2;
+    @VisibleForTesting
+    static final int SESSION_THREADS = 4;
+    @VisibleForTesting
+    static final int BACKGROUND_THREADS = 1;
+    @VisibleForTesting
+    static final long IDLE_TIMEOUT_SECONDS = 30;
+
+    private final Lane mUserLane = new Lane("user", "OktaUser", USER_THREADS,
+            Process.THREAD_PRIORITY_DEFAULT);
+    private final Lane mSessionLane = new Lane("session", "OktaSession", SESSION_THREADS,
+            Process.THREAD_PRIORITY_DEFAULT);
+    private final Lane mBackgroundLane = new Lane("background", "OktaBackground",
+            BACKGROUND_THREADS, Process.THREAD_PRIORITY_BACKGROUND);
+
+    @NonNull
+    @Override
+    public Executor getUserExecutor() {
+        return mUserLane;
+    }
+
+    @NonNull
+    @Override
+    public Executor getSessionExecutor() {
+        return mSessionLane;
+    }
+
+    @NonNull
+    @Override
+    public Executor getBackgroundExecutor() {
+        return mBackgroundLane;
+    }
+
+    @Override
+    public void shutdown() {
+        mUserLane.shutdown();
+        mSessionLane.shutdown();
+        mBackgroundLane.shutdown();
+    }
+
+    /**
+     * An executor backed by a thread pool which is created when needed. The time tasks wait
+     * for a thread is reported to the {@link OktaMetrics} if any are set.
+     */
+    @VisibleForTesting
+    static final class Lane implements Executor {
+
+        private final String mLane;
+        private final String mName;
+        private final int mThreads;
+        private final int mPriority;
+        private final AtomicInteger mThreadCount = new AtomicInteger();
+
+        // guarded by this
+        private ThreadPoolExecutor mPool;
+
+        private Lane(@NonNull String lane, @NonNull String name, int threads, int priority) {
+            mLane = lane;
+            mName = name;
+            mThreads = threads;
+            mPriority = priority;
+        }
+
+        @AnyThread
+        @Override
+        public void execute(@NonNull Runnable command) {
+            final OktaMetrics metrics = RequestTimer.getMetrics();
+            if (metrics != null) {
+                final Runnable task = command;
+                final long queued = System.nanoTime();
+                command = new Runnable() {
+                    @Override
+                    public void run() {
+                        metrics.onQueueWait(mLane, System.nanoTime() - queued);
+                        task.run();
+                    }
+                };
+            }
+
+            while (true) {
+                ThreadPoolExecutor pool = getPool();
+                try {
+                    pool.execute(command);
+                    return;
+                } catch (RejectedExecutionException ex) {
+                    // shut down concurrently; retry on a new pool unless it was not shut down
+                    if (!pool.isShutdown()) {
+                        throw ex;
+                    }
+                }
+            }
+        }
+
+        @AnyThread
+        synchronized void shutdown() {
+            if (mPool != null) {
+                mPool.shutdown();
+                mPool = null;
+            }
+        }
+
+        @AnyThread
+        @VisibleForTesting
+        synchronized int getPoolSize() {
+            return mPool == null ? 0 : mPool.getPoolSize();
+        }
+
+        @NonNull
+        private synchronized ThreadPoolExecutor getPool() {
+            if (mPool == null) {
+                mPool = new ThreadPoolExecutor(
+                        mThreads,
+                        mThreads,
+                        IDLE_TIMEOUT_SECONDS,
+                        TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new ThreadFactory() {
+                            @Override
+                            public Thread newThread(@NonNull final Runnable runnable) {
+                                Thread thread = new Thread(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        Process.setThreadPriority(mPriority);
+                                        runnable.run();
+                                    }
+                                }, mName + "-" + mThreadCount.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+                mPool.allowCoreThreadTimeOut(true);
+            }
+            return mPool;
+        }
+    }
+}
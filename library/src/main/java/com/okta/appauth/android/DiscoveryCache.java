@@ -0,0 +1,467 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+import android.text.TextUtils;
+import android.util.Log;
+
+import net.openid.appauth.AuthorizationException;
+import net.openid.appauth.AuthorizationServiceConfiguration;
+import net.openid.appauth.AuthorizationServiceDiscovery;
+import net.openid.appauth.connectivity.ConnectionBuilder;
+import okio.ByteString;
+import okio.Okio;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * A persistent HTTP cache for OpenID Connect discovery documents.
+ * </p>
+ * <p>
+ * A document is served from the cache for as long as it is fresh according to the
+ * {@code Cache-Control: max-age} or {@code Expires} headers it was received with. Once it has
+ * expired, it is revalidated with a conditional request using its {@code ETag} and
+ * {@code Last-Modified} validators, so an unchanged document is confirmed by a
+ * {@code 304 Not Modified} response without being downloaded again. A document received
+ * without these headers is revalidated on every use.
+ * </p>
+ * <p>
+ * Within the {@code stale-while-revalidate} window after expiring, if the response specified
+ * one, the cached document is returned immediately and revalidated in the background.
+ * Documents received with {@code no-store} are not cached.
+ * </p>
+ */
+public final class DiscoveryCache {
+
+    private static final String TAG = "DiscoveryCache";
+
+    @VisibleForTesting
+    static final String PREFS_NAME = "OktaDiscoveryCache";
+
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String HEADER_EXPIRES = "Expires";
+    private static final String HEADER_DATE = "Date";
+    private static final String HEADER_AGE = "Age";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+
+    private static final String DIRECTIVE_MAX_AGE = "max-age";
+    private static final String DIRECTIVE_NO_CACHE = "no-cache";
+    private static final String DIRECTIVE_NO_STORE = "no-store";
+    private static final String DIRECTIVE_MUST_REVALIDATE = "must-revalidate";
+    private static final String DIRECTIVE_STALE_WHILE_REVALIDATE = "stale-while-revalidate";
+
+    private final SharedPreferences mPrefs;
+    private final Set<String> mRevalidating =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Constructs a cache storing its documents in the application's preferences.
+     *
+     * @param context The Context from which to get the application's preferences
+     */
+    public DiscoveryCache(@NonNull Context context) {
+        this(context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE));
+    }
+
+    @VisibleForTesting
+    DiscoveryCache(@NonNull SharedPreferences prefs) {
+        mPrefs = prefs;
+    }
+
+    /**
+     * Returns the configuration described by the discovery document at the given URI, from
+     * the cache if possible.
+     *
+     * @param discoveryUri The URI of the discovery document
+     * @param connectionBuilder The builder for the connection, if a request is needed
+     * @param revalidationExecutor The executor on which a stale document is revalidated after
+     *     it has been returned
+     * @return The configuration
+     * @throws AuthorizationException If the document could neither be retrieved nor taken from
+     *     the cache
+     */
+    @WorkerThread
+    @NonNull
+    AuthorizationServiceConfiguration getConfiguration(
+            @NonNull Uri discoveryUri,
+            @NonNull ConnectionBuilder connectionBuilder,
+            @NonNull Executor revalidationExecutor) throws AuthorizationException {
+        return getConfiguration(discoveryUri, connectionBuilder, revalidationExecutor,
+                Deadline.NONE);
+    }
+
+    /**
+     * Returns the configuration described by the discovery document at the given URI, from
+     * the cache if possible, retrieving it by the given deadline otherwise.
+     *
+     * @param discoveryUri The URI of the discovery document
+     * @param connectionBuilder The builder for the connection, if a request is needed
+     * @param revalidationExecutor The executor on which a stale document is revalidated after
+     *     it has been returned
+     * @param deadline The deadline of the operation needing the configuration, which does not
+     *     apply to revalidations
+     * @return The configuration
+     * @throws AuthorizationException If the document could neither be retrieved nor taken from
+     *     the cache
+     */
+    @WorkerThread
+    @NonNull
+    AuthorizationServiceConfiguration getConfiguration(
+            @NonNull final Uri discoveryUri,
+            @NonNull final ConnectionBuilder connectionBuilder,
+            @NonNull Executor revalidationExecutor,
+            @NonNull Deadline deadline) throws AuthorizationException {
+        final Entry cached = read(discoveryUri);
+        long now = System.currentTimeMillis();
+        if (cached != null && now < cached.mExpiresAt) {
+            return parse(cached.mDocument);
+        }
+
+        if (cached != null && now < cached.mStaleUntil) {
+            if (mRevalidating.add(discoveryUri.toString())) {
+                revalidationExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            retrieve(discoveryUri, cached, connectionBuilder,
+                                    RateLimitGovernor.Priority.BACKGROUND, Deadline.NONE);
+                        } catch (IOException ex) {
+                            Log.w(TAG, "Failed to revalidate discovery document", ex);
+                        } finally {
+                            mRevalidating.remove(discoveryUri.toString());
+                        }
+                    }
+                });
+            }
+            return parse(cached.mDocument);
+        }
+
+        try {
+            return parse(retrieve(discoveryUri, cached, connectionBuilder,
+                    RateLimitGovernor.Priority.USER, deadline).mDocument);
+        } catch (IOException ex) {
+            Log.e(TAG, "Failed to retrieve discovery document", ex);
+            throw AuthorizationException.fromTemplate(
+                    AuthorizationException.GeneralErrors.NETWORK_ERROR, ex);
+        }
+    }
+
+    /**
+     * Removes all cached documents.
+     */
+    @AnyThread
+    public void clear() {
+        mPrefs.edit().clear().apply();
+    }
+
+    @WorkerThread
+    @NonNull
+    private Entry retrieve(@NonNull Uri discoveryUri, @Nullable Entry cached,
+                           @NonNull ConnectionBuilder connectionBuilder,
+                           @NonNull RateLimitGovernor.Priority priority,
+                           @NonNull Deadline deadline) throws IOException {
+        RateLimitGovernor governor = RateLimitGovernor.getInstance();
+        CircuitBreaker breaker = CircuitBreaker.getInstance();
+        RequestTimer timer = RequestTimer.start(OktaMetrics.Endpoint.DISCOVERY);
+        RequestRetrier retrier =
+                RequestRetrier.start(timer, RequestRetrier.Idempotency.IDEMPOTENT, deadline);
+        HttpURLConnection conn;
+        int responseCode;
+        while (true) {
+            governor.acquire(OktaMetrics.Endpoint.DISCOVERY, priority);
+            breaker.acquire(OktaMetrics.Endpoint.DISCOVERY);
+            conn = openConnection(discoveryUri, cached, connectionBuilder);
+            deadline.limitTimeouts(conn);
+            timer.startAttempt();
+            try {
+                conn.connect();
+                timer.connected(conn);
+                responseCode = conn.getResponseCode();
+                timer.responded(conn, responseCode);
+                governor.onResponse(OktaMetrics.Endpoint.DISCOVERY, conn, responseCode);
+                breaker.onResponse(OktaMetrics.Endpoint.DISCOVERY, responseCode);
+            } catch (IOException ex) {
+                conn.disconnect();
+                timer.failed(conn, ex);
+                breaker.onError(OktaMetrics.Endpoint.DISCOVERY, deadline.attribute(ex));
+                if (retrier.retryAfterError(ex)) {
+                    continue;
+                }
+                timer.finish(ex);
+                throw ex;
+            }
+            if (!retrier.retryAfterResponse(conn, responseCode)) {
+                break;
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        CacheControl cacheControl = CacheControl.parse(conn.getHeaderField(HEADER_CACHE_CONTROL));
+        if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+            HttpResponses.release(conn);
+            timer.finish(null);
+            Entry entry = new Entry(
+                    cached.mDocument,
+                    firstNonEmpty(conn.getHeaderField(HEADER_ETAG), cached.mETag),
+                    firstNonEmpty(conn.getHeaderField(HEADER_LAST_MODIFIED), cached.mLastModified),
+                    expiresAt(conn, cacheControl, now),
+                    cacheControl);
+            write(discoveryUri, entry, cacheControl);
+            return entry;
+        }
+
+        if (responseCode != HttpURLConnection.HTTP_OK) {
+            HttpResponses.release(conn);
+            timer.finish(null);
+            throw new IOException("Unexpected response code " + responseCode);
+        }
+
+        String document;
+        InputStream body = conn.getInputStream();
+        try {
+            ByteString bytes = Okio.buffer(Okio.source(body)).readByteString();
+            timer.setBytesReceived(bytes.size());
+            document = bytes.string(Charset.forName("UTF-8"));
+        } catch (IOException ex) {
+            timer.finish(ex);
+            throw ex;
+        } finally {
+            body.close();
+        }
+        timer.finish(null);
+
+        Entry entry = new Entry(
+                document,
+                conn.getHeaderField(HEADER_ETAG),
+                conn.getHeaderField(HEADER_LAST_MODIFIED),
+                expiresAt(conn, cacheControl, now),
+                cacheControl);
+        write(discoveryUri, entry, cacheControl);
+        return entry;
+    }
+
+    @WorkerThread
+    @NonNull
+    private static HttpURLConnection openConnection(
+            @NonNull Uri discoveryUri, @Nullable Entry cached,
+            @NonNull ConnectionBuilder connectionBuilder) throws IOException {
+        HttpURLConnection conn = connectionBuilder.openConnection(discoveryUri);
+        conn.setRequestMethod("GET");
+        conn.setDoInput(true);
+        conn.setUseCaches(false);
+        conn.setRequestProperty("Accept", "application/json");
+        if (cached != null && cached.mETag != null) {
+            conn.setRequestProperty("If-None-Match", cached.mETag);
+        }
+        if (cached != null && cached.mLastModified != null) {
+            conn.setRequestProperty("If-Modified-Since", cached.mLastModified);
+        }
+        return conn;
+    }
+
+    private static long expiresAt(@NonNull HttpURLConnection conn,
+                                  @NonNull CacheControl cacheControl, long now) {
+        if (cacheControl.mNoCache) {
+            return now;
+        }
+
+        long age = TimeUnit.SECONDS.toMillis(Math.max(0, conn.getHeaderFieldInt(HEADER_AGE, 0)));
+        if (cacheControl.mMaxAgeSeconds >= 0) {
+            return now + TimeUnit.SECONDS.toMillis(cacheControl.mMaxAgeSeconds) - age;
+        }
+        if (conn.getHeaderField(HEADER_EXPIRES) != null) {
+            // an invalid date, such as "0", means that the document has already expired
+            long expires = conn.getHeaderFieldDate(HEADER_EXPIRES, 0);
+            long date = conn.getHeaderFieldDate(HEADER_DATE, now);
+            return expires == 0 ? now : now + (expires - date) - age;
+        }
+        return now;
+    }
+
+    @Nullable
+    private static String firstNonEmpty(@Nullable String first, @Nullable String second) {
+        return TextUtils.isEmpty(first) ? second : first;
+    }
+
+    @NonNull
+    private static AuthorizationServiceConfiguration parse(@NonNull String document)
+            throws AuthorizationException {
+        try {
+            return new AuthorizationServiceConfiguration(
+                    new AuthorizationServiceDiscovery(new JSONObject(document)));
+        } catch (JSONException ex) {
+            throw AuthorizationException.fromTemplate(
+                    AuthorizationException.GeneralErrors.JSON_DESERIALIZATION_ERROR, ex);
+        } catch (AuthorizationServiceDiscovery.MissingArgumentException ex) {
+            throw AuthorizationException.fromTemplate(
+                    AuthorizationException.GeneralErrors.INVALID_DISCOVERY_DOCUMENT, ex);
+        }
+    }
+
+    @Nullable
+    private Entry read(@NonNull Uri discoveryUri) {
+        String record = mPrefs.getString(discoveryUri.toString(), null);
+        if (record == null) {
+            return null;
+        }
+
+        try {
+            return Entry.fromJson(new JSONObject(record));
+        } catch (JSONException ex) {
+            Log.w(TAG, "Discarding unreadable discovery cache entry", ex);
+            mPrefs.edit().remove(discoveryUri.toString()).apply();
+            return null;
+        }
+    }
+
+    private void write(@NonNull Uri discoveryUri, @NonNull Entry entry,
+                       @NonNull CacheControl cacheControl) {
+        if (cacheControl.mNoStore) {
+            mPrefs.edit().remove(discoveryUri.toString()).apply();
+            return;
+        }
+
+        try {
+            mPrefs.edit().putString(discoveryUri.toString(), entry.toJson().toString()).apply();
+        } catch (JSONException ex) {
+            Log.w(TAG, "Failed to cache discovery document", ex);
+        }
+    }
+
+    private static final class Entry {
+
+        private static final String KEY_DOCUMENT = "document";
+        private static final String KEY_ETAG = "etag";
+        private static final String KEY_LAST_MODIFIED = "lastModified";
+        private static final String KEY_EXPIRES_AT = "expiresAt";
+        private static final String KEY_STALE_UNTIL = "staleUntil";
+
+        private final String mDocument;
+        private final String mETag;
+        private final String mLastModified;
+        private final long mExpiresAt;
+        private final long mStaleUntil;
+
+        private Entry(@NonNull String document, @Nullable String eTag,
+                      @Nullable String lastModified, long expiresAt, long staleUntil) {
+            mDocument = document;
+            mETag = eTag;
+            mLastModified = lastModified;
+            mExpiresAt = expiresAt;
+            mStaleUntil = staleUntil;
+        }
+
+        private Entry(@NonNull String document, @Nullable String eTag,
+                      @Nullable String lastModified, long expiresAt,
+                      @NonNull CacheControl cacheControl) {
+            this(document, eTag, lastModified, expiresAt,
+                    expiresAt + cacheControl.getStaleWhileRevalidateMillis());
+        }
+
+        @NonNull
+        private JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put(KEY_DOCUMENT, mDocument);
+            json.putOpt(KEY_ETAG, mETag);
+            json.putOpt(KEY_LAST_MODIFIED, mLastModified);
+            json.put(KEY_EXPIRES_AT, mExpiresAt);
+            json.put(KEY_STALE_UNTIL, mStaleUntil);
+            return json;
+        }
+
+        @NonNull
+        private static Entry fromJson(@NonNull JSONObject json) throws JSONException {
+            return new Entry(
+                    json.getString(KEY_DOCUMENT),
+                    json.has(KEY_ETAG) ? json.getString(KEY_ETAG) : null,
+                    json.has(KEY_LAST_MODIFIED) ? json.getString(KEY_LAST_MODIFIED) : null,
+                    json.getLong(KEY_EXPIRES_AT),
+                    json.getLong(KEY_STALE_UNTIL));
+        }
+    }
+
+    @VisibleForTesting
+    static final class CacheControl {
+
+        long mMaxAgeSeconds = -1;
+        long mStaleWhileRevalidateSeconds = -1;
+        boolean mNoCache;
+        boolean mNoStore;
+        boolean mMustRevalidate;
+
+        @NonNull
+        static CacheControl parse(@Nullable String header) {
+            CacheControl cacheControl = new CacheControl();
+            if (header == null) {
+                return cacheControl;
+            }
+
+            for (String directive : header.split(",")) {
+                String[] parts = directive.trim().toLowerCase(Locale.US).split("=", 2);
+                String name = parts[0].trim();
+                long value = parts.length > 1 ? parseSeconds(parts[1]) : -1;
+                if (DIRECTIVE_MAX_AGE.equals(name)) {
+                    cacheControl.mMaxAgeSeconds = value;
+                } else if (DIRECTIVE_STALE_WHILE_REVALIDATE.equals(name)) {
+                    cacheControl.mStaleWhileRevalidateSeconds = value;
+                } else if (DIRECTIVE_NO_CACHE.equals(name)) {
+                    cacheControl.mNoCache = true;
+                } else if (DIRECTIVE_NO_STORE.equals(name)) {
+                    cacheControl.mNoStore = true;
+                } else if (DIRECTIVE_MUST_REVALIDATE.equals(name)) {
+                    cacheControl.mMustRevalidate = true;
+                }
+            }
+            return cacheControl;
+        }
+
+        long getStaleWhileRevalidateMillis() {
+            if (mNoCache || mMustRevalidate || mStaleWhileRevalidateSeconds < 0) {
+                return 0;
+            }
+            return TimeUnit.SECONDS.toMillis(mStaleWhileRevalidateSeconds);
+        }
+
+        private static long parseSeconds(@NonNull String value) {
+            try {
+                return Long.parseLong(value.trim().replace("\"", ""));
+            } catch (NumberFormatException ex) {
+                return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retries a request a limited number of times with exponentially growing, randomized delays.
+ * Each delay is drawn between the base delay and three times the previous delay, capped at the
+ * maximum delay ("decorrelated jitter"), which spreads the retries of clients that failed at
+ * the same time without synchronizing them again. The first delay is drawn as if the base
+ * delay had preceded it, so that even the first retries are spread.
+ */
+public class ExponentialBackoffRetryPolicy implements OktaRetryPolicy {
+
+    /**
+     * The number of retries of the default policy.
+     */
+    public static final int DEFAULT_MAX_RETRIES = 2;
+
+    /**
+     * The base delay of the default policy.
+     */
+    public static final long DEFAULT_BASE_DELAY_MS = 250;
+
+    /**
+     * The maximum delay of the default policy.
+     */
+    public static final long DEFAULT_MAX_DELAY_MS = TimeUnit.SECONDS.toMillis(2);
+
+    private static final int GROWTH = 3;
+
+    private final int mMaxRetries;
+    private final long mBaseDelayMs;
+    private final long mMaxDelayMs;
+    private final Random mRandom;
+
+    /**
+     * Creates the default policy.
+     */
+    public ExponentialBackoffRetryPolicy() {
+        this(DEFAULT_MAX_RETRIES, DEFAULT_BASE_DELAY_MS, DEFAULT_MAX_DELAY_MS);
+    }
+
+    /**
+     * Creates a policy.
+     *
+     * @param maxRetries The number of times to retry a request, 0 to never retry
+     * @param baseDelayMs The minimum delay before a retry
+     * @param maxDelayMs The maximum delay before a retry
+     */
+    public ExponentialBackoffRetryPolicy(int maxRetries, long baseDelayMs, long maxDelayMs) {
+        this(maxRetries, baseDelayMs, maxDelayMs, new Random());
+    }
+
+    @VisibleForTesting
+    ExponentialBackoffRetryPolicy(int maxRetries, long baseDelayMs, long maxDelayMs,
+                                  @NonNull Random random) {
+        if (maxRetries < 0 || baseDelayMs < 0 || maxDelayMs < baseDelayMs) {
+            throw new IllegalArgumentException("Invalid retries or delays");
+        }
+        mMaxRetries = maxRetries;
+        mBaseDelayMs = baseDelayMs;
+        mMaxDelayMs = maxDelayMs;
+        mRandom = random;
+    }
+
+    @AnyThread
+    @Override
+    public long getRetryDelayMs(@NonNull OktaMetrics.Endpoint endpoint, int retry,
+                                long previousDelayMs) {
+        if (retry > mMaxRetries) {
+            return NO_RETRY;
+        }
+        long previous = Math.max(mBaseDelayMs, previousDelayMs);
+        long upper = Math.min(mMaxDelayMs, previous * GROWTH);
+        long delay = mBaseDelayMs + (long) (mRandom.nextDouble() * (upper - mBaseDelayMs));
+        return Math.min(mMaxDelayMs, delay);
+    }
+}
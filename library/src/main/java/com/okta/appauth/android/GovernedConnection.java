@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.security.Permission;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A connection opened for AppAuth, which reports the first response it receives to the
+ * {@link RateLimitGovernor}. AppAuth does not expose the responses to the token requests it
+ * sends, so this is how their rate limits and {@code Retry-After} times are learnt. All other
+ * calls are passed to the wrapped connection.
+ */
+final class GovernedConnection extends HttpURLConnection {
+
+    private final HttpURLConnection mConnection;
+    private final OktaMetrics.Endpoint mEndpoint;
+    private final RateLimitGovernor mGovernor;
+    private boolean mResponded;
+
+    GovernedConnection(@NonNull HttpURLConnection connection,
+                       @NonNull OktaMetrics.Endpoint endpoint,
+                       @NonNull RateLimitGovernor governor) {
+        super(connection.getURL());
+        mConnection = connection;
+        mEndpoint = endpoint;
+        mGovernor = governor;
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+        int statusCode = mConnection.getResponseCode();
+        if (!mResponded && statusCode >= 0) {
+            mResponded = true;
+            mGovernor.onResponse(mEndpoint, mConnection, statusCode);
+        }
+        return statusCode;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        // the status has been received once the body can be read
+        getResponseCode();
+        return mConnection.getInputStream();
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return mConnection.getErrorStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return mConnection.getOutputStream();
+    }
+
+    @Override
+    public void connect() throws IOException {
+        mConnection.connect();
+    }
+
+    @Override
+    public void disconnect() {
+        mConnection.disconnect();
+    }
+
+    @Override
+    public boolean usingProxy() {
+        return mConnection.usingProxy();
+    }
+
+    @Override
+    public String getResponseMessage() throws IOException {
+        return mConnection.getResponseMessage();
+    }
+
+    @Override
+    public void setRequestMethod(String method) throws ProtocolException {
+        mConnection.setRequestMethod(method);
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return mConnection.getRequestMethod();
+    }
+
+    @Override
+    public void setRequestProperty(String key, String value) {
+        mConnection.setRequestProperty(key, value);
+    }
+
+    @Override
+    public void addRequestProperty(String key, String value) {
+        mConnection.addRequestProperty(key, value);
+    }
+
+    @Override
+    public String getRequestProperty(String key) {
+        return mConnection.getRequestProperty(key);
+    }
+
+    @Override
+    public Map<String, List<String>> getRequestProperties() {
+        return mConnection.getRequestProperties();
+    }
+
+    @Override
+    public String getHeaderField(String name) {
+        return mConnection.getHeaderField(name);
+    }
+
+    @Override
+    public String getHeaderField(int n) {
+        return mConnection.getHeaderField(n);
+    }
+
+    @Override
+    public String getHeaderFieldKey(int n) {
+        return mConnection.getHeaderFieldKey(n);
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaderFields() {
+        return mConnection.getHeaderFields();
+    }
+
+    @Override
+    public long getHeaderFieldDate(String name, long defaultValue) {
+        return mConnection.getHeaderFieldDate(name, defaultValue);
+    }
+
+    @Override
+    public int getHeaderFieldInt(String name, int defaultValue) {
+        return mConnection.getHeaderFieldInt(name, defaultValue);
+    }
+
+    @Override
+    public int getContentLength() {
+        return mConnection.getContentLength();
+    }
+
+    @Override
+    public String getContentType() {
+        return mConnection.getContentType();
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return mConnection.getContentEncoding();
+    }
+
+    @Override
+    public long getDate() {
+        return mConnection.getDate();
+    }
+
+    @Override
+    public void setDoInput(boolean doInput) {
+        mConnection.setDoInput(doInput);
+    }
+
+    @Override
+    public boolean getDoInput() {
+        return mConnection.getDoInput();
+    }
+
+    @Override
+    public void setDoOutput(boolean doOutput) {
+        mConnection.setDoOutput(doOutput);
+    }
+
+    @Override
+    public boolean getDoOutput() {
+        return mConnection.getDoOutput();
+    }
+
+    @Override
+    public void setUseCaches(boolean useCaches) {
+        mConnection.setUseCaches(useCaches);
+    }
+
+    @Override
+    public boolean getUseCaches() {
+        return mConnection.getUseCaches();
+    }
+
+    @Override
+    public void setConnectTimeout(int timeout) {
+        mConnection.setConnectTimeout(timeout);
+    }
+
+    @Override
+    public int getConnectTimeout() {
+        return mConnection.getConnectTimeout();
+    }
+
+    @Override
+    public void setReadTimeout(int timeout) {
+        mConnection.setReadTimeout(timeout);
+    }
+
+    @Override
+    public int getReadTimeout() {
+        return mConnection.getReadTimeout();
+    }
+
+    @Override
+    public void setInstanceFollowRedirects(boolean followRedirects) {
+        mConnection.setInstanceFollowRedirects(followRedirects);
+    }
+
+    @Override
+    public boolean getInstanceFollowRedirects() {
+        return mConnection.getInstanceFollowRedirects();
+    }
+
+    @Override
+    public void setFixedLengthStreamingMode(int contentLength) {
+        mConnection.setFixedLengthStreamingMode(contentLength);
+    }
+
+    @Override
+    public void setFixedLengthStreamingMode(long contentLength) {
+        mConnection.setFixedLengthStreamingMode(contentLength);
+    }
+
+    @Override
+    public void setChunkedStreamingMode(int chunkLength) {
+        mConnection.setChunkedStreamingMode(chunkLength);
+    }
+
+    @Override
+    public URL getURL() {
+        return mConnection.getURL();
+    }
+
+    @Override
+    public Permission getPermission() throws IOException {
+        return mConnection.getPermission();
+    }
+
+    @Override
+    public String toString() {
+        return mConnection.toString();
+    }
+}
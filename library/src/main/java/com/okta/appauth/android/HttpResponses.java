@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+
+/**
+ * Helpers for the responses of {@link HttpURLConnection}s.
+ */
+final class HttpResponses {
+
+    // a larger remaining body is cheaper to drop along with its connection than to read
+    private static final int MAX_DRAINED_BYTES = 64 * 1024;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private HttpResponses() {
+        // no instances
+    }
+
+    /**
+     * Reads and closes the remaining response body of a connection which is no longer needed,
+     * so that the underlying connection is kept alive and reused for the next request to the
+     * same host. The connection is disconnected instead if the body cannot be read.
+     *
+     * @param conn The connection whose response has been received
+     */
+    @WorkerThread
+    static void release(@NonNull HttpURLConnection conn) {
+        InputStream body = null;
+        try {
+            body = conn.getErrorStream();
+            if (body == null) {
+                body = conn.getInputStream();
+            }
+            if (!drain(body)) {
+                conn.disconnect();
+            }
+        } catch (IOException ex) {
+            conn.disconnect();
+        } finally {
+            if (body != null) {
+                try {
+                    body.close();
+                } catch (IOException ex) {
+                    conn.disconnect();
+                }
+            }
+        }
+    }
+
+    private static boolean drain(@NonNull InputStream body) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int total = 0;
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+            total += read;
+            if (total > MAX_DRAINED_BYTES) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
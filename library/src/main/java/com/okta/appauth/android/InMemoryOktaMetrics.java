@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * An {@link OktaMetrics} which aggregates the measurements in memory, e.g. to be included in
+ * diagnostics with {@link #dump()}. Recording only increments atomic counters, so it neither
+ * locks nor allocates.
+ * </p>
+ * <p>
+ * Durations are counted in histograms with power-of-two buckets of milliseconds, i.e. bucket
+ * {@code i} counts durations from {@code 2^(i-1)} up to {@code 2^i} ms, and the last bucket
+ * all longer ones. Percentiles are reported as the upper bound of the bucket they fall in.
+ * </p>
+ */
+public final class InMemoryOktaMetrics implements OktaMetrics {
+
+    @VisibleForTesting
+    static final int BUCKETS = 18;
+
+    private static final int STATUS_CLASSES = 6;
+    private static final int STATUS_CLASS_DIVISOR = 100;
+    // informational responses are never reported
+    private static final int FIRST_REPORTED_STATUS_CLASS = 2;
+    private static final double MEDIAN = 0.5;
+    private static final double P90 = 0.9;
+    private static final double P99 = 0.99;
+
+    private final EndpointStats[] mEndpoints;
+    private final ConcurrentMap<String, Histogram> mQueueWaits = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an empty aggregator.
+     */
+    public InMemoryOktaMetrics() {
+        Endpoint[] endpoints = Endpoint.values();
+        mEndpoints = new EndpointStats[endpoints.length];
+        for (int i = 0; i < endpoints.length; i++) {
+            mEndpoints[i] = new EndpointStats();
+        }
+    }
+
+    @Override
+    public void onRequestCompleted(@NonNull RequestMetrics request) {
+        EndpointStats stats = mEndpoints[request.getEndpoint().ordinal()];
+        stats.mLatency.record(request.getDurationNanos());
+        if (request.getConnectNanos() != RequestMetrics.UNKNOWN) {
+            stats.mConnect.record(request.getConnectNanos());
+        }
+        if (request.getTimeToFirstByteNanos() != RequestMetrics.UNKNOWN) {
+            stats.mTimeToFirstByte.record(request.getTimeToFirstByteNanos());
+        }
+        // class 0 counts requests without a known status
+        int statusCode = request.getStatusCode();
+        int statusClass = statusCode > 0
+                ? Math.min(STATUS_CLASSES - 1, statusCode / STATUS_CLASS_DIVISOR) : 0;
+        stats.mStatusClasses.incrementAndGet(statusClass);
+        if (!request.isSuccessful()) {
+            stats.mFailures.incrementAndGet();
+        }
+        if (request.getBytesSent() > 0) {
+            stats.mBytesSent.addAndGet(request.getBytesSent());
+        }
+        if (request.getBytesReceived() > 0) {
+            stats.mBytesReceived.addAndGet(request.getBytesReceived());
+        }
+        stats.mRetries.addAndGet(request.getRetries());
+    }
+
+    @Override
+    public void onQueueWait(@NonNull String lane, long waitNanos) {
+        Histogram histogram = mQueueWaits.get(lane);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = mQueueWaits.putIfAbsent(lane, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        histogram.record(waitNanos);
+    }
+
+    /**
+     * Returns the latency histogram of the given endpoint.
+     *
+     * @param endpoint The endpoint
+     * @return The histogram of the total durations of its requests
+     */
+    @NonNull
+    public Histogram getLatency(@NonNull Endpoint endpoint) {
+        return mEndpoints[endpoint.ordinal()].mLatency;
+    }
+
+    /**
+     * Returns the number of failed requests to the given endpoint, i.e. those which received
+     * no response or an error status.
+     *
+     * @param endpoint The endpoint
+     * @return The number of failures
+     */
+    public long getFailures(@NonNull Endpoint endpoint) {
+        return mEndpoints[endpoint.ordinal()].mFailures.get();
+    }
+
+    /**
+     * Returns the number of responses to the given endpoint within a class of status codes.
+     *
+     * @param endpoint The endpoint
+     * @param statusClass The first digit of the status codes, e.g. {@code 2} for 2xx, or
+     *     {@code 0} for requests without a known status
+     * @return The number of responses
+     */
+    public long getStatusCount(@NonNull Endpoint endpoint, int statusClass) {
+        return mEndpoints[endpoint.ordinal()].mStatusClasses.get(statusClass);
+    }
+
+    /**
+     * Returns the histogram of the times operations waited on the given executor lane.
+     *
+     * @param lane The name of the lane
+     * @return The histogram, which is empty if no operation ran on the lane
+     */
+    @NonNull
+    public Histogram getQueueWait(@NonNull String lane) {
+        Histogram histogram = mQueueWaits.get(lane);
+        return histogram == null ? new Histogram() : histogram;
+    }
+
+    /**
+     * Describes the aggregated measurements, one line per endpoint and lane with any
+     * measurements.
+     *
+     * @return The description
+     */
+    @NonNull
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        for (Endpoint endpoint : Endpoint.values()) {
+            EndpointStats stats = mEndpoints[endpoint.ordinal()];
+            if (stats.mLatency.getCount() == 0) {
+                continue;
+            }
+            out.append(String.format(Locale.US, "%s: requests=%d failures=%d retries=%d status=[",
+                    endpoint, stats.mLatency.getCount(), stats.mFailures.get(),
+                    stats.mRetries.get()));
+            out.append("none=").append(stats.mStatusClasses.get(0));
+            for (int i = FIRST_REPORTED_STATUS_CLASS; i < STATUS_CLASSES; i++) {
+                out.append(' ').append(i).append("xx=").append(stats.mStatusClasses.get(i));
+            }
+            out.append(String.format(Locale.US,
+                    "] sent=%dB received=%dB latency=%s connect=%s ttfb=%s%n",
+                    stats.mBytesSent.get(), stats.mBytesReceived.get(), stats.mLatency,
+                    stats.mConnect, stats.mTimeToFirstByte));
+        }
+        for (Map.Entry<String, Histogram> entry : mQueueWaits.entrySet()) {
+            out.append(String.format(Locale.US, "queue %s: tasks=%d wait=%s%n",
+                    entry.getKey(), entry.getValue().getCount(), entry.getValue()));
+        }
+        return out.toString();
+    }
+
+    private static final class EndpointStats {
+        private final Histogram mLatency = new Histogram();
+        private final Histogram mConnect = new Histogram();
+        private final Histogram mTimeToFirstByte = new Histogram();
+        private final AtomicLongArray mStatusClasses = new AtomicLongArray(STATUS_CLASSES);
+        private final AtomicLong mFailures = new AtomicLong();
+        private final AtomicLong mBytesSent = new AtomicLong();
+        private final AtomicLong mBytesReceived = new AtomicLong();
+        private final AtomicLong mRetries = new AtomicLong();
+    }
+
+    /**
+     * A lock-free histogram of durations.
+     */
+    public static final class Histogram {
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mTotalNanos = new AtomicLong();
+
+        Histogram() {
+        }
+
+        void record(long nanos) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(Math.max(0, nanos));
+            int bucket = millis == 0 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(millis);
+            mBuckets.incrementAndGet(Math.min(BUCKETS - 1, bucket));
+            mTotalNanos.addAndGet(nanos);
+            mCount.incrementAndGet();
+        }
+
+        /**
+         * Returns the number of recorded durations.
+         *
+         * @return the count
+         */
+        public long getCount() {
+            return mCount.get();
+        }
+
+        /**
+         * Returns the mean of the recorded durations.
+         *
+         * @return the mean in milliseconds, or 0 if none was recorded
+         */
+        public double getMeanMillis() {
+            long count = mCount.get();
+            return count == 0 ? 0
+                    : (double) mTotalNanos.get() / count / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        /**
+         * Returns an upper bound of the given percentile of the recorded durations.
+         *
+         * @param percentile The percentile, between 0 and 1
+         * @return the upper bound of the bucket holding the percentile in milliseconds,
+         *     {@link Long#MAX_VALUE} if it is in the last bucket, or 0 if none was recorded
+         */
+        public long getPercentileMillis(double percentile) {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += mBuckets.get(i);
+            }
+            long rank = (long) Math.ceil(percentile * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS && count > 0; i++) {
+                seen += mBuckets.get(i);
+                if (seen >= rank) {
+                    return i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << i;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "[mean=%.1fms p50<=%dms p90<=%dms p99<=%dms]",
+                    getMeanMillis(), getPercentileMillis(MEDIAN), getPercentileMillis(P90),
+                    getPercentileMillis(P99));
+        }
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * Stores the records of an {@link AuthStateManager} in an append-only journal held in a
+ * memory-mapped file. Every write appends one entry with the new value of a single record,
+ * so an update costs the size of the changed record rather than a rewrite of the whole file.
+ * </p>
+ * <p>
+ * Each entry is prefixed with its length and a CRC32 checksum. When the journal is opened, it
+ * is replayed up to the first entry which is incomplete or does not match its checksum, and
+ * anything after it is discarded, so a write torn by a crash or power loss rolls the store
+ * back to the last complete entry. Once the journal grows well beyond the size of the live
+ * records it is compacted into a new file which atomically replaces the old one.
+ * </p>
+ * <p>
+ * The journal is opened on first access, which should not happen on the main thread.
+ * </p>
+ */
+public final class JournalAuthStateStore implements AuthStateStore {
+
+    private static final String TAG = "JournalAuthStateStore";
+
+    @VisibleForTesting
+    static final String FILE_NAME = "OktaAppAuthState.journal";
+    private static final String COMPACTION_SUFFIX = ".tmp";
+
+    private static final int MAGIC = 0x4F4B4A4C;
+    private static final int VERSION = 1;
+    // magic and version
+    private static final int HEADER_SIZE = 8;
+    private static final int VERSION_OFFSET = 4;
+    // length and checksum
+    private static final int ENTRY_HEADER_SIZE = 8;
+    private static final int CHECKSUM_OFFSET = 4;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+    private static final int MIN_COMPACTION_SIZE = 64 * 1024;
+    private static final int COMPACTION_RATIO = 4;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File mFile;
+
+    // all guarded by this
+    private final Map<String, String> mRecords = new HashMap<>();
+    private final Map<String, Integer> mEntrySizes = new HashMap<>();
+    private FileChannel mChannel;
+    private MappedByteBuffer mBuffer;
+    private int mEnd;
+
+    /**
+     * Creates a store which keeps its journal in the application's private files directory.
+     *
+     * @param context The Context from which to get the application's environment
+     */
+    public JournalAuthStateStore(@NonNull Context context) {
+        this(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    /**
+     * Creates a store which keeps its journal in the given file.
+     *
+     * @param file The journal file, which is created if it does not exist
+     */
+    public JournalAuthStateStore(@NonNull File file) {
+        mFile = file;
+    }
+
+    @WorkerThread
+    @Nullable
+    @Override
+    public synchronized String read(@NonNull String key) {
+        try {
+            open();
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to read state from journal", ex);
+        }
+        return mRecords.get(key);
+    }
+
+    @WorkerThread
+    @Override
+    public synchronized void write(@NonNull String key, @Nullable String value) {
+        try {
+            open();
+            if (value == null ? !mRecords.containsKey(key) : value.equals(mRecords.get(key))) {
+                return;
+            }
+
+            byte[] entry = encodeEntry(key, value);
+            if (mEnd + entry.length > mBuffer.capacity() || needsCompaction(entry.length)) {
+                Map<String, String> records = new HashMap<>(mRecords);
+                apply(records, null, key, value, 0);
+                compact(records);
+            } else {
+                append(entry);
+                apply(mRecords, mEntrySizes, key, value, entry.length);
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to write state to journal", ex);
+        }
+    }
+
+    private void open() throws IOException {
+        if (mBuffer != null) {
+            return;
+        }
+
+        mChannel = new RandomAccessFile(mFile, "rw").getChannel();
+        try {
+            long size = mChannel.size();
+            if (size < INITIAL_CAPACITY || size > Integer.MAX_VALUE) {
+                size = INITIAL_CAPACITY;
+            }
+            mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException ex) {
+            mChannel.close();
+            throw ex;
+        }
+
+        if (mBuffer.getInt(0) != MAGIC || mBuffer.getInt(VERSION_OFFSET) != VERSION) {
+            if (!isZero(0)) {
+                Log.w(TAG, "Unrecognized journal - discarding");
+            }
+            clear(0);
+            mBuffer.putInt(0, MAGIC);
+            mBuffer.putInt(VERSION_OFFSET, VERSION);
+            mBuffer.force();
+        }
+
+        replay();
+    }
+
+    private void replay() {
+        int offset = HEADER_SIZE;
+        while (offset + ENTRY_HEADER_SIZE <= mBuffer.capacity()) {
+            int length = mBuffer.getInt(offset);
+            if (length <= 0 || length > mBuffer.capacity() - offset - ENTRY_HEADER_SIZE) {
+                break;
+            }
+
+            // the casts avoid the covariant overrides added in Java 9, which older runtimes lack
+            ByteBuffer entry = ((ByteBuffer) mBuffer).duplicate();
+            ((Buffer) entry).position(offset + ENTRY_HEADER_SIZE);
+            ((Buffer) entry).limit(offset + ENTRY_HEADER_SIZE + length);
+            byte[] payload = new byte[length];
+            entry.get(payload);
+            if (checksum(payload) != mBuffer.getInt(offset + CHECKSUM_OFFSET)
+                    || !replayEntry(payload, ENTRY_HEADER_SIZE + length)) {
+                break;
+            }
+            offset += ENTRY_HEADER_SIZE + length;
+        }
+        mEnd = offset;
+
+        // a torn or corrupt tail must not be mistaken for part of an entry appended later
+        if (!isZero(mEnd)) {
+            Log.w(TAG, "Discarding incomplete journal entries");
+            clear(mEnd);
+            mBuffer.force();
+        }
+    }
+
+    private boolean replayEntry(byte[] payload, int size) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            byte op = buffer.get();
+            String key = readString(buffer);
+            if (op == OP_PUT) {
+                apply(mRecords, mEntrySizes, key, readString(buffer), size);
+            } else if (op == OP_REMOVE) {
+                apply(mRecords, mEntrySizes, key, null, size);
+            } else {
+                return false;
+            }
+            return !buffer.hasRemaining();
+        } catch (BufferUnderflowException | NegativeArraySizeException ex) {
+            return false;
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void apply(
+            Map<String, String> records,
+            @Nullable Map<String, Integer> entrySizes,
+            String key,
+            @Nullable String value,
+            int size) {
+        if (value == null) {
+            records.remove(key);
+            if (entrySizes != null) {
+                entrySizes.remove(key);
+            }
+        } else {
+            records.put(key, value);
+            if (entrySizes != null) {
+                entrySizes.put(key, size);
+            }
+        }
+    }
+
+    private boolean needsCompaction(int entrySize) {
+        if (mEnd + entrySize < MIN_COMPACTION_SIZE) {
+            return false;
+        }
+        int liveSize = HEADER_SIZE + entrySize;
+        for (int size : mEntrySizes.values()) {
+            liveSize += size;
+        }
+        return mEnd + entrySize > liveSize * COMPACTION_RATIO;
+    }
+
+    private void append(byte[] entry) {
+        ByteBuffer buffer = ((ByteBuffer) mBuffer).duplicate();
+        ((Buffer) buffer).position(mEnd + CHECKSUM_OFFSET);
+        buffer.put(entry, CHECKSUM_OFFSET, entry.length - CHECKSUM_OFFSET);
+        // the length goes in last so the entry is only recognized once it is complete
+        buffer.putInt(mEnd, entry.length - ENTRY_HEADER_SIZE);
+        mBuffer.force();
+        mEnd += entry.length;
+    }
+
+    private void compact(Map<String, String> records) throws IOException {
+        Map<String, Integer> entrySizes = new HashMap<>();
+        ByteBuffer journal = ByteBuffer.allocate(journalSize(records));
+        journal.putInt(MAGIC);
+        journal.putInt(VERSION);
+        for (Map.Entry<String, String> record : records.entrySet()) {
+            byte[] entry = encodeEntry(record.getKey(), record.getValue());
+            journal.put(entry);
+            entrySizes.put(record.getKey(), entry.length);
+        }
+        int end = journal.position();
+        ((Buffer) journal).flip();
+
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < end * 2) {
+            capacity *= 2;
+        }
+
+        File compacted = new File(mFile.getPath() + COMPACTION_SUFFIX);
+        RandomAccessFile file = new RandomAccessFile(compacted, "rw");
+        try {
+            file.setLength(0);
+            file.setLength(capacity);
+            FileChannel channel = file.getChannel();
+            while (journal.hasRemaining()) {
+                channel.write(journal);
+            }
+            channel.force(true);
+        } finally {
+            file.close();
+        }
+
+        if (!compacted.renameTo(mFile)) {
+            throw new IOException("Failed to replace journal " + mFile);
+        }
+
+        // the previous mapping is released once it is garbage collected
+        mChannel.close();
+        mChannel = new RandomAccessFile(mFile, "rw").getChannel();
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        mEnd = end;
+        mRecords.clear();
+        mRecords.putAll(records);
+        mEntrySizes.clear();
+        mEntrySizes.putAll(entrySizes);
+    }
+
+    private static int journalSize(Map<String, String> records) {
+        int size = HEADER_SIZE;
+        for (Map.Entry<String, String> record : records.entrySet()) {
+            size += encodeEntry(record.getKey(), record.getValue()).length;
+        }
+        return size;
+    }
+
+    private static byte[] encodeEntry(@NonNull String key, @Nullable String value) {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        byte[] valueBytes = value == null ? null : value.getBytes(UTF_8);
+        int length = 1 + Integer.SIZE / Byte.SIZE + keyBytes.length;
+        if (valueBytes != null) {
+            length += Integer.SIZE / Byte.SIZE + valueBytes.length;
+        }
+
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER_SIZE + length);
+        entry.putInt(length);
+        entry.putInt(0);
+        entry.put(valueBytes == null ? OP_REMOVE : OP_PUT);
+        entry.putInt(keyBytes.length);
+        entry.put(keyBytes);
+        if (valueBytes != null) {
+            entry.putInt(valueBytes.length);
+            entry.put(valueBytes);
+        }
+
+        byte[] bytes = entry.array();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, ENTRY_HEADER_SIZE, length);
+        entry.putInt(CHECKSUM_OFFSET, (int) crc.getValue());
+        return bytes;
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    private boolean isZero(int from) {
+        for (int i = from; i < mBuffer.capacity(); i++) {
+            if (mBuffer.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void clear(int from) {
+        for (int i = from; i < mBuffer.capacity(); i++) {
+            mBuffer.put(i, (byte) 0);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Stores records as JSON text, the format used before {@link BinaryAuthStateSerializer} was
+ * introduced. The state is still split into a token record and a configuration record, which
+ * versions that stored the whole state as one record cannot read, so using this serializer
+ * does not keep the stored state readable by those versions.
+ */
+public final class JsonAuthStateSerializer implements AuthStateSerializer {
+
+    @NonNull
+    @Override
+    public String serialize(@NonNull JSONObject record) {
+        return record.toString();
+    }
+
+    @NonNull
+    @Override
+    public JSONObject deserialize(@NonNull String record) throws JSONException {
+        return new JSONObject(record);
+    }
+}
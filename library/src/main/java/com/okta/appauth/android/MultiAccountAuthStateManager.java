@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+import android.text.TextUtils;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * Keeps an {@link AuthStateManager} per account, so that several users can stay signed in on
+ * one device. Each account's state is stored independently and guarded by its own lock, so
+ * operations on one account never wait for another.
+ * </p>
+ * <p>
+ * The deserialized states of the most recently used accounts are kept in memory, so switching
+ * between them does not read storage. The states of less recently used accounts are released
+ * and read again when the account is next used. The {@code null} account is the single
+ * account managed by {@link AuthStateManager#getInstance(Context)}. The active account is
+ * stored, so it is restored when the process is restarted.
+ * </p>
+ *
+ * @see OktaAppAuth#switchAccount(String)
+ */
+public final class MultiAccountAuthStateManager {
+
+    private static final AtomicReference<WeakReference<MultiAccountAuthStateManager>>
+            INSTANCE_REF = new AtomicReference<>(
+                    new WeakReference<MultiAccountAuthStateManager>(null));
+
+    private static final int DEFAULT_MAX_LOADED_ACCOUNTS = 8;
+
+    @VisibleForTesting
+    static final String PREFS_NAME = "OktaAppAuthAccounts";
+    @VisibleForTesting
+    static final String KEY_ACTIVE_ACCOUNT = "activeAccount";
+
+    private final Context mContext;
+    private final SharedPreferences mPrefs;
+
+    // all guarded by this
+    private final Map<String, AuthStateManager> mManagers = new HashMap<>();
+    private final LinkedHashMap<String, AuthStateManager> mLoaded =
+            new LinkedHashMap<>(DEFAULT_MAX_LOADED_ACCOUNTS, 1f, true);
+    private int mMaxLoadedAccounts = DEFAULT_MAX_LOADED_ACCOUNTS;
+    private String mActiveAccountId;
+
+    /**
+     * Retrieve the manager object via the static {@link WeakReference} or construct a new instance.
+     *
+     * @param context The Context from which to get the application's environment
+     * @return a MultiAccountAuthStateManager object
+     */
+    @AnyThread
+    public static MultiAccountAuthStateManager getInstance(@NonNull Context context) {
+        MultiAccountAuthStateManager manager = INSTANCE_REF.get().get();
+        if (manager == null) {
+            manager = new MultiAccountAuthStateManager(context.getApplicationContext());
+            INSTANCE_REF.set(new WeakReference<>(manager));
+        }
+
+        return manager;
+    }
+
+    MultiAccountAuthStateManager(@NonNull Context context) {
+        mContext = context;
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mActiveAccountId = mPrefs.getString(KEY_ACTIVE_ACCOUNT, null);
+    }
+
+    /**
+     * Returns the manager of an account. Repeated calls for the same account return the same
+     * manager, and mark the account as recently used.
+     *
+     * @param accountId The identifier of the account, or {@code null} for the default account
+     * @return the AuthStateManager of the account
+     */
+    @AnyThread
+    @NonNull
+    public AuthStateManager getAccount(@Nullable String accountId) {
+        if (accountId == null) {
+            return AuthStateManager.getInstance(mContext);
+        }
+
+        synchronized (this) {
+            AuthStateManager manager = getManager(accountId);
+            mLoaded.put(accountId, manager);
+            trimLoaded();
+            return manager;
+        }
+    }
+
+    /**
+     * Makes an account the one used by {@link OktaAppAuth} and the authorization flow. The
+     * choice is stored and restored by the next instance of this manager.
+     *
+     * @param accountId The identifier of the account, or {@code null} for the default account
+     * @return the AuthStateManager of the account
+     */
+    @AnyThread
+    @NonNull
+    public synchronized AuthStateManager setActiveAccount(@Nullable String accountId) {
+        if (!TextUtils.equals(accountId, mActiveAccountId)) {
+            SharedPreferences.Editor editor = mPrefs.edit();
+            if (accountId == null) {
+                editor.remove(KEY_ACTIVE_ACCOUNT);
+            } else {
+                editor.putString(KEY_ACTIVE_ACCOUNT, accountId);
+            }
+            editor.apply();
+        }
+        mActiveAccountId = accountId;
+        return getAccount(accountId);
+    }
+
+    /**
+     * Returns the identifier of the account used by {@link OktaAppAuth}.
+     *
+     * @return the identifier of the active account, or {@code null} for the default account
+     */
+    @AnyThread
+    @Nullable
+    public synchronized String getActiveAccountId() {
+        return mActiveAccountId;
+    }
+
+    /**
+     * Returns the manager of the account used by {@link OktaAppAuth}.
+     *
+     * @return the AuthStateManager of the active account
+     */
+    @AnyThread
+    @NonNull
+    public synchronized AuthStateManager getActiveAccount() {
+        return getAccount(mActiveAccountId);
+    }
+
+    /**
+     * Signs an account out locally by removing its stored state. The tokens are not revoked;
+     * use {@link OktaAppAuth#revoke(OktaAppAuth.OktaRevokeListener)} for that while the account
+     * is active.
+     *
+     * @param accountId The identifier of the account
+     */
+    @WorkerThread
+    public void removeAccount(@NonNull String accountId) {
+        AuthStateManager manager;
+        synchronized (this) {
+            manager = getManager(accountId);
+            mLoaded.remove(accountId);
+        }
+        manager.flush();
+        manager.writeState(null);
+        manager.releaseCurrent();
+    }
+
+    /**
+     * Sets how many accounts keep their state deserialized in memory.
+     *
+     * @param maxLoadedAccounts The number of most recently used accounts to keep loaded
+     */
+    @AnyThread
+    public synchronized void setMaxLoadedAccounts(int maxLoadedAccounts) {
+        if (maxLoadedAccounts < 1) {
+            throw new IllegalArgumentException("At least one account must stay loaded");
+        }
+        mMaxLoadedAccounts = maxLoadedAccounts;
+        trimLoaded();
+    }
+
+    @NonNull
+    private AuthStateManager getManager(@NonNull String accountId) {
+        AuthStateManager manager = mManagers.get(accountId);
+        if (manager == null) {
+            manager = new AuthStateManager(
+                    new SharedPreferencesAuthStateStore(mContext, accountId),
+                    new ReentrantLock(),
+                    false);
+            mManagers.put(accountId, manager);
+        }
+        return manager;
+    }
+
+    private void trimLoaded() {
+        Iterator<AuthStateManager> iterator = mLoaded.values().iterator();
+        while (mLoaded.size() > mMaxLoadedAccounts) {
+            AuthStateManager eldest = iterator.next();
+            iterator.remove();
+            eldest.releaseCurrent();
+        }
+    }
+}
@@ -37,7 +37,9 @@ import org.json.JSONObject;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
@@ -72,6 +74,17 @@ public class OAuthClientConfiguration {
     @VisibleForTesting
     static final String OIDC_DISCOVERY = ".well-known/openid-configuration";
 
+    @VisibleForTesting
+    static final String PRECOMPILED_CONFIGURATION_CLASS =
+            "com.okta.appauth.android.generated.OktaAppAuthConfig";
+
+    private static final String REDIRECT_URIS_NOT_HANDLED =
+            "redirect_uri and end_session_redirect_uri is not handled by any activity "
+                    + "in this app! "
+                    + "Ensure that the appAuthRedirectScheme in your build.gradle file "
+                    + "is correctly configured, or that an appropriate intent filter "
+                    + "exists in your app manifest.";
+
     private final SharedPreferences mPrefs;
 
     private final PackageManager mPackageManager;
@@ -80,6 +93,20 @@ public class OAuthClientConfiguration {
     private int mConfigHash;
     private String mConfigurationError;
 
+    // null until computed from the preferences; reset whenever the accepted hash may differ
+    private volatile Boolean mConfigurationChanged;
+
+    // SharedPreferences only keeps a weak reference to its listeners
+    private final SharedPreferences.OnSharedPreferenceChangeListener mPrefsListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                    if (KEY_LAST_HASH.equals(key)) {
+                        invalidateConfigurationChanged();
+                    }
+                }
+            };
+
     private String mClientId;
     private Uri mRedirectUri;
     private Uri mEndSessionRedirectUri;
@@ -95,6 +122,10 @@ public class OAuthClientConfiguration {
      * NOTE: The OAuthClientConfiguration may have an error after constructing. Call
      * {@link #isValid()} to ensure its validity.
      * </p>
+     * <p>
+     * If the app was built with gradle/okta-config.gradle, the configuration which was
+     * validated at build time is used, and the resource is neither read nor parsed.
+     * </p>
      *
      * @param context The Context from which to get the application's resources
      * @return an OAuthClientConfiguration object
@@ -103,16 +134,42 @@ public class OAuthClientConfiguration {
     public static OAuthClientConfiguration getInstance(final Context context) {
         OAuthClientConfiguration config = INSTANCE_REF.get().get();
         if (config == null) {
-            config = new OAuthClientConfiguration(
-                    context.getApplicationContext(),
-                    context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE),
-                    context.getResources().openRawResource(R.raw.okta_app_auth_config)
-            );
+            PrecompiledConfiguration precompiled =
+                    loadPrecompiledConfiguration(PRECOMPILED_CONFIGURATION_CLASS);
+            if (precompiled != null) {
+                config = new OAuthClientConfiguration(
+                        context.getApplicationContext(),
+                        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE),
+                        precompiled
+                );
+            } else {
+                config = new OAuthClientConfiguration(
+                        context.getApplicationContext(),
+                        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE),
+                        context.getResources().openRawResource(R.raw.okta_app_auth_config)
+                );
+            }
         }
 
         return config;
     }
 
+    @VisibleForTesting
+    @Nullable
+    static PrecompiledConfiguration loadPrecompiledConfiguration(@NonNull String className) {
+        try {
+            return (PrecompiledConfiguration) Class.forName(className)
+                    .getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException ex) {
+            Log.d(TAG, "No precompiled configuration, reading the configuration resource");
+            return null;
+        } catch (NoSuchMethodException | InstantiationException | IllegalAccessException
+                | InvocationTargetException | ClassCastException ex) {
+            Log.w(TAG, "Ignoring unusable precompiled configuration " + className, ex);
+            return null;
+        }
+    }
+
     @VisibleForTesting
     OAuthClientConfiguration(
             final Context context,
@@ -129,18 +186,64 @@ public class OAuthClientConfiguration {
             mConfigurationError = ex.getMessage();
         }
 
+        mPrefs.registerOnSharedPreferenceChangeListener(mPrefsListener);
+        INSTANCE_REF.set(new WeakReference<>(this));
+    }
+
+    @VisibleForTesting
+    OAuthClientConfiguration(
+            final Context context,
+            final SharedPreferences prefs,
+            final PrecompiledConfiguration configuration) {
+        mPrefs = prefs;
+        mPackageManager = context.getPackageManager();
+        mPackageName = context.getPackageName();
+
+        // the values were validated when the app was built
+        mClientId = configuration.getClientId();
+        mRedirectUri = Uri.parse(configuration.getRedirectUri());
+        mEndSessionRedirectUri = Uri.parse(configuration.getEndSessionRedirectUri());
+        mDiscoveryUri = Uri.parse(configuration.getIssuerUri())
+                .buildUpon().appendEncodedPath(OIDC_DISCOVERY).build();
+        mScopes = new LinkedHashSet<>(Arrays.asList(configuration.getScopes()));
+        mConfigHash = configuration.getConfigHash();
+
+        if (!isRedirectUrisRegistered()) {
+            mConfigurationError = REDIRECT_URIS_NOT_HANDLED;
+        }
+
+        mPrefs.registerOnSharedPreferenceChangeListener(mPrefsListener);
         INSTANCE_REF.set(new WeakReference<>(this));
     }
 
     /**
-     * Indicates whether the configuration has changed from the last known valid state.
+     * Indicates whether the configuration has changed from the last known valid state. The
+     * result is kept in memory until the configuration is accepted or the accepted
+     * configuration is changed in the preferences, so repeated calls do not read the
+     * preferences.
      *
      * @return {@code true} if the configuration has changed since the last valid state;
      *     {@code false} otherwise
      */
+    @AnyThread
     public boolean hasConfigurationChanged() {
-        Integer lastKnownConfigHash = getLastKnownConfigHash();
-        return lastKnownConfigHash == null || mConfigHash != lastKnownConfigHash;
+        Boolean changed = mConfigurationChanged;
+        if (changed != null) {
+            return changed;
+        }
+
+        synchronized (this) {
+            if (mConfigurationChanged == null) {
+                Integer lastKnownConfigHash = getLastKnownConfigHash();
+                mConfigurationChanged =
+                        lastKnownConfigHash == null || mConfigHash != lastKnownConfigHash;
+            }
+            return mConfigurationChanged;
+        }
+    }
+
+    private synchronized void invalidateConfigurationChanged() {
+        mConfigurationChanged = null;
     }
 
     private Integer getLastKnownConfigHash() {
@@ -152,8 +255,10 @@ public class OAuthClientConfiguration {
      * Indicates that the current configuration should be accepted as the "last known valid"
      * configuration.
      */
-    public void acceptConfiguration() {
+    @AnyThread
+    public synchronized void acceptConfiguration() {
         mPrefs.edit().putString(KEY_LAST_HASH, String.valueOf(mConfigHash)).apply();
+        mConfigurationChanged = false;
     }
 
     /**
@@ -202,12 +307,7 @@ public class OAuthClientConfiguration {
                 .buildUpon().appendEncodedPath(OIDC_DISCOVERY).build();
 
         if (!isRedirectUrisRegistered()) {
-            throw new InvalidJsonDocumentException(
-                    "redirect_uri and end_session_redirect_uri is not handled by any activity "
-                            + "in this app! "
-                            + "Ensure that the appAuthRedirectScheme in your build.gradle file "
-                            + "is correctly configured, or that an appropriate intent filter "
-                            + "exists in your app manifest.");
+            throw new InvalidJsonDocumentException(REDIRECT_URIS_NOT_HANDLED);
         }
 
 
@@ -216,6 +316,7 @@ public class OAuthClientConfiguration {
         //We can not take hash code directly from JSONObject
         //because JSONObject does not follow java has code contract
         mConfigHash = jsonObject.toString().hashCode();
+        invalidateConfigurationChanged();
 
         Log.d(TAG, String.format("Configuration loaded with: \n%s", this.toString()));
     }
@@ -26,6 +26,7 @@ import android.support.annotation.ColorInt;
 import android.support.annotation.MainThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 import android.support.annotation.WorkerThread;
 import android.support.customtabs.CustomTabsIntent;
 import android.text.Editable;
@@ -35,17 +36,13 @@ import android.util.Log;
 
 import net.openid.appauth.AppAuthConfiguration;
 import net.openid.appauth.AuthState;
-import net.openid.appauth.AuthState.AuthStateAction;
 import net.openid.appauth.AuthorizationException;
 import net.openid.appauth.AuthorizationRequest;
 import net.openid.appauth.AuthorizationService;
 import net.openid.appauth.AuthorizationServiceConfiguration;
 import net.openid.appauth.AuthorizationServiceDiscovery;
-import net.openid.appauth.ClientAuthentication;
-import net.openid.appauth.ClientAuthentication.UnsupportedAuthenticationMethod;
 import net.openid.appauth.EndSessionRequest;
 import net.openid.appauth.ResponseTypeValues;
-import net.openid.appauth.TokenResponse;
 import net.openid.appauth.connectivity.ConnectionBuilder;
 
 import okio.Okio;
@@ -58,8 +55,9 @@ import java.io.InputStream;
 import java.lang.ref.WeakReference;
 import java.net.HttpURLConnection;
 import java.nio.charset.Charset;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -78,8 +76,18 @@ public class OktaAppAuth {
             new AtomicReference<>(new WeakReference<OktaAppAuth>(null));
 
     protected AtomicReference<AuthorizationService> mAuthService = new AtomicReference<>();
-    protected final AuthStateManager mAuthStateManager;
+    protected final MultiAccountAuthStateManager mAccounts;
+    protected volatile AuthStateManager mAuthStateManager;
     protected final OAuthClientConfiguration mConfiguration;
+    protected final TokenEventBus mTokenEvents = new TokenEventBus();
+    protected final TokenRefreshCoordinator mRefreshCoordinator = new TokenRefreshCoordinator();
+    protected final TokenRefreshScheduler mRefreshScheduler = new TokenRefreshScheduler(
+            new TokenRefreshScheduler.Refresher() {
+                @Override
+                public void refresh(@NonNull AuthStateManager manager) {
+                    refreshProactively(manager);
+                }
+            });
 
     protected final AtomicReference<OktaAuthListener> mInitializationListener =
             new AtomicReference<>();
@@ -87,7 +95,12 @@ public class OktaAppAuth {
     protected final AtomicReference<AuthorizationRequest> mAuthRequest = new AtomicReference<>();
     protected final AtomicReference<CustomTabsIntent> mAuthIntent = new AtomicReference<>();
 
-    protected ExecutorService mExecutor;
+    protected OktaExecutors mExecutors;
+    protected Executor mExecutor;
+    protected Executor mSessionExecutor;
+    protected Executor mBackgroundExecutor;
+
+    protected final DiscoveryCache mDiscoveryCache;
 
     @ColorInt
     protected int mCustomTabColor;
@@ -123,9 +136,206 @@ public class OktaAppAuth {
     @AnyThread
     protected OktaAppAuth(Context context) {
         mContext = new WeakReference<>(context);
-        mExecutor = Executors.newSingleThreadExecutor();
-        mAuthStateManager = AuthStateManager.getInstance(context.getApplicationContext());
+        setExecutors(new DefaultOktaExecutors());
+        mAccounts = MultiAccountAuthStateManager.getInstance(context);
+        mAuthStateManager = mAccounts.getActiveAccount();
         mConfiguration = OAuthClientConfiguration.getInstance(context);
+        mDiscoveryCache = new DiscoveryCache(context);
+        mTokenEvents.attach(mAuthStateManager);
+        mRefreshScheduler.attach(mAuthStateManager);
+    }
+
+    /**
+     * Switches the account which subsequent operations act on. A recently used account's state
+     * is still in memory, so switching to it neither reads storage nor requires the user to
+     * sign in again. A new account starts out with the service configuration of the current
+     * one, so {@link #login(Context, PendingIntent, PendingIntent)} can be called right away to
+     * sign it in.
+     *
+     * @param accountId The identifier of the account, or {@code null} for the default account
+     * @see MultiAccountAuthStateManager
+     */
+    @AnyThread
+    public void switchAccount(@Nullable String accountId) {
+        AuthorizationServiceConfiguration config =
+                mAuthStateManager.getCurrent().getAuthorizationServiceConfiguration();
+        AuthStateManager manager = mAccounts.setActiveAccount(accountId);
+        if (config != null
+                && manager.getCurrent().getAuthorizationServiceConfiguration() == null) {
+            manager.replace(new AuthState(config));
+        }
+        mAuthStateManager = manager;
+        mTokenEvents.attach(manager);
+        mRefreshScheduler.attach(manager);
+    }
+
+    /**
+     * Registers a listener to be notified of token lifecycle events on the main thread. The
+     * listener is only weakly referenced, so the caller has to keep a reference to it for as
+     * long as it should be notified.
+     *
+     * @param listener The listener to add
+     * @see TokenEventBus
+     */
+    @AnyThread
+    public void addTokenListener(@NonNull OktaTokenListener listener) {
+        mTokenEvents.addListener(listener);
+    }
+
+    /**
+     * Registers a listener to be notified of token lifecycle events on the given executor. The
+     * listener is only weakly referenced, so the caller has to keep a reference to it for as
+     * long as it should be notified.
+     *
+     * @param listener The listener to add
+     * @param executor The executor on which the listener is called
+     * @see TokenEventBus
+     */
+    @AnyThread
+    public void addTokenListener(@NonNull OktaTokenListener listener,
+                                 @NonNull Executor executor) {
+        mTokenEvents.addListener(listener, executor);
+    }
+
+    /**
+     * Unregisters a listener added with {@link #addTokenListener(OktaTokenListener)}.
+     *
+     * @param listener The listener to remove
+     */
+    @AnyThread
+    public void removeTokenListener(@NonNull OktaTokenListener listener) {
+        mTokenEvents.removeListener(listener);
+    }
+
+    /**
+     * Sets the metrics to which the requests of all instances are reported, along with the
+     * time operations wait for an executor thread.
+     *
+     * @param metrics The metrics, or {@code null} to stop measuring
+     * @see InMemoryOktaMetrics
+     */
+    @AnyThread
+    public static void setMetrics(@Nullable OktaMetrics metrics) {
+        RequestTimer.setMetrics(metrics);
+    }
+
+    /**
+     * Sets the policy by which the failed requests of all instances are retried.
+     *
+     * @param policy The policy, or {@code null} to never retry
+     * @see ExponentialBackoffRetryPolicy
+     */
+    @AnyThread
+    public static void setRetryPolicy(@Nullable OktaRetryPolicy policy) {
+        RequestRetrier.setPolicy(policy);
+    }
+
+    /**
+     * Returns the state of the circuit breaker of an Okta endpoint, shared by all instances.
+     * While it is not {@link CircuitState#CLOSED}, requests to the endpoint fail fast with a
+     * {@link CircuitOpenException}, so the app may e.g. show its cached data instead.
+     *
+     * @param endpoint The endpoint
+     * @return The state of its circuit; always {@link CircuitState#CLOSED} for resources
+     */
+    @AnyThread
+    @NonNull
+    public static CircuitState getCircuitState(@NonNull OktaMetrics.Endpoint endpoint) {
+        return CircuitBreaker.getInstance().getState(endpoint);
+    }
+
+    /**
+     * Sets the bounds of the connect and read timeouts, which are derived from the latency
+     * observed on each endpoint. The timeouts set by the {@link OktaConnectionBuilder} are never
+     * exceeded. The defaults are 2 and 15 seconds.
+     *
+     * @param floor The shortest timeout
+     * @param ceiling The longest timeout, not shorter than the floor
+     * @param unit The unit of the bounds
+     */
+    @AnyThread
+    public static void setTimeoutBounds(long floor, long ceiling, @NonNull TimeUnit unit) {
+        AdaptiveTimeouts.getInstance().setBounds(unit.toMillis(floor), unit.toMillis(ceiling));
+    }
+
+    /**
+     * Sets the time within which the operations of all instances which are not given a timeout
+     * of their own, such as {@link #init(Context, OktaAuthListener)}, {@link #revoke} and
+     * {@link #performAuthorizedRequest(BearerAuthRequest)}, have to complete. The timeouts of
+     * their connections are lowered to the time left, and they fail with a
+     * {@link java.net.SocketTimeoutException} once it has passed. Token refreshes are shared
+     * by operations with different deadlines, so their requests are not limited by them.
+     *
+     * @param timeout The timeout, or 0 for operations to take as long as their requests take
+     * @param unit The unit of the timeout
+     */
+    @AnyThread
+    public static void setOperationTimeout(long timeout, @NonNull TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Negative operation timeout " + timeout);
+        }
+        Deadline.setDefaultTimeout(unit.toMillis(timeout));
+    }
+
+    /**
+     * Sets the executors on which operations are run, e.g. to share the app's own thread pools.
+     * The executors set before are shut down.
+     *
+     * @param executors The executors to use
+     * @see DefaultOktaExecutors
+     */
+    @AnyThread
+    public void setExecutors(@NonNull OktaExecutors executors) {
+        final OktaExecutors previous = mExecutors;
+        mExecutors = executors;
+        mExecutor = executors.getUserExecutor();
+        mSessionExecutor = executors.getSessionExecutor();
+        mBackgroundExecutor = executors.getBackgroundExecutor();
+        if (previous != null && previous != executors) {
+            previous.shutdown();
+        }
+    }
+
+    /**
+     * Refreshes the access token in the background shortly before it expires, so that
+     * authorized requests rarely wait for a refresh. The refresh is made the given lead time
+     * plus a random jitter of up to {@code maxJitter} before the expiration time. It is
+     * deferred while the app is in the background or the device is offline. It is disabled
+     * again by {@link #disableProactiveRefresh()} and {@link #dispose()}.
+     *
+     * @param context The Context from which to get the application
+     * @param leadTime How long before the expiration of the access token to refresh it
+     * @param maxJitter The maximum random time by which to advance the refresh further
+     * @param unit The unit of the lead time and jitter
+     * @see TokenRefreshScheduler
+     */
+    @AnyThread
+    public void enableProactiveRefresh(@NonNull Context context, long leadTime, long maxJitter,
+                                       @NonNull TimeUnit unit) {
+        if (leadTime < 0 || maxJitter < 0) {
+            throw new IllegalArgumentException("Lead time and jitter must not be negative");
+        }
+        mRefreshScheduler.enable(context, unit.toMillis(leadTime), unit.toMillis(maxJitter));
+    }
+
+    /**
+     * Stops refreshing the access token before it expires. Expired tokens are still refreshed
+     * when they are used.
+     */
+    @AnyThread
+    public void disableProactiveRefresh() {
+        mRefreshScheduler.disable();
+    }
+
+    /**
+     * Returns the identifier of the account operations act on.
+     *
+     * @return the identifier of the active account, or {@code null} for the default account
+     */
+    @AnyThread
+    @Nullable
+    public String getActiveAccountId() {
+        return mAccounts.getActiveAccountId();
     }
 
     /**
@@ -186,17 +396,36 @@ public class OktaAppAuth {
             @NonNull
             @Override
             public HttpURLConnection openConnection(@NonNull Uri uri) throws IOException {
-                return oktaConnectionBuilder.openConnection(uri);
+                HttpURLConnection conn;
+                if (isTokenEndpoint(uri)) {
+                    // token requests are sent by AppAuth, which only lets the connection
+                    // see their responses
+                    RateLimitGovernor governor = RateLimitGovernor.getInstance();
+                    governor.acquire(OktaMetrics.Endpoint.TOKEN, RateLimitGovernor.Priority.USER);
+                    conn = new GovernedConnection(oktaConnectionBuilder.openConnection(uri),
+                            OktaMetrics.Endpoint.TOKEN, governor);
+                } else {
+                    conn = oktaConnectionBuilder.openConnection(uri);
+                }
+                AdaptiveTimeouts.getInstance().apply(conn);
+                return conn;
             }
         };
-        mExecutor.submit(new Runnable() {
+        final Deadline deadline = Deadline.fromDefault();
+        mExecutor.execute(new Runnable() {
             @Override
             public void run() {
-                doInit(context, mConnectionBuilder, listener);
+                doInit(context, mConnectionBuilder, listener, deadline);
             }
         });
     }
 
+    private boolean isTokenEndpoint(@NonNull Uri uri) {
+        AuthStateManager manager = mAuthStateManager;
+        AuthorizationServiceConfiguration config = manager == null
+                ? null : manager.getCurrent().getAuthorizationServiceConfiguration();
+        return config != null && uri.equals(config.tokenEndpoint);
+    }
 
     /**
      * Performs revocation of accessToken or refreshToken.
@@ -208,13 +437,15 @@ public class OktaAppAuth {
         if (mConfiguration.hasConfigurationChanged()) {
             throw new IllegalStateException("Okta Configuration has changed");
         }
-        if (mAuthStateManager.getCurrent().getAuthorizationServiceConfiguration() == null) {
+        final AuthState state = mAuthStateManager.getCurrent();
+        if (state.getAuthorizationServiceConfiguration() == null) {
             throw new IllegalStateException("Okta should be initialized first");
         }
-        mExecutor.submit(new Runnable() {
+        final Deadline deadline = Deadline.fromDefault();
+        mExecutor.execute(new Runnable() {
             @Override
             public void run() {
-                doRevoke(token, listener);
+                doRevoke(state, token, notifyRevoked(listener), deadline);
             }
         });
     }
@@ -232,56 +463,77 @@ public class OktaAppAuth {
         if (mConfiguration.hasConfigurationChanged()) {
             throw new IllegalStateException("Okta Configuration has changed");
         }
-        if (mAuthStateManager.getCurrent().getAuthorizationServiceConfiguration() == null) {
+        // all tokens are taken from the same state, even if it is updated meanwhile
+        final AuthState state = mAuthStateManager.getCurrent();
+        if (state.getAuthorizationServiceConfiguration() == null) {
             throw new IllegalStateException("Okta should be initialized first");
         }
 
-        if (mAuthStateManager.getCurrent().getRefreshToken() != null) {
+        // both tokens are revoked within the same deadline
+        final Deadline deadline = Deadline.fromDefault();
+        if (state.getRefreshToken() != null) {
             //if we have refresh token we have to perform revoke it first
-            mExecutor.submit(new Runnable() {
+            mExecutor.execute(new Runnable() {
                 @Override
                 public void run() {
                     doRevoke(
-                            mAuthStateManager.getCurrent().getRefreshToken(),
+                            state,
+                            state.getRefreshToken(),
                             new OktaRevokeListener() {
                             @Override
                             public void onSuccess() {
-                                    doRevoke(mAuthStateManager
-                                                    .getCurrent().getAccessToken(),
-                                            listener);
+                                    doRevoke(state, state.getAccessToken(),
+                                            notifyRevoked(listener), deadline);
                             }
 
                             @Override
                             public void onError(AuthorizationException ex) {
                                     listener.onError(ex);
                             }
-                        });
+                        }, deadline);
                 }
             });
         } else {
-            mExecutor.submit(new Runnable() {
+            mExecutor.execute(new Runnable() {
                 @Override
                 public void run() {
-                    doRevoke(mAuthStateManager.getCurrent().getAccessToken(), listener);
+                    doRevoke(state, state.getAccessToken(), notifyRevoked(listener), deadline);
                 }
             });
         }
 
     }
 
+    @NonNull
+    private OktaRevokeListener notifyRevoked(@NonNull final OktaRevokeListener listener) {
+        return new OktaRevokeListener() {
+            @Override
+            public void onSuccess() {
+                mRefreshScheduler.cancel();
+                mTokenEvents.post(TokenEvent.REVOKED);
+                listener.onSuccess();
+            }
+
+            @Override
+            public void onError(AuthorizationException ex) {
+                listener.onError(ex);
+            }
+        };
+    }
+
     @WorkerThread
-    private void doRevoke(String token,@NonNull RevokeTokenRequest.RevokeListener listener) {
+    private void doRevoke(AuthState state, String token,
+                          @NonNull RevokeTokenRequest.RevokeListener listener,
+                          @NonNull Deadline deadline) {
         RevokeTokenRequest request =
                 new RevokeTokenRequest.Builder(
-                        mAuthStateManager.getCurrent()
-                                .getAuthorizationServiceConfiguration()
-                                .discoveryDoc.docJson)
+                        state.getAuthorizationServiceConfiguration().discoveryDoc.docJson)
                         .addClientId(mClientId.get())
                         .addToken(token)
                         .addConnectionBuilder(mConnectionBuilder)
                         .build();
 
-        request.performRequest(listener);
+        request.performRequest(listener, deadline);
     }
 
     /**
@@ -319,7 +571,7 @@ public class OktaAppAuth {
         if (mAuthStateManager.getCurrent().getAuthorizationServiceConfiguration() == null) {
             throw new IllegalStateException("Okta should be initialized first");
         }
-        mExecutor.submit(new Runnable() {
+        mExecutor.execute(new Runnable() {
             @Override
             public void run() {
                 doAuth(
@@ -341,10 +593,38 @@ public class OktaAppAuth {
     public void authenticate(
             final String sessionToken,
             @Nullable final OktaNativeAuthListener listener) {
-        mExecutor.submit(new Runnable() {
+        authenticate(sessionToken, Deadline.fromDefault().getTime(), listener);
+    }
+
+    /**
+     * Authenticate using Session Token, failing with an {@link AuthenticationError} with the
+     * code {@code deadline_exceeded} if the tokens have not been received within the given
+     * timeout. The authorization code is requested with blocking I/O, which holds a thread of
+     * the session lane of the {@link OktaExecutors}, so only as many codes are requested at
+     * once as the lane has threads. No thread is held while waiting for the token response.
+     *
+     * @param sessionToken     Session Token
+     * @param timeout          The time within which the authentication has to complete
+     * @param unit             The unit of the timeout
+     * @param listener         The OktaAuthListener to receive callback with results
+     */
+    public void authenticate(
+            final String sessionToken,
+            long timeout,
+            @NonNull TimeUnit unit,
+            @Nullable final OktaNativeAuthListener listener) {
+        authenticate(sessionToken, Deadline.after(unit.toMillis(timeout)).getTime(), listener);
+    }
+
+    private void authenticate(
+            final String sessionToken,
+            final long deadline,
+            @Nullable final OktaNativeAuthListener listener) {
+        // the authorization request holds the thread, so logins get a lane of their own
+        mSessionExecutor.execute(new Runnable() {
             @Override
             public void run() {
-                doAuth(sessionToken, listener);
+                doAuth(sessionToken, deadline, listener);
             }
         });
     }
@@ -364,7 +644,7 @@ public class OktaAppAuth {
         if (!isUserLoggedIn()) {
             throw new IllegalStateException("No logged in user found");
         }
-        mExecutor.submit(new Runnable() {
+        mExecutor.execute(new Runnable() {
             @Override
             public void run() {
                 doEndSession(
@@ -380,7 +660,7 @@ public class OktaAppAuth {
 
     /**
      * Removes all stored information on current session like
-     * Tokens and Authentication Server config.
+     * Tokens and Authentication Server config, including the cached discovery documents.
      * NOTE: After removal {@link OktaAppAuth#init} should be called.
      */
     public void clearSession() {
@@ -395,6 +675,8 @@ public class OktaAppAuth {
             }
             mAuthStateManager.replace(clearedState);
         }
+        mDiscoveryCache.clear();
+        mRefreshScheduler.cancel();
     }
 
     /**
@@ -408,6 +690,9 @@ public class OktaAppAuth {
             mAuthService.set(null);
         }
         mInitializationListener.set(null);
+        // the listeners the scheduler registers with the application would keep this alive
+        mRefreshScheduler.disable();
+        mExecutors.shutdown();
     }
 
     /**
@@ -419,9 +704,10 @@ public class OktaAppAuth {
      */
     @AnyThread
     public boolean isUserLoggedIn() {
-        return mAuthStateManager.getCurrent().isAuthorized() &&
+        AuthState state = mAuthStateManager.getCurrent();
+        return state.isAuthorized() &&
                 !mConfiguration.hasConfigurationChanged() &&
-                mAuthStateManager.getCurrent().getAuthorizationServiceConfiguration() != null;
+                state.getAuthorizationServiceConfiguration() != null;
     }
 
     /**
@@ -465,33 +751,47 @@ public class OktaAppAuth {
             return;
         }
 
-        ClientAuthentication clientAuthentication;
-        try {
-            clientAuthentication = mAuthStateManager.getCurrent().getClientAuthentication();
-        } catch (UnsupportedAuthenticationMethod ex) {
-            Log.e(TAG, "Token request cannot be made; client authentication for the token "
-                    + "endpoint could not be constructed (%s)", ex);
-            listener.onTokenFailure(AuthorizationException.TokenRequestErrors.INVALID_REQUEST);
-            return;
-        }
-
+        mRefreshCoordinator.refresh(
+                mAuthStateManager,
+                createAuthorizationServiceIfNeeded(),
+                true,
+                new TokenRefreshCoordinator.RefreshCallback() {
+                    @Override
+                    public void onRefreshCompleted(@Nullable String accessToken,
+                                                   @Nullable AuthorizationException ex) {
+                        handleAccessTokenResponse(ex, listener);
+                    }
+                });
+    }
 
-        createAuthorizationServiceIfNeeded().performTokenRequest(
-                mAuthStateManager.getCurrent().createTokenRefreshRequest(),
-                clientAuthentication,
-                new AuthorizationService.TokenResponseCallback() {
+    @MainThread
+    private void refreshProactively(@NonNull AuthStateManager manager) {
+        Log.i(TAG, "Refreshing access token ahead of its expiration");
+        mRefreshCoordinator.refresh(
+                manager,
+                createAuthorizationServiceIfNeeded(),
+                true,
+                new TokenRefreshCoordinator.RefreshCallback() {
                     @Override
-                    public void onTokenRequestCompleted(@Nullable TokenResponse tokenResponse,
-                                                        @Nullable AuthorizationException
-                                                                authException) {
-                        handleAccessTokenResponse(
-                                tokenResponse,
-                                authException,
-                                listener);
+                    public void onRefreshCompleted(@Nullable String accessToken,
+                                                   @Nullable AuthorizationException ex) {
+                        if (ex != null) {
+                            Log.w(TAG, "Proactive token refresh failed", ex);
+                        }
                     }
                 });
     }
 
+    /**
+     * Returns the coordinator through which token refreshes are made, e.g. to read how many
+     * concurrent refreshes have been coalesced.
+     *
+     * @return The refresh coordinator
+     */
+    public TokenRefreshCoordinator getRefreshCoordinator() {
+        return mRefreshCoordinator;
+    }
+
     /**
      * Determines whether there is an ID token in the application's storage.
      *
@@ -510,7 +810,7 @@ public class OktaAppAuth {
      *                 while calling one of the failure methods in case of a failure
      */
     public void getUserInfo(final OktaAuthActionCallback<JSONObject> callback) {
-        performAuthorizedRequest(new BearerAuthRequest() {
+        performAuthorizedRequest(OktaMetrics.Endpoint.USERINFO, new BearerAuthRequest() {
             @NonNull
             @Override
             public HttpURLConnection createRequest() throws Exception {
@@ -562,7 +862,7 @@ public class OktaAppAuth {
                 }
                 callback.onFailure(httpResponseCode, ex);
             }
-        });
+        }, Deadline.fromDefault());
     }
 
     /**
@@ -611,18 +911,45 @@ public class OktaAppAuth {
      *               handlers
      */
     public void performAuthorizedRequest(final BearerAuthRequest action) {
-        if (mAuthStateManager.getCurrent().getNeedsTokenRefresh() && !hasRefreshToken()) {
+        performAuthorizedRequest(OktaMetrics.Endpoint.RESOURCE, action, Deadline.fromDefault());
+    }
+
+    /**
+     * Performs an authorized action with a fresh Okta access token, like
+     * {@link #performAuthorizedRequest(BearerAuthRequest)}, failing with a
+     * {@link java.net.SocketTimeoutException} if the response has not been received within the
+     * given timeout. The timeouts of the connection are lowered to the time left.
+     *
+     * @param action An BearerAuthRequest detailing the action to take with success and failure
+     *               handlers
+     * @param timeout The time within which the response has to be received
+     * @param unit The unit of the timeout
+     */
+    public void performAuthorizedRequest(final BearerAuthRequest action, long timeout,
+                                         @NonNull TimeUnit unit) {
+        performAuthorizedRequest(OktaMetrics.Endpoint.RESOURCE, action,
+                Deadline.after(unit.toMillis(timeout)));
+    }
+
+    private void performAuthorizedRequest(final OktaMetrics.Endpoint endpoint,
+                                          final BearerAuthRequest action,
+                                          final Deadline deadline) {
+        final AuthState current = mAuthStateManager.getCurrent();
+        if (current.getNeedsTokenRefresh() && current.getRefreshToken() == null) {
             Log.i(TAG, "Attempted to take an authorized action, but don't have a refresh token");
             throw new IllegalStateException("No refresh token to get new authorization");
         }
 
-        mAuthStateManager.getCurrent().performActionWithFreshTokens(
+        // concurrent requests share a single refresh of the tokens
+        mRefreshCoordinator.refresh(
+                mAuthStateManager,
                 createAuthorizationServiceIfNeeded(),
-                new AuthStateAction() {
+                false,
+                new TokenRefreshCoordinator.RefreshCallback() {
                     @Override
-                    public void execute(@Nullable String accessToken, @Nullable String idToken,
-                                        @Nullable AuthorizationException ex) {
-                        doAuthorizedAction(accessToken, ex, action);
+                    public void onRefreshCompleted(@Nullable String accessToken,
+                                                   @Nullable AuthorizationException ex) {
+                        doAuthorizedAction(accessToken, ex, action, endpoint, deadline);
                     }
                 });
     }
@@ -638,7 +965,7 @@ public class OktaAppAuth {
 
     @WorkerThread
     private void doInit(final Context context, final ConnectionBuilder connectionBuilder,
-                        final OktaAuthListener listener) {
+                        final OktaAuthListener listener, @NonNull Deadline deadline) {
         mInitializationListener.set(listener);
         recreateAuthorizationService(context);
 
@@ -646,6 +973,8 @@ public class OktaAppAuth {
             // discard any existing authorization state due to the change of configuration
             Log.i(TAG, "Configuration change detected, discarding old state");
             mAuthStateManager.replace(new AuthState());
+            // the issuer may have changed too
+            mDiscoveryCache.clear();
             if (!mConfiguration.isValid()) {
                 Log.e(TAG, "Configuration was invalid: " + mConfiguration.getConfigurationError());
                 listener.onTokenFailure(
@@ -664,17 +993,16 @@ public class OktaAppAuth {
         }
 
         Log.i(TAG, "Retrieving OpenID discovery doc");
-        AuthorizationServiceConfiguration.fetchFromUrl(
-                mConfiguration.getDiscoveryUri(),
-                new AuthorizationServiceConfiguration.RetrieveConfigurationCallback() {
-                    @Override
-                    public void onFetchConfigurationCompleted(
-                            @Nullable AuthorizationServiceConfiguration serviceConfiguration,
-                            @Nullable AuthorizationException ex) {
-                        handleConfigurationRetrievalResult(serviceConfiguration, ex);
-                    }
-                },
-                connectionBuilder);
+        AuthorizationServiceConfiguration serviceConfiguration = null;
+        AuthorizationException exception = null;
+        try {
+            serviceConfiguration = mDiscoveryCache.getConfiguration(
+                    mConfiguration.getDiscoveryUri(), connectionBuilder, mBackgroundExecutor,
+                    deadline);
+        } catch (AuthorizationException ex) {
+            exception = ex;
+        }
+        handleConfigurationRetrievalResult(serviceConfiguration, exception);
     }
 
     /*
@@ -696,24 +1024,12 @@ public class OktaAppAuth {
     }
 
     private void createAuthRequest(@Nullable AuthenticationPayload payload) {
-        AuthorizationRequest.Builder authRequestBuilder = new AuthorizationRequest.Builder(
+        mAuthRequest.set(createAuthorizationRequest(
                 mAuthStateManager.getCurrent().getAuthorizationServiceConfiguration(),
                 mClientId.get(),
-                ResponseTypeValues.CODE,
-                mConfiguration.getRedirectUri())
-                .setScopes(mConfiguration.getScopes());
-
-        if (payload != null) {
-            authRequestBuilder.setAdditionalParameters(payload.getAdditionalParameters());
-            if (!TextUtils.isEmpty(payload.toString())) {
-                authRequestBuilder.setState(payload.getState());
-            }
-            if (!TextUtils.isEmpty(payload.getLoginHint())) {
-                authRequestBuilder.setLoginHint(payload.getLoginHint());
-            }
-        }
-
-        mAuthRequest.set(authRequestBuilder.build());
+                mConfiguration.getRedirectUri(),
+                mConfiguration.getScopes(),
+                payload));
     }
 
     @Deprecated
@@ -734,6 +1050,44 @@ public class OktaAppAuth {
         mAuthRequest.set(authRequestBuilder.build());
     }
 
+    /**
+     * Builds the authorization request for the given client, customized by the payload.
+     *
+     * @param serviceConfig The configuration of the authorization service
+     * @param clientId The client ID
+     * @param redirectUri The redirect URI of the client
+     * @param scopes The scopes to request
+     * @param payload The payload to add to the request, or {@code null} if there is none
+     * @return The authorization request
+     */
+    @VisibleForTesting
+    @NonNull
+    static AuthorizationRequest createAuthorizationRequest(
+            @NonNull AuthorizationServiceConfiguration serviceConfig,
+            @NonNull String clientId,
+            @NonNull Uri redirectUri,
+            @NonNull Set<String> scopes,
+            @Nullable AuthenticationPayload payload) {
+        AuthorizationRequest.Builder authRequestBuilder = new AuthorizationRequest.Builder(
+                serviceConfig,
+                clientId,
+                ResponseTypeValues.CODE,
+                redirectUri)
+                .setScopes(scopes);
+
+        if (payload != null) {
+            authRequestBuilder.setAdditionalParameters(payload.getAdditionalParameters());
+            if (!TextUtils.isEmpty(payload.toString())) {
+                authRequestBuilder.setState(payload.getState());
+            }
+            if (!TextUtils.isEmpty(payload.getLoginHint())) {
+                authRequestBuilder.setLoginHint(payload.getLoginHint());
+            }
+        }
+
+        return authRequestBuilder.build();
+    }
+
     @WorkerThread
     private void warmUpBrowser(Uri uri) {
         Log.i(TAG, "Warming up browser instance for auth request");
@@ -743,7 +1097,7 @@ public class OktaAppAuth {
         mAuthIntent.set(intentBuilder.build());
     }
 
-    @MainThread
+    @WorkerThread
     private void handleConfigurationRetrievalResult(AuthorizationServiceConfiguration config,
                                                     AuthorizationException ex) {
         if (config == null) {
@@ -754,7 +1108,7 @@ public class OktaAppAuth {
 
         Log.i(TAG, "Discovery document retrieved");
         mAuthStateManager.replace(new AuthState(config));
-        mExecutor.submit(new Runnable() {
+        mExecutor.execute(new Runnable() {
             @Override
             public void run() {
                 initializeClient();
@@ -817,7 +1171,7 @@ public class OktaAppAuth {
     }
 
     @WorkerThread
-    private void doAuth(String sessionToken, OktaNativeAuthListener listener) {
+    private void doAuth(String sessionToken, long deadline, OktaNativeAuthListener listener) {
         Log.d(TAG, "Starting native authorization flow");
         SessionAuthenticationService
                 sessionAuthenticationService = new SessionAuthenticationService(
@@ -827,6 +1181,7 @@ public class OktaAppAuth {
         sessionAuthenticationService.performAuthorizationRequest(
                 mAuthRequest.get(),
                 sessionToken,
+                deadline,
                 listener);
     }
 
@@ -854,10 +1209,8 @@ public class OktaAppAuth {
 
     @WorkerThread
     private void handleAccessTokenResponse(
-            @Nullable TokenResponse tokenResponse,
             @Nullable AuthorizationException authException,
             @NonNull OktaAuthListener listener) {
-        mAuthStateManager.updateAfterTokenResponse(tokenResponse, authException);
         if (authException == null) {
             listener.onSuccess();
         } else {
@@ -869,30 +1222,37 @@ public class OktaAppAuth {
     private void doAuthorizedAction(
             final String accessToken,
             final AuthorizationException ex,
-            final BearerAuthRequest action) {
+            final BearerAuthRequest action,
+            final OktaMetrics.Endpoint endpoint,
+            final Deadline deadline) {
         if (ex != null) {
             Log.e(TAG, "Token refresh failed when performing action", ex);
             action.onTokenFailure(ex);
             return;
         }
+        if (deadline.isExpired()) {
+            Log.w(TAG, "Deadline exceeded while refreshing the token for an action");
+            action.onFailure(-1, Deadline.exceeded());
+            return;
+        }
+
+        // fails fast rather than tying up an executor thread until the request times out
+        try {
+            CircuitBreaker.getInstance().check(endpoint);
+        } catch (CircuitOpenException e) {
+            action.onFailure(-1, e);
+            return;
+        }
 
-        mExecutor.submit(new Runnable() {
+        mExecutor.execute(new Runnable() {
             @Override
             public void run() {
-                HttpURLConnection conn;
-                try {
-                    conn = action.createRequest();
-                } catch (Exception e) {
-                    Log.e(TAG, "Exception when creating authenticated request", e);
-                    action.onFailure(-1, e);
+                RequestTimer timer = RequestTimer.start(endpoint);
+                HttpURLConnection conn = sendAuthorizedRequest(accessToken, action, endpoint,
+                        deadline, timer);
+                if (conn == null) {
                     return;
                 }
-                conn.setRequestProperty("Authorization", "Bearer " + accessToken);
-                conn.setRequestProperty("User-Agent",
-                        "Android/" + Build.VERSION.SDK_INT + " " +
-                                BuildConfig.APPLICATION_ID + "/" + BuildConfig.VERSION_NAME
-
-                );
 
                 InputStream response;
                 try {
@@ -904,15 +1264,88 @@ public class OktaAppAuth {
                     response = conn.getInputStream();
                 } catch (IOException e) {
                     Log.e(TAG, "Exception when adding authorization header to request", e);
+                    timer.finish(e);
                     action.onFailure(-1, e);
                     return;
                 }
 
+                timer.finish(null);
                 action.onSuccess(response);
             }
         });
     }
 
+    /*
+     * Sends an authorized request, retrying it if it fails transiently and its method allows.
+     * Returns the connection which has received the final response, or null if the request
+     * failed, which has been reported to the action.
+     */
+    @WorkerThread
+    @Nullable
+    private HttpURLConnection sendAuthorizedRequest(
+            final String accessToken,
+            final BearerAuthRequest action,
+            final OktaMetrics.Endpoint endpoint,
+            final Deadline deadline,
+            final RequestTimer timer) {
+        RateLimitGovernor governor = RateLimitGovernor.getInstance();
+        CircuitBreaker breaker = CircuitBreaker.getInstance();
+        RequestRetrier retrier = null;
+        while (true) {
+            try {
+                governor.acquire(endpoint, RateLimitGovernor.Priority.USER);
+                breaker.acquire(endpoint);
+                timer.startAttempt();
+            } catch (IOException e) {
+                action.onFailure(-1, e);
+                return null;
+            }
+
+            HttpURLConnection conn;
+            try {
+                conn = action.createRequest();
+            } catch (Exception e) {
+                Log.e(TAG, "Exception when creating authenticated request", e);
+                action.onFailure(-1, e);
+                return null;
+            }
+            AdaptiveTimeouts.getInstance().apply(conn);
+            deadline.limitTimeouts(conn);
+            conn.setRequestProperty("Authorization", "Bearer " + accessToken);
+            conn.setRequestProperty("User-Agent",
+                    "Android/" + Build.VERSION.SDK_INT + " " +
+                            BuildConfig.APPLICATION_ID + "/" + BuildConfig.VERSION_NAME
+
+            );
+            if (retrier == null) {
+                retrier = RequestRetrier.start(timer,
+                        RequestRetrier.Idempotency.of(conn.getRequestMethod()), deadline);
+            }
+
+            int responseCode;
+            try {
+                responseCode = conn.getResponseCode();
+                timer.responded(conn, responseCode);
+                governor.onResponse(endpoint, conn, responseCode);
+                breaker.onResponse(endpoint, responseCode);
+            } catch (IOException e) {
+                conn.disconnect();
+                timer.failed(conn, e);
+                breaker.onError(endpoint, deadline.attribute(e));
+                if (retrier.retryAfterError(e)) {
+                    continue;
+                }
+                Log.e(TAG, "Exception when adding authorization header to request", e);
+                timer.finish(e);
+                action.onFailure(-1, e);
+                return null;
+            }
+            if (!retrier.retryAfterResponse(conn, responseCode)) {
+                return conn;
+            }
+        }
+    }
+
     /**
      * Listener for token revocation.
      */
@@ -920,6 +1353,21 @@ public class OktaAppAuth {
 
     }
 
+    /**
+     * Listener for token lifecycle events.
+     *
+     * @see OktaAppAuth#addTokenListener(OktaTokenListener)
+     */
+    public interface OktaTokenListener {
+        /**
+         * Called when an event occurred. Events which occurred since the previous call are
+         * delivered together, each only once.
+         *
+         * @param event The event
+         */
+        void onTokenEvent(@NonNull TokenEvent event);
+    }
+
     /**
      * Listener for OktaNativeAuth operations.
      */
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+
+/**
+ * <p>
+ * Provides the executors on which {@link OktaAppAuth} runs its work, split into lanes so that
+ * work the user waits for is not held up by maintenance work, and logins are not held up by
+ * each other.
+ * </p>
+ * <ul>
+ *     <li>the user lane runs operations whose callbacks the app is waiting for, such as
+ *     initialization, login, sign out, revocation and authorized requests</li>
+ *     <li>the session lane runs logins with a session token, which hold their thread while
+ *     the authorization code is requested</li>
+ *     <li>the background lane runs work nobody waits for, such as revalidating the cached
+ *     discovery document</li>
+ * </ul>
+ * <p>
+ * An implementation can be set with {@link OktaAppAuth#setExecutors(OktaExecutors)}, e.g. to
+ * share the app's own thread pools; {@link DefaultOktaExecutors} is used otherwise.
+ * </p>
+ */
+public interface OktaExecutors {
+
+    /**
+     * Returns the executor for operations the user is waiting for.
+     *
+     * @return The user lane
+     */
+    @AnyThread
+    @NonNull
+    Executor getUserExecutor();
+
+    /**
+     * Returns the executor for logins with a session token. Each login holds a thread of this
+     * lane until Okta has responded to its authorization request, so the lane bounds how many
+     * logins are in flight at once.
+     *
+     * @return The session lane
+     */
+    @AnyThread
+    @NonNull
+    Executor getSessionExecutor();
+
+    /**
+     * Returns the executor for work nobody is waiting for.
+     *
+     * @return The background lane
+     */
+    @AnyThread
+    @NonNull
+    Executor getBackgroundExecutor();
+
+    /**
+     * Releases the threads of all lanes. Called from {@link OktaAppAuth#dispose()}; work
+     * submitted afterwards has to be run as well, e.g. on new threads.
+     */
+    @AnyThread
+    void shutdown();
+}
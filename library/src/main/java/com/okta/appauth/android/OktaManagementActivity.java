@@ -90,7 +90,7 @@ public class OktaManagementActivity extends Activity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        mStateManager = AuthStateManager.getInstance(this);
+        mStateManager = MultiAccountAuthStateManager.getInstance(this).getActiveAccount();
         mConnectionBuilder = new ConnectionBuilder() {
             @NonNull
             @Override
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+
+/**
+ * <p>
+ * Receives measurements of the requests made to the authorization server and to resources
+ * accessed with {@link OktaAppAuth#performAuthorizedRequest(OktaAppAuth.BearerAuthRequest)},
+ * and of the time operations wait for an executor thread. Set an implementation with
+ * {@link OktaAppAuth#setMetrics(OktaMetrics)}; {@link InMemoryOktaMetrics} aggregates them in
+ * memory.
+ * </p>
+ * <p>
+ * Methods are called on the thread which made the request or ran the operation, so
+ * implementations have to be thread-safe and must return quickly.
+ * </p>
+ */
+public interface OktaMetrics {
+
+    /**
+     * The endpoints whose requests are measured.
+     */
+    enum Endpoint {
+        /**
+         * The OpenID Connect discovery document.
+         */
+        DISCOVERY,
+        /**
+         * The authorization endpoint, requested directly with a session token.
+         */
+        AUTHORIZE,
+        /**
+         * The token endpoint, when exchanging a code or refreshing tokens.
+         */
+        TOKEN,
+        /**
+         * The userinfo endpoint.
+         */
+        USERINFO,
+        /**
+         * The revocation endpoint.
+         */
+        REVOKE,
+        /**
+         * A resource accessed with an access token.
+         */
+        RESOURCE
+    }
+
+    /**
+     * Called when a request has completed, successfully or not.
+     *
+     * @param request The measurements of the request
+     */
+    @AnyThread
+    void onRequestCompleted(@NonNull RequestMetrics request);
+
+    /**
+     * Called when an operation starts running on an executor lane.
+     *
+     * @param lane The name of the lane, e.g. {@code "user"}, {@code "session"} or
+     *     {@code "background"}
+     * @param waitNanos How long the operation waited for a thread, in nanoseconds
+     */
+    @AnyThread
+    void onQueueWait(@NonNull String lane, long waitNanos);
+}
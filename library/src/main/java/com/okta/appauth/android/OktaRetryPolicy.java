@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+
+/**
+ * <p>
+ * Decides how often and after which delay a failed request is retried. Set a policy with
+ * {@link OktaAppAuth#setRetryPolicy(OktaRetryPolicy)}; {@link ExponentialBackoffRetryPolicy}
+ * is used by default.
+ * </p>
+ * <p>
+ * The policy is only asked about failures which are transient and after which the request is
+ * safe to repeat. The library decides this per request: discovery, userinfo, revocation and
+ * resource requests with an idempotent method are retried after network errors and
+ * {@code 408}, {@code 500}, {@code 502}, {@code 503} and {@code 504} responses; the
+ * authorization request and token refreshes only after network errors, before a response has
+ * arrived; authorization codes are never exchanged twice. Retries of each endpoint are further
+ * limited to a share of its requests, so that retries cannot multiply the load on a failing
+ * server.
+ * </p>
+ */
+public interface OktaRetryPolicy {
+
+    /**
+     * Returned by {@link #getRetryDelayMs(OktaMetrics.Endpoint, int, long)} to not retry.
+     */
+    long NO_RETRY = -1;
+
+    /**
+     * Returns how long to wait before retrying a failed request.
+     *
+     * @param endpoint The endpoint of the request
+     * @param retry The number of the retry, starting at 1
+     * @param previousDelayMs The delay before the previous retry, or 0 before the first one
+     * @return The delay in milliseconds, or {@link #NO_RETRY} to fail the request
+     */
+    @AnyThread
+    long getRetryDelayMs(@NonNull OktaMetrics.Endpoint endpoint, int retry, long previousDelayMs);
+}
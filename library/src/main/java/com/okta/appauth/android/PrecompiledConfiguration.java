@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+/**
+ * <p>
+ * The values of an okta_app_auth_config.json resource which was validated when the app was
+ * built. The class generated by the build script gradle/okta-config.gradle implements this
+ * interface; when it is present, {@link OAuthClientConfiguration#getInstance} uses it instead
+ * of reading and parsing the resource.
+ * </p>
+ * <p>
+ * Implementations must have a public no-argument constructor.
+ * </p>
+ */
+public interface PrecompiledConfiguration {
+
+    /**
+     * Returns the client ID.
+     *
+     * @return the value of "client_id"
+     */
+    String getClientId();
+
+    /**
+     * Returns the redirect URI.
+     *
+     * @return the value of "redirect_uri"
+     */
+    String getRedirectUri();
+
+    /**
+     * Returns the redirect URI used after ending the session.
+     *
+     * @return the value of "end_session_redirect_uri"
+     */
+    String getEndSessionRedirectUri();
+
+    /**
+     * Returns the issuer URI.
+     *
+     * @return the value of "issuer_uri"
+     */
+    String getIssuerUri();
+
+    /**
+     * Returns the requested scopes.
+     *
+     * @return the values of "scopes"
+     */
+    String[] getScopes();
+
+    /**
+     * Returns the digest of the configuration, which is the same as the hash computed when
+     * the resource is parsed at runtime.
+     *
+     * @return the digest of the configuration
+     */
+    int getConfigHash();
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request to an Okta endpoint whose rate limit has been exhausted,
+ * or which asked the client to retry later. Failure callbacks receive it like any other
+ * {@link IOException}.
+ */
+public class RateLimitExceededException extends IOException {
+
+    private final OktaMetrics.Endpoint mEndpoint;
+    private final long mRetryAfterMs;
+
+    RateLimitExceededException(@NonNull OktaMetrics.Endpoint endpoint, long retryAfterMs) {
+        super("Rate limit of the " + endpoint + " endpoint exceeded, retry in "
+                + retryAfterMs + "ms");
+        mEndpoint = endpoint;
+        mRetryAfterMs = retryAfterMs;
+    }
+
+    /**
+     * The endpoint whose rate limit has been exceeded.
+     *
+     * @return The endpoint
+     */
+    @NonNull
+    public OktaMetrics.Endpoint getEndpoint() {
+        return mEndpoint;
+    }
+
+    /**
+     * How long to wait before requesting the endpoint again.
+     *
+     * @return The time to wait in milliseconds
+     */
+    public long getRetryAfterMs() {
+        return mRetryAfterMs;
+    }
+}
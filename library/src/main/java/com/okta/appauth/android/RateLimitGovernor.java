@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.os.SystemClock;
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.net.HttpURLConnection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Keeps the requests to the Okta endpoints within the rate limits of the org, which Okta
+ * reports with the {@code X-Rate-Limit-Limit}, {@code X-Rate-Limit-Remaining} and
+ * {@code X-Rate-Limit-Reset} headers of its responses. The limits are tracked per endpoint
+ * and shared by all instances of the library, as they are the org's.
+ * </p>
+ * <p>
+ * Background requests, such as revalidating a cached discovery document, are shed once only a
+ * reserve of the remaining requests is left, so that the requests the user waits for can still
+ * be made. Once the limit is exhausted or a response asks to {@code Retry-After} a time, a
+ * request the user waits for is delayed if that time is short, and every other request fails
+ * with a {@link RateLimitExceededException} until then, instead of being rejected by Okta.
+ * </p>
+ * <p>
+ * Token requests are sent by AppAuth, which does not expose their responses, so they are
+ * governed through the connections the library opens for AppAuth, see
+ * {@link GovernedConnection}. Resources are not governed, as their limits are not Okta's.
+ * </p>
+ */
+final class RateLimitGovernor {
+
+    private static final String TAG = "RateLimitGovernor";
+
+    /**
+     * How urgent a request is.
+     */
+    enum Priority {
+        /**
+         * A request the user waits for.
+         */
+        USER,
+        /**
+         * A request which can be skipped or made later.
+         */
+        BACKGROUND
+    }
+
+    static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    @VisibleForTesting
+    static final long DEFAULT_RETRY_AFTER_MS = TimeUnit.SECONDS.toMillis(10);
+
+    @VisibleForTesting
+    static final long DEFAULT_MAX_DELAY_MS = TimeUnit.SECONDS.toMillis(1);
+
+    // the share of the limit which background requests leave to the user's requests
+    private static final int BACKGROUND_RESERVE_DIVISOR = 10;
+
+    private static final String HEADER_LIMIT = "X-Rate-Limit-Limit";
+    private static final String HEADER_REMAINING = "X-Rate-Limit-Remaining";
+    private static final String HEADER_RESET = "X-Rate-Limit-Reset";
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+    private static final String HEADER_DATE = "Date";
+
+    private static final RateLimitGovernor INSTANCE = new RateLimitGovernor(DEFAULT_MAX_DELAY_MS);
+
+    private final Map<OktaMetrics.Endpoint, Budget> mBudgets =
+            new EnumMap<>(OktaMetrics.Endpoint.class);
+    private final long mMaxDelayMs;
+
+    @VisibleForTesting
+    RateLimitGovernor(long maxDelayMs) {
+        mMaxDelayMs = maxDelayMs;
+    }
+
+    /**
+     * Returns the governor shared by all instances of the library.
+     *
+     * @return The governor
+     */
+    @AnyThread
+    @NonNull
+    static RateLimitGovernor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Waits until a request to the given endpoint may be made, or fails if it may not be made
+     * soon enough.
+     *
+     * @param endpoint The endpoint to request
+     * @param priority The priority of the request
+     * @throws RateLimitExceededException If the request may not be made
+     */
+    @WorkerThread
+    void acquire(@NonNull OktaMetrics.Endpoint endpoint, @NonNull Priority priority)
+            throws RateLimitExceededException {
+        if (!isGoverned(endpoint)) {
+            return;
+        }
+
+        long wait;
+        synchronized (mBudgets) {
+            Budget budget = mBudgets.get(endpoint);
+            if (budget == null) {
+                return;
+            }
+            wait = budget.getWaitMs(SystemClock.elapsedRealtime(), priority);
+            if (wait == 0) {
+                budget.spend(SystemClock.elapsedRealtime());
+                return;
+            }
+        }
+
+        if (priority != Priority.USER || wait > mMaxDelayMs) {
+            Log.w(TAG, "Not requesting the " + endpoint + " endpoint for " + wait + "ms");
+            throw new RateLimitExceededException(endpoint, wait);
+        }
+        Log.i(TAG, "Delaying the request to the " + endpoint + " endpoint by " + wait + "ms");
+        SystemClock.sleep(wait);
+        synchronized (mBudgets) {
+            Budget budget = mBudgets.get(endpoint);
+            if (budget != null) {
+                budget.spend(SystemClock.elapsedRealtime());
+            }
+        }
+    }
+
+    /**
+     * Returns how long a request to the given endpoint would have to wait, without making it.
+     *
+     * @param endpoint The endpoint to request
+     * @param priority The priority of the request
+     * @return The time to wait in milliseconds, or 0 if the request may be made now
+     */
+    @AnyThread
+    long getWaitMs(@NonNull OktaMetrics.Endpoint endpoint, @NonNull Priority priority) {
+        if (!isGoverned(endpoint)) {
+            return 0;
+        }
+        synchronized (mBudgets) {
+            Budget budget = mBudgets.get(endpoint);
+            return budget == null
+                    ? 0 : budget.getWaitMs(SystemClock.elapsedRealtime(), priority);
+        }
+    }
+
+    /**
+     * Updates the limits of an endpoint from the headers of its response.
+     *
+     * @param endpoint The endpoint which has responded
+     * @param conn The connection which has received the response
+     * @param statusCode The status code of the response
+     */
+    @WorkerThread
+    void onResponse(@NonNull OktaMetrics.Endpoint endpoint, @NonNull HttpURLConnection conn,
+                    int statusCode) {
+        if (!isGoverned(endpoint)) {
+            return;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        // the reset time is the server's, so it is taken relative to the server's clock
+        long serverNow = conn.getHeaderFieldDate(HEADER_DATE, System.currentTimeMillis());
+        long limit = parseLong(conn.getHeaderField(HEADER_LIMIT));
+        long remaining = parseLong(conn.getHeaderField(HEADER_REMAINING));
+        long reset = parseLong(conn.getHeaderField(HEADER_RESET));
+        long retryAfter = retryAfterMs(conn, serverNow);
+        boolean tooManyRequests = statusCode == HTTP_TOO_MANY_REQUESTS;
+        boolean limited = limit > 0 && remaining >= 0 && reset >= 0;
+        if (!limited && !tooManyRequests && retryAfter < 0) {
+            return;
+        }
+
+        synchronized (mBudgets) {
+            Budget budget = mBudgets.get(endpoint);
+            if (budget == null) {
+                budget = new Budget();
+                mBudgets.put(endpoint, budget);
+            }
+            if (limited) {
+                budget.mLimit = limit;
+                budget.mRemaining = remaining;
+                budget.mResetAt = now + Math.max(0, TimeUnit.SECONDS.toMillis(reset) - serverNow);
+            }
+            if (tooManyRequests && retryAfter < 0) {
+                retryAfter = limited ? budget.mResetAt - now : DEFAULT_RETRY_AFTER_MS;
+            }
+            if (retryAfter >= 0) {
+                budget.mBlockedUntil = Math.max(budget.mBlockedUntil, now + retryAfter);
+            }
+        }
+    }
+
+    /**
+     * Forgets all limits.
+     */
+    @VisibleForTesting
+    void reset() {
+        synchronized (mBudgets) {
+            mBudgets.clear();
+        }
+    }
+
+    private static boolean isGoverned(@NonNull OktaMetrics.Endpoint endpoint) {
+        return endpoint != OktaMetrics.Endpoint.RESOURCE;
+    }
+
+    private static long retryAfterMs(@NonNull HttpURLConnection conn, long serverNow) {
+        String retryAfter = conn.getHeaderField(HEADER_RETRY_AFTER);
+        if (retryAfter == null) {
+            return -1;
+        }
+        long seconds = parseLong(retryAfter);
+        if (seconds >= 0) {
+            return TimeUnit.SECONDS.toMillis(seconds);
+        }
+        long date = conn.getHeaderFieldDate(HEADER_RETRY_AFTER, -1);
+        return date < 0 ? -1 : Math.max(0, date - serverNow);
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * The requests left to an endpoint, as of {@link SystemClock#elapsedRealtime()}.
+     */
+    private static final class Budget {
+        private long mLimit;
+        private long mRemaining = -1;
+        private long mResetAt;
+        private long mBlockedUntil;
+
+        long getWaitMs(long now, @NonNull Priority priority) {
+            if (now < mBlockedUntil) {
+                return mBlockedUntil - now;
+            }
+            if (mRemaining < 0 || now >= mResetAt) {
+                return 0;
+            }
+            long reserve = priority == Priority.BACKGROUND
+                    ? Math.max(1, mLimit / BACKGROUND_RESERVE_DIVISOR) : 0;
+            return mRemaining <= reserve ? mResetAt - now : 0;
+        }
+
+        void spend(long now) {
+            // counted down until the next response tells the actual number
+            if (mRemaining > 0 && now < mResetAt) {
+                mRemaining--;
+            }
+        }
+    }
+}
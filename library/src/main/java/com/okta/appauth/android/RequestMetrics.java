@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.net.HttpURLConnection;
+
+/**
+ * The measurements of a single request, reported to {@link OktaMetrics}. Durations are in
+ * nanoseconds from the start of the request; values which could not be measured are
+ * {@link #UNKNOWN}.
+ * <p>
+ * The connect time covers name resolution, the TCP connection and the TLS handshake, which
+ * {@link HttpURLConnection} does not report separately. Token requests are made by
+ * AppAuth, so only their total duration and outcome are known.
+ * </p>
+ */
+public final class RequestMetrics {
+
+    /**
+     * The value of measurements which are not available.
+     */
+    public static final long UNKNOWN = -1;
+
+    private final OktaMetrics.Endpoint mEndpoint;
+    private final int mStatusCode;
+    private final long mDurationNanos;
+    private final long mConnectNanos;
+    private final long mTimeToFirstByteNanos;
+    private final long mBytesSent;
+    private final long mBytesReceived;
+    private final int mRetries;
+    private final Throwable mError;
+
+    RequestMetrics(@NonNull OktaMetrics.Endpoint endpoint, int statusCode, long durationNanos,
+                   long connectNanos, long timeToFirstByteNanos, long bytesSent,
+                   long bytesReceived, int retries, @Nullable Throwable error) {
+        mEndpoint = endpoint;
+        mStatusCode = statusCode;
+        mDurationNanos = durationNanos;
+        mConnectNanos = connectNanos;
+        mTimeToFirstByteNanos = timeToFirstByteNanos;
+        mBytesSent = bytesSent;
+        mBytesReceived = bytesReceived;
+        mRetries = retries;
+        mError = error;
+    }
+
+    /**
+     * Returns the endpoint which was requested.
+     *
+     * @return the endpoint
+     */
+    @NonNull
+    public OktaMetrics.Endpoint getEndpoint() {
+        return mEndpoint;
+    }
+
+    /**
+     * Returns the HTTP status code of the response.
+     *
+     * @return the status code, or {@link #UNKNOWN} if no response was received or the status
+     *     is not known
+     */
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+
+    /**
+     * Returns the total duration of the request, including any retries.
+     *
+     * @return the duration in nanoseconds
+     */
+    public long getDurationNanos() {
+        return mDurationNanos;
+    }
+
+    /**
+     * Returns the time until the connection was established.
+     *
+     * @return the connect time in nanoseconds, or {@link #UNKNOWN}
+     */
+    public long getConnectNanos() {
+        return mConnectNanos;
+    }
+
+    /**
+     * Returns the time until the status line of the response was received.
+     *
+     * @return the time to the first byte in nanoseconds, or {@link #UNKNOWN}
+     */
+    public long getTimeToFirstByteNanos() {
+        return mTimeToFirstByteNanos;
+    }
+
+    /**
+     * Returns the size of the request body.
+     *
+     * @return the number of bytes sent, or {@link #UNKNOWN}
+     */
+    public long getBytesSent() {
+        return mBytesSent;
+    }
+
+    /**
+     * Returns the size of the response body.
+     *
+     * @return the number of bytes received, or {@link #UNKNOWN}
+     */
+    public long getBytesReceived() {
+        return mBytesReceived;
+    }
+
+    /**
+     * Returns how often the request was retried.
+     *
+     * @return the number of retries
+     */
+    public int getRetries() {
+        return mRetries;
+    }
+
+    /**
+     * Returns the error with which the request failed.
+     *
+     * @return the error, or {@code null} if a response was received
+     */
+    @Nullable
+    public Throwable getError() {
+        return mError;
+    }
+
+    /**
+     * Indicates whether the request succeeded, i.e. received a response with a status below
+     * 400 without an error.
+     *
+     * @return {@code true} if the request succeeded
+     */
+    public boolean isSuccessful() {
+        return mError == null && (mStatusCode == UNKNOWN
+                || mStatusCode < HttpURLConnection.HTTP_BAD_REQUEST);
+    }
+}
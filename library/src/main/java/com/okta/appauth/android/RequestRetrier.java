@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.os.SystemClock;
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+/**
+ * <p>
+ * Decides whether a failed attempt of a request is retried, according to how safe the request
+ * is to repeat, the {@link OktaRetryPolicy} set with
+ * {@link OktaAppAuth#setRetryPolicy(OktaRetryPolicy)} and the retry budget of its endpoint. A
+ * retrier is used by the thread which makes the request, and reports its retries to the
+ * request's {@link RequestTimer}.
+ * </p>
+ * <p>
+ * The budget of an endpoint allows a retry for every {@link #BUDGET_REQUESTS_PER_RETRY}
+ * requests, with a reserve of {@link #BUDGET_MAX_RETRIES} retries, so that an endpoint which
+ * fails every request is not sent more than a few extra requests. A request is not retried if
+ * its retry would start after the deadline of its operation.
+ * </p>
+ */
+final class RequestRetrier {
+
+    private static final String TAG = "RequestRetrier";
+
+    /**
+     * The status code passed for an attempt which failed before a response was received.
+     */
+    static final int NO_RESPONSE = -1;
+
+    @VisibleForTesting
+    static final int BUDGET_REQUESTS_PER_RETRY = 10;
+
+    @VisibleForTesting
+    static final int BUDGET_MAX_RETRIES = 10;
+
+    /**
+     * How safe a request is to repeat.
+     */
+    enum Idempotency {
+        /**
+         * The request can be repeated after any transient failure.
+         */
+        IDEMPOTENT,
+        /**
+         * The request can only be repeated if no response has been received, e.g. because the
+         * server may have invalidated what was sent once it responded.
+         */
+        BEFORE_RESPONSE,
+        /**
+         * The request is never repeated.
+         */
+        NEVER;
+
+        /**
+         * Returns the idempotency of a request with the given HTTP method.
+         *
+         * @param method The method
+         * @return The idempotency
+         */
+        @NonNull
+        static Idempotency of(@NonNull String method) {
+            switch (method.toUpperCase(Locale.US)) {
+                case "GET":
+                case "HEAD":
+                case "OPTIONS":
+                case "PUT":
+                case "DELETE":
+                case "TRACE":
+                    return IDEMPOTENT;
+                default:
+                    return NEVER;
+            }
+        }
+    }
+
+    private static final int BUDGET_CAPACITY = BUDGET_MAX_RETRIES * BUDGET_REQUESTS_PER_RETRY;
+
+    // in requests, of which a retry costs BUDGET_REQUESTS_PER_RETRY; guarded by itself
+    private static final Map<OktaMetrics.Endpoint, Integer> BUDGETS =
+            new EnumMap<>(OktaMetrics.Endpoint.class);
+
+    private static volatile OktaRetryPolicy sPolicy = new ExponentialBackoffRetryPolicy();
+
+    private final OktaRetryPolicy mPolicy;
+    private final RequestTimer mTimer;
+    private final Idempotency mIdempotency;
+    private final Deadline mDeadline;
+    private int mRetries;
+    private long mDelayMs;
+
+    private RequestRetrier(@Nullable OktaRetryPolicy policy, @NonNull RequestTimer timer,
+                           @NonNull Idempotency idempotency, @NonNull Deadline deadline) {
+        mPolicy = policy;
+        mTimer = timer;
+        mIdempotency = idempotency;
+        mDeadline = deadline;
+    }
+
+    @AnyThread
+    static void setPolicy(@Nullable OktaRetryPolicy policy) {
+        sPolicy = policy;
+    }
+
+    /**
+     * Starts deciding about the retries of a request.
+     *
+     * @param timer The timer of the request, which also identifies its endpoint
+     * @param idempotency How safe the request is to repeat
+     * @return The retrier of the request
+     */
+    @AnyThread
+    @NonNull
+    static RequestRetrier start(@NonNull RequestTimer timer, @NonNull Idempotency idempotency) {
+        return start(timer, idempotency, Deadline.NONE);
+    }
+
+    /**
+     * Starts deciding about the retries of a request which has to complete by a deadline.
+     *
+     * @param timer The timer of the request, which also identifies its endpoint
+     * @param idempotency How safe the request is to repeat
+     * @param deadline The deadline of the operation making the request
+     * @return The retrier of the request
+     */
+    @AnyThread
+    @NonNull
+    static RequestRetrier start(@NonNull RequestTimer timer, @NonNull Idempotency idempotency,
+                                @NonNull Deadline deadline) {
+        synchronized (BUDGETS) {
+            OktaMetrics.Endpoint endpoint = timer.getEndpoint();
+            BUDGETS.put(endpoint, Math.min(budget(endpoint) + 1, BUDGET_CAPACITY));
+        }
+        return new RequestRetrier(sPolicy, timer, idempotency, deadline);
+    }
+
+    /**
+     * Restores the retry budgets of all endpoints.
+     */
+    @VisibleForTesting
+    static void resetBudgets() {
+        synchronized (BUDGETS) {
+            BUDGETS.clear();
+        }
+    }
+
+    /**
+     * Returns the delay after which to retry a failed attempt.
+     *
+     * @param statusCode The status code of the response, or {@link #NO_RESPONSE}
+     * @param error The error with which the attempt failed before receiving a response, or
+     *     {@code null}
+     * @return The delay in milliseconds, or {@link OktaRetryPolicy#NO_RETRY}
+     */
+    @AnyThread
+    long getRetryDelayMs(int statusCode, @Nullable Throwable error) {
+        if (mPolicy == null || !isRetryable(statusCode, error)) {
+            return OktaRetryPolicy.NO_RETRY;
+        }
+
+        OktaMetrics.Endpoint endpoint = mTimer.getEndpoint();
+        synchronized (BUDGETS) {
+            int budget = budget(endpoint);
+            if (budget < BUDGET_REQUESTS_PER_RETRY) {
+                Log.w(TAG, "Retry budget of the " + endpoint + " endpoint exhausted");
+                return OktaRetryPolicy.NO_RETRY;
+            }
+            long delay = mPolicy.getRetryDelayMs(endpoint, mRetries + 1, mDelayMs);
+            if (delay < 0 || delay >= mDeadline.getRemainingMs()) {
+                return OktaRetryPolicy.NO_RETRY;
+            }
+            BUDGETS.put(endpoint, budget - BUDGET_REQUESTS_PER_RETRY);
+            mRetries++;
+            mDelayMs = delay;
+        }
+        mTimer.setRetries(mRetries);
+        Log.i(TAG, "Retrying the request to the " + endpoint + " endpoint in " + mDelayMs
+                + "ms, retry " + mRetries);
+        return mDelayMs;
+    }
+
+    /**
+     * Waits before retrying an attempt which failed before receiving a response, if it is to be
+     * retried.
+     *
+     * @param error The error with which the attempt failed
+     * @return {@code true} if the request is to be retried
+     */
+    @WorkerThread
+    boolean retryAfterError(@NonNull IOException error) {
+        return sleep(getRetryDelayMs(NO_RESPONSE, error));
+    }
+
+    /**
+     * Waits before retrying an attempt whose response reports a failure, if it is to be
+     * retried. The response is released before waiting, so that its connection can be reused.
+     *
+     * @param conn The connection which has received the response
+     * @param statusCode The status code of the response
+     * @return {@code true} if the request is to be retried
+     */
+    @WorkerThread
+    boolean retryAfterResponse(@NonNull HttpURLConnection conn, int statusCode) {
+        long delay = getRetryDelayMs(statusCode, null);
+        if (delay < 0) {
+            return false;
+        }
+        HttpResponses.release(conn);
+        return sleep(delay);
+    }
+
+    int getRetries() {
+        return mRetries;
+    }
+
+    private static boolean sleep(long delayMs) {
+        if (delayMs < 0) {
+            return false;
+        }
+        SystemClock.sleep(delayMs);
+        return true;
+    }
+
+    private boolean isRetryable(int statusCode, @Nullable Throwable error) {
+        if (mIdempotency == Idempotency.NEVER) {
+            return false;
+        }
+        if (statusCode == NO_RESPONSE) {
+            return isTransient(error);
+        }
+        return mIdempotency == Idempotency.IDEMPOTENT && isTransient(statusCode);
+    }
+
+    private static boolean isTransient(@Nullable Throwable error) {
+        // the rate limit and the circuit breaker govern when to request again, and the others
+        // do not go away
+        return !(error instanceof RateLimitExceededException
+                || error instanceof CircuitOpenException
+                || error instanceof MalformedURLException
+                || error instanceof SSLHandshakeException
+                || error instanceof SSLPeerUnverifiedException);
+    }
+
+    private static boolean isTransient(int statusCode) {
+        switch (statusCode) {
+            case HttpURLConnection.HTTP_CLIENT_TIMEOUT:
+            case HttpURLConnection.HTTP_INTERNAL_ERROR:
+            case HttpURLConnection.HTTP_BAD_GATEWAY:
+            case HttpURLConnection.HTTP_UNAVAILABLE:
+            case HttpURLConnection.HTTP_GATEWAY_TIMEOUT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static int budget(@NonNull OktaMetrics.Endpoint endpoint) {
+        Integer budget = BUDGETS.get(endpoint);
+        return budget == null ? BUDGET_CAPACITY : budget;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.net.Uri;
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import net.openid.appauth.AuthorizationException;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a request and reports it to the {@link OktaMetrics} set with
+ * {@link OktaAppAuth#setMetrics(OktaMetrics)}, and the latency of each of its attempts to the
+ * {@link AdaptiveTimeouts}. A timer is used by the thread which makes the request.
+ */
+final class RequestTimer {
+
+    private static volatile OktaMetrics sMetrics;
+
+    private final OktaMetrics mMetrics;
+    private final OktaMetrics.Endpoint mEndpoint;
+    private final long mStart;
+    private long mAttemptStart;
+    private long mConnectNanos = RequestMetrics.UNKNOWN;
+    private long mTimeToFirstByteNanos = RequestMetrics.UNKNOWN;
+    private int mStatusCode = (int) RequestMetrics.UNKNOWN;
+    private long mBytesSent = RequestMetrics.UNKNOWN;
+    private long mBytesReceived = RequestMetrics.UNKNOWN;
+    private int mRetries;
+
+    private RequestTimer(@Nullable OktaMetrics metrics, @NonNull OktaMetrics.Endpoint endpoint) {
+        mMetrics = metrics;
+        mEndpoint = endpoint;
+        mStart = System.nanoTime();
+        mAttemptStart = mStart;
+    }
+
+    @AnyThread
+    static void setMetrics(@Nullable OktaMetrics metrics) {
+        sMetrics = metrics;
+    }
+
+    @AnyThread
+    @Nullable
+    static OktaMetrics getMetrics() {
+        return sMetrics;
+    }
+
+    /**
+     * Starts measuring a request.
+     *
+     * @param endpoint The endpoint which is requested
+     * @return The timer of the request
+     */
+    @AnyThread
+    @NonNull
+    static RequestTimer start(@NonNull OktaMetrics.Endpoint endpoint) {
+        return new RequestTimer(sMetrics, endpoint);
+    }
+
+    @NonNull
+    OktaMetrics.Endpoint getEndpoint() {
+        return mEndpoint;
+    }
+
+    /**
+     * Records that an attempt to send the request starts, e.g. after waiting to retry it.
+     */
+    void startAttempt() {
+        mAttemptStart = System.nanoTime();
+    }
+
+    /**
+     * Records that the connection has been established.
+     *
+     * @param conn The connection
+     */
+    void connected(@NonNull HttpURLConnection conn) {
+        long now = System.nanoTime();
+        AdaptiveTimeouts.getInstance().onConnected(
+                AdaptiveTimeouts.key(conn.getURL()), toMillis(now - mAttemptStart));
+        if (mMetrics != null) {
+            mConnectNanos = now - mStart;
+        }
+    }
+
+    /**
+     * Records that the status line of the response has been received, along with its status
+     * and the length of its body if known.
+     *
+     * @param conn The connection which has received the response
+     * @param statusCode The status code of the response
+     */
+    void responded(@NonNull HttpURLConnection conn, int statusCode) {
+        long now = System.nanoTime();
+        AdaptiveTimeouts.getInstance().onResponded(
+                AdaptiveTimeouts.key(conn.getURL()), toMillis(now - mAttemptStart));
+        if (mMetrics == null) {
+            return;
+        }
+        mTimeToFirstByteNanos = now - mStart;
+        mStatusCode = statusCode;
+        int contentLength = conn.getContentLength();
+        if (contentLength >= 0) {
+            mBytesReceived = contentLength;
+        }
+    }
+
+    /**
+     * Records the outcome of an attempt of a token request made by AppAuth, which reports the
+     * failures before a response as general errors and does not tell when the first byte of a
+     * response arrived, so the whole attempt is taken for the latency of the endpoint.
+     *
+     * @param tokenEndpoint The URI of the token endpoint
+     * @param ex The error of the attempt, or {@code null} if it succeeded
+     */
+    void tokenRequestCompleted(@NonNull Uri tokenEndpoint, @Nullable AuthorizationException ex) {
+        String key = AdaptiveTimeouts.key(tokenEndpoint);
+        if (ex == null || ex.type == AuthorizationException.TYPE_OAUTH_TOKEN_ERROR) {
+            AdaptiveTimeouts.getInstance().onResponded(
+                    key, toMillis(System.nanoTime() - mAttemptStart));
+        } else if (ex.getCause() instanceof SocketTimeoutException) {
+            // AppAuth has used the derived timeouts
+            AdaptiveTimeouts.getInstance().onTimeout(key, Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Records that an attempt has failed before a response was received.
+     *
+     * @param conn The connection of the attempt
+     * @param error The error with which it failed
+     */
+    void failed(@NonNull HttpURLConnection conn, @NonNull IOException error) {
+        if (error instanceof SocketTimeoutException) {
+            AdaptiveTimeouts.getInstance().onTimeout(AdaptiveTimeouts.key(conn.getURL()),
+                    Math.max(conn.getConnectTimeout(), conn.getReadTimeout()));
+        }
+    }
+
+    /**
+     * Records the status of a response which was received by another component.
+     *
+     * @param statusCode The status code
+     */
+    void setStatusCode(int statusCode) {
+        mStatusCode = statusCode;
+    }
+
+    void setBytesSent(long bytesSent) {
+        mBytesSent = bytesSent;
+    }
+
+    void setBytesReceived(long bytesReceived) {
+        mBytesReceived = bytesReceived;
+    }
+
+    void setRetries(int retries) {
+        mRetries = retries;
+    }
+
+    /**
+     * Reports the request.
+     *
+     * @param error The error with which the request failed, or {@code null} if it completed
+     */
+    void finish(@Nullable Throwable error) {
+        if (mMetrics == null) {
+            return;
+        }
+        mMetrics.onRequestCompleted(new RequestMetrics(mEndpoint, mStatusCode,
+                System.nanoTime() - mStart, mConnectNanos, mTimeToFirstByteNanos, mBytesSent,
+                mBytesReceived, mRetries, error));
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -140,38 +140,79 @@ class RevokeTokenRequest {
 
     /**
      * synchronously performs revocation request.
+     *
+     * @param callback The callback to notify of the result
+     * @param deadline The deadline of the operation revoking the token
      */
     @WorkerThread
-    void performRequest(@NonNull RevokeListener callback) {
-
-        try {
-            HttpURLConnection urlConnection = mConnectionBuilder.openConnection(
-                    Uri.parse(mRevokeUrl.toURI().toString()));
-            urlConnection.setDoOutput(true);
-            urlConnection.setInstanceFollowRedirects(false);
-            urlConnection.setChunkedStreamingMode(0);
-            urlConnection.setRequestProperty("Accept", "application/json");
-            urlConnection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-
-            urlConnection.setRequestMethod("POST");
-            urlConnection.connect();
-            int responseCode = urlConnection.getResponseCode();
-            if (responseCode == OK_RESPONSE_CODE) {
-                callback.onSuccess();
-            } else if (responseCode == UNAUTHORIZED_ERROR_CODE) {
-                callback.onError(AuthorizationException.TokenRequestErrors.INVALID_CLIENT);
-            } else {
-                callback.onError(AuthorizationException.TokenRequestErrors.OTHER);
+    void performRequest(@NonNull RevokeListener callback, @NonNull Deadline deadline) {
+
+        HttpURLConnection urlConnection;
+        RateLimitGovernor governor = RateLimitGovernor.getInstance();
+        CircuitBreaker breaker = CircuitBreaker.getInstance();
+        RequestTimer timer = RequestTimer.start(OktaMetrics.Endpoint.REVOKE);
+        // revoking a token again has no further effect
+        RequestRetrier retrier =
+                RequestRetrier.start(timer, RequestRetrier.Idempotency.IDEMPOTENT, deadline);
+        int responseCode;
+        while (true) {
+            urlConnection = null;
+            try {
+                governor.acquire(OktaMetrics.Endpoint.REVOKE, RateLimitGovernor.Priority.USER);
+                breaker.acquire(OktaMetrics.Endpoint.REVOKE);
+                urlConnection = mConnectionBuilder.openConnection(
+                        Uri.parse(mRevokeUrl.toURI().toString()));
+                deadline.limitTimeouts(urlConnection);
+                timer.startAttempt();
+                urlConnection.setDoOutput(true);
+                urlConnection.setInstanceFollowRedirects(false);
+                urlConnection.setChunkedStreamingMode(0);
+                urlConnection.setRequestProperty("Accept", "application/json");
+                urlConnection.setRequestProperty("Content-Type",
+                        "application/x-www-form-urlencoded");
+
+                urlConnection.setRequestMethod("POST");
+                urlConnection.connect();
+                timer.connected(urlConnection);
+                responseCode = urlConnection.getResponseCode();
+                timer.responded(urlConnection, responseCode);
+                governor.onResponse(OktaMetrics.Endpoint.REVOKE, urlConnection, responseCode);
+                breaker.onResponse(OktaMetrics.Endpoint.REVOKE, responseCode);
+                Log.d(TAG, "performRequest: responseCode " + responseCode);
+            } catch (IOException e) {
+                Log.e(TAG, "performRequest: ", e);
+                if (urlConnection != null) {
+                    urlConnection.disconnect();
+                    timer.failed(urlConnection, e);
+                }
+                breaker.onError(OktaMetrics.Endpoint.REVOKE, deadline.attribute(e));
+                if (retrier.retryAfterError(e)) {
+                    continue;
+                }
+                timer.finish(e);
+                callback.onError(AuthorizationException.TokenRequestErrors.INVALID_REQUEST);
+                return;
+            }
+            catch (URISyntaxException e) {
+                Log.e(TAG, "performRequest: ", e);
+                callback.onError(AuthorizationException.TokenRequestErrors.INVALID_REQUEST);
+                return;
+            }
+            if (!retrier.retryAfterResponse(urlConnection, responseCode)) {
+                break;
             }
-
-            Log.d(TAG, "performRequest: responseCode " + urlConnection.getResponseCode());
-        } catch (IOException e) {
-            Log.e(TAG, "performRequest: ", e);
-            callback.onError(AuthorizationException.TokenRequestErrors.INVALID_REQUEST);
         }
-        catch (URISyntaxException e) {
-            Log.e(TAG, "performRequest: ", e);
-            callback.onError(AuthorizationException.TokenRequestErrors.INVALID_REQUEST);
+
+        // released before calling back, so that a following request (e.g. revoking the access
+        // token after the refresh token) can reuse the connection
+        HttpResponses.release(urlConnection);
+        timer.finish(null);
+        if (responseCode == OK_RESPONSE_CODE) {
+            callback.onSuccess();
+        } else if (responseCode == UNAUTHORIZED_ERROR_CODE) {
+            callback.onError(AuthorizationException.TokenRequestErrors.INVALID_CLIENT);
+        } else {
+            callback.onError(AuthorizationException.TokenRequestErrors.OTHER);
         }
     }
 
@@ -16,15 +16,22 @@
 package com.okta.appauth.android;
 
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
 import android.text.TextUtils;
 
+import net.openid.appauth.AuthState;
 import net.openid.appauth.AuthorizationException;
 import net.openid.appauth.AuthorizationRequest;
 import net.openid.appauth.AuthorizationResponse;
 import net.openid.appauth.AuthorizationService;
 import net.openid.appauth.ClientAuthentication;
+import net.openid.appauth.TokenRequest;
 import net.openid.appauth.TokenResponse;
 import net.openid.appauth.connectivity.ConnectionBuilder;
 
@@ -33,36 +40,84 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Exchanges a session token for tokens. The authorization code is requested with blocking I/O,
+ * which holds the calling thread until Okta responds; the code is then exchanged
+ * asynchronously and the flow completes in the callback of the token request, so no thread
+ * waits for the token response. A flow with a deadline which has not completed by then fails
+ * with {@link AuthenticationError#DEADLINE_EXCEEDED}, and a token response arriving afterwards
+ * is ignored. A flow fails fast with {@link AuthenticationError#CIRCUIT_OPEN} while an endpoint
+ * it needs is failing repeatedly.
+ * <p>
+ * Each flow builds its state on a copy of the current state, which is published to the
+ * {@link AuthStateManager} only once the flow has succeeded, so concurrent flows do not see
+ * or overwrite each other's responses. A failed flow only records its error.
+ * </p>
+ */
 class SessionAuthenticationService {
     private static final String SESSION_TOKEN_PARAMETER = "sessionToken";
 
+    /**
+     * The deadline of a flow which may take as long as the requests take.
+     */
+    static final long NO_DEADLINE = Deadline.NO_DEADLINE;
+
     private AuthStateManager mStateManager;
     private AuthorizationService mAuthService;
     private ConnectionBuilder mConnectionBuilder;
+    private Handler mTimeoutHandler;
 
     SessionAuthenticationService(
             AuthStateManager manager,
             AuthorizationService authorizationService,
             ConnectionBuilder connectionBuilder) {
+        this(manager, authorizationService, connectionBuilder,
+                new Handler(Looper.getMainLooper()));
+    }
+
+    @VisibleForTesting
+    SessionAuthenticationService(
+            AuthStateManager manager,
+            AuthorizationService authorizationService,
+            ConnectionBuilder connectionBuilder,
+            Handler timeoutHandler) {
         mStateManager = manager;
         mAuthService = authorizationService;
         mConnectionBuilder = connectionBuilder;
+        mTimeoutHandler = timeoutHandler;
     }
 
+    @WorkerThread
     void performAuthorizationRequest(
             AuthorizationRequest request,
             String sessionToken,
             @Nullable OktaAppAuth.OktaNativeAuthListener listener) {
-        if (sessionToken == null) {
-            if (listener != null) {
-                listener.onTokenFailure(AuthenticationError.createAuthenticationError(
-                        AuthenticationError.INVALID_SESSION_TOKEN,
-                        0));
-            }
+        performAuthorizationRequest(request, sessionToken, NO_DEADLINE, listener);
+    }
 
+    /**
+     * Starts the flow, which completes by calling the listener once.
+     *
+     * @param request The authorization request to which to add the session token
+     * @param sessionToken The session token
+     * @param deadline The {@link SystemClock#elapsedRealtime()} by which the flow has to
+     *     complete, or {@link #NO_DEADLINE}
+     * @param listener The listener to call once the flow has completed
+     */
+    @WorkerThread
+    void performAuthorizationRequest(
+            AuthorizationRequest request,
+            String sessionToken,
+            long deadline,
+            @Nullable OktaAppAuth.OktaNativeAuthListener listener) {
+        Completion completion =
+                new Completion(mStateManager.getSnapshot().copyState(), listener, deadline);
+        if (sessionToken == null) {
+            completion.fail(AuthenticationError.createAuthenticationError(
+                    AuthenticationError.INVALID_SESSION_TOKEN,
+                    0));
             return;
         }
 
@@ -82,36 +137,29 @@ class SessionAuthenticationService {
                 .setAdditionalParameters(additionalParameters);
 
         AuthenticationResult<AuthorizationResponse> authorizationResult = getAuthorizationCode(
-                authRequestBuilder.build());
+                authRequestBuilder.build(), completion);
+        if (completion.isExpired()) {
+            completion.failDeadlineExceeded();
+            return;
+        }
         if (authorizationResult.getResponse() == null ||
                 authorizationResult.getResponse().authorizationCode == null) {
-            if (listener != null) {
-                listener.onTokenFailure(authorizationResult.getException());
-            }
+            completion.fail(authorizationResult.getException());
             return;
         }
 
-        AuthenticationResult<TokenResponse> tokenResponse = exchangeCodeForTokens(
-                authorizationResult.getResponse());
-        if (!mStateManager.getCurrent().isAuthorized()) {
-            if (listener != null) {
-                listener.onTokenFailure(tokenResponse.getException());
-            }
-        } else {
-            if (listener != null) {
-                listener.onSuccess();
-            }
-        }
+        exchangeCodeForTokens(authorizationResult.getResponse(), completion);
     }
 
     @NonNull
     private AuthenticationResult<AuthorizationResponse> getAuthorizationCode(
-            final AuthorizationRequest request) {
+            final AuthorizationRequest request, @NonNull Completion completion) {
         HttpURLConnection conn = null;
+        boolean responded = false;
+        RequestTimer timer = RequestTimer.start(OktaMetrics.Endpoint.AUTHORIZE);
         try {
-            conn = mConnectionBuilder.openConnection(request.toUri());
-            conn.setInstanceFollowRedirects(false);
-
+            conn = requestAuthorizationCode(request, completion, timer);
+            responded = true;
 
             if (conn.getResponseCode() != HttpURLConnection.HTTP_MOVED_TEMP ||
                     (conn.getHeaderField("Location") == null ||
@@ -146,7 +194,7 @@ class SessionAuthenticationService {
                     .setState(state)
                     .build();
 
-            mStateManager.updateAfterAuthorization(authorizationResponse, null);
+            completion.getState().update(authorizationResponse, null);
             return new AuthenticationResult<AuthorizationResponse>(
                     authorizationResponse, null);
         } catch (MalformedURLException ex) {
@@ -158,61 +206,206 @@ class SessionAuthenticationService {
                     null, AuthenticationError.createAuthenticationError(ex));
         } catch (IOException ex) {
             ex.printStackTrace();
+            if (!responded) {
+                timer.finish(ex);
+            }
             mStateManager.updateAfterAuthorization(
                     null,
                     AuthorizationException.AuthorizationRequestErrors.byString(ex.getMessage()));
             return new AuthenticationResult<AuthorizationResponse>(
                     null,
-                    AuthenticationError.createAuthenticationError(ex));
+                    ex instanceof CircuitOpenException
+                            ? AuthenticationError.createAuthenticationError(
+                                    AuthenticationError.CIRCUIT_OPEN, 0)
+                            : AuthenticationError.createAuthenticationError(ex));
         } finally {
-            if (conn != null) {
+            if (responded) {
+                // lets the connection be reused for exchanging the code
+                HttpResponses.release(conn);
+                timer.finish(null);
+            } else if (conn != null) {
                 conn.disconnect();
             }
         }
     }
 
+    /*
+     * Sends the authorization request, retrying it only while no response has been received:
+     * once Okta has responded, the session token may have been used up.
+     */
     @NonNull
-    private AuthenticationResult<TokenResponse> exchangeCodeForTokens(
-            final AuthorizationResponse authorizationResponse) {
-        final CountDownLatch countDownLatch = new CountDownLatch(1);
-        final AtomicReference<AuthenticationResult> result =
-                new AtomicReference<AuthenticationResult>(null);
+    private HttpURLConnection requestAuthorizationCode(
+            @NonNull AuthorizationRequest request, @NonNull Completion completion,
+            @NonNull RequestTimer timer) throws IOException {
+        RateLimitGovernor governor = RateLimitGovernor.getInstance();
+        CircuitBreaker breaker = CircuitBreaker.getInstance();
+        RequestRetrier retrier =
+                RequestRetrier.start(timer, RequestRetrier.Idempotency.BEFORE_RESPONSE,
+                        completion.getDeadline());
+        while (true) {
+            governor.acquire(OktaMetrics.Endpoint.AUTHORIZE, RateLimitGovernor.Priority.USER);
+            breaker.acquire(OktaMetrics.Endpoint.AUTHORIZE);
+            HttpURLConnection conn = mConnectionBuilder.openConnection(request.toUri());
+            timer.startAttempt();
+            try {
+                conn.setInstanceFollowRedirects(false);
+                completion.limitTimeouts(conn);
+                int responseCode = conn.getResponseCode();
+                timer.responded(conn, responseCode);
+                governor.onResponse(OktaMetrics.Endpoint.AUTHORIZE, conn, responseCode);
+                breaker.onResponse(OktaMetrics.Endpoint.AUTHORIZE, responseCode);
+                return conn;
+            } catch (IOException ex) {
+                conn.disconnect();
+                timer.failed(conn, ex);
+                breaker.onError(OktaMetrics.Endpoint.AUTHORIZE,
+                        completion.getDeadline().attribute(ex));
+                if (completion.isExpired() || !retrier.retryAfterError(ex)) {
+                    throw ex;
+                }
+            }
+        }
+    }
 
+    private void exchangeCodeForTokens(
+            final AuthorizationResponse authorizationResponse,
+            @NonNull final Completion completion) {
+        ClientAuthentication clientAuthentication;
         try {
-            ClientAuthentication clientAuthentication = mStateManager.getCurrent()
-                    .getClientAuthentication();
-            mAuthService.performTokenRequest(
-                    authorizationResponse.createTokenExchangeRequest(),
-                    clientAuthentication,
-                    new AuthorizationService.TokenResponseCallback() {
-                        @Override
-                        public void onTokenRequestCompleted(@Nullable TokenResponse response,
-                                                            @Nullable AuthorizationException ex) {
-                            mStateManager.updateAfterTokenResponse(response, ex);
-                            AuthenticationResult<TokenResponse> authenticationResult =
-                                    new AuthenticationResult<TokenResponse>(
-                                            response,
-                                            (ex != null ?
-                                                    AuthenticationError
-                                                            .createAuthenticationError(ex) : null));
-                            result.compareAndSet(null, authenticationResult);
-                            countDownLatch.countDown();
-                        }
-                    });
-            countDownLatch.await();
-            return result.get();
+            clientAuthentication = completion.getState().getClientAuthentication();
         } catch (ClientAuthentication.UnsupportedAuthenticationMethod ex) {
             mStateManager.updateAfterTokenResponse(
                     null,
                     AuthorizationException.TokenRequestErrors.byString(ex.getMessage()));
-            return new AuthenticationResult<TokenResponse>(
-                    null, AuthenticationError.createAuthenticationError(ex));
-        } catch (InterruptedException ex) {
-            mStateManager.updateAfterTokenResponse(
-                    null,
-                    AuthorizationException.TokenRequestErrors.byString(ex.getMessage()));
-            return new AuthenticationResult<TokenResponse>(
-                    null, AuthenticationError.createAuthenticationError(ex));
+            completion.fail(AuthenticationError.createAuthenticationError(ex));
+            return;
+        }
+
+        try {
+            CircuitBreaker.getInstance().acquire(OktaMetrics.Endpoint.TOKEN);
+        } catch (CircuitOpenException ex) {
+            completion.fail(AuthenticationError.createAuthenticationError(
+                    AuthenticationError.CIRCUIT_OPEN, 0));
+            return;
+        }
+
+        completion.scheduleTimeout();
+        // never retried, as an authorization code can only be exchanged once
+        final RequestTimer timer = RequestTimer.start(OktaMetrics.Endpoint.TOKEN);
+        final TokenRequest request = authorizationResponse.createTokenExchangeRequest();
+        mAuthService.performTokenRequest(
+                request,
+                clientAuthentication,
+                new AuthorizationService.TokenResponseCallback() {
+                    @Override
+                    public void onTokenRequestCompleted(@Nullable TokenResponse response,
+                                                        @Nullable AuthorizationException ex) {
+                        timer.tokenRequestCompleted(request.configuration.tokenEndpoint, ex);
+                        timer.finish(ex);
+                        CircuitBreaker.getInstance().onTokenResponse(ex);
+                        if (!completion.claim()) {
+                            // the caller has been told that the deadline was exceeded
+                            return;
+                        }
+
+                        AuthState state = completion.getState();
+                        state.update(response, ex);
+                        if (state.isAuthorized()) {
+                            mStateManager.replace(state);
+                            completion.notifySuccess();
+                        } else {
+                            mStateManager.updateAfterTokenResponse(null, ex);
+                            completion.notifyFailure(ex != null
+                                    ? AuthenticationError.createAuthenticationError(ex) : null);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Completes a flow exactly once, either with the result of its last step or when its
+     * deadline is exceeded.
+     */
+    private final class Completion implements Runnable {
+        private final AuthState mState;
+        private final OktaAppAuth.OktaNativeAuthListener mListener;
+        private final Deadline mDeadline;
+        private final AtomicBoolean mCompleted = new AtomicBoolean();
+
+        Completion(@NonNull AuthState state,
+                   @Nullable OktaAppAuth.OktaNativeAuthListener listener, long deadline) {
+            mState = state;
+            mListener = listener;
+            mDeadline = Deadline.at(deadline);
+        }
+
+        /**
+         * Returns the state of the flow, which only the flow modifies.
+         */
+        @NonNull
+        AuthState getState() {
+            return mState;
+        }
+
+        @NonNull
+        Deadline getDeadline() {
+            return mDeadline;
+        }
+
+        boolean isExpired() {
+            return mDeadline.isExpired();
+        }
+
+        void limitTimeouts(@NonNull HttpURLConnection conn) {
+            mDeadline.limitTimeouts(conn);
+        }
+
+        void scheduleTimeout() {
+            if (mDeadline.getTime() != NO_DEADLINE) {
+                mTimeoutHandler.postDelayed(this, mDeadline.getRemainingMs());
+            }
+        }
+
+        /**
+         * Claims the completion of the flow.
+         *
+         * @return {@code true} if the caller has to notify the listener; {@code false} if the
+         *     flow has already completed
+         */
+        boolean claim() {
+            if (!mCompleted.compareAndSet(false, true)) {
+                return false;
+            }
+            mTimeoutHandler.removeCallbacks(this);
+            return true;
+        }
+
+        void fail(@Nullable AuthenticationError error) {
+            if (claim()) {
+                notifyFailure(error);
+            }
+        }
+
+        void failDeadlineExceeded() {
+            fail(AuthenticationError.createAuthenticationError(
+                    AuthenticationError.DEADLINE_EXCEEDED, 0));
+        }
+
+        void notifySuccess() {
+            if (mListener != null) {
+                mListener.onSuccess();
+            }
+        }
+
+        void notifyFailure(@Nullable AuthenticationError error) {
+            if (mListener != null) {
+                mListener.onTokenFailure(error);
+            }
+        }
+
+        @Override
+        public void run() {
+            failDeadlineExceeded();
         }
     }
 
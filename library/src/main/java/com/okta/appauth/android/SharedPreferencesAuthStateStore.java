@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+/**
+ * Stores the records of an {@link AuthStateManager} in {@link SharedPreferences}. This is the
+ * default store. The configuration record is kept in its own preference file, so that the
+ * frequently updated token record can be committed without rewriting it.
+ */
+public final class SharedPreferencesAuthStateStore implements AuthStateStore {
+
+    private static final String ACCOUNT_SEPARATOR = ".";
+
+    private final SharedPreferences mPrefs;
+    private final SharedPreferences mConfigPrefs;
+
+    /**
+     * Creates a store using the {@link SharedPreferences} that we get from the
+     * {@link Context#getSharedPreferences(String, int)} in {@link Context#MODE_PRIVATE}.
+     *
+     * @param context The Context from which to get the application's environment
+     */
+    public SharedPreferencesAuthStateStore(@NonNull Context context) {
+        this(context.getSharedPreferences(AuthStateManager.PREFS_NAME, Context.MODE_PRIVATE),
+                context.getSharedPreferences(
+                        AuthStateManager.CONFIG_PREFS_NAME, Context.MODE_PRIVATE));
+    }
+
+    /**
+     * Creates a store for one of several accounts. The records of each account are kept in
+     * their own {@link SharedPreferences} files, named after the account.
+     *
+     * @param context The Context from which to get the application's environment
+     * @param accountId The identifier of the account
+     */
+    public SharedPreferencesAuthStateStore(@NonNull Context context, @NonNull String accountId) {
+        this(getAccountPrefs(context, AuthStateManager.PREFS_NAME, accountId),
+                getAccountPrefs(context, AuthStateManager.CONFIG_PREFS_NAME, accountId));
+    }
+
+    SharedPreferencesAuthStateStore(
+            @NonNull SharedPreferences prefs,
+            @NonNull SharedPreferences configPrefs) {
+        mPrefs = prefs;
+        mConfigPrefs = configPrefs;
+    }
+
+    @WorkerThread
+    @Nullable
+    @Override
+    public String read(@NonNull String key) {
+        return getPrefs(key).getString(key, null);
+    }
+
+    @WorkerThread
+    @Override
+    public void write(@NonNull String key, @Nullable String value) {
+        SharedPreferences.Editor editor = getPrefs(key).edit();
+        if (value == null) {
+            editor.remove(key);
+        } else {
+            editor.putString(key, value);
+        }
+
+        if (!editor.commit()) {
+            throw new IllegalStateException("Failed to write state to shared prefs");
+        }
+    }
+
+    private static SharedPreferences getAccountPrefs(
+            @NonNull Context context,
+            @NonNull String name,
+            @NonNull String accountId) {
+        return context.getSharedPreferences(
+                name + ACCOUNT_SEPARATOR + Uri.encode(accountId), Context.MODE_PRIVATE);
+    }
+
+    @NonNull
+    private SharedPreferences getPrefs(@NonNull String key) {
+        return AuthStateManager.KEY_CONFIG.equals(key) ? mConfigPrefs : mPrefs;
+    }
+}
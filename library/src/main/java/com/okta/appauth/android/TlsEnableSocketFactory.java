@@ -15,6 +15,8 @@
 
 package com.okta.appauth.android;
 
+import android.support.annotation.VisibleForTesting;
+
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
@@ -23,13 +25,28 @@ import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 
 /**
+ * <p>
  * SSLSocketFactory which wraps default SSLSocketFactory and enable TLS v1.2.
+ * </p>
+ * <p>
+ * TLS sessions are cached by the factory's {@link SSLContext}, so connections made through the
+ * same factory to a host it connected to before resume the session instead of performing a
+ * full handshake. Use {@link TlsProvider#getSocketFactory()} to share one factory in the
+ * process.
+ * </p>
  */
 public class TlsEnableSocketFactory extends SSLSocketFactory {
+
+    @VisibleForTesting
+    static final int SESSION_CACHE_SIZE = 32;
+    @VisibleForTesting
+    static final int SESSION_TIMEOUT_SECONDS = 24 * 60 * 60;
+
     private SSLSocketFactory mInternalSslSocketFactory;
     private String[] mProtocolsToEnable = {"TLSv1.2"};
 
@@ -40,8 +57,24 @@ public class TlsEnableSocketFactory extends SSLSocketFactory {
      * @throws NoSuchAlgorithmException when get SSLContext
      */
     public TlsEnableSocketFactory() throws KeyManagementException, NoSuchAlgorithmException {
-        SSLContext context = SSLContext.getInstance("TLS");
+        this(SSLContext.getInstance("TLS"));
+    }
+
+    /**
+     * Constructs an TlsEnableSocketFactory object creating its sockets with the given context.
+     * The context is initialized with the default key and trust managers, and its client
+     * session cache is configured for resumption.
+     *
+     * @param context The SSLContext which is not initialized yet
+     * @throws KeyManagementException if init operation fails
+     */
+    public TlsEnableSocketFactory(SSLContext context) throws KeyManagementException {
         context.init(null, null, null);
+        SSLSessionContext sessionContext = context.getClientSessionContext();
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(SESSION_CACHE_SIZE);
+            sessionContext.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+        }
         mInternalSslSocketFactory = context.getSocketFactory();
     }
 
@@ -16,9 +16,12 @@
 package com.okta.appauth.android;
 
 import android.os.Build;
+import android.support.annotation.AnyThread;
 import android.util.Log;
 
 import java.net.HttpURLConnection;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.net.ssl.HttpsURLConnection;
 
@@ -29,6 +32,27 @@ public class TlsProvider {
 
     private static final String TAG = "TlsProvider";
 
+    private static final AtomicReference<TlsEnableSocketFactory> SOCKET_FACTORY =
+            new AtomicReference<>();
+
+    /**
+     * Returns the {@link TlsEnableSocketFactory} shared by all connections in the process. As
+     * it keeps a single TLS session cache, repeated connections to the same host resume their
+     * session instead of performing a full handshake.
+     *
+     * @return the shared socket factory
+     * @throws GeneralSecurityException if the factory cannot be created
+     */
+    @AnyThread
+    public static TlsEnableSocketFactory getSocketFactory() throws GeneralSecurityException {
+        TlsEnableSocketFactory factory = SOCKET_FACTORY.get();
+        if (factory == null) {
+            SOCKET_FACTORY.compareAndSet(null, new TlsEnableSocketFactory());
+            factory = SOCKET_FACTORY.get();
+        }
+        return factory;
+    }
+
     /**
      * checking current version of Android and set set {@link TlsEnableSocketFactory} if < 20.
      *
@@ -39,7 +63,7 @@ public class TlsProvider {
                 Build.VERSION.SDK_INT <= Build.VERSION_CODES.LOLLIPOP ) {
             try {
                 ((HttpsURLConnection)urlConnection)
-                        .setSSLSocketFactory(new TlsEnableSocketFactory());
+                        .setSSLSocketFactory(getSocketFactory());
             } catch (Exception e) {
                 Log.e(TAG, Log.getStackTraceString(e));
             }
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+/**
+ * The token lifecycle events delivered to an {@link OktaAppAuth.OktaTokenListener}.
+ */
+public enum TokenEvent {
+    /**
+     * A new access token was obtained, either by signing in or by refreshing the tokens.
+     */
+    REFRESHED,
+
+    /**
+     * The current access token has reached its expiration time.
+     */
+    EXPIRED,
+
+    /**
+     * The tokens were revoked at the authorization server.
+     */
+    REVOKED,
+
+    /**
+     * The tokens were discarded from the stored state, e.g. by
+     * {@link OktaAppAuth#clearSession()}.
+     */
+    CLEARED,
+
+    /**
+     * The stored state was discarded because the client configuration has changed; the
+     * library has to be initialized again.
+     */
+    CONFIGURATION_INVALIDATED
+}
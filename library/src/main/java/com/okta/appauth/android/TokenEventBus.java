@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.text.TextUtils;
+import android.util.Log;
+
+import net.openid.appauth.AuthState;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ * Delivers {@link TokenEvent}s to registered {@link OktaAppAuth.OktaTokenListener}s, so that
+ * callers no longer have to poll the state of {@link OktaAppAuth}.
+ * </p>
+ * <p>
+ * The events are derived from the snapshots published by the {@link AuthStateManager} of the
+ * active account. Expiration is tracked with a timer on the main thread, which only runs while
+ * listeners are registered.
+ * </p>
+ * <p>
+ * Each listener is called on the executor it was registered with. Events which occur before a
+ * listener's previous delivery has run are coalesced, so a listener receives every distinct
+ * event once per delivery. Listeners are only weakly referenced and have to be kept reachable
+ * by the caller; a listener which has been garbage collected is dropped silently.
+ * </p>
+ */
+public final class TokenEventBus implements AuthStateManager.SnapshotListener {
+
+    private static final String TAG = "TokenEventBus";
+
+    private final CopyOnWriteArrayList<Registration> mRegistrations =
+            new CopyOnWriteArrayList<>();
+    private final AtomicReference<AuthStateManager> mManager = new AtomicReference<>();
+    private final AtomicReference<ExpiryTask> mExpiry = new AtomicReference<>();
+    private final Handler mHandler;
+    private final Executor mMainExecutor;
+
+    TokenEventBus() {
+        this(new Handler(Looper.getMainLooper()));
+    }
+
+    @VisibleForTesting
+    TokenEventBus(@NonNull Handler handler) {
+        mHandler = handler;
+        mMainExecutor = new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                mHandler.post(command);
+            }
+        };
+    }
+
+    /**
+     * Derives the events from the state of the given manager instead of the one attached
+     * before, e.g. when switching accounts.
+     *
+     * @param manager The manager of the active account
+     */
+    @AnyThread
+    void attach(@NonNull AuthStateManager manager) {
+        AuthStateManager previous = mManager.getAndSet(manager);
+        if (previous == manager) {
+            return;
+        }
+        if (previous != null) {
+            previous.removeSnapshotListener(this);
+        }
+        manager.addSnapshotListener(this);
+        if (!mRegistrations.isEmpty()) {
+            scheduleExpiry(manager.getCurrent());
+        }
+    }
+
+    /**
+     * Registers a listener which is called on the main thread.
+     *
+     * @param listener The listener, which has to be kept reachable by the caller
+     */
+    @AnyThread
+    void addListener(@NonNull OktaAppAuth.OktaTokenListener listener) {
+        addListener(listener, mMainExecutor);
+    }
+
+    /**
+     * Registers a listener which is called on the given executor. Registering a listener again
+     * has no effect.
+     *
+     * @param listener The listener, which has to be kept reachable by the caller
+     * @param executor The executor to call the listener on
+     */
+    @AnyThread
+    void addListener(@NonNull OktaAppAuth.OktaTokenListener listener,
+                     @NonNull Executor executor) {
+        boolean first;
+        synchronized (mRegistrations) {
+            if (find(listener) != null) {
+                return;
+            }
+            first = mRegistrations.isEmpty();
+            mRegistrations.add(new Registration(listener, executor));
+        }
+
+        AuthStateManager manager = mManager.get();
+        if (first && manager != null) {
+            scheduleExpiry(manager.getCurrent());
+        }
+    }
+
+    /**
+     * Unregisters a listener. Deliveries which are already scheduled are not cancelled.
+     *
+     * @param listener The listener to remove
+     */
+    @AnyThread
+    void removeListener(@NonNull OktaAppAuth.OktaTokenListener listener) {
+        synchronized (mRegistrations) {
+            Registration registration = find(listener);
+            if (registration != null) {
+                mRegistrations.remove(registration);
+            }
+            if (mRegistrations.isEmpty()) {
+                cancelExpiry();
+            }
+        }
+    }
+
+    /**
+     * Delivers an event to the registered listeners.
+     *
+     * @param event The event
+     */
+    @AnyThread
+    void post(@NonNull TokenEvent event) {
+        for (Registration registration : mRegistrations) {
+            if (registration.mListener.get() == null) {
+                mRegistrations.remove(registration);
+            } else {
+                registration.enqueue(event);
+            }
+        }
+    }
+
+    @Override
+    public void onSnapshotPublished(@Nullable AuthStateSnapshot previous,
+                                    @NonNull AuthStateSnapshot current) {
+        if (mRegistrations.isEmpty()) {
+            return;
+        }
+
+        TokenEvent event = deriveEvent(previous == null ? null : previous.getState(),
+                current.getState());
+        if (event != null) {
+            post(event);
+        }
+        scheduleExpiry(current.getState());
+    }
+
+    @Nullable
+    @VisibleForTesting
+    static TokenEvent deriveEvent(@Nullable AuthState previous, @NonNull AuthState current) {
+        String accessToken = current.getAccessToken();
+        if (previous == null) {
+            return accessToken != null ? TokenEvent.REFRESHED : null;
+        }
+
+        boolean hadTokens = previous.getAccessToken() != null
+                || previous.getRefreshToken() != null;
+        if (previous.getAuthorizationServiceConfiguration() != null
+                && current.getAuthorizationServiceConfiguration() == null) {
+            return TokenEvent.CONFIGURATION_INVALIDATED;
+        } else if (hadTokens && accessToken == null && current.getRefreshToken() == null) {
+            return TokenEvent.CLEARED;
+        } else if (accessToken != null
+                && !TextUtils.equals(accessToken, previous.getAccessToken())) {
+            return TokenEvent.REFRESHED;
+        }
+        return null;
+    }
+
+    @Nullable
+    private Registration find(@NonNull OktaAppAuth.OktaTokenListener listener) {
+        for (Registration registration : mRegistrations) {
+            OktaAppAuth.OktaTokenListener registered = registration.mListener.get();
+            if (registered == null) {
+                mRegistrations.remove(registration);
+            } else if (registered == listener) {
+                return registration;
+            }
+        }
+        return null;
+    }
+
+    @AnyThread
+    private void scheduleExpiry(@NonNull AuthState state) {
+        Long expiration = state.getAccessTokenExpirationTime();
+        ExpiryTask task = state.getAccessToken() != null && expiration != null
+                ? new ExpiryTask() : null;
+        ExpiryTask previous = mExpiry.getAndSet(task);
+        if (previous != null) {
+            mHandler.removeCallbacks(previous);
+        }
+        if (task != null) {
+            mHandler.postDelayed(task, Math.max(0, expiration - System.currentTimeMillis()));
+        }
+    }
+
+    @AnyThread
+    private void cancelExpiry() {
+        ExpiryTask previous = mExpiry.getAndSet(null);
+        if (previous != null) {
+            mHandler.removeCallbacks(previous);
+        }
+    }
+
+    private final class ExpiryTask implements Runnable {
+        @Override
+        public void run() {
+            // a task which was replaced while already running must not report its token
+            if (mExpiry.compareAndSet(this, null)) {
+                post(TokenEvent.EXPIRED);
+            }
+        }
+    }
+
+    private static final class Registration implements Runnable {
+
+        private final WeakReference<OktaAppAuth.OktaTokenListener> mListener;
+        private final Executor mExecutor;
+
+        // guarded by this
+        private final Set<TokenEvent> mPending = new LinkedHashSet<>();
+        private boolean mScheduled;
+
+        private Registration(@NonNull OktaAppAuth.OktaTokenListener listener,
+                             @NonNull Executor executor) {
+            mListener = new WeakReference<>(listener);
+            mExecutor = executor;
+        }
+
+        private void enqueue(@NonNull TokenEvent event) {
+            synchronized (this) {
+                mPending.add(event);
+                if (mScheduled) {
+                    return;
+                }
+                mScheduled = true;
+            }
+
+            try {
+                mExecutor.execute(this);
+            } catch (RejectedExecutionException ex) {
+                Log.w(TAG, "Executor rejected token event delivery", ex);
+                synchronized (this) {
+                    mPending.clear();
+                    mScheduled = false;
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            List<TokenEvent> events;
+            synchronized (this) {
+                events = new ArrayList<>(mPending);
+                mPending.clear();
+                mScheduled = false;
+            }
+
+            OktaAppAuth.OktaTokenListener listener = mListener.get();
+            if (listener == null) {
+                return;
+            }
+            for (TokenEvent event : events) {
+                listener.onTokenEvent(event);
+            }
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import net.openid.appauth.AuthState;
+import net.openid.appauth.AuthorizationException;
+import net.openid.appauth.AuthorizationService;
+import net.openid.appauth.ClientAuthentication;
+import net.openid.appauth.ClientAuthentication.UnsupportedAuthenticationMethod;
+import net.openid.appauth.TokenRequest;
+import net.openid.appauth.TokenResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Coalesces concurrent token refreshes, so that at most one token request is in flight for
+ * each token state. Callers asking for a refresh while one is in flight for the same account
+ * and refresh token wait for it and share its result instead of sending a request of their own,
+ * which would count against the rate limit of the authorization server and, with refresh token
+ * rotation, invalidate the tokens obtained by the other requests.
+ * </p>
+ * <p>
+ * The response is applied to the account's {@link AuthStateManager} once, before any of the
+ * waiting callers is notified. A caller arriving after that reads the updated state, so it
+ * neither joins a completed refresh nor refreshes with a rotated refresh token.
+ * </p>
+ * <p>
+ * A token request which fails before a response has arrived is retried according to the
+ * {@link OktaRetryPolicy}, while the callers keep waiting for it. While the token endpoint is
+ * failing repeatedly, refreshes fail fast with a
+ * {@link AuthorizationException.GeneralErrors#NETWORK_ERROR} caused by a
+ * {@link CircuitOpenException}.
+ * </p>
+ */
+public final class TokenRefreshCoordinator {
+
+    private static final String TAG = "TokenRefresh";
+
+    private final Map<FlightKey, List<RefreshCallback>> mFlights = new HashMap<>();
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mCoalescedCount = new AtomicLong();
+    private final AtomicLong mSkippedCount = new AtomicLong();
+    private final Handler mHandler;
+
+    /**
+     * Creates a coordinator which schedules the retries of failed refreshes on the main thread.
+     */
+    public TokenRefreshCoordinator() {
+        this(new Handler(Looper.getMainLooper()));
+    }
+
+    @VisibleForTesting
+    TokenRefreshCoordinator(@NonNull Handler handler) {
+        mHandler = handler;
+    }
+
+    /**
+     * Called with the result of a refresh.
+     */
+    interface RefreshCallback {
+        /**
+         * Called once the refresh has completed.
+         *
+         * @param accessToken The current access token, or {@code null} if the refresh failed
+         * @param ex The error which occurred during the refresh, or {@code null} if it succeeded
+         */
+        void onRefreshCompleted(@Nullable String accessToken,
+                                @Nullable AuthorizationException ex);
+    }
+
+    /**
+     * Refreshes the tokens of the given account, unless it holds a fresh access token and the
+     * refresh is not forced. If a refresh of the same tokens is already in flight, the callback
+     * is called with its result instead.
+     *
+     * @param manager The manager of the account whose tokens to refresh
+     * @param service The service with which to send the token request
+     * @param force {@code true} to refresh even if the access token has not expired
+     * @param callback The callback to call once the tokens have been refreshed
+     */
+    @AnyThread
+    void refresh(@NonNull final AuthStateManager manager,
+                 @NonNull final AuthorizationService service,
+                 boolean force,
+                 @NonNull RefreshCallback callback) {
+        final FlightKey key;
+        AuthState state;
+        boolean skipped = false;
+        synchronized (mFlights) {
+            state = manager.getCurrent();
+            if (!force && !state.getNeedsTokenRefresh()) {
+                mSkippedCount.incrementAndGet();
+                skipped = true;
+                key = null;
+            } else {
+                key = new FlightKey(manager, state.getRefreshToken());
+                List<RefreshCallback> waiters = mFlights.get(key);
+                if (waiters != null) {
+                    mCoalescedCount.incrementAndGet();
+                    waiters.add(callback);
+                    return;
+                }
+
+                waiters = new ArrayList<>();
+                waiters.add(callback);
+                mFlights.put(key, waiters);
+            }
+        }
+
+        // callbacks are never called while holding the lock
+        if (skipped) {
+            callback.onRefreshCompleted(state.getAccessToken(), null);
+            return;
+        }
+
+        ClientAuthentication clientAuthentication;
+        try {
+            clientAuthentication = state.getClientAuthentication();
+        } catch (UnsupportedAuthenticationMethod ex) {
+            Log.e(TAG, "Token request cannot be made; client authentication for the token "
+                    + "endpoint could not be constructed", ex);
+            complete(key, null, AuthorizationException.TokenRequestErrors.INVALID_REQUEST);
+            return;
+        }
+
+        try {
+            CircuitBreaker.getInstance().acquire(OktaMetrics.Endpoint.TOKEN);
+        } catch (CircuitOpenException ex) {
+            complete(key, null, AuthorizationException.fromTemplate(
+                    AuthorizationException.GeneralErrors.NETWORK_ERROR, ex));
+            return;
+        }
+
+        final TokenRequest request;
+        try {
+            request = state.createTokenRefreshRequest();
+        } catch (IllegalStateException ex) {
+            // there is no refresh token
+            complete(key, null, AuthorizationException.fromTemplate(
+                    AuthorizationException.TokenRequestErrors.INVALID_REQUEST, ex));
+            return;
+        }
+
+        mRequestCount.incrementAndGet();
+        final ClientAuthentication authentication = clientAuthentication;
+        final RequestTimer timer = RequestTimer.start(OktaMetrics.Endpoint.TOKEN);
+        // with refresh token rotation, a response invalidates the refresh token sent
+        final RequestRetrier retrier =
+                RequestRetrier.start(timer, RequestRetrier.Idempotency.BEFORE_RESPONSE);
+        try {
+            performTokenRequest(manager, key, service, request, authentication, timer, retrier);
+        } catch (IllegalStateException ex) {
+            // the service has been disposed of
+            complete(key, null, AuthorizationException.fromTemplate(
+                    AuthorizationException.GeneralErrors.PROGRAM_CANCELED_AUTH_FLOW, ex));
+        }
+    }
+
+    private void performTokenRequest(@NonNull final AuthStateManager manager,
+                                     @NonNull final FlightKey key,
+                                     @NonNull final AuthorizationService service,
+                                     @NonNull final TokenRequest request,
+                                     @NonNull final ClientAuthentication authentication,
+                                     @NonNull final RequestTimer timer,
+                                     @NonNull final RequestRetrier retrier) {
+        service.performTokenRequest(request, authentication,
+                new AuthorizationService.TokenResponseCallback() {
+                    @Override
+                    public void onTokenRequestCompleted(@Nullable TokenResponse response,
+                                                        @Nullable AuthorizationException ex) {
+                        timer.tokenRequestCompleted(request.configuration.tokenEndpoint, ex);
+                        CircuitBreaker.getInstance().onTokenResponse(ex);
+                        // AppAuth reports the failures which occur before a response as
+                        // network errors
+                        long delay = OktaRetryPolicy.NO_RETRY;
+                        if (AuthorizationException.GeneralErrors.NETWORK_ERROR.equals(ex)) {
+                            delay = retrier.getRetryDelayMs(
+                                    RequestRetrier.NO_RESPONSE, ex.getCause());
+                        }
+                        if (delay >= 0) {
+                            retry(service, request, authentication, timer, this, delay);
+                            return;
+                        }
+                        timer.finish(ex);
+                        AuthState updated = manager.updateAfterTokenResponse(response, ex);
+                        complete(key, ex == null ? updated.getAccessToken() : null, ex);
+                    }
+                });
+    }
+
+    private void retry(@NonNull final AuthorizationService service,
+                       @NonNull final TokenRequest request,
+                       @NonNull final ClientAuthentication authentication,
+                       @NonNull final RequestTimer timer,
+                       @NonNull final AuthorizationService.TokenResponseCallback callback,
+                       long delayMs) {
+        mHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    CircuitBreaker.getInstance().acquire(OktaMetrics.Endpoint.TOKEN);
+                    timer.startAttempt();
+                    service.performTokenRequest(request, authentication, callback);
+                } catch (CircuitOpenException ex) {
+                    callback.onTokenRequestCompleted(null, AuthorizationException.fromTemplate(
+                            AuthorizationException.GeneralErrors.NETWORK_ERROR, ex));
+                } catch (IllegalStateException ex) {
+                    // the service has been disposed of meanwhile
+                    callback.onTokenRequestCompleted(null, AuthorizationException.fromTemplate(
+                            AuthorizationException.GeneralErrors.PROGRAM_CANCELED_AUTH_FLOW, ex));
+                }
+            }
+        }, delayMs);
+    }
+
+    private void complete(@NonNull FlightKey key, @Nullable String accessToken,
+                          @Nullable AuthorizationException ex) {
+        List<RefreshCallback> waiters;
+        synchronized (mFlights) {
+            waiters = mFlights.remove(key);
+        }
+
+        if (waiters == null) {
+            return;
+        }
+        for (RefreshCallback waiter : waiters) {
+            waiter.onRefreshCompleted(accessToken, ex);
+        }
+    }
+
+    /**
+     * Returns the number of token requests which have been sent.
+     *
+     * @return The number of token requests
+     */
+    @AnyThread
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * Returns the number of callers which waited for a refresh that was already in flight
+     * instead of sending a token request.
+     *
+     * @return The number of coalesced callers
+     */
+    @AnyThread
+    public long getCoalescedCount() {
+        return mCoalescedCount.get();
+    }
+
+    /**
+     * Returns the number of callers which did not need a refresh, because the access token was
+     * still fresh.
+     *
+     * @return The number of skipped refreshes
+     */
+    @AnyThread
+    public long getSkippedCount() {
+        return mSkippedCount.get();
+    }
+
+    /**
+     * Returns the number of refreshes currently in flight.
+     *
+     * @return The number of refreshes in flight
+     */
+    @AnyThread
+    public int getInFlightCount() {
+        synchronized (mFlights) {
+            return mFlights.size();
+        }
+    }
+
+    private static final class FlightKey {
+
+        private static final int HASH_MULTIPLIER = 31;
+
+        private final AuthStateManager mManager;
+        private final String mRefreshToken;
+
+        private FlightKey(@NonNull AuthStateManager manager, @Nullable String refreshToken) {
+            mManager = manager;
+            mRefreshToken = refreshToken;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof FlightKey)) {
+                return false;
+            }
+            FlightKey key = (FlightKey) other;
+            return mManager == key.mManager && (mRefreshToken == null
+                    ? key.mRefreshToken == null : mRefreshToken.equals(key.mRefreshToken));
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(mManager) * HASH_MULTIPLIER
+                    + (mRefreshToken == null ? 0 : mRefreshToken.hashCode());
+        }
+    }
+}
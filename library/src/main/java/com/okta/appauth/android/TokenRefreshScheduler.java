@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.annotation.SuppressLint;
+import android.app.Activity;
+import android.app.ActivityManager;
+import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.AnyThread;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import net.openid.appauth.AuthState;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ * Refreshes the access token of the active account shortly before it expires, so that
+ * authorized requests rarely have to wait for a refresh. The refresh is scheduled a lead time
+ * plus a random jitter ahead of the expiration time, which spreads the refreshes of many
+ * clients whose tokens were issued at the same time.
+ * </p>
+ * <p>
+ * The schedule is derived from the snapshots published by the {@link AuthStateManager}, so it
+ * follows every token response. A refresh which falls due while no activity is started or the
+ * device is offline is deferred until the app returns to the foreground and is online again.
+ * Whether the app is in the foreground when monitoring starts is taken from the importance of
+ * its process.
+ * A refresh which falls due while the {@link RateLimitGovernor} would shed a background token
+ * request, e.g. after the token endpoint has asked to {@code Retry-After} a time, is postponed
+ * until the request may be made. A refresh is attempted at most once per access token; if it
+ * fails, the token is refreshed when it is next used, as before.
+ * </p>
+ * <p>
+ * The schedule is kept on the main thread. Scheduling is disabled until a lead time is set.
+ * </p>
+ */
+final class TokenRefreshScheduler implements AuthStateManager.SnapshotListener {
+
+    /**
+     * Performs the refresh when it falls due.
+     */
+    interface Refresher {
+        /**
+         * Refreshes the tokens of the given account.
+         *
+         * @param manager The manager of the account
+         */
+        @MainThread
+        void refresh(@NonNull AuthStateManager manager);
+    }
+
+    private final AtomicReference<AuthStateManager> mManager = new AtomicReference<>();
+    private final Handler mHandler;
+    private final Refresher mRefresher;
+    private final Random mRandom;
+    private final RateLimitGovernor mGovernor;
+
+    private final Runnable mRescheduleTask = new Runnable() {
+        @Override
+        public void run() {
+            reschedule();
+        }
+    };
+
+    private final Runnable mConnectivityTask = new Runnable() {
+        @Override
+        public void run() {
+            if (mMonitoredApplication != null) {
+                setOnline(isOnline(mMonitoredApplication));
+            }
+        }
+    };
+
+    private final Runnable mRefreshTask = new Runnable() {
+        @Override
+        public void run() {
+            mScheduled = false;
+            if (!mForeground || !mOnline) {
+                mDeferred = true;
+                return;
+            }
+
+            long wait = mGovernor.getWaitMs(
+                    OktaMetrics.Endpoint.TOKEN, RateLimitGovernor.Priority.BACKGROUND);
+            if (wait > 0) {
+                mScheduled = true;
+                mHandler.postDelayed(this, wait);
+                return;
+            }
+
+            AuthStateManager manager = mManager.get();
+            mAttemptedExpiration = mScheduledExpiration;
+            if (manager != null) {
+                mRefresher.refresh(manager);
+            }
+        }
+    };
+
+    // accessed on the main thread only
+    private long mLeadTimeMs = -1;
+    private long mMaxJitterMs;
+    private boolean mScheduled;
+    private boolean mDeferred;
+    private long mScheduledExpiration;
+    private long mAttemptedExpiration;
+    private boolean mForeground = true;
+    private boolean mOnline = true;
+    private int mStartedActivities;
+    private Application mMonitoredApplication;
+
+    private final Application.ActivityLifecycleCallbacks mLifecycleCallbacks =
+            new Application.ActivityLifecycleCallbacks() {
+                @Override
+                public void onActivityStarted(Activity activity) {
+                    mStartedActivities++;
+                    setForeground(true);
+                }
+
+                @Override
+                public void onActivityStopped(Activity activity) {
+                    mStartedActivities = Math.max(0, mStartedActivities - 1);
+                    if (mStartedActivities == 0) {
+                        setForeground(false);
+                    }
+                }
+
+                @Override
+                public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+                }
+
+                @Override
+                public void onActivityResumed(Activity activity) {
+                }
+
+                @Override
+                public void onActivityPaused(Activity activity) {
+                }
+
+                @Override
+                public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+                }
+
+                @Override
+                public void onActivityDestroyed(Activity activity) {
+                }
+            };
+
+    private final BroadcastReceiver mConnectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            setOnline(isOnline(context));
+        }
+    };
+
+    // a ConnectivityManager.NetworkCallback, which does not exist before Lollipop
+    @SuppressLint("NewApi")
+    private final Object mNetworkCallback =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                    ? new ConnectivityManager.NetworkCallback() {
+                        @Override
+                        public void onAvailable(Network network) {
+                            mHandler.post(mConnectivityTask);
+                        }
+
+                        @Override
+                        public void onLost(Network network) {
+                            mHandler.post(mConnectivityTask);
+                        }
+                    } : null;
+
+    TokenRefreshScheduler(@NonNull Refresher refresher) {
+        this(new Handler(Looper.getMainLooper()), refresher, new Random(),
+                RateLimitGovernor.getInstance());
+    }
+
+    @VisibleForTesting
+    TokenRefreshScheduler(@NonNull Handler handler, @NonNull Refresher refresher,
+                          @NonNull Random random, @NonNull RateLimitGovernor governor) {
+        mHandler = handler;
+        mRefresher = refresher;
+        mRandom = random;
+        mGovernor = governor;
+    }
+
+    /**
+     * Schedules the refreshes of the given manager's tokens instead of the one attached
+     * before, e.g. when switching accounts.
+     *
+     * @param manager The manager of the active account
+     */
+    @AnyThread
+    void attach(@NonNull AuthStateManager manager) {
+        AuthStateManager previous = mManager.getAndSet(manager);
+        if (previous == manager) {
+            return;
+        }
+        if (previous != null) {
+            previous.removeSnapshotListener(this);
+        }
+        manager.addSnapshotListener(this);
+        mHandler.post(mRescheduleTask);
+    }
+
+    /**
+     * Enables scheduling with the given lead time and jitter, and starts monitoring whether the
+     * app is in the foreground and online.
+     *
+     * @param context The Context from which to get the application
+     * @param leadTimeMs How long before the expiration of the access token to refresh it
+     * @param maxJitterMs The maximum random time by which to advance the refresh further
+     */
+    @AnyThread
+    void enable(@NonNull Context context, final long leadTimeMs, final long maxJitterMs) {
+        final Context appContext = context.getApplicationContext();
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mLeadTimeMs = leadTimeMs;
+                mMaxJitterMs = maxJitterMs;
+                startMonitoring(appContext);
+                reschedule();
+            }
+        });
+    }
+
+    /**
+     * Disables scheduling and cancels the pending refresh.
+     */
+    @AnyThread
+    void disable() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mLeadTimeMs = -1;
+                stopMonitoring();
+                cancelRefresh();
+            }
+        });
+    }
+
+    /**
+     * Cancels the pending refresh of the current access token, e.g. once it has been revoked.
+     * Refreshes are scheduled again for the next access token.
+     */
+    @AnyThread
+    void cancel() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mScheduled || mDeferred) {
+                    mAttemptedExpiration = mScheduledExpiration;
+                }
+                cancelRefresh();
+            }
+        });
+    }
+
+    @Override
+    public void onSnapshotPublished(@Nullable AuthStateSnapshot previous,
+                                    @NonNull AuthStateSnapshot current) {
+        mHandler.post(mRescheduleTask);
+    }
+
+    @MainThread
+    @VisibleForTesting
+    void setForeground(boolean foreground) {
+        mForeground = foreground;
+        runIfDeferred();
+    }
+
+    @MainThread
+    @VisibleForTesting
+    void setOnline(boolean online) {
+        mOnline = online;
+        runIfDeferred();
+    }
+
+    @MainThread
+    private void runIfDeferred() {
+        if (mDeferred && mForeground && mOnline) {
+            mDeferred = false;
+            mRefreshTask.run();
+        }
+    }
+
+    @MainThread
+    private void reschedule() {
+        AuthStateManager manager = mManager.get();
+        if (manager == null || mLeadTimeMs < 0) {
+            cancelRefresh();
+            return;
+        }
+
+        AuthState state = manager.getCurrent();
+        Long expiration = state.getAccessTokenExpirationTime();
+        if (state.getAccessToken() == null || state.getRefreshToken() == null
+                || expiration == null || expiration == mAttemptedExpiration) {
+            cancelRefresh();
+            return;
+        }
+        if ((mScheduled || mDeferred) && expiration == mScheduledExpiration) {
+            return;
+        }
+
+        cancelRefresh();
+        long jitter = mMaxJitterMs > 0 ? (long) (mRandom.nextDouble() * mMaxJitterMs) : 0;
+        long delay = expiration - mLeadTimeMs - jitter - System.currentTimeMillis();
+        mScheduledExpiration = expiration;
+        mScheduled = true;
+        mHandler.postDelayed(mRefreshTask, Math.max(0, delay));
+    }
+
+    @MainThread
+    private void cancelRefresh() {
+        mHandler.removeCallbacks(mRefreshTask);
+        mScheduled = false;
+        mDeferred = false;
+    }
+
+    @MainThread
+    private void startMonitoring(@NonNull Context appContext) {
+        if (mMonitoredApplication != null || !(appContext instanceof Application)) {
+            return;
+        }
+        mMonitoredApplication = (Application) appContext;
+        // activities started before monitoring starts are not reported to the callbacks
+        mForeground = isForeground();
+        mStartedActivities = mForeground ? 1 : 0;
+        mMonitoredApplication.registerActivityLifecycleCallbacks(mLifecycleCallbacks);
+        registerConnectivityListener(mMonitoredApplication);
+    }
+
+    @MainThread
+    @SuppressWarnings("deprecation")
+    @SuppressLint("NewApi")
+    private void registerConnectivityListener(@NonNull Application app) {
+        if (mNetworkCallback != null) {
+            mOnline = isOnline(app);
+            getConnectivityManager(app).registerNetworkCallback(new NetworkRequest.Builder()
+                            .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET).build(),
+                    (ConnectivityManager.NetworkCallback) mNetworkCallback);
+        } else {
+            // CONNECTIVITY_ACTION is deprecated, but the only notification before Lollipop;
+            // the sticky broadcast reports the current connectivity right away
+            app.registerReceiver(mConnectivityReceiver,
+                    new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        }
+    }
+
+    @MainThread
+    @SuppressLint("NewApi")
+    private void unregisterConnectivityListener(@NonNull Application app) {
+        if (mNetworkCallback != null) {
+            getConnectivityManager(app).unregisterNetworkCallback(
+                    (ConnectivityManager.NetworkCallback) mNetworkCallback);
+            mHandler.removeCallbacks(mConnectivityTask);
+        } else {
+            app.unregisterReceiver(mConnectivityReceiver);
+        }
+    }
+
+    @MainThread
+    private void stopMonitoring() {
+        if (mMonitoredApplication == null) {
+            return;
+        }
+        mMonitoredApplication.unregisterActivityLifecycleCallbacks(mLifecycleCallbacks);
+        unregisterConnectivityListener(mMonitoredApplication);
+        mMonitoredApplication = null;
+        mStartedActivities = 0;
+        mForeground = true;
+        mOnline = true;
+    }
+
+    private static boolean isForeground() {
+        ActivityManager.RunningAppProcessInfo process = new ActivityManager.RunningAppProcessInfo();
+        ActivityManager.getMyMemoryState(process);
+        return process.importance == ActivityManager.RunningAppProcessInfo.IMPORTANCE_FOREGROUND
+                || process.importance == ActivityManager.RunningAppProcessInfo.IMPORTANCE_VISIBLE;
+    }
+
+    private static boolean isOnline(@NonNull Context context) {
+        NetworkInfo network = getConnectivityManager(context).getActiveNetworkInfo();
+        return network != null && network.isConnected();
+    }
+
+    @NonNull
+    private static ConnectivityManager getConnectivityManager(@NonNull Context context) {
+        return (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+}
@@ -3,10 +3,15 @@ package com.okta;
 import android.net.Uri;
 import android.util.Base64;
 
+import net.openid.appauth.AuthState;
 import net.openid.appauth.AuthorizationRequest;
+import net.openid.appauth.AuthorizationResponse;
 import net.openid.appauth.AuthorizationServiceConfiguration;
 import net.openid.appauth.AuthorizationServiceDiscovery;
+import net.openid.appauth.GrantTypeValues;
 import net.openid.appauth.ResponseTypeValues;
+import net.openid.appauth.TokenRequest;
+import net.openid.appauth.TokenResponse;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -209,6 +214,32 @@ public class TestUtils {
                 .build();
     }
 
+    public static TokenResponse getTestTokenResponse(String accessToken) {
+        return new TokenResponse.Builder(
+                new TokenRequest.Builder(getTestServiceConfig(), TEST_CLIENT_ID)
+                        .setGrantType(GrantTypeValues.AUTHORIZATION_CODE)
+                        .setAuthorizationCode("code")
+                        .setRedirectUri(TEST_APP_REDIRECT_URI)
+                        .build())
+                .setTokenType(TokenResponse.TOKEN_TYPE_BEARER)
+                .setAccessToken(accessToken)
+                .setAccessTokenExpirationTime(System.currentTimeMillis() + 60 * 60 * 1000)
+                .setIdToken(getUnsignedIdToken())
+                .setRefreshToken("refreshToken")
+                .build();
+    }
+
+    public static AuthState getTestAuthorizedState() {
+        AuthorizationRequest request = getTestAuthRequest();
+        AuthState state = new AuthState(request.configuration);
+        state.update(new AuthorizationResponse.Builder(request)
+                .setAuthorizationCode("code")
+                .setState(request.state)
+                .build(), null);
+        state.update(getTestTokenResponse("accessToken"), null);
+        return state;
+    }
+
     public static JSONObject addField(JSONObject object, String name, String value) throws JSONException {
         object.put(name, value);
         return object;
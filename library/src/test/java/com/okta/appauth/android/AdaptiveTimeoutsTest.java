@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class AdaptiveTimeoutsTest {
+
+    private static final String TOKEN_URL = "https://example.okta.com/oauth2/v1/token";
+    private static final long BUILDER_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
+
+    private AdaptiveTimeouts mTimeouts;
+    private String mKey;
+
+    @Before
+    public void setUp() throws Exception {
+        mTimeouts = new AdaptiveTimeouts();
+        mKey = AdaptiveTimeouts.key(new URL(TOKEN_URL));
+    }
+
+    @Test
+    public void testKeyIdentifiesHostAndPath() throws Exception {
+        assertThat(mKey).isEqualTo("example.okta.com/oauth2/v1/token");
+        assertThat(AdaptiveTimeouts.key(Uri.parse(TOKEN_URL + "?foo=bar"))).isEqualTo(mKey);
+    }
+
+    @Test
+    public void testUnobservedEndpointKeepsTimeouts() throws Exception {
+        HttpURLConnection conn = connection();
+
+        mTimeouts.apply(conn);
+
+        assertThat(conn.getConnectTimeout()).isEqualTo((int) BUILDER_TIMEOUT_MS);
+        assertThat(conn.getReadTimeout()).isEqualTo((int) BUILDER_TIMEOUT_MS);
+        assertThat(mTimeouts.getReadTimeoutMs(mKey)).isEqualTo(-1);
+    }
+
+    @Test
+    public void testTimeoutsFollowObservedLatency() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            mTimeouts.onConnected(mKey, 3000);
+            mTimeouts.onResponded(mKey, 4000);
+        }
+        // the deviation decays towards 0 as the latency is steady
+        assertThat(mTimeouts.getConnectTimeoutMs(mKey)).isBetween(3000L, 3100L);
+        assertThat(mTimeouts.getReadTimeoutMs(mKey)).isBetween(4000L, 4100L);
+
+        HttpURLConnection conn = connection();
+        mTimeouts.apply(conn);
+        assertThat((long) conn.getConnectTimeout()).isEqualTo(
+                mTimeouts.getConnectTimeoutMs(mKey));
+        assertThat((long) conn.getReadTimeout()).isEqualTo(mTimeouts.getReadTimeoutMs(mKey));
+    }
+
+    @Test
+    public void testFirstObservationAllowsForDeviation() {
+        mTimeouts.onResponded(mKey, 1000);
+
+        assertThat(mTimeouts.getReadTimeoutMs(mKey)).isEqualTo(3000);
+        assertThat(mTimeouts.getConnectTimeoutMs(mKey)).isEqualTo(-1);
+    }
+
+    @Test
+    public void testTimeoutsStayWithinBounds() throws Exception {
+        mTimeouts.onResponded(mKey, 10);
+        assertThat(mTimeouts.getReadTimeoutMs(mKey)).isEqualTo(AdaptiveTimeouts.DEFAULT_FLOOR_MS);
+
+        mTimeouts.setBounds(100, 1000);
+        assertThat(mTimeouts.getReadTimeoutMs(mKey)).isEqualTo(100);
+        mTimeouts.onResponded(mKey, 60000);
+        assertThat(mTimeouts.getReadTimeoutMs(mKey)).isEqualTo(1000);
+    }
+
+    @Test
+    public void testTimeoutsAreNeverRaised() throws Exception {
+        mTimeouts.onResponded(mKey, 60000);
+        HttpURLConnection conn = connection();
+
+        mTimeouts.apply(conn);
+
+        assertThat(conn.getReadTimeout()).isEqualTo((int) BUILDER_TIMEOUT_MS);
+    }
+
+    @Test
+    public void testExpiredTimeoutBacksOffUntilNextObservation() {
+        mTimeouts.onResponded(mKey, 1000);
+
+        mTimeouts.onTimeout(mKey, 3000);
+        assertThat(mTimeouts.getReadTimeoutMs(mKey)).isEqualTo(6000);
+        mTimeouts.onTimeout(mKey, 6000);
+        assertThat(mTimeouts.getReadTimeoutMs(mKey)).isEqualTo(12000);
+
+        mTimeouts.onResponded(mKey, 1000);
+        assertThat(mTimeouts.getReadTimeoutMs(mKey)).isEqualTo(2500);
+    }
+
+    @Test
+    public void testTimeoutShortenedByDeadlineDoesNotBackOff() {
+        mTimeouts.onResponded(mKey, 1000);
+
+        mTimeouts.onTimeout(mKey, 500);
+
+        assertThat(mTimeouts.getReadTimeoutMs(mKey)).isEqualTo(3000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBoundsAreRejected() {
+        mTimeouts.setBounds(1000, 100);
+    }
+
+    private static HttpURLConnection connection() throws Exception {
+        HttpURLConnection conn = (HttpURLConnection) new URL(TOKEN_URL).openConnection();
+        conn.setConnectTimeout((int) BUILDER_TIMEOUT_MS);
+        conn.setReadTimeout((int) BUILDER_TIMEOUT_MS);
+        return conn;
+    }
+}
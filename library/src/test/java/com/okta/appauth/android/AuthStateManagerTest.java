@@ -17,16 +17,29 @@ package com.okta.appauth.android;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
 
+import com.okta.TestUtils;
 import net.openid.appauth.AuthState;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 
+import static com.okta.appauth.android.AuthStateManager.KEY_CONFIG;
 import static com.okta.appauth.android.AuthStateManager.KEY_STATE;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
@@ -34,7 +47,13 @@ import static org.assertj.core.api.Assertions.fail;
 @RunWith(RobolectricTestRunner.class)
 public class AuthStateManagerTest {
 
+    private static final long CALLBACK_TIMEOUT_SECONDS = 5;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
     private SharedPreferences mPrefs;
+    private SharedPreferences mConfigPrefs;
     private ReentrantLock mPrefsLock;
 
     private AuthStateManager sut;
@@ -43,9 +62,11 @@ public class AuthStateManagerTest {
     public void setUp() throws Exception {
         mPrefs = RuntimeEnvironment.application
                 .getSharedPreferences(AuthStateManager.PREFS_NAME, Context.MODE_PRIVATE);
+        mConfigPrefs = RuntimeEnvironment.application
+                .getSharedPreferences(AuthStateManager.CONFIG_PREFS_NAME, Context.MODE_PRIVATE);
         mPrefsLock = new ThrowingReentrantLock();
 
-        sut = new AuthStateManager(mPrefs, mPrefsLock);
+        sut = new AuthStateManager(mPrefs, mConfigPrefs, mPrefsLock);
     }
 
     @Test
@@ -62,6 +83,97 @@ public class AuthStateManagerTest {
         assertThat(mPrefs.contains(KEY_STATE)).isFalse();
     }
 
+    @Test
+    public void testSetStoreMovesStoredState() throws IOException {
+        AuthState state = TestUtils.getTestAuthorizedState();
+        sut.writeState(state);
+        JournalAuthStateStore journal = new JournalAuthStateStore(mFolder.newFile());
+
+        sut.setStore(journal);
+
+        assertThat(mPrefs.contains(KEY_STATE)).isFalse();
+        assertThat(mConfigPrefs.contains(KEY_CONFIG)).isFalse();
+        assertThat(journal.read(KEY_STATE)).isNotNull();
+        assertThat(sut.readState().jsonSerializeString()).isEqualTo(state.jsonSerializeString());
+    }
+
+    @Test
+    public void testSetStoreLoadsStateFromNewStore() throws IOException {
+        AuthState state = TestUtils.getTestAuthorizedState();
+        JournalAuthStateStore journal = new JournalAuthStateStore(mFolder.newFile());
+        new AuthStateManager(journal, new ReentrantLock()).writeState(state);
+        assertThat(sut.getCurrent().isAuthorized()).isFalse();
+
+        sut.setStore(journal);
+
+        assertThat(sut.getCurrent().jsonSerializeString()).isEqualTo(state.jsonSerializeString());
+    }
+
+    @Test
+    public void testPreloadReadsStateInBackground() {
+        AuthState state = TestUtils.getTestAuthorizedState();
+        sut.writeState(state);
+        AuthStateManager manager = new AuthStateManager(mPrefs, mConfigPrefs, mPrefsLock);
+
+        manager.preload();
+        manager.flush();
+
+        // the state must already be loaded; reading it here would re-enter the lock
+        mPrefsLock.lock();
+        try {
+            assertThat(manager.getCurrent().jsonSerializeString())
+                    .isEqualTo(state.jsonSerializeString());
+        } finally {
+            mPrefsLock.unlock();
+        }
+    }
+
+    @Test
+    public void testGetCurrentWaitsForPreload() {
+        AuthState state = TestUtils.getTestAuthorizedState();
+        sut.writeState(state);
+        AuthStateManager manager = new AuthStateManager(mPrefs, mConfigPrefs, mPrefsLock);
+
+        manager.preload();
+
+        assertThat(manager.getCurrent().jsonSerializeString())
+                .isEqualTo(state.jsonSerializeString());
+        assertThat(manager.getCurrent()).isSameAs(manager.getCurrent());
+    }
+
+    @Test
+    public void testGetCurrentAsyncDeliversLoadedState() throws InterruptedException {
+        sut.writeState(TestUtils.getTestAuthorizedState());
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<AuthState> delivered = new AtomicReference<>();
+
+        sut.getCurrentAsync(new AuthStateManager.AuthStateCallback() {
+            @Override
+            public void onAuthStateReady(@NonNull AuthState state) {
+                delivered.set(state);
+                latch.countDown();
+            }
+        });
+
+        assertThat(latch.await(CALLBACK_TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        assertThat(delivered.get()).isSameAs(sut.getCurrent());
+    }
+
+    @Test
+    public void testGetCurrentAsyncCallsBackImmediatelyWhenLoaded() {
+        final AuthState current = sut.getCurrent();
+        final AtomicReference<AuthState> delivered = new AtomicReference<>();
+
+        sut.getCurrentAsync(new AuthStateManager.AuthStateCallback() {
+            @Override
+            public void onAuthStateReady(@NonNull AuthState state) {
+                delivered.set(state);
+            }
+        });
+
+        assertThat(delivered.get()).isSameAs(current);
+    }
+
     @Test
     public void testReadStateLocksPreferencesBeforeActing() {
         assertThat(mPrefs.contains(KEY_STATE)).isFalse();
@@ -108,6 +220,190 @@ public class AuthStateManagerTest {
         assertThat(mPrefs.contains(KEY_STATE)).isFalse();
     }
 
+    @Test
+    public void testWriteStateStoresConfigurationSeparately() throws JSONException {
+        AuthState state = TestUtils.getTestAuthorizedState();
+        sut.writeState(state);
+
+        JSONObject tokenRecord = new BinaryAuthStateSerializer()
+                .deserialize(mPrefs.getString(KEY_STATE, null));
+        assertThat(mConfigPrefs.getString(KEY_CONFIG, null)).isNotNull();
+        assertThat(tokenRecord.has("config")).isFalse();
+        assertThat(tokenRecord.toString()).doesNotContain("discoveryDoc");
+        assertThat(sut.readState().jsonSerializeString()).isEqualTo(state.jsonSerializeString());
+    }
+
+    @Test
+    public void testWriteStateSkipsUnchangedConfiguration() {
+        AuthState state = TestUtils.getTestAuthorizedState();
+        sut.writeState(state);
+        String tokenRecord = mPrefs.getString(KEY_STATE, null);
+        mConfigPrefs.edit().putString(KEY_CONFIG, "untouched").commit();
+
+        state.update(TestUtils.getTestTokenResponse("newAccessToken"), null);
+        sut.writeState(state);
+
+        assertThat(mConfigPrefs.getString(KEY_CONFIG, null)).isEqualTo("untouched");
+        assertThat(mPrefs.getString(KEY_STATE, null)).isNotEqualTo(tokenRecord);
+    }
+
+    @Test
+    public void testWriteStateRewritesChangedConfiguration() {
+        sut.writeState(TestUtils.getTestAuthorizedState());
+        mConfigPrefs.edit().putString(KEY_CONFIG, "untouched").commit();
+
+        sut.writeState(new AuthState(TestUtils.getTestServiceConfig("https://other.example.com")));
+
+        assertThat(mConfigPrefs.getString(KEY_CONFIG, null)).isNotEqualTo("untouched");
+        assertThat(sut.readState().getAuthorizationServiceConfiguration().tokenEndpoint.toString())
+                .startsWith("https://other.example.com");
+    }
+
+    @Test
+    public void testReadStateAcceptsUnsplitState() {
+        AuthState state = TestUtils.getTestAuthorizedState();
+        mPrefs.edit().putString(KEY_STATE, state.jsonSerializeString()).commit();
+
+        assertThat(sut.readState().jsonSerializeString()).isEqualTo(state.jsonSerializeString());
+
+        sut.writeState(sut.readState());
+        assertThat(mConfigPrefs.getString(KEY_CONFIG, null)).isNotNull();
+        assertThat(sut.readState().jsonSerializeString()).isEqualTo(state.jsonSerializeString());
+    }
+
+    @Test
+    public void testSetSerializerConvertsStoredState() throws JSONException {
+        AuthState state = TestUtils.getTestAuthorizedState();
+        sut.writeState(state);
+        assertThat(mPrefs.getString(KEY_STATE, null).startsWith("{")).isFalse();
+
+        sut.setSerializer(new JsonAuthStateSerializer());
+
+        assertThat(new JSONObject(mPrefs.getString(KEY_STATE, null)).has("config")).isFalse();
+        assertThat(new JSONObject(mConfigPrefs.getString(KEY_CONFIG, null)).has("config"))
+                .isTrue();
+        assertThat(sut.readState().jsonSerializeString()).isEqualTo(state.jsonSerializeString());
+    }
+
+    @Test
+    public void testReadStateAcceptsJsonRecords() {
+        AuthState state = TestUtils.getTestAuthorizedState();
+        sut.setSerializer(new JsonAuthStateSerializer());
+        sut.writeState(state);
+
+        AuthStateManager binaryManager = new AuthStateManager(mPrefs, mConfigPrefs, mPrefsLock);
+        AuthState stored = binaryManager.readState();
+        assertThat(stored.jsonSerializeString()).isEqualTo(state.jsonSerializeString());
+
+        binaryManager.writeState(stored);
+        assertThat(mPrefs.getString(KEY_STATE, null).startsWith("{")).isFalse();
+        assertThat(mConfigPrefs.getString(KEY_CONFIG, null).startsWith("{")).isFalse();
+        assertThat(binaryManager.readState().jsonSerializeString())
+                .isEqualTo(state.jsonSerializeString());
+    }
+
+    @Test
+    public void testWriteBehindUpdatesMemoryBeforePersisting() {
+        sut.setWriteBehindEnabled(true);
+        AuthState state = new AuthState(TestUtils.getTestServiceConfig());
+
+        mPrefsLock.lock();
+        try {
+            assertThat(sut.replace(state)).isSameAs(state);
+            assertThat(sut.getCurrent()).isSameAs(state);
+            assertThat(mPrefs.contains(KEY_STATE)).isFalse();
+        } finally {
+            mPrefsLock.unlock();
+        }
+
+        sut.flush();
+        assertThat(sut.readState().jsonSerializeString()).isEqualTo(state.jsonSerializeString());
+    }
+
+    @Test
+    public void testWriteBehindCoalescesBurstIntoLatestState() {
+        sut.setWriteBehindEnabled(true);
+        AuthState latest = new AuthState(TestUtils.getTestServiceConfig());
+
+        mPrefsLock.lock();
+        try {
+            sut.replace(new AuthState());
+            sut.replace(new AuthState());
+            sut.replace(latest);
+        } finally {
+            mPrefsLock.unlock();
+        }
+
+        sut.flush();
+        assertThat(sut.getCurrent()).isSameAs(latest);
+        assertThat(sut.readState().jsonSerializeString())
+                .isEqualTo(latest.jsonSerializeString());
+    }
+
+    @Test
+    public void testDisablingWriteBehindFlushesPendingState() {
+        sut.setWriteBehindEnabled(true);
+        AuthState state = new AuthState(TestUtils.getTestServiceConfig());
+        sut.replace(state);
+
+        sut.setWriteBehindEnabled(false);
+        assertThat(sut.isWriteBehindEnabled()).isFalse();
+        assertThat(sut.readState().jsonSerializeString()).isEqualTo(state.jsonSerializeString());
+    }
+
+    @Test
+    public void testSnapshotVersionIncreasesOnEachChange() {
+        AuthStateSnapshot initial = sut.getSnapshot();
+        sut.replace(new AuthState(TestUtils.getTestServiceConfig()));
+        AuthStateSnapshot replaced = sut.getSnapshot();
+        sut.updateAfterTokenResponse(TestUtils.getTestTokenResponse("accessToken"), null);
+
+        assertThat(replaced.getVersion()).isGreaterThan(initial.getVersion());
+        assertThat(sut.getSnapshot().getVersion()).isGreaterThan(replaced.getVersion());
+        assertThat(sut.getCurrent()).isSameAs(sut.getSnapshot().getState());
+    }
+
+    @Test
+    public void testUpdateDoesNotModifyPublishedState() {
+        AuthState published = sut.replace(TestUtils.getTestAuthorizedState());
+        String before = published.jsonSerializeString();
+
+        sut.updateAfterTokenResponse(TestUtils.getTestTokenResponse("newAccessToken"), null);
+
+        assertThat(published.jsonSerializeString()).isEqualTo(before);
+        assertThat(sut.getCurrent()).isNotSameAs(published);
+        assertThat(sut.getCurrent().getAccessToken()).isEqualTo("newAccessToken");
+    }
+
+    @Test
+    public void testTokenUpdateLeavesConfigurationRecordUntouched() {
+        final List<JSONObject> serialized = new ArrayList<>();
+        final AuthStateSerializer json = new JsonAuthStateSerializer();
+        sut.setSerializer(new AuthStateSerializer() {
+            @NonNull
+            @Override
+            public String serialize(@NonNull JSONObject record) throws JSONException {
+                serialized.add(record);
+                return json.serialize(record);
+            }
+
+            @NonNull
+            @Override
+            public JSONObject deserialize(@NonNull String record) throws JSONException {
+                return json.deserialize(record);
+            }
+        });
+        sut.replace(TestUtils.getTestAuthorizedState());
+        serialized.clear();
+        mConfigPrefs.edit().putString(KEY_CONFIG, "untouched").commit();
+
+        sut.updateAfterTokenResponse(TestUtils.getTestTokenResponse("newAccessToken"), null);
+
+        assertThat(serialized).hasSize(1);
+        assertThat(serialized.get(0).toString()).doesNotContain("discoveryDoc");
+        assertThat(mConfigPrefs.getString(KEY_CONFIG, null)).isEqualTo("untouched");
+    }
+
     private static class ThrowingReentrantLock extends ReentrantLock {
         @Override
         public void lock() {
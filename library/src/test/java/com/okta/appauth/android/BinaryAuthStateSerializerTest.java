@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import com.okta.TestUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class BinaryAuthStateSerializerTest {
+
+    private BinaryAuthStateSerializer sut;
+
+    @Before
+    public void setUp() {
+        sut = new BinaryAuthStateSerializer();
+    }
+
+    @Test
+    public void testRoundTripPreservesValues() throws JSONException {
+        JSONObject record = new JSONObject()
+                .put("string", "value é中")
+                .put("int", -42)
+                .put("long", Long.MAX_VALUE)
+                .put("double", 1.5d)
+                .put("true", true)
+                .put("false", false)
+                .put("null", JSONObject.NULL)
+                .put("array", new JSONArray().put("value").put(new JSONObject()))
+                .put("object", new JSONObject().put("string", "value"));
+
+        assertThat(sut.deserialize(sut.serialize(record)).toString())
+                .isEqualTo(record.toString());
+    }
+
+    @Test
+    public void testRoundTripPreservesAuthState() throws JSONException {
+        JSONObject state = TestUtils.getTestAuthorizedState().jsonSerialize();
+
+        assertThat(sut.deserialize(sut.serialize(state)).toString())
+                .isEqualTo(state.toString());
+    }
+
+    @Test
+    public void testRepeatedStringsAreStoredOnce() throws JSONException {
+        String uri = "https://example.com/oauth2/v1/authorize";
+        JSONObject once = new JSONObject().put("a", uri);
+        JSONObject twice = new JSONObject().put("a", uri).put("b", uri);
+
+        assertThat(sut.serialize(twice).length() - sut.serialize(once).length())
+                .isLessThan(uri.length());
+    }
+
+    @Test(expected = JSONException.class)
+    public void testDeserializeRejectsJsonText() throws JSONException {
+        sut.deserialize("{\"a\":\"b\"}");
+    }
+
+    @Test(expected = JSONException.class)
+    public void testDeserializeRejectsTruncatedRecord() throws JSONException {
+        String record = sut.serialize(TestUtils.getTestAuthorizedState().jsonSerialize());
+        sut.deserialize(record.substring(0, record.length() / 2));
+    }
+}
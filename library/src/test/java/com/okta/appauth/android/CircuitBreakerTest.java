@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.os.SystemClock;
+
+import net.openid.appauth.AuthorizationException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class CircuitBreakerTest {
+
+    private static final int THRESHOLD = 3;
+    private static final long OPEN_MS = 1000;
+    private static final OktaMetrics.Endpoint ENDPOINT = OktaMetrics.Endpoint.USERINFO;
+
+    private CircuitBreaker mBreaker;
+
+    @Before
+    public void setUp() {
+        mBreaker = new CircuitBreaker(THRESHOLD, OPEN_MS);
+    }
+
+    @Test
+    public void testCircuitOpensAfterConsecutiveFailures() throws Exception {
+        failRequests(THRESHOLD - 1);
+        assertThat(mBreaker.getState(ENDPOINT)).isEqualTo(CircuitState.CLOSED);
+        mBreaker.acquire(ENDPOINT);
+
+        failRequests(1);
+
+        assertThat(mBreaker.getState(ENDPOINT)).isEqualTo(CircuitState.OPEN);
+        CircuitOpenException ex = assertRejected();
+        assertThat(ex.getEndpoint()).isEqualTo(ENDPOINT);
+        assertThat(ex.getRetryAfterMs()).isEqualTo(OPEN_MS);
+        assertThat(mBreaker.getState(OktaMetrics.Endpoint.REVOKE))
+                .isEqualTo(CircuitState.CLOSED);
+    }
+
+    @Test
+    public void testSuccessResetsFailures() throws Exception {
+        failRequests(THRESHOLD - 1);
+        mBreaker.onResponse(ENDPOINT, HttpURLConnection.HTTP_OK);
+        failRequests(THRESHOLD - 1);
+
+        assertThat(mBreaker.getState(ENDPOINT)).isEqualTo(CircuitState.CLOSED);
+    }
+
+    @Test
+    public void testOnlyServerErrorsAndIoErrorsAreFailures() throws Exception {
+        for (int i = 0; i < THRESHOLD; i++) {
+            mBreaker.onResponse(ENDPOINT, HttpURLConnection.HTTP_NOT_FOUND);
+            mBreaker.onError(ENDPOINT, new RateLimitExceededException(ENDPOINT, OPEN_MS));
+            mBreaker.onError(ENDPOINT, new CircuitOpenException(ENDPOINT, OPEN_MS));
+        }
+        assertThat(mBreaker.getState(ENDPOINT)).isEqualTo(CircuitState.CLOSED);
+
+        for (int i = 0; i < THRESHOLD; i++) {
+            mBreaker.onResponse(ENDPOINT, HttpURLConnection.HTTP_UNAVAILABLE);
+        }
+        assertThat(mBreaker.getState(ENDPOINT)).isEqualTo(CircuitState.OPEN);
+    }
+
+    @Test
+    public void testSuccessfulProbeClosesCircuit() throws Exception {
+        failRequests(THRESHOLD);
+        SystemClock.sleep(OPEN_MS);
+        assertThat(mBreaker.getState(ENDPOINT)).isEqualTo(CircuitState.HALF_OPEN);
+
+        mBreaker.check(ENDPOINT);
+        mBreaker.acquire(ENDPOINT);
+        assertRejected();
+        mBreaker.onResponse(ENDPOINT, HttpURLConnection.HTTP_OK);
+
+        assertThat(mBreaker.getState(ENDPOINT)).isEqualTo(CircuitState.CLOSED);
+        mBreaker.acquire(ENDPOINT);
+        mBreaker.acquire(ENDPOINT);
+    }
+
+    @Test
+    public void testFailedProbeOpensCircuitAgain() throws Exception {
+        failRequests(THRESHOLD);
+        SystemClock.sleep(OPEN_MS);
+
+        mBreaker.acquire(ENDPOINT);
+        mBreaker.onError(ENDPOINT, new IOException("Connection refused"));
+
+        assertThat(mBreaker.getState(ENDPOINT)).isEqualTo(CircuitState.OPEN);
+        assertThat(assertRejected().getRetryAfterMs()).isEqualTo(OPEN_MS);
+    }
+
+    @Test
+    public void testLostProbeIsReplaced() throws Exception {
+        failRequests(THRESHOLD);
+        SystemClock.sleep(OPEN_MS);
+        mBreaker.acquire(ENDPOINT);
+
+        SystemClock.sleep(OPEN_MS);
+
+        mBreaker.acquire(ENDPOINT);
+    }
+
+    @Test
+    public void testResourcesAreNotBroken() throws Exception {
+        for (int i = 0; i < THRESHOLD; i++) {
+            mBreaker.onError(OktaMetrics.Endpoint.RESOURCE, new IOException());
+        }
+
+        assertThat(mBreaker.getState(OktaMetrics.Endpoint.RESOURCE))
+                .isEqualTo(CircuitState.CLOSED);
+        mBreaker.acquire(OktaMetrics.Endpoint.RESOURCE);
+    }
+
+    @Test
+    public void testTokenErrorResponsesAreNotFailures() {
+        for (int i = 0; i < THRESHOLD; i++) {
+            mBreaker.onTokenResponse(AuthorizationException.TokenRequestErrors.INVALID_GRANT);
+            mBreaker.onTokenResponse(AuthorizationException.fromTemplate(
+                    AuthorizationException.GeneralErrors.NETWORK_ERROR,
+                    new CircuitOpenException(OktaMetrics.Endpoint.TOKEN, OPEN_MS)));
+        }
+        assertThat(mBreaker.getState(OktaMetrics.Endpoint.TOKEN))
+                .isEqualTo(CircuitState.CLOSED);
+
+        for (int i = 0; i < THRESHOLD; i++) {
+            mBreaker.onTokenResponse(AuthorizationException.fromTemplate(
+                    AuthorizationException.GeneralErrors.NETWORK_ERROR, new IOException()));
+        }
+        assertThat(mBreaker.getState(OktaMetrics.Endpoint.TOKEN))
+                .isEqualTo(CircuitState.OPEN);
+    }
+
+    @Test
+    public void testDeadlineExceededRequestsAreNotFailures() {
+        Deadline deadline = Deadline.after(OPEN_MS);
+        SystemClock.sleep(OPEN_MS);
+        for (int i = 0; i < THRESHOLD; i++) {
+            mBreaker.onError(ENDPOINT, deadline.attribute(new SocketTimeoutException()));
+            mBreaker.onTokenResponse(AuthorizationException.fromTemplate(
+                    AuthorizationException.GeneralErrors.NETWORK_ERROR, Deadline.exceeded()));
+        }
+
+        assertThat(mBreaker.getState(ENDPOINT)).isEqualTo(CircuitState.CLOSED);
+        assertThat(mBreaker.getState(OktaMetrics.Endpoint.TOKEN))
+                .isEqualTo(CircuitState.CLOSED);
+    }
+
+    private void failRequests(int failures) throws Exception {
+        for (int i = 0; i < failures; i++) {
+            mBreaker.acquire(ENDPOINT);
+            mBreaker.onError(ENDPOINT, new IOException("Connection refused"));
+        }
+    }
+
+    private CircuitOpenException assertRejected() {
+        try {
+            mBreaker.acquire(ENDPOINT);
+        } catch (CircuitOpenException ex) {
+            return ex;
+        }
+        fail("Request to an open circuit let through");
+        return null;
+    }
+}
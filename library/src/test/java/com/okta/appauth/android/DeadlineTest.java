@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.os.SystemClock;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class DeadlineTest {
+
+    private static final long TIMEOUT_MS = 1000;
+
+    @Test
+    public void testDeadlinePassesAfterTimeout() {
+        Deadline deadline = Deadline.after(TIMEOUT_MS);
+        assertThat(deadline.isExpired()).isFalse();
+        assertThat(deadline.getRemainingMs()).isEqualTo(TIMEOUT_MS);
+
+        SystemClock.sleep(TIMEOUT_MS);
+
+        assertThat(deadline.isExpired()).isTrue();
+        assertThat(deadline.getRemainingMs()).isEqualTo(0);
+    }
+
+    @Test
+    public void testNoDeadlineNeverPasses() {
+        assertThat(Deadline.after(Long.MAX_VALUE)).isSameAs(Deadline.NONE);
+        assertThat(Deadline.at(Deadline.NO_DEADLINE)).isSameAs(Deadline.NONE);
+        assertThat(Deadline.NONE.isExpired()).isFalse();
+        assertThat(Deadline.NONE.getRemainingMs()).isEqualTo(Deadline.NO_DEADLINE);
+    }
+
+    @Test
+    public void testTimeoutsAreLimitedToTimeLeft() throws Exception {
+        HttpURLConnection conn =
+                (HttpURLConnection) new URL("https://example.com").openConnection();
+        conn.setConnectTimeout(0);
+        conn.setReadTimeout((int) TIMEOUT_MS / 2);
+
+        Deadline.after(TIMEOUT_MS).limitTimeouts(conn);
+
+        assertThat(conn.getConnectTimeout()).isEqualTo((int) TIMEOUT_MS);
+        assertThat(conn.getReadTimeout()).isEqualTo((int) TIMEOUT_MS / 2);
+    }
+
+    @Test
+    public void testTimeoutsAfterDeadlineAreAttributedToIt() {
+        Deadline deadline = Deadline.after(TIMEOUT_MS);
+        SocketTimeoutException timeout = new SocketTimeoutException();
+        IOException refused = new IOException("Connection refused");
+        assertThat(deadline.attribute(timeout)).isSameAs(timeout);
+
+        SystemClock.sleep(TIMEOUT_MS);
+
+        IOException attributed = deadline.attribute(timeout);
+        assertThat(attributed).isInstanceOf(DeadlineExceededException.class);
+        assertThat(attributed.getCause()).isSameAs(timeout);
+        assertThat(deadline.attribute(refused)).isSameAs(refused);
+        assertThat(Deadline.NONE.attribute(timeout)).isSameAs(timeout);
+    }
+
+    @Test
+    public void testDefaultTimeoutAppliesWhenSet() {
+        assertThat(Deadline.fromDefault()).isSameAs(Deadline.NONE);
+
+        OktaAppAuth.setOperationTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        try {
+            assertThat(Deadline.fromDefault().getRemainingMs()).isEqualTo(TIMEOUT_MS);
+        } finally {
+            OktaAppAuth.setOperationTimeout(0, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class DefaultOktaExecutorsTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private DefaultOktaExecutors sut;
+
+    @Before
+    public void setUp() {
+        sut = new DefaultOktaExecutors();
+    }
+
+    @After
+    public void tearDown() {
+        sut.shutdown();
+    }
+
+    @Test
+    public void testSlowUserTaskDoesNotBlockOthers() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(1);
+        sut.getUserExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        sut.getUserExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                completed.countDown();
+            }
+        });
+
+        assertThat(completed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        release.countDown();
+    }
+
+    @Test
+    public void testLanesRunOnSeparateDaemonThreads() throws Exception {
+        Thread user = runOn((DefaultOktaExecutors.Lane) sut.getUserExecutor());
+        Thread background = runOn((DefaultOktaExecutors.Lane) sut.getBackgroundExecutor());
+
+        assertThat(user.isDaemon()).isTrue();
+        assertThat(user.getName()).startsWith("OktaUser-");
+        assertThat(background.isDaemon()).isTrue();
+        assertThat(background.getName()).startsWith("OktaBackground-");
+    }
+
+    @Test
+    public void testShutdownReleasesThreadsAndLaneCanBeReused() throws Exception {
+        DefaultOktaExecutors.Lane lane = (DefaultOktaExecutors.Lane) sut.getUserExecutor();
+        Thread first = runOn(lane);
+        assertThat(lane.getPoolSize()).isEqualTo(1);
+
+        sut.shutdown();
+        first.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+
+        assertThat(first.isAlive()).isFalse();
+        assertThat(lane.getPoolSize()).isEqualTo(0);
+        assertThat(runOn(lane)).isNotSameAs(first);
+    }
+
+    private static Thread runOn(DefaultOktaExecutors.Lane lane) throws InterruptedException {
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        final CountDownLatch ran = new CountDownLatch(1);
+        lane.execute(new Runnable() {
+            @Override
+            public void run() {
+                thread.set(Thread.currentThread());
+                ran.countDown();
+            }
+        });
+        assertThat(ran.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        return thread.get();
+    }
+}
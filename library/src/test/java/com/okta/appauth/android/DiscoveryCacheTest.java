@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+
+import com.okta.TestUtils;
+
+import net.openid.appauth.AuthorizationException;
+import net.openid.appauth.AuthorizationServiceConfiguration;
+import net.openid.appauth.connectivity.ConnectionBuilder;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class DiscoveryCacheTest {
+
+    private static final String ETAG = "\"v1\"";
+
+    private MockWebServer mServer;
+    private Uri mDiscoveryUri;
+    private String mDocument;
+    private DiscoveryCache mCache;
+    private List<Runnable> mRevalidations;
+    private Executor mRevalidationExecutor;
+
+    private final ConnectionBuilder mConnectionBuilder = new ConnectionBuilder() {
+        @NonNull
+        @Override
+        public HttpURLConnection openConnection(@NonNull Uri uri) throws IOException {
+            return (HttpURLConnection) new URL(uri.toString()).openConnection();
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.start();
+        mDiscoveryUri = Uri.parse(
+                mServer.url("/.well-known/openid-configuration").toString());
+        mDocument = TestUtils.getTestDiscoveryDocument(
+                TestUtils.getBaseUrl(mDiscoveryUri)).docJson.toString();
+        mCache = new DiscoveryCache(RuntimeEnvironment.application.getSharedPreferences(
+                DiscoveryCache.PREFS_NAME, Context.MODE_PRIVATE));
+        mCache.clear();
+        RateLimitGovernor.getInstance().reset();
+        RequestRetrier.resetBudgets();
+        OktaAppAuth.setRetryPolicy(null);
+        mRevalidations = new ArrayList<>();
+        mRevalidationExecutor = new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                mRevalidations.add(command);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+        RateLimitGovernor.getInstance().reset();
+        CircuitBreaker.getInstance().reset();
+        OktaAppAuth.setRetryPolicy(new ExponentialBackoffRetryPolicy());
+    }
+
+    @Test
+    public void testFreshDocumentIsNotRequestedAgain() throws Exception {
+        mServer.enqueue(document().setHeader("Cache-Control", "max-age=3600"));
+
+        AuthorizationServiceConfiguration first = getConfiguration();
+        AuthorizationServiceConfiguration second = getConfiguration();
+
+        assertThat(second.toJsonString()).isEqualTo(first.toJsonString());
+        assertThat(mServer.getRequestCount()).isEqualTo(1);
+        assertThat(mRevalidations).isEmpty();
+    }
+
+    @Test
+    public void testExpiredDocumentIsRevalidatedConditionally() throws Exception {
+        mServer.enqueue(document().setHeader("Cache-Control", "max-age=0, must-revalidate"));
+        mServer.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_NOT_MODIFIED)
+                .setHeader("Cache-Control", "max-age=3600"));
+
+        AuthorizationServiceConfiguration first = getConfiguration();
+        AuthorizationServiceConfiguration second = getConfiguration();
+        getConfiguration();
+
+        assertThat(second.toJsonString()).isEqualTo(first.toJsonString());
+        assertThat(mServer.getRequestCount()).isEqualTo(2);
+        mServer.takeRequest();
+        RecordedRequest revalidation = mServer.takeRequest();
+        assertThat(revalidation.getHeader("If-None-Match")).isEqualTo(ETAG);
+    }
+
+    @Test
+    public void testStaleDocumentIsReturnedWhileRevalidating() throws Exception {
+        mServer.enqueue(document().setHeader("Cache-Control",
+                "max-age=0, stale-while-revalidate=60"));
+        mServer.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_NOT_MODIFIED)
+                .setHeader("Cache-Control", "max-age=3600"));
+
+        getConfiguration();
+        AuthorizationServiceConfiguration stale = getConfiguration();
+        getConfiguration();
+
+        assertThat(stale).isNotNull();
+        assertThat(mServer.getRequestCount()).isEqualTo(1);
+        assertThat(mRevalidations).hasSize(1);
+
+        mRevalidations.get(0).run();
+        getConfiguration();
+        assertThat(mServer.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testRevalidationIsShedWhenRateLimitIsLow() throws Exception {
+        long reset = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 60;
+        mServer.enqueue(document()
+                .setHeader("Cache-Control", "max-age=0, stale-while-revalidate=60")
+                .setHeader("X-Rate-Limit-Limit", 100)
+                .setHeader("X-Rate-Limit-Remaining", 1)
+                .setHeader("X-Rate-Limit-Reset", reset));
+
+        getConfiguration();
+        AuthorizationServiceConfiguration stale = getConfiguration();
+        mRevalidations.get(0).run();
+
+        assertThat(stale).isNotNull();
+        assertThat(mServer.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testDocumentWithoutCacheHeadersIsRevalidatedOnEveryUse() throws Exception {
+        mServer.enqueue(document());
+        mServer.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_NOT_MODIFIED));
+        mServer.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_NOT_MODIFIED));
+
+        getConfiguration();
+        getConfiguration();
+        getConfiguration();
+
+        assertThat(mServer.getRequestCount()).isEqualTo(3);
+        assertThat(mRevalidations).isEmpty();
+        mServer.takeRequest();
+        assertThat(mServer.takeRequest().getHeader("If-None-Match")).isEqualTo(ETAG);
+    }
+
+    @Test
+    public void testClearRemovesCachedDocuments() throws Exception {
+        mServer.enqueue(document().setHeader("Cache-Control", "max-age=3600"));
+        mServer.enqueue(document().setHeader("Cache-Control", "max-age=3600"));
+
+        getConfiguration();
+        mCache.clear();
+        getConfiguration();
+
+        assertThat(mServer.getRequestCount()).isEqualTo(2);
+        mServer.takeRequest();
+        assertThat(mServer.takeRequest().getHeader("If-None-Match")).isNull();
+    }
+
+    @Test
+    public void testFailedRevalidationOfMustRevalidateDocument() throws Exception {
+        mServer.enqueue(document().setHeader("Cache-Control", "max-age=0, must-revalidate"));
+        mServer.enqueue(new MockResponse().setResponseCode(
+                HttpURLConnection.HTTP_INTERNAL_ERROR));
+
+        getConfiguration();
+        try {
+            getConfiguration();
+            fail("Expected the revalidation to fail");
+        } catch (AuthorizationException ex) {
+            assertThat(ex).isEqualTo(AuthorizationException.GeneralErrors.NETWORK_ERROR);
+        }
+    }
+
+    @Test
+    public void testUnavailableServerIsRetried() throws Exception {
+        OktaAppAuth.setRetryPolicy(new ExponentialBackoffRetryPolicy(1, 0, 0));
+        mServer.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_UNAVAILABLE));
+        mServer.enqueue(document().setHeader("Cache-Control", "max-age=3600"));
+
+        assertThat(getConfiguration()).isNotNull();
+        assertThat(mServer.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testFailingServerIsNotRequestedOnceCircuitOpens() throws Exception {
+        for (int i = 0; i < CircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) {
+            mServer.enqueue(
+                    new MockResponse().setResponseCode(HttpURLConnection.HTTP_UNAVAILABLE));
+            try {
+                getConfiguration();
+                fail("Expected the retrieval to fail");
+            } catch (AuthorizationException ex) {
+                assertThat(ex).isEqualTo(AuthorizationException.GeneralErrors.NETWORK_ERROR);
+            }
+        }
+
+        try {
+            getConfiguration();
+            fail("Expected the retrieval to fail fast");
+        } catch (AuthorizationException ex) {
+            assertThat(ex.getCause()).isInstanceOf(CircuitOpenException.class);
+        }
+        assertThat(mServer.getRequestCount()).isEqualTo(CircuitBreaker.DEFAULT_FAILURE_THRESHOLD);
+        assertThat(OktaAppAuth.getCircuitState(OktaMetrics.Endpoint.DISCOVERY))
+                .isEqualTo(CircuitState.OPEN);
+    }
+
+    @Test
+    public void testNoStoreDocumentIsNotCached() throws Exception {
+        mServer.enqueue(document().setHeader("Cache-Control", "no-store"));
+        mServer.enqueue(document().setHeader("Cache-Control", "no-store"));
+
+        getConfiguration();
+        getConfiguration();
+
+        assertThat(mServer.getRequestCount()).isEqualTo(2);
+        mServer.takeRequest();
+        assertThat(mServer.takeRequest().getHeader("If-None-Match")).isNull();
+    }
+
+    @Test
+    public void testRequestsAreReportedToMetrics() throws Exception {
+        InMemoryOktaMetrics metrics = new InMemoryOktaMetrics();
+        OktaAppAuth.setMetrics(metrics);
+        try {
+            mServer.enqueue(document().setHeader("Cache-Control", "max-age=0, must-revalidate"));
+            mServer.enqueue(new MockResponse().setResponseCode(
+                    HttpURLConnection.HTTP_NOT_MODIFIED));
+
+            getConfiguration();
+            getConfiguration();
+        } finally {
+            OktaAppAuth.setMetrics(null);
+        }
+
+        assertThat(metrics.getLatency(OktaMetrics.Endpoint.DISCOVERY).getCount()).isEqualTo(2);
+        assertThat(metrics.getStatusCount(OktaMetrics.Endpoint.DISCOVERY, 2)).isEqualTo(1);
+        assertThat(metrics.getStatusCount(OktaMetrics.Endpoint.DISCOVERY, 3)).isEqualTo(1);
+        assertThat(metrics.getFailures(OktaMetrics.Endpoint.DISCOVERY)).isEqualTo(0);
+        assertThat(metrics.dump()).contains("received=" + mDocument.length() + "B");
+    }
+
+    @Test
+    public void testCacheControlParsing() {
+        DiscoveryCache.CacheControl cacheControl = DiscoveryCache.CacheControl.parse(
+                "public, Max-Age=60, stale-while-revalidate=\"30\"");
+
+        assertThat(cacheControl.mMaxAgeSeconds).isEqualTo(60);
+        assertThat(cacheControl.getStaleWhileRevalidateMillis()).isEqualTo(30000);
+        assertThat(DiscoveryCache.CacheControl.parse("max-age=60, no-cache")
+                .getStaleWhileRevalidateMillis()).isEqualTo(0);
+        assertThat(DiscoveryCache.CacheControl.parse(null).getStaleWhileRevalidateMillis())
+                .isEqualTo(0);
+    }
+
+    private MockResponse document() {
+        return new MockResponse().setBody(mDocument).setHeader("ETag", ETAG);
+    }
+
+    private AuthorizationServiceConfiguration getConfiguration() throws Exception {
+        return mCache.getConfiguration(mDiscoveryUri, mConnectionBuilder, mRevalidationExecutor);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ExponentialBackoffRetryPolicyTest {
+
+    private static final long BASE_DELAY_MS = 100;
+    private static final long MAX_DELAY_MS = 1000;
+    private static final int RETRIES = 3;
+
+    @Test
+    public void testDelaysGrowFromBaseUpToMax() {
+        ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy(
+                RETRIES, BASE_DELAY_MS, MAX_DELAY_MS, new FixedRandom(1.0));
+
+        long first = policy.getRetryDelayMs(OktaMetrics.Endpoint.DISCOVERY, 1, 0);
+        long second = policy.getRetryDelayMs(OktaMetrics.Endpoint.DISCOVERY, 2, first);
+        long third = policy.getRetryDelayMs(OktaMetrics.Endpoint.DISCOVERY, 3, second);
+
+        assertThat(first).isEqualTo(3 * BASE_DELAY_MS);
+        assertThat(second).isEqualTo(9 * BASE_DELAY_MS);
+        assertThat(third).isEqualTo(MAX_DELAY_MS);
+    }
+
+    @Test
+    public void testFirstDelaysAreSpread() {
+        long first = new ExponentialBackoffRetryPolicy(
+                RETRIES, BASE_DELAY_MS, MAX_DELAY_MS, new Random(1))
+                .getRetryDelayMs(OktaMetrics.Endpoint.TOKEN, 1, 0);
+        long second = new ExponentialBackoffRetryPolicy(
+                RETRIES, BASE_DELAY_MS, MAX_DELAY_MS, new Random(42))
+                .getRetryDelayMs(OktaMetrics.Endpoint.TOKEN, 1, 0);
+
+        assertThat(first).isNotEqualTo(second);
+        assertThat(first).isBetween(BASE_DELAY_MS, 3 * BASE_DELAY_MS);
+        assertThat(second).isBetween(BASE_DELAY_MS, 3 * BASE_DELAY_MS);
+    }
+
+    @Test
+    public void testDelaysAreDrawnBetweenBaseAndThreeTimesThePreviousDelay() {
+        ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy(
+                RETRIES, BASE_DELAY_MS, MAX_DELAY_MS, new FixedRandom(0.5));
+
+        assertThat(policy.getRetryDelayMs(OktaMetrics.Endpoint.USERINFO, 2, 200))
+                .isEqualTo(BASE_DELAY_MS + (600 - BASE_DELAY_MS) / 2);
+        assertThat(new ExponentialBackoffRetryPolicy(
+                RETRIES, BASE_DELAY_MS, MAX_DELAY_MS, new FixedRandom(0.0))
+                .getRetryDelayMs(OktaMetrics.Endpoint.USERINFO, 2, 200))
+                .isEqualTo(BASE_DELAY_MS);
+    }
+
+    @Test
+    public void testNoRetryAfterMaxRetries() {
+        ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy(
+                RETRIES, BASE_DELAY_MS, MAX_DELAY_MS);
+
+        assertThat(policy.getRetryDelayMs(OktaMetrics.Endpoint.REVOKE, RETRIES, MAX_DELAY_MS))
+                .isBetween(BASE_DELAY_MS, MAX_DELAY_MS);
+        assertThat(policy.getRetryDelayMs(OktaMetrics.Endpoint.REVOKE, RETRIES + 1, 0))
+                .isEqualTo(OktaRetryPolicy.NO_RETRY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxDelayBelowBaseDelayIsRejected() {
+        new ExponentialBackoffRetryPolicy(RETRIES, MAX_DELAY_MS, BASE_DELAY_MS);
+    }
+
+    private static final class FixedRandom extends Random {
+        private final double mValue;
+
+        FixedRandom(double value) {
+            mValue = value;
+        }
+
+        @Override
+        public double nextDouble() {
+            return mValue;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+
+import com.okta.ReflectionUtils;
+
+import net.openid.appauth.AuthState;
+import net.openid.appauth.AuthorizationException;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * A local stand-in for an Okta org, which the benchmarks run the flows of {@link OktaAppAuth}
+ * against. It serves the discovery document, the authorization, token, userinfo and revocation
+ * endpoints and a protected resource, and counts the requests made to each of them.
+ */
+final class FakeOktaOrg {
+
+    static final String CLIENT_ID = "benchmark_client";
+    static final String SESSION_TOKEN = "benchmark_session_token";
+    static final Uri REDIRECT_URI = Uri.parse("com.okta.benchmark:/callback");
+    static final String DISCOVERY_PATH = "/.well-known/openid-configuration";
+    static final String AUTHORIZE_PATH = "/v1/authorize";
+    static final String TOKEN_PATH = "/v1/token";
+    static final String USERINFO_PATH = "/v1/userinfo";
+    static final String REVOKE_PATH = "/v1/revoke";
+    static final String RESOURCE_PATH = "/api/resource";
+
+    private static final long TOKEN_LIFETIME_SECONDS = 3600;
+
+    // loggers are only weakly referenced by the log manager
+    private static final Logger SERVER_LOGGER = Logger.getLogger(MockWebServer.class.getName());
+
+    private final MockWebServer mServer = MacroBenchmark.newServer();
+    private final ConcurrentMap<String, AtomicInteger> mRequestCounts =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Creates the org.
+     *
+     * @param latencyMs The latency to add to every response
+     */
+    FakeOktaOrg(long latencyMs) {
+        // logging every request would be measured as well
+        SERVER_LOGGER.setLevel(Level.WARNING);
+        mServer.setDispatcher(new OktaDispatcher(latencyMs));
+    }
+
+    void start() throws IOException {
+        mServer.start();
+    }
+
+    void shutdown() throws IOException {
+        mServer.shutdown();
+    }
+
+    /**
+     * Returns the URI of a path of the org.
+     *
+     * @param path The path
+     * @return The URI
+     */
+    Uri uri(String path) {
+        return Uri.parse(mServer.url(path).toString());
+    }
+
+    /**
+     * Returns the number of requests made to a path of the org so far.
+     *
+     * @param path The path
+     * @return The number of requests
+     */
+    int getRequestCount(String path) {
+        AtomicInteger count = mRequestCounts.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Creates an instance of {@link OktaAppAuth} configured for the org. The account state and
+     * the discovery documents are shared by all instances, so they are reset as well.
+     *
+     * @param context The context
+     * @return The instance, not initialized yet
+     * @throws Exception If the instance cannot be configured
+     */
+    OktaAppAuth createOktaAppAuth(Context context) throws Exception {
+        OAuthClientConfiguration configuration = mock(OAuthClientConfiguration.class);
+        when(configuration.isValid()).thenReturn(true);
+        when(configuration.getClientId()).thenReturn(CLIENT_ID);
+        when(configuration.getRedirectUri()).thenReturn(REDIRECT_URI);
+        when(configuration.getScopes()).thenReturn(
+                new LinkedHashSet<>(Arrays.asList("openid", "profile", "offline_access")));
+        when(configuration.getDiscoveryUri()).thenReturn(uri(DISCOVERY_PATH));
+
+        OktaAppAuth oktaAppAuth = new OktaAppAuth(context);
+        ReflectionUtils.refectSetValue(oktaAppAuth, "mConfiguration", configuration);
+        // the account state outlives the test which used the previous server
+        oktaAppAuth.mAuthStateManager.replace(new AuthState());
+        oktaAppAuth.mDiscoveryCache.clear();
+        return oktaAppAuth;
+    }
+
+    /**
+     * Returns a connection builder for the org, which does not use TLS.
+     *
+     * @return The connection builder
+     */
+    static OktaConnectionBuilder connectionBuilder() {
+        return new OktaConnectionBuilder() {
+            @NonNull
+            @Override
+            public HttpURLConnection openConnection(@NonNull Uri uri) throws IOException {
+                return (HttpURLConnection) new URL(uri.toString()).openConnection();
+            }
+        };
+    }
+
+    /**
+     * A flow which keeps the state of the previous iteration.
+     */
+    abstract static class AuthListenerFlow implements MacroBenchmark.Flow {
+        @Override
+        public void prepare() throws Exception {
+        }
+
+        OktaAppAuth.OktaAuthListener listener(final MacroBenchmark.Outcome outcome) {
+            return new OktaAppAuth.OktaAuthListener() {
+                @Override
+                public void onSuccess() {
+                    outcome.succeeded();
+                }
+
+                @Override
+                public void onTokenFailure(@NonNull AuthorizationException ex) {
+                    outcome.failed(ex);
+                }
+            };
+        }
+    }
+
+    /**
+     * Initializes an instance against the org.
+     */
+    static class InitFlow extends AuthListenerFlow {
+        private final OktaAppAuth mOktaAppAuth;
+        private final Context mContext;
+
+        InitFlow(OktaAppAuth oktaAppAuth, Context context) {
+            mOktaAppAuth = oktaAppAuth;
+            mContext = context;
+        }
+
+        @Override
+        public void start(MacroBenchmark.Outcome outcome) {
+            mOktaAppAuth.init(mContext, listener(outcome), 0, connectionBuilder());
+        }
+    }
+
+    /**
+     * Signs an initialized instance in with a session token.
+     */
+    static class AuthenticateFlow extends AuthListenerFlow {
+        private final OktaAppAuth mOktaAppAuth;
+
+        AuthenticateFlow(OktaAppAuth oktaAppAuth) {
+            mOktaAppAuth = oktaAppAuth;
+        }
+
+        @Override
+        public void start(final MacroBenchmark.Outcome outcome) {
+            mOktaAppAuth.authenticate(SESSION_TOKEN, new OktaAppAuth.OktaNativeAuthListener() {
+                @Override
+                public void onSuccess() {
+                    outcome.succeeded();
+                }
+
+                @Override
+                public void onTokenFailure(@NonNull AuthenticationError ex) {
+                    outcome.failed(ex.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Answers requests like an Okta authorization server. ID tokens are not issued so that their
+     * validation, which needs a signing key, is not part of the flows.
+     */
+    private final class OktaDispatcher extends Dispatcher {
+
+        private final long mLatencyMs;
+
+        OktaDispatcher(long latencyMs) {
+            mLatencyMs = latencyMs;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            String path = request.getRequestUrl().encodedPath();
+            count(path);
+            MockResponse response;
+            if (DISCOVERY_PATH.equals(path)) {
+                response = json(discovery(request));
+            } else if (AUTHORIZE_PATH.equals(path)) {
+                response = new MockResponse()
+                        .setResponseCode(HttpURLConnection.HTTP_MOVED_TEMP)
+                        .setHeader("Location", REDIRECT_URI + "?code=benchmark_code&state="
+                                + request.getRequestUrl().queryParameter("state"));
+            } else if (TOKEN_PATH.equals(path)) {
+                response = json("{\"access_token\":\"access_" + System.nanoTime() + "\","
+                        + "\"token_type\":\"Bearer\","
+                        + "\"expires_in\":" + TOKEN_LIFETIME_SECONDS + ","
+                        + "\"scope\":\"openid profile offline_access\","
+                        + "\"refresh_token\":\"refresh_" + System.nanoTime() + "\"}");
+            } else if (USERINFO_PATH.equals(path) || RESOURCE_PATH.equals(path)) {
+                response = json("{\"sub\":\"00uid4BxXw6I6TV4m0g3\",\"name\":\"John Doe\","
+                        + "\"email\":\"john.doe@example.com\",\"email_verified\":true}");
+            } else if (REVOKE_PATH.equals(path)) {
+                response = new MockResponse();
+            } else {
+                response = new MockResponse().setResponseCode(HttpURLConnection.HTTP_NOT_FOUND);
+            }
+            return response.setHeadersDelay(mLatencyMs, TimeUnit.MILLISECONDS);
+        }
+
+        private void count(String path) {
+            AtomicInteger count = mRequestCounts.get(path);
+            if (count == null) {
+                AtomicInteger created = new AtomicInteger();
+                count = mRequestCounts.putIfAbsent(path, created);
+                if (count == null) {
+                    count = created;
+                }
+            }
+            count.incrementAndGet();
+        }
+
+        private String discovery(RecordedRequest request) {
+            String issuer = request.getRequestUrl().newBuilder().encodedPath("/")
+                    .query(null).build().toString();
+            issuer = issuer.substring(0, issuer.length() - 1);
+            return "{\"issuer\":\"" + issuer + "\","
+                    + "\"authorization_endpoint\":\"" + issuer + AUTHORIZE_PATH + "\","
+                    + "\"token_endpoint\":\"" + issuer + TOKEN_PATH + "\","
+                    + "\"userinfo_endpoint\":\"" + issuer + USERINFO_PATH + "\","
+                    + "\"revocation_endpoint\":\"" + issuer + REVOKE_PATH + "\","
+                    + "\"jwks_uri\":\"" + issuer + "/v1/keys\","
+                    + "\"response_types_supported\":[\"code\"],"
+                    + "\"subject_types_supported\":[\"public\"],"
+                    + "\"id_token_signing_alg_values_supported\":[\"RS256\"],"
+                    + "\"scopes_supported\":[\"openid\",\"profile\",\"offline_access\"]}";
+        }
+
+        private MockResponse json(String body) {
+            return new MockResponse()
+                    .setHeader("Content-Type", "application/json")
+                    .setBody(body);
+        }
+    }
+}
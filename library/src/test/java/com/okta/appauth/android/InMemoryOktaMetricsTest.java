@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class InMemoryOktaMetricsTest {
+
+    private InMemoryOktaMetrics sut;
+
+    @Before
+    public void setUp() {
+        sut = new InMemoryOktaMetrics();
+    }
+
+    @Test
+    public void testRequestsAreAggregatedPerEndpoint() {
+        sut.onRequestCompleted(request(OktaMetrics.Endpoint.TOKEN, 200, 3, null));
+        sut.onRequestCompleted(request(OktaMetrics.Endpoint.TOKEN, 400, 5, null));
+        sut.onRequestCompleted(request(OktaMetrics.Endpoint.TOKEN, -1, 100,
+                new IOException("timeout")));
+
+        assertThat(sut.getLatency(OktaMetrics.Endpoint.TOKEN).getCount()).isEqualTo(3);
+        assertThat(sut.getLatency(OktaMetrics.Endpoint.REVOKE).getCount()).isEqualTo(0);
+        assertThat(sut.getFailures(OktaMetrics.Endpoint.TOKEN)).isEqualTo(2);
+        assertThat(sut.getStatusCount(OktaMetrics.Endpoint.TOKEN, 2)).isEqualTo(1);
+        assertThat(sut.getStatusCount(OktaMetrics.Endpoint.TOKEN, 4)).isEqualTo(1);
+        assertThat(sut.getStatusCount(OktaMetrics.Endpoint.TOKEN, 0)).isEqualTo(1);
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        for (int i = 0; i < 98; i++) {
+            sut.onRequestCompleted(request(OktaMetrics.Endpoint.USERINFO, 200, 3, null));
+        }
+        sut.onRequestCompleted(request(OktaMetrics.Endpoint.USERINFO, 200, 40, null));
+        sut.onRequestCompleted(request(OktaMetrics.Endpoint.USERINFO, 200, 40, null));
+
+        InMemoryOktaMetrics.Histogram latency = sut.getLatency(OktaMetrics.Endpoint.USERINFO);
+        assertThat(latency.getPercentileMillis(0.5)).isEqualTo(4);
+        assertThat(latency.getPercentileMillis(0.99)).isEqualTo(64);
+        assertThat(latency.getMeanMillis()).isEqualTo(3.74);
+    }
+
+    @Test
+    public void testQueueWaitsArePerLane() {
+        sut.onQueueWait("user", TimeUnit.MILLISECONDS.toNanos(2));
+        sut.onQueueWait("user", TimeUnit.MILLISECONDS.toNanos(2));
+        sut.onQueueWait("background", TimeUnit.MILLISECONDS.toNanos(2));
+
+        assertThat(sut.getQueueWait("user").getCount()).isEqualTo(2);
+        assertThat(sut.getQueueWait("background").getCount()).isEqualTo(1);
+        assertThat(sut.getQueueWait("other").getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testDumpDescribesMeasuredEndpoints() {
+        sut.onRequestCompleted(request(OktaMetrics.Endpoint.DISCOVERY, 200, 3, null));
+        sut.onQueueWait("user", 0);
+
+        String dump = sut.dump();
+
+        assertThat(dump).contains("DISCOVERY: requests=1 failures=0 retries=0 "
+                + "status=[none=0 2xx=1 3xx=0 4xx=0 5xx=0]");
+        assertThat(dump).contains("queue user: tasks=1");
+        assertThat(dump).doesNotContain("TOKEN");
+    }
+
+    private static RequestMetrics request(OktaMetrics.Endpoint endpoint, int statusCode,
+                                          long millis, Throwable error) {
+        return new RequestMetrics(endpoint, statusCode, TimeUnit.MILLISECONDS.toNanos(millis),
+                RequestMetrics.UNKNOWN, RequestMetrics.UNKNOWN, RequestMetrics.UNKNOWN,
+                RequestMetrics.UNKNOWN, 0, error);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class JournalAuthStateStoreTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = new File(mFolder.getRoot(), JournalAuthStateStore.FILE_NAME);
+    }
+
+    @Test
+    public void testReadReturnsNullForMissingRecord() {
+        assertThat(new JournalAuthStateStore(mFile).read("state")).isNull();
+    }
+
+    @Test
+    public void testRecordsSurviveReopening() {
+        JournalAuthStateStore store = new JournalAuthStateStore(mFile);
+        store.write("config", "config1");
+        store.write("state", "state1");
+        store.write("state", "state2");
+
+        JournalAuthStateStore reopened = new JournalAuthStateStore(mFile);
+        assertThat(reopened.read("config")).isEqualTo("config1");
+        assertThat(reopened.read("state")).isEqualTo("state2");
+    }
+
+    @Test
+    public void testWriteNullRemovesRecord() {
+        JournalAuthStateStore store = new JournalAuthStateStore(mFile);
+        store.write("state", "state1");
+        store.write("state", null);
+
+        assertThat(store.read("state")).isNull();
+        assertThat(new JournalAuthStateStore(mFile).read("state")).isNull();
+    }
+
+    @Test
+    public void testTornWriteRollsBackToLastCompleteEntry() throws IOException {
+        JournalAuthStateStore store = new JournalAuthStateStore(mFile);
+        store.write("state", "state1");
+        long end = journalEnd();
+        store.write("state", "state2");
+
+        // corrupt the last byte of the latest entry as if its write never completed
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            long last = journalEnd() - 1;
+            file.seek(last);
+            int value = file.read();
+            file.seek(last);
+            file.write(value ^ 0xFF);
+        } finally {
+            file.close();
+        }
+
+        JournalAuthStateStore reopened = new JournalAuthStateStore(mFile);
+        assertThat(reopened.read("state")).isEqualTo("state1");
+        assertThat(journalEnd()).isEqualTo(end);
+
+        reopened.write("state", "state3");
+        assertThat(new JournalAuthStateStore(mFile).read("state")).isEqualTo("state3");
+    }
+
+    @Test
+    public void testJournalIsCompacted() {
+        JournalAuthStateStore store = new JournalAuthStateStore(mFile);
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 1024; i++) {
+            value.append('x');
+        }
+        store.write("config", "config1");
+        for (int i = 0; i < 1000; i++) {
+            store.write("state", value.toString() + i);
+        }
+
+        assertThat(mFile.length()).isLessThan(256 * 1024);
+        JournalAuthStateStore reopened = new JournalAuthStateStore(mFile);
+        assertThat(reopened.read("config")).isEqualTo("config1");
+        assertThat(reopened.read("state")).isEqualTo(value.toString() + 999);
+    }
+
+    @Test
+    public void testUnrecognizedFileIsDiscarded() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.write("not a journal".getBytes("UTF-8"));
+        } finally {
+            file.close();
+        }
+
+        JournalAuthStateStore store = new JournalAuthStateStore(mFile);
+        assertThat(store.read("state")).isNull();
+        store.write("state", "state1");
+        assertThat(new JournalAuthStateStore(mFile).read("state")).isEqualTo("state1");
+    }
+
+    private long journalEnd() throws IOException {
+        // the end of the journal is the offset of the first zero length field
+        RandomAccessFile file = new RandomAccessFile(mFile, "r");
+        try {
+            long offset = 8;
+            while (true) {
+                file.seek(offset);
+                int length = file.readInt();
+                if (length == 0) {
+                    return offset;
+                }
+                offset += 8 + length;
+            }
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.Nullable;
+
+import org.robolectric.Robolectric;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ServerSocketFactory;
+
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Runs a flow of the library end to end a number of times and reports its wall time
+ * percentiles and the bytes it allocates. A flow is started on the main thread, which is kept
+ * looping until the flow completes, so callbacks posted to the main looper are delivered as on
+ * a device. AppAuth's tasks run on the main thread as well, as Robolectric runs them.
+ * <p>
+ * Allocations are summed over all threads of the process except those of MockWebServer, so
+ * they include the work of the executors and AppAuth's tasks. They are only reported when the
+ * JVM can measure them per thread.
+ * </p>
+ */
+final class MacroBenchmark {
+
+    static final String PROPERTY_ITERATIONS = "okta.benchmark.iterations";
+    static final String PROPERTY_WARMUP = "okta.benchmark.warmup";
+    static final String PROPERTY_LATENCY_MS = "okta.benchmark.latencyMs";
+    static final String PROPERTY_REPORT = "okta.benchmark.report";
+
+    private static final int DEFAULT_ITERATIONS = 50;
+    private static final int DEFAULT_WARMUP = 10;
+    private static final long FLOW_TIMEOUT_SECONDS = 30;
+    private static final long POLL_MS = 1;
+    private static final int MAX_THREADS = 256;
+    private static final String SERVER_THREAD_PREFIX = "MockWebServer";
+
+    /**
+     * A flow to measure.
+     */
+    interface Flow {
+        /**
+         * Prepares an iteration, e.g. by resetting the state the flow changes. Not measured.
+         *
+         * @throws Exception If the iteration cannot be prepared
+         */
+        void prepare() throws Exception;
+
+        /**
+         * Starts the flow, which reports its completion to the given outcome.
+         *
+         * @param outcome The outcome of the iteration
+         * @throws Exception If the flow cannot be started
+         */
+        void start(Outcome outcome) throws Exception;
+    }
+
+    /**
+     * The outcome of one iteration of a flow.
+     */
+    static final class Outcome {
+        private final CountDownLatch mDone = new CountDownLatch(1);
+        private volatile String mFailure;
+
+        void succeeded() {
+            mDone.countDown();
+        }
+
+        void failed(Object reason) {
+            mFailure = String.valueOf(reason);
+            mDone.countDown();
+        }
+
+        boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            return mDone.await(timeout, unit);
+        }
+
+        @Nullable
+        String getFailure() {
+            return mFailure;
+        }
+    }
+
+    private final java.lang.management.ThreadMXBean mThreads =
+            ManagementFactory.getThreadMXBean();
+    private final Thread[] mThreadBuffer = new Thread[MAX_THREADS];
+    private final int mIterations = Integer.getInteger(PROPERTY_ITERATIONS, DEFAULT_ITERATIONS);
+    private final int mWarmup = Integer.getInteger(PROPERTY_WARMUP, DEFAULT_WARMUP);
+    private final StringBuilder mReport = new StringBuilder();
+
+    MacroBenchmark() {
+        if (allocationsMeasurable()) {
+            ((com.sun.management.ThreadMXBean) mThreads).setThreadAllocatedMemoryEnabled(true);
+        }
+    }
+
+    /**
+     * Returns the latency to add to every response of the server.
+     *
+     * @return The latency in milliseconds
+     */
+    static long getServerLatencyMs() {
+        return Long.getLong(PROPERTY_LATENCY_MS, 0);
+    }
+
+    /**
+     * Creates a server whose responses are not held back by Nagle's algorithm. MockWebServer
+     * writes the headers and the body of a response separately, so otherwise every response
+     * would wait for the client's delayed acknowledgement, about 40ms on Linux.
+     *
+     * @return The server, not started yet
+     */
+    static MockWebServer newServer() {
+        MockWebServer server = new MockWebServer();
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        return server;
+    }
+
+    /**
+     * Measures a flow, failing if any iteration does not succeed.
+     *
+     * @param name The name to report the flow by
+     * @param flow The flow
+     * @return The line reported for the flow
+     * @throws Exception If an iteration fails
+     */
+    String measure(String name, Flow flow) throws Exception {
+        for (int i = 0; i < mWarmup; i++) {
+            complete(name, flow);
+        }
+        long[] nanos = new long[mIterations];
+        long allocated = 0;
+        for (int i = 0; i < mIterations; i++) {
+            flow.prepare();
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            run(name, flow);
+            nanos[i] = System.nanoTime() - start;
+            allocated += allocatedBytes() - allocatedBefore;
+        }
+
+        Arrays.sort(nanos);
+        String line = String.format(Locale.US,
+                "%-22s n=%d latency=%dms p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms alloc=%s",
+                name, mIterations, getServerLatencyMs(), millis(percentile(nanos, 0.5)),
+                millis(percentile(nanos, 0.9)), millis(percentile(nanos, 0.99)),
+                millis(nanos[nanos.length - 1]), allocationsMeasurable()
+                        ? (allocated / mIterations) + "B/op" : "n/a");
+        report(line);
+        return line;
+    }
+
+    /**
+     * Prints a line and adds it to the report.
+     *
+     * @param line The line to report
+     */
+    void report(String line) {
+        System.out.println(line);
+        mReport.append(line).append('\n');
+    }
+
+    /**
+     * Appends the lines reported so far to the report file, if one is configured.
+     *
+     * @throws IOException If the report cannot be written
+     */
+    void writeReport() throws IOException {
+        String report = System.getProperty(PROPERTY_REPORT);
+        if (report == null || mReport.length() == 0) {
+            return;
+        }
+        Writer writer = new FileWriter(report, true);
+        try {
+            writer.write(mReport.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Runs a flow once without measuring it, e.g. to bring the library into the state another
+     * flow starts from.
+     *
+     * @param name The name to report a failure by
+     * @param flow The flow
+     * @throws Exception If the flow fails
+     */
+    void complete(String name, Flow flow) throws Exception {
+        flow.prepare();
+        run(name, flow);
+    }
+
+    private void run(String name, Flow flow) throws Exception {
+        Outcome outcome = new Outcome();
+        flow.start(outcome);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(FLOW_TIMEOUT_SECONDS);
+        while (!outcome.await(POLL_MS, TimeUnit.MILLISECONDS)) {
+            Robolectric.flushBackgroundThreadScheduler();
+            ShadowLooper.runUiThreadTasks();
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError(name + " did not complete");
+            }
+        }
+        if (outcome.getFailure() != null) {
+            throw new AssertionError(name + " failed: " + outcome.getFailure());
+        }
+    }
+
+    private boolean allocationsMeasurable() {
+        return mThreads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) mThreads)
+                        .isThreadAllocatedMemorySupported();
+    }
+
+    private long allocatedBytes() {
+        if (!allocationsMeasurable()) {
+            return 0;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) mThreads;
+        int count = Thread.enumerate(mThreadBuffer);
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            Thread thread = mThreadBuffer[i];
+            if (!thread.getName().startsWith(SERVER_THREAD_PREFIX)) {
+                total += Math.max(0, threads.getThreadAllocatedBytes(thread.getId()));
+            }
+            mThreadBuffer[i] = null;
+        }
+        return total;
+    }
+
+    static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static final class NoDelayServerSocketFactory extends ServerSocketFactory {
+
+        @Override
+        public ServerSocket createServerSocket() throws IOException {
+            return new ServerSocket() {
+                @Override
+                public Socket accept() throws IOException {
+                    Socket socket = super.accept();
+                    socket.setTcpNoDelay(true);
+                    return socket;
+                }
+            };
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress address) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
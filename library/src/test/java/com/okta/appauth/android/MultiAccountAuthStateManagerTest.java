@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import com.okta.TestUtils;
+import net.openid.appauth.AuthState;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class MultiAccountAuthStateManagerTest {
+
+    private MultiAccountAuthStateManager sut;
+
+    @Before
+    public void setUp() {
+        sut = new MultiAccountAuthStateManager(RuntimeEnvironment.application);
+    }
+
+    @Test
+    public void testGetAccountReturnsSameManager() {
+        assertThat(sut.getAccount("first")).isSameAs(sut.getAccount("first"));
+        assertThat(sut.getAccount("first")).isNotSameAs(sut.getAccount("second"));
+        assertThat(sut.getAccount(null))
+                .isSameAs(AuthStateManager.getInstance(RuntimeEnvironment.application));
+    }
+
+    @Test
+    public void testAccountsAreStoredIndependently() {
+        AuthState state = TestUtils.getTestAuthorizedState();
+        sut.getAccount("first").replace(state);
+
+        assertThat(sut.getAccount("second").getCurrent().isAuthorized()).isFalse();
+        MultiAccountAuthStateManager other =
+                new MultiAccountAuthStateManager(RuntimeEnvironment.application);
+        assertThat(other.getAccount("first").getCurrent().jsonSerializeString())
+                .isEqualTo(state.jsonSerializeString());
+        assertThat(other.getAccount("second").getCurrent().isAuthorized()).isFalse();
+    }
+
+    @Test
+    public void testLeastRecentlyUsedAccountIsReleased() {
+        sut.setMaxLoadedAccounts(2);
+        AuthStateManager first = sut.getAccount("first");
+        AuthStateManager second = sut.getAccount("second");
+        AuthState firstState = first.getCurrent();
+        AuthState secondState = second.getCurrent();
+
+        sut.getAccount("first");
+        sut.getAccount("third");
+        first.flush();
+        second.flush();
+
+        assertThat(first.getCurrent()).isSameAs(firstState);
+        assertThat(second.getCurrent()).isNotSameAs(secondState);
+    }
+
+    @Test
+    public void testActiveAccount() {
+        assertThat(sut.getActiveAccountId()).isNull();
+        assertThat(sut.getActiveAccount()).isSameAs(sut.getAccount(null));
+
+        AuthStateManager manager = sut.setActiveAccount("first");
+
+        assertThat(sut.getActiveAccountId()).isEqualTo("first");
+        assertThat(sut.getActiveAccount()).isSameAs(manager).isSameAs(sut.getAccount("first"));
+    }
+
+    @Test
+    public void testActiveAccountIsRestored() {
+        sut.setActiveAccount("first");
+        assertThat(new MultiAccountAuthStateManager(RuntimeEnvironment.application)
+                .getActiveAccountId()).isEqualTo("first");
+
+        sut.setActiveAccount(null);
+        assertThat(new MultiAccountAuthStateManager(RuntimeEnvironment.application)
+                .getActiveAccountId()).isNull();
+    }
+
+    @Test
+    public void testRemoveAccountClearsState() {
+        AuthStateManager manager = sut.getAccount("first");
+        manager.replace(TestUtils.getTestAuthorizedState());
+
+        sut.removeAccount("first");
+        manager.flush();
+
+        assertThat(manager.getCurrent().isAuthorized()).isFalse();
+        assertThat(sut.getAccount("first")).isSameAs(manager);
+        assertThat(new MultiAccountAuthStateManager(RuntimeEnvironment.application)
+                .getAccount("first").getCurrent().isAuthorized()).isFalse();
+    }
+}
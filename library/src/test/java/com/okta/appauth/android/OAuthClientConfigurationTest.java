@@ -24,6 +24,8 @@ import android.content.pm.ResolveInfo;
 import android.net.Uri;
 
 import com.okta.android.json.InvalidJsonDocumentException;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -33,6 +35,9 @@ import org.robolectric.shadows.ShadowPackageManager;
 
 import static com.okta.appauth.android.OAuthClientConfiguration.OIDC_DISCOVERY;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.robolectric.Shadows.shadowOf;
 
 @RunWith(RobolectricTestRunner.class)
@@ -101,6 +106,29 @@ public class OAuthClientConfigurationTest {
         assertThat(sut.hasConfigurationChanged()).isFalse();
     }
 
+    @Test
+    public void testConfigurationChangedIsReadFromPreferencesOnce() {
+        SharedPreferences prefs = mock(SharedPreferences.class);
+        sut = new OAuthClientConfiguration(
+                mContext,
+                prefs,
+                ConfigurationStreams.getExampleConfiguration()
+        );
+
+        assertThat(sut.hasConfigurationChanged()).isTrue();
+        assertThat(sut.hasConfigurationChanged()).isTrue();
+        verify(prefs, times(1)).getString(OAuthClientConfiguration.KEY_LAST_HASH, null);
+    }
+
+    @Test
+    public void testConfigurationChangedDetectsExternalChange() {
+        sut.acceptConfiguration();
+        assertThat(sut.hasConfigurationChanged()).isFalse();
+
+        mPrefs.edit().remove(OAuthClientConfiguration.KEY_LAST_HASH).commit();
+        assertThat(sut.hasConfigurationChanged()).isTrue();
+    }
+
     @Test
     public void testConfigurationHashesJSONString() throws InvalidJsonDocumentException {
         sut = new OAuthClientConfiguration(
@@ -149,4 +177,87 @@ public class OAuthClientConfigurationTest {
     public void testGetScopes() {
         assertThat(sut.getScopes()).contains("openid", "foo");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPrecompiledConfigurationMatchesParsedConfiguration() {
+        sut.acceptConfiguration();
+        OAuthClientConfiguration precompiled = new OAuthClientConfiguration(
+                mContext,
+                mPrefs,
+                new ExamplePrecompiledConfiguration()
+        );
+
+        assertThat(precompiled.isValid()).isTrue();
+        assertThat(precompiled.hasConfigurationChanged()).isFalse();
+        assertThat(precompiled.getClientId()).isEqualTo(sut.getClientId());
+        assertThat(precompiled.getRedirectUri()).isEqualTo(sut.getRedirectUri());
+        assertThat(precompiled.getEndSessionRedirectUri())
+                .isEqualTo(sut.getEndSessionRedirectUri());
+        assertThat(precompiled.getDiscoveryUri()).isEqualTo(sut.getDiscoveryUri());
+        assertThat(precompiled.getScopes()).isEqualTo(sut.getScopes());
+    }
+
+    @Test
+    public void testLoadPrecompiledConfiguration() {
+        assertThat(OAuthClientConfiguration.loadPrecompiledConfiguration(
+                OAuthClientConfiguration.PRECOMPILED_CONFIGURATION_CLASS)).isNull();
+        assertThat(OAuthClientConfiguration.loadPrecompiledConfiguration(
+                ExamplePrecompiledConfiguration.class.getName()))
+                .isInstanceOf(ExamplePrecompiledConfiguration.class);
+        assertThat(OAuthClientConfiguration.loadPrecompiledConfiguration(
+                String.class.getName())).isNull();
+        assertThat(OAuthClientConfiguration.loadPrecompiledConfiguration(
+                FailingPrecompiledConfiguration.class.getName())).isNull();
+        assertThat(OAuthClientConfiguration.loadPrecompiledConfiguration(
+                ParameterizedPrecompiledConfiguration.class.getName())).isNull();
+    }
+
+    public static class FailingPrecompiledConfiguration extends ExamplePrecompiledConfiguration {
+        public FailingPrecompiledConfiguration() {
+            throw new IllegalStateException("Not configured");
+        }
+    }
+
+    public static class ParameterizedPrecompiledConfiguration
+            extends ExamplePrecompiledConfiguration {
+        public ParameterizedPrecompiledConfiguration(String clientId) {
+        }
+    }
+
+    public static class ExamplePrecompiledConfiguration implements PrecompiledConfiguration {
+        @Override
+        public String getClientId() {
+            return "example_client_id";
+        }
+
+        @Override
+        public String getRedirectUri() {
+            return "com.okta.appauth.android.test:/oauth2redirect";
+        }
+
+        @Override
+        public String getEndSessionRedirectUri() {
+            return "com.okta.appauth.android.test:/logout";
+        }
+
+        @Override
+        public String getIssuerUri() {
+            return "https://example.com/issuer";
+        }
+
+        @Override
+        public String[] getScopes() {
+            return new String[] {"openid", "foo"};
+        }
+
+        @Override
+        public int getConfigHash() {
+            try {
+                return new JSONObject(ConfigurationStreams.EXAMPLE_JSON_CONFIG)
+                        .toString().hashCode();
+            } catch (JSONException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+}
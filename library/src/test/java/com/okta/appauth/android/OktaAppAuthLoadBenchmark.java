@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import net.openid.appauth.AuthState;
+import net.openid.appauth.AuthorizationException;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okio.Okio;
+
+/**
+ * Puts {@link OktaAppAuth} under load from many threads at once against a {@link FakeOktaOrg}.
+ * Every client thread makes its calls one after the other, and the tokens are expired a number
+ * of times while the clients run, so the concurrent calls have to share the refreshes. Reports
+ * the throughput, the latency percentiles of a call, the number of calls to the token endpoint,
+ * the peak number of threads and the growth of the heap over the run.
+ * <p>
+ * Like the macro benchmarks, it is not run with the unit tests; run it with
+ * {@code ./gradlew :library:testReleaseUnitTest -PmacroBenchmark
+ * --tests '*OktaAppAuthLoadBenchmark'}, optionally with {@code -PmacroBenchmark.clients=},
+ * {@code -PmacroBenchmark.requests=} (per client), {@code -PmacroBenchmark.expiries=} and
+ * {@code -PmacroBenchmark.latencyMs=}.
+ * </p>
+ */
+@RunWith(RobolectricTestRunner.class)
+public class OktaAppAuthLoadBenchmark {
+
+    static final String PROPERTY_CLIENTS = "okta.benchmark.clients";
+    static final String PROPERTY_REQUESTS = "okta.benchmark.requests";
+    static final String PROPERTY_EXPIRIES = "okta.benchmark.expiries";
+
+    private static final int DEFAULT_CLIENTS = 200;
+    private static final int DEFAULT_REQUESTS = 25;
+    private static final int DEFAULT_EXPIRIES = 3;
+    private static final long RUN_TIMEOUT_SECONDS = 300;
+    private static final long CALL_TIMEOUT_SECONDS = 60;
+    private static final long POLL_MS = 1;
+    private static final int GC_ROUNDS = 3;
+    private static final int OTHER_THREADS = 512;
+    private static final String LIBRARY_THREAD_PREFIX = "Okta";
+    private static final int BYTES_PER_KB = 1024;
+
+    private static MacroBenchmark sBenchmark;
+
+    private final int mClients = Integer.getInteger(PROPERTY_CLIENTS, DEFAULT_CLIENTS);
+    private final int mRequests = Integer.getInteger(PROPERTY_REQUESTS, DEFAULT_REQUESTS);
+    private final int mExpiries = Integer.getInteger(PROPERTY_EXPIRIES, DEFAULT_EXPIRIES);
+    private final ThreadMXBean mThreads = ManagementFactory.getThreadMXBean();
+    private final MemoryMXBean mMemory = ManagementFactory.getMemoryMXBean();
+    private final Thread[] mThreadBuffer = new Thread[mClients + OTHER_THREADS];
+
+    private FakeOktaOrg mOrg;
+    private OktaAppAuth mOktaAppAuth;
+
+    /**
+     * A call made by the clients.
+     */
+    private interface Call {
+        void start(MacroBenchmark.Outcome outcome) throws Exception;
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        sBenchmark = new MacroBenchmark();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws IOException {
+        sBenchmark.writeReport();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mOrg = new FakeOktaOrg(MacroBenchmark.getServerLatencyMs());
+        mOrg.start();
+        Context context = RuntimeEnvironment.application;
+        mOktaAppAuth = mOrg.createOktaAppAuth(context);
+        sBenchmark.complete("init", new FakeOktaOrg.InitFlow(mOktaAppAuth, context));
+        sBenchmark.complete("authenticate", new FakeOktaOrg.AuthenticateFlow(mOktaAppAuth));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mOktaAppAuth.dispose();
+        mOrg.shutdown();
+    }
+
+    @Test
+    public void performAuthorizedRequest() throws Exception {
+        final URL resource = new URL(mOrg.uri(FakeOktaOrg.RESOURCE_PATH).toString());
+        run("performAuthorizedRequest", new Call() {
+            @Override
+            public void start(final MacroBenchmark.Outcome outcome) {
+                mOktaAppAuth.performAuthorizedRequest(new OktaAppAuth.BearerAuthRequest() {
+                    @NonNull
+                    @Override
+                    public HttpURLConnection createRequest() throws Exception {
+                        HttpURLConnection conn = (HttpURLConnection) resource.openConnection();
+                        conn.setInstanceFollowRedirects(false);
+                        return conn;
+                    }
+
+                    @Override
+                    public void onSuccess(@NonNull InputStream response) {
+                        try {
+                            // consumed so that the connection can be reused
+                            Okio.buffer(Okio.source(response)).readByteString();
+                            response.close();
+                            outcome.succeeded();
+                        } catch (IOException e) {
+                            outcome.failed(e);
+                        }
+                    }
+
+                    @Override
+                    public void onTokenFailure(@NonNull AuthorizationException ex) {
+                        outcome.failed(ex);
+                    }
+
+                    @Override
+                    public void onFailure(int httpResponseCode, Exception ex) {
+                        outcome.failed(httpResponseCode + " " + ex);
+                    }
+                });
+            }
+        });
+    }
+
+    @Test
+    public void getUserInfo() throws Exception {
+        run("getUserInfo", new Call() {
+            @Override
+            public void start(final MacroBenchmark.Outcome outcome) {
+                mOktaAppAuth.getUserInfo(new OktaAppAuth.OktaAuthActionCallback<JSONObject>() {
+                    @Override
+                    public void onSuccess(JSONObject response) {
+                        outcome.succeeded();
+                    }
+
+                    @Override
+                    public void onTokenFailure(@NonNull AuthorizationException ex) {
+                        outcome.failed(ex);
+                    }
+
+                    @Override
+                    public void onFailure(int httpResponseCode, Exception ex) {
+                        outcome.failed(httpResponseCode + " " + ex);
+                    }
+                });
+            }
+        });
+    }
+
+    private void run(String name, final Call call) throws Exception {
+        final int total = mClients * mRequests;
+        final long[] nanos = new long[total];
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicReference<String> firstFailure = new AtomicReference<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(mClients);
+
+        Thread[] clients = new Thread[mClients];
+        for (int i = 0; i < mClients; i++) {
+            clients[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        started.await();
+                        for (int r = 0; r < mRequests; r++) {
+                            MacroBenchmark.Outcome outcome = new MacroBenchmark.Outcome();
+                            long start = System.nanoTime();
+                            try {
+                                call.start(outcome);
+                                if (!outcome.await(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                                    outcome.failed("timed out");
+                                }
+                            } catch (Exception e) {
+                                outcome.failed(e);
+                            }
+                            nanos[completed.getAndIncrement()] = System.nanoTime() - start;
+                            if (outcome.getFailure() != null) {
+                                failures.incrementAndGet();
+                                firstFailure.compareAndSet(null, outcome.getFailure());
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }, "LoadClient-" + i);
+            clients[i].setDaemon(true);
+            clients[i].start();
+        }
+
+        collectGarbage();
+        long heapBefore = mMemory.getHeapMemoryUsage().getUsed();
+        int tokenCallsBefore = mOrg.getRequestCount(FakeOktaOrg.TOKEN_PATH);
+        mThreads.resetPeakThreadCount();
+        int peakLibraryThreads = 0;
+        int expiries = 0;
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(RUN_TIMEOUT_SECONDS);
+        started.countDown();
+        while (!finished.await(POLL_MS, TimeUnit.MILLISECONDS)) {
+            // the tokens expire at even intervals of the run
+            if (expiries < mExpiries
+                    && completed.get() >= (long) total * (expiries + 1) / (mExpiries + 1)) {
+                expireTokens();
+                expiries++;
+            }
+            Robolectric.flushBackgroundThreadScheduler();
+            ShadowLooper.runUiThreadTasks();
+            peakLibraryThreads = Math.max(peakLibraryThreads, countLibraryThreads());
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError(name + " did not complete, "
+                        + completed.get() + " of " + total + " calls completed");
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        for (Thread client : clients) {
+            client.join();
+        }
+        int tokenCalls = mOrg.getRequestCount(FakeOktaOrg.TOKEN_PATH) - tokenCallsBefore;
+        int peakThreads = mThreads.getPeakThreadCount();
+        collectGarbage();
+        long heapGrowth = mMemory.getHeapMemoryUsage().getUsed() - heapBefore;
+
+        Arrays.sort(nanos);
+        sBenchmark.report(String.format(Locale.US,
+                "%-22s clients=%d calls=%d latency=%dms throughput=%.0f/s p50=%.2fms "
+                        + "p99=%.2fms max=%.2fms expiries=%d tokenCalls=%d "
+                        + "peakThreads=%d (library %d) heapGrowth=%dKB failures=%d",
+                "load " + name, mClients, total, MacroBenchmark.getServerLatencyMs(),
+                total / (elapsed / (double) TimeUnit.SECONDS.toNanos(1)),
+                MacroBenchmark.millis(MacroBenchmark.percentile(nanos, 0.5)),
+                MacroBenchmark.millis(MacroBenchmark.percentile(nanos, 0.99)),
+                MacroBenchmark.millis(nanos[nanos.length - 1]), expiries, tokenCalls,
+                peakThreads, peakLibraryThreads, heapGrowth / BYTES_PER_KB, failures.get()));
+        if (failures.get() > 0) {
+            throw new AssertionError(name + " failed " + failures.get() + " of " + total
+                    + " calls, e.g. " + firstFailure.get());
+        }
+    }
+
+    /*
+     * Marks the current tokens as expired. The state is replaced rather than changed, as the
+     * clients read it concurrently.
+     */
+    private void expireTokens() throws Exception {
+        AuthStateManager manager = mOktaAppAuth.mAuthStateManager;
+        AuthState expired = AuthState.jsonDeserialize(manager.getCurrent().jsonSerializeString());
+        expired.setNeedsTokenRefresh(true);
+        manager.replace(expired);
+    }
+
+    private int countLibraryThreads() {
+        int count = Thread.enumerate(mThreadBuffer);
+        int library = 0;
+        for (int i = 0; i < count; i++) {
+            if (mThreadBuffer[i].getName().startsWith(LIBRARY_THREAD_PREFIX)) {
+                library++;
+            }
+            mThreadBuffer[i] = null;
+        }
+        return library;
+    }
+
+    private static void collectGarbage() {
+        for (int i = 0; i < GC_ROUNDS; i++) {
+            System.gc();
+        }
+    }
+}
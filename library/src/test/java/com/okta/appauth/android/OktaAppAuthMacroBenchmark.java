@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import net.openid.appauth.AuthState;
+import net.openid.appauth.AuthorizationException;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+
+/**
+ * Measures the main flows of {@link OktaAppAuth} end to end against a {@link FakeOktaOrg}. These
+ * benchmarks are not run with the unit tests; run them with
+ * {@code ./gradlew :library:testReleaseUnitTest -PmacroBenchmark}, optionally with
+ * {@code -PmacroBenchmark.iterations=}, {@code -PmacroBenchmark.warmup=} and
+ * {@code -PmacroBenchmark.latencyMs=} to add latency to every response of the server. The
+ * results are printed and written to build/reports/macroBenchmarks.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class OktaAppAuthMacroBenchmark {
+
+    private static MacroBenchmark sBenchmark;
+
+    private FakeOktaOrg mOrg;
+    private OktaAppAuth mOktaAppAuth;
+    private Context mContext;
+
+    @BeforeClass
+    public static void setUpClass() {
+        sBenchmark = new MacroBenchmark();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws IOException {
+        sBenchmark.writeReport();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mOrg = new FakeOktaOrg(MacroBenchmark.getServerLatencyMs());
+        mOrg.start();
+        mContext = RuntimeEnvironment.application;
+        mOktaAppAuth = mOrg.createOktaAppAuth(mContext);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mOktaAppAuth.dispose();
+        mOrg.shutdown();
+    }
+
+    @Test
+    public void coldInit() throws Exception {
+        sBenchmark.measure("init (cold)", new FakeOktaOrg.InitFlow(mOktaAppAuth, mContext) {
+            @Override
+            public void prepare() {
+                mOktaAppAuth.mDiscoveryCache.clear();
+                mOktaAppAuth.mAuthStateManager.replace(new AuthState());
+            }
+        });
+    }
+
+    @Test
+    public void authenticate() throws Exception {
+        sBenchmark.complete("init", new FakeOktaOrg.InitFlow(mOktaAppAuth, mContext));
+        sBenchmark.measure("authenticate", new FakeOktaOrg.AuthenticateFlow(mOktaAppAuth) {
+            @Override
+            public void prepare() {
+                mOktaAppAuth.clearSession();
+            }
+        });
+    }
+
+    @Test
+    public void refreshAccessToken() throws Exception {
+        signIn();
+        sBenchmark.measure("refreshAccessToken", new FakeOktaOrg.AuthListenerFlow() {
+            @Override
+            public void start(MacroBenchmark.Outcome outcome) {
+                mOktaAppAuth.refreshAccessToken(listener(outcome));
+            }
+        });
+    }
+
+    @Test
+    public void getUserInfo() throws Exception {
+        signIn();
+        sBenchmark.measure("getUserInfo", new FakeOktaOrg.AuthListenerFlow() {
+            @Override
+            public void start(final MacroBenchmark.Outcome outcome) {
+                mOktaAppAuth.getUserInfo(
+                        new OktaAppAuth.OktaAuthActionCallback<JSONObject>() {
+                            @Override
+                            public void onSuccess(JSONObject response) {
+                                outcome.succeeded();
+                            }
+
+                            @Override
+                            public void onTokenFailure(@NonNull AuthorizationException ex) {
+                                outcome.failed(ex);
+                            }
+
+                            @Override
+                            public void onFailure(int httpResponseCode, Exception ex) {
+                                outcome.failed(httpResponseCode + " " + ex);
+                            }
+                        });
+            }
+        });
+    }
+
+    @Test
+    public void revoke() throws Exception {
+        signIn();
+        sBenchmark.measure("revoke (both tokens)", new FakeOktaOrg.AuthListenerFlow() {
+            @Override
+            public void start(final MacroBenchmark.Outcome outcome) {
+                mOktaAppAuth.revoke(new OktaAppAuth.OktaRevokeListener() {
+                    @Override
+                    public void onSuccess() {
+                        outcome.succeeded();
+                    }
+
+                    @Override
+                    public void onError(AuthorizationException ex) {
+                        outcome.failed(ex);
+                    }
+                });
+            }
+        });
+    }
+
+    private void signIn() throws Exception {
+        sBenchmark.complete("init", new FakeOktaOrg.InitFlow(mOktaAppAuth, mContext));
+        sBenchmark.complete("authenticate", new FakeOktaOrg.AuthenticateFlow(mOktaAppAuth));
+    }
+}
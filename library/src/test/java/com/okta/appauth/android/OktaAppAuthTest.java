@@ -2,7 +2,9 @@ package com.okta.appauth.android;
 
 import android.app.PendingIntent;
 import android.content.Context;
+import android.content.SharedPreferences;
 
+import android.net.ConnectivityManager;
 import android.net.Uri;
 import android.support.annotation.NonNull;
 import android.support.customtabs.CustomTabsIntent;
@@ -24,14 +26,17 @@ import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowConnectivityManager;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.HashSet;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -42,6 +47,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
 
 @RunWith(RobolectricTestRunner.class)
 public class OktaAppAuthTest {
@@ -92,6 +98,52 @@ public class OktaAppAuthTest {
         assertThat(sut.mAuthService.get()).isNull();
     }
 
+    @Test
+    public void testDisposeDisablesProactiveRefresh() {
+        ShadowConnectivityManager connectivity = shadowOf((ConnectivityManager) mContext
+                .getSystemService(Context.CONNECTIVITY_SERVICE));
+        sut.enableProactiveRefresh(mContext, 1, 0, TimeUnit.MINUTES);
+        Robolectric.flushForegroundThreadScheduler();
+        assertThat(connectivity.getNetworkCallbacks()).hasSize(1);
+
+        sut.dispose();
+        Robolectric.flushForegroundThreadScheduler();
+
+        assertThat(connectivity.getNetworkCallbacks()).isEmpty();
+    }
+
+    @Test
+    public void testClearSessionClearsDiscoveryCache() {
+        SharedPreferences cache = mContext.getSharedPreferences(
+                DiscoveryCache.PREFS_NAME, Context.MODE_PRIVATE);
+        cache.edit().putString("https://example.com/.well-known/openid-configuration", "{}")
+                .commit();
+        ReflectionUtils.refectSetValue(sut, "mDiscoveryCache", new DiscoveryCache(cache));
+
+        sut.clearSession();
+
+        assertThat(cache.getAll()).isEmpty();
+    }
+
+    @Test
+    public void testSwitchAccountCarriesConfigurationToNewAccount() {
+        String accountId = "testSwitchAccount";
+        MultiAccountAuthStateManager.getInstance(mContext).removeAccount(accountId);
+        when(mAuthState.getAuthorizationServiceConfiguration())
+                .thenReturn(TestUtils.getTestServiceConfig());
+        try {
+            sut.switchAccount(accountId);
+
+            assertThat(sut.getActiveAccountId()).isEqualTo(accountId);
+            assertThat(sut.mAuthStateManager).isNotSameAs(mAuthStateManager);
+            assertThat(sut.mAuthStateManager.getCurrent().getAuthorizationServiceConfiguration())
+                    .isNotNull();
+            assertThat(sut.isUserLoggedIn()).isFalse();
+        } finally {
+            MultiAccountAuthStateManager.getInstance(mContext).setActiveAccount(null);
+        }
+    }
+
     @Test
     public void testAuthServiceCreatesWhenNeeded() {
         sut = OktaAppAuth.getInstance(mContext);
@@ -681,4 +733,47 @@ public class OktaAppAuthTest {
         }
         fail("Test should fail with exception");
     }
+
+    @Test
+    public void testAuthenticationsDoNotWaitForEachOther() throws Exception {
+        final int logins = DefaultOktaExecutors.USER_THREADS + 1;
+        final CountDownLatch arrived = new CountDownLatch(logins);
+        final CountDownLatch release = new CountDownLatch(1);
+        MockWebServer server = new MockWebServer();
+        // the authorization requests are answered only once all of them are in flight
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                arrived.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                return new MockResponse()
+                        .setResponseCode(HttpURLConnection.HTTP_MOVED_TEMP)
+                        .setHeader("Location", TestUtils.TEST_APP_REDIRECT_URI + "?code=code"
+                                + "&state=" + request.getRequestUrl().queryParameter("state"));
+            }
+        });
+        server.start();
+        DefaultOktaExecutors executors = new DefaultOktaExecutors();
+        try {
+            sut.setExecutors(executors);
+            // each login starts from a copy of the current state
+            when(mAuthStateManager.getSnapshot())
+                    .thenReturn(new AuthStateSnapshot(new AuthState(), 1));
+            sut.mAuthRequest.set(new AuthorizationRequest.Builder(
+                    TestUtils.getTestServiceConfig(server.url("/").toString()),
+                    TestUtils.TEST_CLIENT_ID,
+                    ResponseTypeValues.CODE,
+                    TestUtils.TEST_APP_REDIRECT_URI).build());
+
+            for (int i = 0; i < logins; i++) {
+                sut.authenticate("sessionToken" + i, null);
+            }
+
+            assertThat(arrived.await(5, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            release.countDown();
+            executors.shutdown();
+            server.shutdown();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.os.SystemClock;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class RateLimitGovernorTest {
+
+    private static final int LIMIT = 100;
+    private static final long RESET_SECONDS = 60;
+
+    private MockWebServer mServer;
+    private RateLimitGovernor mGovernor;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.start();
+        mGovernor = new RateLimitGovernor(RateLimitGovernor.DEFAULT_MAX_DELAY_MS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void testResponseWithoutLimitsDoesNotLimit() throws Exception {
+        respond(new MockResponse());
+
+        assertAcquired(RateLimitGovernor.Priority.BACKGROUND);
+        assertAcquired(RateLimitGovernor.Priority.USER);
+    }
+
+    @Test
+    public void testBackgroundRequestsAreShedWhenOnlyTheReserveIsLeft() throws Exception {
+        respond(limited(LIMIT / 10));
+
+        assertShed(RateLimitGovernor.Priority.BACKGROUND);
+        assertAcquired(RateLimitGovernor.Priority.USER);
+    }
+
+    @Test
+    public void testRequestsAreCountedDownUntilTheLimitIsExhausted() throws Exception {
+        respond(limited(2));
+
+        assertAcquired(RateLimitGovernor.Priority.USER);
+        assertAcquired(RateLimitGovernor.Priority.USER);
+        RateLimitExceededException ex = assertShed(RateLimitGovernor.Priority.USER);
+        assertThat(ex.getEndpoint()).isEqualTo(OktaMetrics.Endpoint.USERINFO);
+        assertThat(ex.getRetryAfterMs())
+                .isGreaterThan(TimeUnit.SECONDS.toMillis(RESET_SECONDS - 5))
+                .isLessThanOrEqualTo(TimeUnit.SECONDS.toMillis(RESET_SECONDS));
+    }
+
+    @Test
+    public void testLimitsAreRestoredAfterTheReset() throws Exception {
+        respond(limited(0));
+        assertShed(RateLimitGovernor.Priority.USER);
+
+        SystemClock.sleep(TimeUnit.SECONDS.toMillis(RESET_SECONDS));
+
+        assertAcquired(RateLimitGovernor.Priority.BACKGROUND);
+    }
+
+    @Test
+    public void testRetryAfterIsHonored() throws Exception {
+        respond(new MockResponse().setResponseCode(RateLimitGovernor.HTTP_TOO_MANY_REQUESTS)
+                .setHeader("Retry-After", "30"));
+
+        RateLimitExceededException ex = assertShed(RateLimitGovernor.Priority.USER);
+        assertThat(ex.getRetryAfterMs()).isEqualTo(TimeUnit.SECONDS.toMillis(30));
+
+        SystemClock.sleep(TimeUnit.SECONDS.toMillis(30));
+        assertAcquired(RateLimitGovernor.Priority.USER);
+    }
+
+    @Test
+    public void testUserRequestIsDelayedByShortRetryAfter() throws Exception {
+        respond(new MockResponse().setResponseCode(RateLimitGovernor.HTTP_TOO_MANY_REQUESTS)
+                .setHeader("Retry-After", "1"));
+        assertShed(RateLimitGovernor.Priority.BACKGROUND);
+
+        long start = SystemClock.elapsedRealtime();
+        assertAcquired(RateLimitGovernor.Priority.USER);
+
+        assertThat(SystemClock.elapsedRealtime() - start)
+                .isEqualTo(TimeUnit.SECONDS.toMillis(1));
+    }
+
+    @Test
+    public void testTooManyRequestsWithoutRetryAfterWaitsForDefault() throws Exception {
+        respond(new MockResponse().setResponseCode(RateLimitGovernor.HTTP_TOO_MANY_REQUESTS));
+
+        RateLimitExceededException ex = assertShed(RateLimitGovernor.Priority.USER);
+        assertThat(ex.getRetryAfterMs()).isEqualTo(RateLimitGovernor.DEFAULT_RETRY_AFTER_MS);
+    }
+
+    @Test
+    public void testTokenResponsesAreRecordedByGovernedConnection() throws Exception {
+        mServer.enqueue(new MockResponse()
+                .setResponseCode(RateLimitGovernor.HTTP_TOO_MANY_REQUESTS)
+                .setHeader("Retry-After", "30"));
+        HttpURLConnection conn = new GovernedConnection(
+                (HttpURLConnection) mServer.url("/v1/token").url().openConnection(),
+                OktaMetrics.Endpoint.TOKEN, mGovernor);
+        assertThat(conn.getResponseCode()).isEqualTo(RateLimitGovernor.HTTP_TOO_MANY_REQUESTS);
+
+        assertThat(mGovernor.getWaitMs(
+                OktaMetrics.Endpoint.TOKEN, RateLimitGovernor.Priority.BACKGROUND))
+                .isEqualTo(TimeUnit.SECONDS.toMillis(30));
+        try {
+            mGovernor.acquire(OktaMetrics.Endpoint.TOKEN, RateLimitGovernor.Priority.USER);
+            fail("Expected the token request to be shed");
+        } catch (RateLimitExceededException ex) {
+            assertThat(ex.getEndpoint()).isEqualTo(OktaMetrics.Endpoint.TOKEN);
+        }
+    }
+
+    @Test
+    public void testResourcesAreNotGoverned() throws Exception {
+        HttpURLConnection conn = request(new MockResponse()
+                .setResponseCode(RateLimitGovernor.HTTP_TOO_MANY_REQUESTS)
+                .setHeader("Retry-After", "30"));
+        mGovernor.onResponse(OktaMetrics.Endpoint.RESOURCE, conn, conn.getResponseCode());
+
+        mGovernor.acquire(OktaMetrics.Endpoint.RESOURCE, RateLimitGovernor.Priority.BACKGROUND);
+    }
+
+    private MockResponse limited(int remaining) {
+        long reset = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + RESET_SECONDS;
+        return new MockResponse()
+                .setHeader("X-Rate-Limit-Limit", LIMIT)
+                .setHeader("X-Rate-Limit-Remaining", remaining)
+                .setHeader("X-Rate-Limit-Reset", reset);
+    }
+
+    private void respond(MockResponse response) throws Exception {
+        HttpURLConnection conn = request(response);
+        mGovernor.onResponse(OktaMetrics.Endpoint.USERINFO, conn, conn.getResponseCode());
+    }
+
+    private HttpURLConnection request(MockResponse response) throws Exception {
+        mServer.enqueue(response);
+        HttpURLConnection conn = (HttpURLConnection) mServer.url("/v1/userinfo").url()
+                .openConnection();
+        conn.getResponseCode();
+        return conn;
+    }
+
+    private void assertAcquired(RateLimitGovernor.Priority priority) throws Exception {
+        mGovernor.acquire(OktaMetrics.Endpoint.USERINFO, priority);
+    }
+
+    private RateLimitExceededException assertShed(RateLimitGovernor.Priority priority) {
+        try {
+            mGovernor.acquire(OktaMetrics.Endpoint.USERINFO, priority);
+        } catch (RateLimitExceededException ex) {
+            return ex;
+        }
+        fail("Expected the request to be shed");
+        return null;
+    }
+}
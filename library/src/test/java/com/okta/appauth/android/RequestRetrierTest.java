@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+import javax.net.ssl.SSLHandshakeException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class RequestRetrierTest {
+
+    private static final long DELAY_MS = 100;
+
+    @Before
+    public void setUp() {
+        RequestRetrier.resetBudgets();
+        OktaAppAuth.setRetryPolicy(new ExponentialBackoffRetryPolicy(1, DELAY_MS, DELAY_MS));
+    }
+
+    @After
+    public void tearDown() {
+        OktaAppAuth.setRetryPolicy(new ExponentialBackoffRetryPolicy());
+        OktaAppAuth.setMetrics(null);
+    }
+
+    @Test
+    public void testIdempotentRequestIsRetriedAfterTransientFailures() {
+        assertThat(retrier(RequestRetrier.Idempotency.IDEMPOTENT)
+                .getRetryDelayMs(RequestRetrier.NO_RESPONSE, new IOException()))
+                .isEqualTo(DELAY_MS);
+        assertThat(retrier(RequestRetrier.Idempotency.IDEMPOTENT)
+                .getRetryDelayMs(HttpURLConnection.HTTP_UNAVAILABLE, null))
+                .isEqualTo(DELAY_MS);
+        assertThat(retrier(RequestRetrier.Idempotency.IDEMPOTENT)
+                .getRetryDelayMs(HttpURLConnection.HTTP_NOT_FOUND, null))
+                .isEqualTo(OktaRetryPolicy.NO_RETRY);
+    }
+
+    @Test
+    public void testRequestIsRetriedBeforeResponseOnly() {
+        assertThat(retrier(RequestRetrier.Idempotency.BEFORE_RESPONSE)
+                .getRetryDelayMs(RequestRetrier.NO_RESPONSE, new IOException()))
+                .isEqualTo(DELAY_MS);
+        assertThat(retrier(RequestRetrier.Idempotency.BEFORE_RESPONSE)
+                .getRetryDelayMs(HttpURLConnection.HTTP_UNAVAILABLE, null))
+                .isEqualTo(OktaRetryPolicy.NO_RETRY);
+    }
+
+    @Test
+    public void testNonIdempotentRequestIsNeverRetried() {
+        RequestRetrier retrier = retrier(RequestRetrier.Idempotency.of("POST"));
+
+        assertThat(retrier.getRetryDelayMs(RequestRetrier.NO_RESPONSE, new IOException()))
+                .isEqualTo(OktaRetryPolicy.NO_RETRY);
+        assertThat(RequestRetrier.Idempotency.of("get"))
+                .isEqualTo(RequestRetrier.Idempotency.IDEMPOTENT);
+    }
+
+    @Test
+    public void testPermanentErrorsAreNotRetried() {
+        RequestRetrier retrier = retrier(RequestRetrier.Idempotency.IDEMPOTENT);
+
+        assertThat(retrier.getRetryDelayMs(RequestRetrier.NO_RESPONSE,
+                new RateLimitExceededException(OktaMetrics.Endpoint.USERINFO, DELAY_MS)))
+                .isEqualTo(OktaRetryPolicy.NO_RETRY);
+        assertThat(retrier.getRetryDelayMs(RequestRetrier.NO_RESPONSE,
+                new SSLHandshakeException("untrusted")))
+                .isEqualTo(OktaRetryPolicy.NO_RETRY);
+    }
+
+    @Test
+    public void testRetriesAreLimitedByPolicy() {
+        RequestRetrier retrier = retrier(RequestRetrier.Idempotency.IDEMPOTENT);
+
+        assertThat(retrier.getRetryDelayMs(RequestRetrier.NO_RESPONSE, new IOException()))
+                .isEqualTo(DELAY_MS);
+        assertThat(retrier.getRetryDelayMs(RequestRetrier.NO_RESPONSE, new IOException()))
+                .isEqualTo(OktaRetryPolicy.NO_RETRY);
+        assertThat(retrier.getRetries()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRetriesAreLimitedByBudget() {
+        int retries = 0;
+        while (retrier(RequestRetrier.Idempotency.IDEMPOTENT)
+                .getRetryDelayMs(RequestRetrier.NO_RESPONSE, new IOException())
+                != OktaRetryPolicy.NO_RETRY) {
+            retries++;
+            assertThat(retries).isLessThanOrEqualTo(2 * RequestRetrier.BUDGET_MAX_RETRIES);
+        }
+        assertThat(retries).isGreaterThanOrEqualTo(RequestRetrier.BUDGET_MAX_RETRIES);
+
+        // successful requests earn the endpoint another retry
+        for (int i = 0; i < RequestRetrier.BUDGET_REQUESTS_PER_RETRY; i++) {
+            retrier(RequestRetrier.Idempotency.IDEMPOTENT);
+        }
+        assertThat(retrier(RequestRetrier.Idempotency.IDEMPOTENT)
+                .getRetryDelayMs(RequestRetrier.NO_RESPONSE, new IOException()))
+                .isEqualTo(DELAY_MS);
+    }
+
+    @Test
+    public void testRetryIsNotStartedAfterDeadline() {
+        RequestRetrier retrier = RequestRetrier.start(
+                RequestTimer.start(OktaMetrics.Endpoint.USERINFO),
+                RequestRetrier.Idempotency.IDEMPOTENT, Deadline.after(DELAY_MS));
+
+        assertThat(retrier.getRetryDelayMs(RequestRetrier.NO_RESPONSE, new IOException()))
+                .isEqualTo(OktaRetryPolicy.NO_RETRY);
+    }
+
+    @Test
+    public void testNoRetriesWithoutPolicy() {
+        OktaAppAuth.setRetryPolicy(null);
+
+        assertThat(retrier(RequestRetrier.Idempotency.IDEMPOTENT)
+                .getRetryDelayMs(RequestRetrier.NO_RESPONSE, new IOException()))
+                .isEqualTo(OktaRetryPolicy.NO_RETRY);
+    }
+
+    @Test
+    public void testRetriesAreReportedToMetrics() {
+        InMemoryOktaMetrics metrics = new InMemoryOktaMetrics();
+        OktaAppAuth.setMetrics(metrics);
+        RequestTimer timer = RequestTimer.start(OktaMetrics.Endpoint.USERINFO);
+
+        RequestRetrier.start(timer, RequestRetrier.Idempotency.IDEMPOTENT)
+                .getRetryDelayMs(RequestRetrier.NO_RESPONSE, new IOException());
+        timer.finish(null);
+
+        assertThat(metrics.dump()).contains("retries=1");
+    }
+
+    private static RequestRetrier retrier(RequestRetrier.Idempotency idempotency) {
+        return RequestRetrier.start(RequestTimer.start(OktaMetrics.Endpoint.USERINFO),
+                idempotency);
+    }
+}
@@ -1,26 +1,34 @@
 package com.okta.appauth.android;
 
 import android.net.Uri;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 
 import com.okta.ConnectionBuilderForTest;
 import com.okta.TestUtils;
 
 import net.openid.appauth.AppAuthConfiguration;
+import net.openid.appauth.AuthState;
 import net.openid.appauth.AuthorizationRequest;
 import net.openid.appauth.AuthorizationService;
+import net.openid.appauth.ClientAuthentication;
 import net.openid.appauth.ResponseTypeValues;
+import net.openid.appauth.TokenRequest;
 import net.openid.appauth.connectivity.ConnectionBuilder;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.MockitoAnnotations;
+import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
@@ -32,7 +40,14 @@ import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @RunWith(RobolectricTestRunner.class)
 public class SessionAuthenticationServiceTest {
@@ -43,12 +58,15 @@ public class SessionAuthenticationServiceTest {
     private AuthorizationRequest.Builder authorizationRequest;
     private AuthorizationRequest request;
     private CustomDispatcher dispatcher;
+    private ConnectionBuilder connectionBuilder;
 
     private static final String VALID_SESSION = "valid_session_token";
+    private static final long DEADLINE_SECONDS = 5;
 
     @Before
     public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
+        CircuitBreaker.getInstance().reset();
 
         mAuthStateManager = AuthStateManager.getInstance(RuntimeEnvironment.application);
 
@@ -71,13 +89,14 @@ public class SessionAuthenticationServiceTest {
 
         mAuthService = new AuthorizationService(RuntimeEnvironment.application.getApplicationContext(), new AppAuthConfiguration.Builder().setConnectionBuilder(ConnectionBuilderForTest.INSTANCE).build());
 
-        sessionAuthenticationService = new SessionAuthenticationService(mAuthStateManager, mAuthService, new ConnectionBuilder() {
+        connectionBuilder = new ConnectionBuilder() {
             @NonNull
             @Override
             public HttpURLConnection openConnection(@NonNull Uri uri) throws IOException {
                 return DefaultOktaConnectionBuilder.INSTANCE.openConnection(uri);
             }
-        });
+        };
+        sessionAuthenticationService = new SessionAuthenticationService(mAuthStateManager, mAuthService, connectionBuilder);
 
         request = authorizationRequest.build();
         dispatcher.nonce = request.nonce;
@@ -107,6 +126,105 @@ public class SessionAuthenticationServiceTest {
         sessionAuthenticationService.performAuthorizationRequest(request, null, null);
     }
 
+    @Test
+    public void testExpiredDeadlineFailsWithDeadlineExceeded() {
+        FakeNativeOktaAuthListener listener = new FakeNativeOktaAuthListener();
+
+        sessionAuthenticationService.performAuthorizationRequest(
+                request, VALID_SESSION, SystemClock.elapsedRealtime(), listener);
+
+        assertEquals(1, listener.getOnTokenFailureCalled());
+        assertEquals("deadline_exceeded", listener.getTokenExceptions().get(0).getCode());
+    }
+
+    @Test
+    public void testTokenExchangeDoesNotBlockAndFailsAfterDeadline() throws IOException {
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(dispatcher);
+        server.start();
+        AuthorizationRequest httpRequest = TestUtils.getMinimalAuthRequestBuilder(
+                server.url("/").toString(), ResponseTypeValues.CODE).build();
+        AuthorizationService authService = mock(AuthorizationService.class);
+        SessionAuthenticationService service = new SessionAuthenticationService(
+                mAuthStateManager, authService, new ConnectionBuilder() {
+                    @NonNull
+                    @Override
+                    public HttpURLConnection openConnection(@NonNull Uri uri)
+                            throws IOException {
+                        return (HttpURLConnection) new URL(uri.toString()).openConnection();
+                    }
+                });
+        FakeNativeOktaAuthListener listener = new FakeNativeOktaAuthListener();
+
+        service.performAuthorizationRequest(httpRequest, VALID_SESSION,
+                SystemClock.elapsedRealtime() + TimeUnit.SECONDS.toMillis(DEADLINE_SECONDS),
+                listener);
+
+        ArgumentCaptor<AuthorizationService.TokenResponseCallback> callback =
+                ArgumentCaptor.forClass(AuthorizationService.TokenResponseCallback.class);
+        verify(authService).performTokenRequest(any(TokenRequest.class),
+                any(ClientAuthentication.class), callback.capture());
+        assertFalse(listener.hasCalledOnSuccess());
+        assertFalse(listener.hasCalledOnTokenFailure());
+
+        Robolectric.getForegroundThreadScheduler().advanceBy(DEADLINE_SECONDS, TimeUnit.SECONDS);
+        assertEquals(1, listener.getOnTokenFailureCalled());
+        assertEquals("deadline_exceeded", listener.getTokenExceptions().get(0).getCode());
+
+        // a response arriving after the deadline is ignored
+        callback.getValue().onTokenRequestCompleted(
+                TestUtils.getTestTokenResponse("accessToken"), null);
+        assertEquals(1, listener.getOnTokenFailureCalled());
+        assertFalse(listener.hasCalledOnSuccess());
+        server.shutdown();
+    }
+
+    @Test
+    public void testConcurrentFlowsPublishOnlyTheirOwnState() throws IOException {
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(dispatcher);
+        server.start();
+        AuthorizationRequest httpRequest = TestUtils.getMinimalAuthRequestBuilder(
+                server.url("/").toString(), ResponseTypeValues.CODE).build();
+        mAuthStateManager.replace(new AuthState(httpRequest.configuration));
+        AuthorizationService authService = mock(AuthorizationService.class);
+        SessionAuthenticationService service = new SessionAuthenticationService(
+                mAuthStateManager, authService, new ConnectionBuilder() {
+                    @NonNull
+                    @Override
+                    public HttpURLConnection openConnection(@NonNull Uri uri)
+                            throws IOException {
+                        return (HttpURLConnection) new URL(uri.toString()).openConnection();
+                    }
+                });
+        FakeNativeOktaAuthListener first = new FakeNativeOktaAuthListener();
+        FakeNativeOktaAuthListener second = new FakeNativeOktaAuthListener();
+
+        service.performAuthorizationRequest(httpRequest, VALID_SESSION, first);
+        service.performAuthorizationRequest(httpRequest, VALID_SESSION, second);
+
+        ArgumentCaptor<TokenRequest> requests = ArgumentCaptor.forClass(TokenRequest.class);
+        ArgumentCaptor<AuthorizationService.TokenResponseCallback> callbacks =
+                ArgumentCaptor.forClass(AuthorizationService.TokenResponseCallback.class);
+        verify(authService, times(2)).performTokenRequest(requests.capture(),
+                any(ClientAuthentication.class), callbacks.capture());
+        // nothing is published while the flows are in progress
+        assertNull(mAuthStateManager.getCurrent().getLastAuthorizationResponse());
+
+        callbacks.getAllValues().get(1).onTokenRequestCompleted(
+                TestUtils.getTestTokenResponse("secondAccessToken"), null);
+        callbacks.getAllValues().get(0).onTokenRequestCompleted(
+                TestUtils.getTestTokenResponse("firstAccessToken"), null);
+
+        assertTrue(first.hasCalledOnSuccess());
+        assertTrue(second.hasCalledOnSuccess());
+        AuthState published = mAuthStateManager.getCurrent();
+        assertEquals("firstAccessToken", published.getAccessToken());
+        assertEquals(requests.getAllValues().get(0).codeVerifier,
+                published.getLastAuthorizationResponse().request.codeVerifier);
+        server.shutdown();
+    }
+
     static class CustomDispatcher extends Dispatcher {
         String nonce;
 
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class TlsProviderTest {
+
+    @Test
+    public void testSocketFactoryIsShared() throws Exception {
+        assertThat(TlsProvider.getSocketFactory()).isSameAs(TlsProvider.getSocketFactory());
+    }
+
+    @Test
+    public void testSocketFactoryConfiguresSessionCache() throws Exception {
+        SSLContext context = SSLContext.getInstance("TLS");
+        new TlsEnableSocketFactory(context);
+
+        SSLSessionContext sessionContext = context.getClientSessionContext();
+        assertThat(sessionContext.getSessionCacheSize())
+                .isEqualTo(TlsEnableSocketFactory.SESSION_CACHE_SIZE);
+        assertThat(sessionContext.getSessionTimeout())
+                .isEqualTo(TlsEnableSocketFactory.SESSION_TIMEOUT_SECONDS);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import com.okta.TestUtils;
+import net.openid.appauth.AuthState;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class TokenEventBusTest {
+
+    private static final long PAST_EXPIRATION_HOURS = 2;
+
+    private AuthStateManager mManager;
+    private QueueExecutor mExecutor;
+    private RecordingListener mListener;
+
+    private TokenEventBus sut;
+
+    @Before
+    public void setUp() {
+        SharedPreferences prefs = RuntimeEnvironment.application.getSharedPreferences(
+                AuthStateManager.PREFS_NAME, Context.MODE_PRIVATE);
+        SharedPreferences configPrefs = RuntimeEnvironment.application.getSharedPreferences(
+                AuthStateManager.CONFIG_PREFS_NAME, Context.MODE_PRIVATE);
+        mManager = new AuthStateManager(prefs, configPrefs, new ReentrantLock());
+        mExecutor = new QueueExecutor();
+        mListener = new RecordingListener();
+
+        sut = new TokenEventBus(new Handler(Looper.getMainLooper()));
+        sut.attach(mManager);
+    }
+
+    @Test
+    public void testDeriveEvent() {
+        AuthState authorized = TestUtils.getTestAuthorizedState();
+        AuthState configured = new AuthState(TestUtils.getTestServiceConfig());
+
+        assertThat(TokenEventBus.deriveEvent(configured, authorized))
+                .isEqualTo(TokenEvent.REFRESHED);
+        assertThat(TokenEventBus.deriveEvent(authorized, configured))
+                .isEqualTo(TokenEvent.CLEARED);
+        assertThat(TokenEventBus.deriveEvent(authorized, new AuthState()))
+                .isEqualTo(TokenEvent.CONFIGURATION_INVALIDATED);
+        assertThat(TokenEventBus.deriveEvent(authorized, authorized)).isNull();
+    }
+
+    @Test
+    public void testEventsAreDeliveredOnExecutor() {
+        sut.addListener(mListener, mExecutor);
+        mManager.replace(new AuthState(TestUtils.getTestServiceConfig()));
+        mManager.updateAfterTokenResponse(TestUtils.getTestTokenResponse("accessToken"), null);
+
+        assertThat(mListener.mEvents).isEmpty();
+        mExecutor.runAll();
+        assertThat(mListener.mEvents).containsExactly(TokenEvent.REFRESHED);
+    }
+
+    @Test
+    public void testPendingEventsAreCoalesced() {
+        sut.addListener(mListener, mExecutor);
+        sut.post(TokenEvent.REFRESHED);
+        sut.post(TokenEvent.REFRESHED);
+        sut.post(TokenEvent.CLEARED);
+
+        assertThat(mExecutor.mTasks).hasSize(1);
+        mExecutor.runAll();
+        assertThat(mListener.mEvents).containsExactly(TokenEvent.REFRESHED, TokenEvent.CLEARED);
+
+        sut.post(TokenEvent.REFRESHED);
+        mExecutor.runAll();
+        assertThat(mListener.mEvents)
+                .containsExactly(TokenEvent.REFRESHED, TokenEvent.CLEARED, TokenEvent.REFRESHED);
+    }
+
+    @Test
+    public void testRemovedListenerIsNotCalled() {
+        sut.addListener(mListener, mExecutor);
+        sut.removeListener(mListener);
+        sut.post(TokenEvent.REVOKED);
+
+        assertThat(mExecutor.mTasks).isEmpty();
+    }
+
+    @Test
+    public void testExpirationIsReported() {
+        mManager.replace(TestUtils.getTestAuthorizedState());
+        sut.addListener(mListener);
+
+        Robolectric.getForegroundThreadScheduler().advanceBy(PAST_EXPIRATION_HOURS, TimeUnit.HOURS);
+        assertThat(mListener.mEvents).containsExactly(TokenEvent.EXPIRED);
+    }
+
+    @Test
+    public void testExpirationIsNotReportedAfterClearing() {
+        AuthState state = TestUtils.getTestAuthorizedState();
+        mManager.replace(state);
+        sut.addListener(mListener);
+        mManager.replace(new AuthState(state.getAuthorizationServiceConfiguration()));
+
+        Robolectric.getForegroundThreadScheduler().advanceBy(PAST_EXPIRATION_HOURS, TimeUnit.HOURS);
+        assertThat(mListener.mEvents).containsExactly(TokenEvent.CLEARED);
+    }
+
+    private static class QueueExecutor implements Executor {
+        private final List<Runnable> mTasks = new ArrayList<>();
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            mTasks.add(command);
+        }
+
+        void runAll() {
+            List<Runnable> tasks = new ArrayList<>(mTasks);
+            mTasks.clear();
+            for (Runnable task : tasks) {
+                task.run();
+            }
+        }
+    }
+
+    private static class RecordingListener implements OktaAppAuth.OktaTokenListener {
+        private final List<TokenEvent> mEvents = new ArrayList<>();
+
+        @Override
+        public void onTokenEvent(@NonNull TokenEvent event) {
+            mEvents.add(event);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+
+import com.okta.TestUtils;
+
+import net.openid.appauth.AuthState;
+import net.openid.appauth.AuthorizationException;
+import net.openid.appauth.AuthorizationService;
+import net.openid.appauth.ClientAuthentication;
+import net.openid.appauth.TokenRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(RobolectricTestRunner.class)
+public class TokenRefreshCoordinatorTest {
+
+    private static final int CALLERS = 10;
+    private static final long RETRY_DELAY_MS = 100;
+
+    @Mock
+    private AuthorizationService mService;
+
+    private AuthStateManager mManager;
+    private TokenRefreshCoordinator sut;
+    private List<String> mAccessTokens;
+    private List<AuthorizationException> mErrors;
+    private TokenRefreshCoordinator.RefreshCallback mCallback;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mManager = new AuthStateManager(
+                RuntimeEnvironment.application.getSharedPreferences(
+                        AuthStateManager.PREFS_NAME, Context.MODE_PRIVATE),
+                RuntimeEnvironment.application.getSharedPreferences(
+                        AuthStateManager.CONFIG_PREFS_NAME, Context.MODE_PRIVATE),
+                new ReentrantLock());
+        AuthState state = TestUtils.getTestAuthorizedState();
+        state.setNeedsTokenRefresh(true);
+        mManager.replace(state);
+
+        RequestRetrier.resetBudgets();
+        CircuitBreaker.getInstance().reset();
+        sut = new TokenRefreshCoordinator();
+        mAccessTokens = new ArrayList<>();
+        mErrors = new ArrayList<>();
+        mCallback = new TokenRefreshCoordinator.RefreshCallback() {
+            @Override
+            public void onRefreshCompleted(@Nullable String accessToken,
+                                           @Nullable AuthorizationException ex) {
+                mAccessTokens.add(accessToken);
+                mErrors.add(ex);
+            }
+        };
+    }
+
+    @Test
+    public void testConcurrentRefreshesShareOneRequest() {
+        for (int i = 0; i < CALLERS; i++) {
+            sut.refresh(mManager, mService, false, mCallback);
+        }
+
+        AuthorizationService.TokenResponseCallback callback = captureTokenRequest(1);
+        assertThat(sut.getInFlightCount()).isEqualTo(1);
+        assertThat(mAccessTokens).isEmpty();
+
+        callback.onTokenRequestCompleted(TestUtils.getTestTokenResponse("newAccessToken"), null);
+
+        assertThat(mAccessTokens).hasSize(CALLERS).containsOnly("newAccessToken");
+        assertThat(mErrors).containsOnly((AuthorizationException) null);
+        assertThat(mManager.getCurrent().getAccessToken()).isEqualTo("newAccessToken");
+        assertThat(sut.getRequestCount()).isEqualTo(1);
+        assertThat(sut.getCoalescedCount()).isEqualTo(CALLERS - 1);
+        assertThat(sut.getInFlightCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testFailureIsSharedByAllCallers() {
+        for (int i = 0; i < CALLERS; i++) {
+            sut.refresh(mManager, mService, true, mCallback);
+        }
+
+        captureTokenRequest(1).onTokenRequestCompleted(
+                null, AuthorizationException.TokenRequestErrors.INVALID_GRANT);
+
+        assertThat(mAccessTokens).hasSize(CALLERS).containsOnly((String) null);
+        assertThat(mErrors).containsOnly(AuthorizationException.TokenRequestErrors.INVALID_GRANT);
+    }
+
+    @Test
+    public void testNetworkErrorIsRetriedWhileCallersWait() {
+        OktaAppAuth.setRetryPolicy(
+                new ExponentialBackoffRetryPolicy(1, RETRY_DELAY_MS, RETRY_DELAY_MS));
+        try {
+            for (int i = 0; i < CALLERS; i++) {
+                sut.refresh(mManager, mService, true, mCallback);
+            }
+            captureTokenRequest(1).onTokenRequestCompleted(null,
+                    AuthorizationException.fromTemplate(
+                            AuthorizationException.GeneralErrors.NETWORK_ERROR,
+                            new IOException("Connection reset")));
+            assertThat(mAccessTokens).isEmpty();
+
+            Robolectric.getForegroundThreadScheduler().advanceBy(
+                    RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+            captureTokenRequest(2).onTokenRequestCompleted(
+                    TestUtils.getTestTokenResponse("newAccessToken"), null);
+
+            assertThat(mAccessTokens).hasSize(CALLERS).containsOnly("newAccessToken");
+            assertThat(sut.getRequestCount()).isEqualTo(1);
+            assertThat(sut.getInFlightCount()).isEqualTo(0);
+        } finally {
+            OktaAppAuth.setRetryPolicy(new ExponentialBackoffRetryPolicy());
+        }
+    }
+
+    @Test
+    public void testFreshTokenIsNotRefreshed() {
+        AuthState state = TestUtils.getTestAuthorizedState();
+        mManager.replace(state);
+
+        sut.refresh(mManager, mService, false, mCallback);
+
+        verify(mService, never()).performTokenRequest(any(TokenRequest.class),
+                any(ClientAuthentication.class),
+                any(AuthorizationService.TokenResponseCallback.class));
+        assertThat(mAccessTokens).containsExactly(state.getAccessToken());
+        assertThat(sut.getSkippedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRefreshAfterCompletionSendsNewRequest() {
+        sut.refresh(mManager, mService, true, mCallback);
+        captureTokenRequest(1).onTokenRequestCompleted(
+                TestUtils.getTestTokenResponse("newAccessToken"), null);
+
+        sut.refresh(mManager, mService, true, mCallback);
+
+        captureTokenRequest(2);
+        assertThat(sut.getRequestCount()).isEqualTo(2);
+        assertThat(sut.getCoalescedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testRefreshFailsFastWhileTokenCircuitIsOpen() {
+        OktaAppAuth.setRetryPolicy(null);
+        try {
+            for (int i = 0; i < CircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) {
+                sut.refresh(mManager, mService, true, mCallback);
+                captureTokenRequest(i + 1).onTokenRequestCompleted(null,
+                        AuthorizationException.fromTemplate(
+                                AuthorizationException.GeneralErrors.NETWORK_ERROR,
+                                new IOException("Connection refused")));
+            }
+            mErrors.clear();
+
+            sut.refresh(mManager, mService, true, mCallback);
+
+            captureTokenRequest(CircuitBreaker.DEFAULT_FAILURE_THRESHOLD);
+            assertThat(mErrors).hasSize(1);
+            assertThat(mErrors.get(0))
+                    .isEqualTo(AuthorizationException.GeneralErrors.NETWORK_ERROR);
+            assertThat(mErrors.get(0).getCause()).isInstanceOf(CircuitOpenException.class);
+            assertThat(sut.getInFlightCount()).isEqualTo(0);
+        } finally {
+            OktaAppAuth.setRetryPolicy(new ExponentialBackoffRetryPolicy());
+            CircuitBreaker.getInstance().reset();
+        }
+    }
+
+    @Test
+    public void testDisposedServiceCompletesFlight() {
+        doThrow(new IllegalStateException("Service has been disposed and rendered inoperable"))
+                .when(mService).performTokenRequest(any(TokenRequest.class),
+                        any(ClientAuthentication.class),
+                        any(AuthorizationService.TokenResponseCallback.class));
+
+        sut.refresh(mManager, mService, true, mCallback);
+        sut.refresh(mManager, mService, true, mCallback);
+
+        assertThat(mErrors).hasSize(2).containsOnly(
+                AuthorizationException.GeneralErrors.PROGRAM_CANCELED_AUTH_FLOW);
+        assertThat(sut.getInFlightCount()).isEqualTo(0);
+        assertThat(sut.getCoalescedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testMissingRefreshTokenCompletesFlight() {
+        AuthState state = new AuthState(TestUtils.getTestServiceConfig());
+        mManager.replace(state);
+
+        sut.refresh(mManager, mService, true, mCallback);
+
+        assertThat(mErrors).containsExactly(
+                AuthorizationException.TokenRequestErrors.INVALID_REQUEST);
+        assertThat(sut.getInFlightCount()).isEqualTo(0);
+        verify(mService, never()).performTokenRequest(any(TokenRequest.class),
+                any(ClientAuthentication.class),
+                any(AuthorizationService.TokenResponseCallback.class));
+    }
+
+    @Test
+    public void testSkippedCallbackRunsOutsideLock() {
+        mManager.replace(TestUtils.getTestAuthorizedState());
+        final List<Integer> inFlight = new ArrayList<>();
+
+        sut.refresh(mManager, mService, false, new TokenRefreshCoordinator.RefreshCallback() {
+            @Override
+            public void onRefreshCompleted(@Nullable String accessToken,
+                                           @Nullable AuthorizationException ex) {
+                // another thread can use the coordinator while the callback runs
+                Thread reader = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        inFlight.add(sut.getInFlightCount());
+                    }
+                });
+                reader.start();
+                try {
+                    reader.join(TimeUnit.SECONDS.toMillis(5));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        assertThat(inFlight).containsExactly(0);
+    }
+
+    private AuthorizationService.TokenResponseCallback captureTokenRequest(int requests) {
+        ArgumentCaptor<AuthorizationService.TokenResponseCallback> captor =
+                ArgumentCaptor.forClass(AuthorizationService.TokenResponseCallback.class);
+        verify(mService, times(requests)).performTokenRequest(any(TokenRequest.class),
+                any(ClientAuthentication.class), captor.capture());
+        return captor.getValue();
+    }
+}
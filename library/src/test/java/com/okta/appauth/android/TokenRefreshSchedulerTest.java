@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import com.okta.TestUtils;
+import net.openid.appauth.AuthState;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowActivityManager;
+import org.robolectric.shadows.ShadowConnectivityManager;
+
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+public class TokenRefreshSchedulerTest {
+
+    private static final long LEAD_TIME_MINUTES = 10;
+    private static final long TOKEN_LIFETIME_MINUTES = 60;
+
+    private AuthStateManager mManager;
+    private RateLimitGovernor mGovernor;
+    private int mRefreshes;
+
+    private TokenRefreshScheduler sut;
+
+    @Before
+    public void setUp() {
+        mManager = new AuthStateManager(
+                RuntimeEnvironment.application.getSharedPreferences(
+                        AuthStateManager.PREFS_NAME, Context.MODE_PRIVATE),
+                RuntimeEnvironment.application.getSharedPreferences(
+                        AuthStateManager.CONFIG_PREFS_NAME, Context.MODE_PRIVATE),
+                new ReentrantLock());
+        mManager.replace(TestUtils.getTestAuthorizedState());
+        mGovernor = new RateLimitGovernor(RateLimitGovernor.DEFAULT_MAX_DELAY_MS);
+
+        sut = new TokenRefreshScheduler(new Handler(Looper.getMainLooper()),
+                new TokenRefreshScheduler.Refresher() {
+                    @Override
+                    public void refresh(@NonNull AuthStateManager manager) {
+                        mRefreshes++;
+                    }
+                }, new Random(), mGovernor);
+        sut.attach(mManager);
+        sut.enable(RuntimeEnvironment.application, TimeUnit.MINUTES.toMillis(LEAD_TIME_MINUTES),
+                0);
+        advanceMinutes(0);
+    }
+
+    @Test
+    public void testRefreshesLeadTimeBeforeExpiration() {
+        advanceMinutes(TOKEN_LIFETIME_MINUTES - LEAD_TIME_MINUTES - 1);
+        assertThat(mRefreshes).isEqualTo(0);
+
+        advanceMinutes(1);
+        assertThat(mRefreshes).isEqualTo(1);
+    }
+
+    @Test
+    public void testRefreshIsNotRepeatedForSameToken() {
+        advanceMinutes(TOKEN_LIFETIME_MINUTES);
+        mManager.replace(mManager.getCurrent());
+        advanceMinutes(TOKEN_LIFETIME_MINUTES);
+
+        assertThat(mRefreshes).isEqualTo(1);
+    }
+
+    @Test
+    public void testNewTokenIsRescheduled() {
+        advanceMinutes(TOKEN_LIFETIME_MINUTES - LEAD_TIME_MINUTES);
+        mManager.updateAfterTokenResponse(TestUtils.getTestTokenResponse("newAccessToken"), null);
+        advanceMinutes(TOKEN_LIFETIME_MINUTES - LEAD_TIME_MINUTES);
+
+        assertThat(mRefreshes).isEqualTo(2);
+    }
+
+    @Test
+    public void testRefreshIsDeferredWhileInBackground() {
+        sut.setForeground(false);
+        advanceMinutes(TOKEN_LIFETIME_MINUTES);
+        assertThat(mRefreshes).isEqualTo(0);
+
+        sut.setForeground(true);
+        assertThat(mRefreshes).isEqualTo(1);
+    }
+
+    @Test
+    public void testRefreshIsDeferredWhileOffline() {
+        sut.setOnline(false);
+        advanceMinutes(TOKEN_LIFETIME_MINUTES);
+        assertThat(mRefreshes).isEqualTo(0);
+
+        sut.setOnline(true);
+        assertThat(mRefreshes).isEqualTo(1);
+    }
+
+    @Test
+    public void testRefreshIsPostponedWhileTokenEndpointAsksToRetryLater() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse()
+                .setResponseCode(RateLimitGovernor.HTTP_TOO_MANY_REQUESTS)
+                .setHeader("Retry-After", TimeUnit.MINUTES.toSeconds(LEAD_TIME_MINUTES)));
+        server.start();
+        try {
+            advanceMinutes(TOKEN_LIFETIME_MINUTES - LEAD_TIME_MINUTES - 1);
+            HttpURLConnection conn = new GovernedConnection(
+                    (HttpURLConnection) server.url("/oauth2/v1/token").url().openConnection(),
+                    OktaMetrics.Endpoint.TOKEN, mGovernor);
+            conn.getResponseCode();
+        } finally {
+            server.shutdown();
+        }
+
+        advanceMinutes(1);
+        assertThat(mRefreshes).isEqualTo(0);
+
+        advanceMinutes(LEAD_TIME_MINUTES);
+        assertThat(mRefreshes).isEqualTo(1);
+    }
+
+    @Test
+    public void testCancelStopsRefreshOfCurrentToken() {
+        sut.cancel();
+        advanceMinutes(TOKEN_LIFETIME_MINUTES);
+        assertThat(mRefreshes).isEqualTo(0);
+
+        mManager.updateAfterTokenResponse(TestUtils.getTestTokenResponse("newAccessToken"), null);
+        advanceMinutes(TOKEN_LIFETIME_MINUTES);
+        assertThat(mRefreshes).isEqualTo(1);
+    }
+
+    @Test
+    public void testClearedStateIsNotRefreshed() {
+        mManager.replace(new AuthState(TestUtils.getTestServiceConfig()));
+        advanceMinutes(TOKEN_LIFETIME_MINUTES);
+
+        assertThat(mRefreshes).isEqualTo(0);
+    }
+
+    @Test
+    public void testRefreshIsDeferredWhileNoNetworkIsAvailable() {
+        ShadowConnectivityManager connectivity = shadowOf(getConnectivityManager());
+        NetworkInfo network = getConnectivityManager().getActiveNetworkInfo();
+        connectivity.setActiveNetworkInfo(null);
+        notifyNetworkCallbacks(false);
+        advanceMinutes(TOKEN_LIFETIME_MINUTES);
+        assertThat(mRefreshes).isEqualTo(0);
+
+        connectivity.setActiveNetworkInfo(network);
+        notifyNetworkCallbacks(true);
+        advanceMinutes(0);
+        assertThat(mRefreshes).isEqualTo(1);
+    }
+
+    @Test
+    public void testDisableUnregistersFromApplication() {
+        assertThat(shadowOf(getConnectivityManager()).getNetworkCallbacks()).hasSize(1);
+
+        sut.disable();
+        advanceMinutes(TOKEN_LIFETIME_MINUTES);
+
+        assertThat(shadowOf(getConnectivityManager()).getNetworkCallbacks()).isEmpty();
+        assertThat(mRefreshes).isEqualTo(0);
+    }
+
+    @Test
+    public void testStartsInBackgroundWithoutVisibleActivity() {
+        sut.disable();
+        advanceMinutes(0);
+        ActivityManager.RunningAppProcessInfo process = new ActivityManager.RunningAppProcessInfo(
+                RuntimeEnvironment.application.getPackageName(), Process.myPid(), null);
+        process.importance = ActivityManager.RunningAppProcessInfo.IMPORTANCE_CACHED;
+        ShadowActivityManager activityManager = shadowOf((ActivityManager) RuntimeEnvironment
+                .application.getSystemService(Context.ACTIVITY_SERVICE));
+        activityManager.setProcesses(Collections.singletonList(process));
+
+        sut.enable(RuntimeEnvironment.application, TimeUnit.MINUTES.toMillis(LEAD_TIME_MINUTES),
+                0);
+        advanceMinutes(TOKEN_LIFETIME_MINUTES);
+        assertThat(mRefreshes).isEqualTo(0);
+
+        sut.setForeground(true);
+        assertThat(mRefreshes).isEqualTo(1);
+    }
+
+    private static ConnectivityManager getConnectivityManager() {
+        return (ConnectivityManager) RuntimeEnvironment.application
+                .getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    private static void notifyNetworkCallbacks(boolean available) {
+        for (ConnectivityManager.NetworkCallback callback
+                : shadowOf(getConnectivityManager()).getNetworkCallbacks()) {
+            if (available) {
+                callback.onAvailable(null);
+            } else {
+                callback.onLost(null);
+            }
+        }
+    }
+
+    private static void advanceMinutes(long minutes) {
+        Robolectric.getForegroundThreadScheduler().advanceBy(minutes, TimeUnit.MINUTES);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android.okhttp;
+
+import android.net.Uri;
+import android.os.Build;
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+
+import com.okta.appauth.android.OktaConnectionBuilder;
+import com.okta.appauth.android.TlsProvider;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.OkUrlFactory;
+import okhttp3.Protocol;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * <p>
+ * An {@link OktaConnectionBuilder} which opens its connections through OkHttp. All connections
+ * opened by the builder share the connection pool of one {@link OkHttpClient}, so consecutive
+ * requests to the authorization server, such as a token refresh followed by a userinfo request,
+ * reuse a kept-alive connection instead of connecting again. Where the server supports it, the
+ * requests are multiplexed over a single HTTP/2 connection.
+ * </p>
+ * <p>
+ * Pass the builder to
+ * {@link com.okta.appauth.android.OktaAppAuth#init(android.content.Context,
+ * com.okta.appauth.android.OktaAppAuth.OktaAuthListener, int, OktaConnectionBuilder)}:
+ * </p>
+ * <pre>
+ * mOktaAppAuth.init(context, listener, color, OkHttpConnectionBuilder.getInstance());
+ * </pre>
+ */
+public final class OkHttpConnectionBuilder implements OktaConnectionBuilder {
+
+    private static final AtomicReference<OkHttpConnectionBuilder> INSTANCE =
+            new AtomicReference<>();
+
+    private static final long CONNECTION_TIMEOUT_SECONDS = 15;
+    private static final long READ_TIMEOUT_SECONDS = 10;
+    private static final long WRITE_TIMEOUT_SECONDS = 10;
+
+    // authorization traffic goes to a single host, for which HTTP/2 needs one connection
+    private static final int MAX_IDLE_CONNECTIONS = 2;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private static final String HTTPS_SCHEME = "https";
+
+    private final OkHttpClient mClient;
+    @SuppressWarnings("deprecation")
+    private final OkUrlFactory mUrlFactory;
+
+    /**
+     * Returns the builder shared in the process, which uses a client configured by
+     * {@link #newClientBuilder()}.
+     *
+     * @return the shared builder
+     */
+    @AnyThread
+    @NonNull
+    public static OkHttpConnectionBuilder getInstance() {
+        OkHttpConnectionBuilder builder = INSTANCE.get();
+        if (builder == null) {
+            INSTANCE.compareAndSet(null,
+                    new OkHttpConnectionBuilder(newClientBuilder().build()));
+            builder = INSTANCE.get();
+        }
+        return builder;
+    }
+
+    /**
+     * Returns a client builder configured for requests to the authorization server, which can
+     * be customized before being passed to {@link #OkHttpConnectionBuilder(OkHttpClient)}. On
+     * API 21 and below, TLS v1.2 is enabled through {@link TlsProvider#getSocketFactory()}.
+     *
+     * @return a new client builder
+     */
+    @NonNull
+    public static OkHttpClient.Builder newClientBuilder() {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(
+                        MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(CONNECTION_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .writeTimeout(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .followRedirects(false)
+                .followSslRedirects(false);
+
+        if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.LOLLIPOP) {
+            try {
+                builder.sslSocketFactory(TlsProvider.getSocketFactory(), getTrustManager());
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException("Failed to enable TLS v1.2", ex);
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Constructs a builder opening its connections with the given client. The connections
+     * share the client's connection pool.
+     *
+     * @param client The client to use
+     */
+    @SuppressWarnings("deprecation")
+    public OkHttpConnectionBuilder(@NonNull OkHttpClient client) {
+        mClient = client;
+        mUrlFactory = new OkUrlFactory(client);
+    }
+
+    /**
+     * Returns the client the connections are opened with.
+     *
+     * @return the client
+     */
+    @NonNull
+    public OkHttpClient getClient() {
+        return mClient;
+    }
+
+    @NonNull
+    @Override
+    @SuppressWarnings("deprecation")
+    public HttpURLConnection openConnection(@NonNull Uri uri) throws IOException {
+        if (!HTTPS_SCHEME.equals(uri.getScheme())) {
+            throw new IllegalArgumentException("only https connections are permitted");
+        }
+        HttpURLConnection conn = mUrlFactory.open(new URL(uri.toString()));
+        conn.setInstanceFollowRedirects(false);
+        return conn;
+    }
+
+    private static X509TrustManager getTrustManager() throws GeneralSecurityException {
+        TrustManagerFactory factory =
+                TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        factory.init((KeyStore) null);
+        for (TrustManager trustManager : factory.getTrustManagers()) {
+            if (trustManager instanceof X509TrustManager) {
+                return (X509TrustManager) trustManager;
+            }
+        }
+        throw new GeneralSecurityException("No X509TrustManager available");
+    }
+}
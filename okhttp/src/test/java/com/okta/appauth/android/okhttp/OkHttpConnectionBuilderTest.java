@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android.okhttp;
+
+import android.net.Uri;
+
+import okhttp3.Protocol;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class OkHttpConnectionBuilderTest {
+
+    private MockWebServer mServer;
+    private OkHttpConnectionBuilder sut;
+
+    @Before
+    public void setUp() throws IOException {
+        HeldCertificate certificate = new HeldCertificate.Builder()
+                .addSubjectAlternativeName("localhost")
+                .build();
+        HandshakeCertificates serverCertificates = new HandshakeCertificates.Builder()
+                .heldCertificate(certificate)
+                .build();
+        HandshakeCertificates clientCertificates = new HandshakeCertificates.Builder()
+                .addTrustedCertificate(certificate.certificate())
+                .build();
+
+        mServer = new MockWebServer();
+        mServer.useHttps(serverCertificates.sslSocketFactory(), false);
+        mServer.start();
+
+        sut = new OkHttpConnectionBuilder(OkHttpConnectionBuilder.newClientBuilder()
+                .sslSocketFactory(clientCertificates.sslSocketFactory(),
+                        clientCertificates.trustManager())
+                .build());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void testGetInstanceIsShared() {
+        assertThat(OkHttpConnectionBuilder.getInstance())
+                .isSameAs(OkHttpConnectionBuilder.getInstance());
+        assertThat(OkHttpConnectionBuilder.getInstance().getClient().protocols())
+                .contains(Protocol.HTTP_2);
+    }
+
+    @Test
+    public void testConsecutiveRequestsReuseConnection() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("first"));
+        mServer.enqueue(new MockResponse().setBody("second"));
+
+        request("/token");
+        request("/userinfo");
+
+        assertThat(mServer.takeRequest().getSequenceNumber()).isEqualTo(0);
+        assertThat(mServer.takeRequest().getSequenceNumber()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRedirectsAreNotFollowed() throws Exception {
+        mServer.enqueue(new MockResponse()
+                .setResponseCode(HttpURLConnection.HTTP_MOVED_TEMP)
+                .setHeader("Location", "/elsewhere"));
+
+        HttpURLConnection conn = sut.openConnection(uri("/authorize"));
+        assertThat(conn.getResponseCode()).isEqualTo(HttpURLConnection.HTTP_MOVED_TEMP);
+        assertThat(conn.getHeaderField("Location")).isEqualTo("/elsewhere");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsPlainHttp() throws IOException {
+        sut.openConnection(Uri.parse("http://example.com/"));
+    }
+
+    private void request(String path) throws IOException {
+        HttpURLConnection conn = sut.openConnection(uri(path));
+        assertThat(conn.getResponseCode()).isEqualTo(HttpURLConnection.HTTP_OK);
+        InputStream body = conn.getInputStream();
+        try {
+            while (body.read() != -1) {
+                // read the whole response
+            }
+        } finally {
+            body.close();
+        }
+    }
+
+    private Uri uri(String path) {
+        return Uri.parse(mServer.url(path).toString());
+    }
+}